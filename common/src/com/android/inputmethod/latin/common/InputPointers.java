@@ -128,6 +128,16 @@ public final class InputPointers {
         mTimes.reset(defaultCapacity);
     }
 
+    /**
+     * Removes all the pointers, but keeps the arrays for the next ones, unlike {@link #reset()}.
+     */
+    public void clear() {
+        mXCoordinates.setLength(0);
+        mYCoordinates.setLength(0);
+        mPointerIds.setLength(0);
+        mTimes.setLength(0);
+    }
+
     public int getPointerSize() {
         return mXCoordinates.getLength();
     }
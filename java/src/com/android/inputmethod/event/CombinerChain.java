@@ -43,6 +43,11 @@ public class CombinerChain {
     // The feedback on the composing state, as described above
     private SpannableStringBuilder mStateFeedback;
     private final ArrayList<Combiner> mCombiners;
+    // The copy of the previous events that combiners are allowed to modify. This is reused
+    // across events so that processing an event does not allocate a new list.
+    private final ArrayList<Event> mModifiablePreviousEvents = new ArrayList<>();
+    // The combined text as a String, or null if it has changed since it was last made.
+    private String mCombinedTextString;
 
     /**
      * Create an combiner chain.
@@ -64,6 +69,7 @@ public class CombinerChain {
 
     public void reset() {
         mCombinedText.setLength(0);
+        mCombinedTextString = null;
         mStateFeedback.clear();
         for (final Combiner c : mCombiners) {
             c.reset();
@@ -71,12 +77,25 @@ public class CombinerChain {
     }
 
     private void updateStateFeedback() {
+        if (0 == mStateFeedback.length() && !hasCombiningStateFeedback()) {
+            // There is no feedback before or after: this is the most common case.
+            return;
+        }
         mStateFeedback.clear();
         for (int i = mCombiners.size() - 1; i >= 0; --i) {
             mStateFeedback.append(mCombiners.get(i).getCombiningStateFeedback());
         }
     }
 
+    private boolean hasCombiningStateFeedback() {
+        for (int i = mCombiners.size() - 1; i >= 0; --i) {
+            if (!TextUtils.isEmpty(mCombiners.get(i).getCombiningStateFeedback())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Process an event through the combining chain, and return a processed event to apply.
      * @param previousEvents the list of previous events in this composition
@@ -87,18 +106,22 @@ public class CombinerChain {
     @Nonnull
     public Event processEvent(final ArrayList<Event> previousEvents,
             @Nonnull final Event newEvent) {
-        final ArrayList<Event> modifiablePreviousEvents = new ArrayList<>(previousEvents);
+        final ArrayList<Event> modifiablePreviousEvents = mModifiablePreviousEvents;
+        modifiablePreviousEvents.clear();
+        modifiablePreviousEvents.addAll(previousEvents);
         Event event = newEvent;
-        for (final Combiner combiner : mCombiners) {
+        for (int i = 0; i < mCombiners.size(); ++i) {
             // A combiner can never return more than one event; it can return several
             // code points, but they should be encapsulated within one event.
-            event = combiner.processEvent(modifiablePreviousEvents, event);
+            event = mCombiners.get(i).processEvent(modifiablePreviousEvents, event);
             if (event.isConsumed()) {
                 // If the event is consumed, then we don't pass it to subsequent combiners:
                 // they should not see it at all.
                 break;
             }
         }
+        // Don't keep references to the events once they are processed.
+        modifiablePreviousEvents.clear();
         updateStateFeedback();
         return event;
     }
@@ -115,11 +138,13 @@ public class CombinerChain {
                 if (length > 0) {
                     final int lastCodePoint = mCombinedText.codePointBefore(length);
                     mCombinedText.delete(length - Character.charCount(lastCodePoint), length);
+                    mCombinedTextString = null;
                 }
             } else {
                 final CharSequence textToCommit = event.getTextToCommit();
                 if (!TextUtils.isEmpty(textToCommit)) {
                     mCombinedText.append(textToCommit);
+                    mCombinedTextString = null;
                 }
             }
         }
@@ -128,10 +153,17 @@ public class CombinerChain {
 
     /**
      * Get the char sequence that should be displayed as the composing word. It may include
-     * styling spans.
+     * styling spans. This returns the same String as long as the word does not change and there
+     * is no combining feedback.
      */
     public CharSequence getComposingWordWithCombiningFeedback() {
-        final SpannableStringBuilder s = new SpannableStringBuilder(mCombinedText);
+        if (null == mCombinedTextString) {
+            mCombinedTextString = mCombinedText.toString();
+        }
+        if (0 == mStateFeedback.length()) {
+            return mCombinedTextString;
+        }
+        final SpannableStringBuilder s = new SpannableStringBuilder(mCombinedTextString);
         return s.append(mStateFeedback);
     }
 }
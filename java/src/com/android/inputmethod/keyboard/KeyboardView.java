@@ -34,6 +34,7 @@ import android.view.View;
 
 import com.android.inputmethod.keyboard.internal.KeyDrawParams;
 import com.android.inputmethod.keyboard.internal.KeyVisualAttributes;
+import com.android.inputmethod.keyboard.internal.KeyVisualCache;
 import com.android.inputmethod.latin.R;
 import com.android.inputmethod.latin.common.Constants;
 import com.android.inputmethod.latin.utils.TypefaceUtils;
@@ -121,6 +122,14 @@ public class KeyboardView extends View {
     @Nonnull
     private final Paint mPaint = new Paint();
     private final Paint.FontMetrics mFontMetrics = new Paint.FontMetrics();
+    /** The rendered key visuals, used when drawing to the offscreen buffer */
+    @Nullable
+    private KeyVisualCache mKeyVisualCache;
+    /** The canvas used to render a key visual into its bitmap */
+    @Nonnull
+    private final Canvas mKeyVisualCanvas = new Canvas();
+    /** The time it took to draw the keys of the last frame, in nanoseconds */
+    private long mLastKeysDrawTimeNanos;
 
     public KeyboardView(final Context context, final AttributeSet attrs) {
         this(context, attrs, R.attr.keyboardViewStyle);
@@ -249,7 +258,9 @@ public class KeyboardView extends View {
                 // TODO: Stop using the offscreen canvas even when in software rendering
                 mOffscreenCanvas.setBitmap(mOffscreenBuffer);
             }
+            final long startTime = System.nanoTime();
             onDrawKeyboard(mOffscreenCanvas);
+            mLastKeysDrawTimeNanos = System.nanoTime() - startTime;
         }
         canvas.drawBitmap(mOffscreenBuffer, 0.0f, 0.0f, null);
     }
@@ -276,6 +287,9 @@ public class KeyboardView extends View {
             mOffscreenBuffer.recycle();
             mOffscreenBuffer = null;
         }
+        if (mKeyVisualCache != null) {
+            mKeyVisualCache.clear();
+        }
     }
 
     private void onDrawKeyboard(@Nonnull final Canvas canvas) {
@@ -328,12 +342,58 @@ public class KeyboardView extends View {
             @Nonnull final Paint paint) {
         final int keyDrawX = key.getDrawX() + getPaddingLeft();
         final int keyDrawY = key.getY() + getPaddingTop();
-        canvas.translate(keyDrawX, keyDrawY);
 
         final KeyVisualAttributes attr = key.getVisualAttributes();
         final KeyDrawParams params = mKeyDrawParams.mayCloneAndUpdateParams(key.getHeight(), attr);
         params.mAnimAlpha = Constants.Color.ALPHA_OPAQUE;
 
+        if (!canvas.isHardwareAccelerated() && isKeyVisualCacheable(key)) {
+            if (mKeyVisualCache == null) {
+                mKeyVisualCache = new KeyVisualCache();
+            }
+            final Rect padding = mKeyBackgroundPadding;
+            final Bitmap cachedVisual = mKeyVisualCache.get(key, params);
+            if (cachedVisual != null) {
+                canvas.drawBitmap(cachedVisual, keyDrawX - padding.left, keyDrawY - padding.top,
+                        null);
+                return;
+            }
+            final Bitmap visual = renderKeyVisual(key, paint, params);
+            if (visual != null) {
+                canvas.drawBitmap(visual, keyDrawX - padding.left, keyDrawY - padding.top, null);
+                // Put it in the cache only once drawn, as the cache may recycle it right away.
+                mKeyVisualCache.put(key, params, visual);
+                return;
+            }
+        }
+
+        canvas.translate(keyDrawX, keyDrawY);
+        onDrawKeyVisuals(key, canvas, paint, params);
+        canvas.translate(-keyDrawX, -keyDrawY);
+    }
+
+    // Render a key visual into a new bitmap that covers the key and its background padding.
+    @Nullable
+    private Bitmap renderKeyVisual(@Nonnull final Key key, @Nonnull final Paint paint,
+            @Nonnull final KeyDrawParams params) {
+        final Rect padding = mKeyBackgroundPadding;
+        final int width = key.getDrawWidth() + padding.left + padding.right;
+        final int height = key.getHeight() + padding.top + padding.bottom;
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        final Bitmap visual = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        final Canvas canvas = mKeyVisualCanvas;
+        canvas.setBitmap(visual);
+        canvas.setMatrix(null);
+        canvas.translate(padding.left, padding.top);
+        onDrawKeyVisuals(key, canvas, paint, params);
+        canvas.setBitmap(null);
+        return visual;
+    }
+
+    private void onDrawKeyVisuals(@Nonnull final Key key, @Nonnull final Canvas canvas,
+            @Nonnull final Paint paint, @Nonnull final KeyDrawParams params) {
         if (!key.isSpacer()) {
             final Drawable background = key.selectBackgroundDrawable(
                     mKeyBackground, mFunctionalKeyBackground, mSpacebarBackground);
@@ -342,8 +402,34 @@ public class KeyboardView extends View {
             }
         }
         onDrawKeyTopVisuals(key, canvas, paint, params);
+    }
 
-        canvas.translate(-keyDrawX, -keyDrawY);
+    /**
+     * Whether the visual of a key can be rendered once and reused while the key content, state
+     * and draw parameters stay the same. Subclasses that draw a key depending on their own state
+     * must return false for that key.
+     * @param key the key to draw.
+     * @return true if the visual of the key can be cached.
+     */
+    protected boolean isKeyVisualCacheable(@Nonnull final Key key) {
+        // A key background that keeps its aspect ratio may be larger than the key and its
+        // padding, and would be cut by the cached bitmap.
+        return key.isSpacer() || !key.needsToKeepBackgroundAspectRatio(mDefaultKeyLabelFlags);
+    }
+
+    /**
+     * Returns the ratio of key draws that were served by the key visual cache.
+     */
+    public float getKeyVisualCacheHitRatio() {
+        return (mKeyVisualCache == null) ? 0.0f : mKeyVisualCache.getHitRatio();
+    }
+
+    /**
+     * Returns the time it took to draw the keys of the last frame to the offscreen buffer, in
+     * nanoseconds.
+     */
+    public long getLastKeysDrawTimeNanos() {
+        return mLastKeysDrawTimeNanos;
     }
 
     // Draw key background.
@@ -801,6 +801,14 @@ public final class MainKeyboardView extends KeyboardView implements DrawingProxy
         invalidateKey(mSpaceKey);
     }
 
+    @Override
+    protected boolean isKeyVisualCacheable(final Key key) {
+        // The space key shows the language name with a fading animation, and the alt code keys
+        // fade in and out while typing.
+        return key.getCode() != Constants.CODE_SPACE && !key.altCodeWhileTyping()
+                && super.isKeyVisualCacheable(key);
+    }
+
     @Override
     protected void onDrawKeyTopVisuals(final Key key, final Canvas canvas, final Paint paint,
             final KeyDrawParams params) {
@@ -83,6 +83,12 @@ public class MoreKeysKeyboardView extends KeyboardView implements MoreKeysPanel
         }
     }
 
+    @Override
+    protected boolean isKeyVisualCacheable(final Key key) {
+        // This view is short-lived, so rendering key visuals for later reuse is not worth it.
+        return false;
+    }
+
     @Override
     protected void onDrawKeyTopVisuals(final Key key, final Canvas canvas, final Paint paint,
             final KeyDrawParams params) {
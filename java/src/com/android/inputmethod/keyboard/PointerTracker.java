@@ -41,8 +41,6 @@ import com.android.inputmethod.latin.define.DebugFlags;
 import com.android.inputmethod.latin.settings.Settings;
 import com.android.inputmethod.latin.utils.ResourceUtils;
 
-import java.util.ArrayList;
-
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
@@ -92,7 +90,9 @@ public final class PointerTracker implements PointerTrackerQueue.Element,
     // TODO: Device specific parameter would be better for device specific hack?
     private static final float PHANTOM_SUDDEN_MOVE_THRESHOLD = 0.25f; // in keyWidth
 
-    private static final ArrayList<PointerTracker> sTrackers = new ArrayList<>();
+    private static final PointerTracker[] sTrackers =
+            new PointerTracker[PointerTrackerQueue.MAX_POINTER_ID_COUNT];
+    private static int sTrackersSize;
     private static final PointerTrackerQueue sPointerTrackerQueue = new PointerTrackerQueue();
 
     public final int mPointerId;
@@ -182,15 +182,15 @@ public final class PointerTracker implements PointerTrackerQueue.Element,
     }
 
     public static PointerTracker getPointerTracker(final int id) {
-        final ArrayList<PointerTracker> trackers = sTrackers;
+        final PointerTracker[] trackers = sTrackers;
 
         // Create pointer trackers until we can get 'id+1'-th tracker, if needed.
-        for (int i = trackers.size(); i <= id; i++) {
-            final PointerTracker tracker = new PointerTracker(i);
-            trackers.add(tracker);
+        for (int i = sTrackersSize; i <= id; i++) {
+            trackers[i] = new PointerTracker(i);
         }
+        sTrackersSize = Math.max(sTrackersSize, id + 1);
 
-        return trackers.get(id);
+        return trackers[id];
     }
 
     public static boolean isAnyInDraggingFinger() {
@@ -210,26 +210,26 @@ public final class PointerTracker implements PointerTrackerQueue.Element,
         if (keyboard == null) {
             return;
         }
-        final int trackersSize = sTrackers.size();
+        final int trackersSize = sTrackersSize;
         for (int i = 0; i < trackersSize; ++i) {
-            final PointerTracker tracker = sTrackers.get(i);
+            final PointerTracker tracker = sTrackers[i];
             tracker.setKeyDetectorInner(keyDetector);
         }
         sGestureEnabler.setPasswordMode(keyboard.mId.passwordInput());
     }
 
     public static void setReleasedKeyGraphicsToAllKeys() {
-        final int trackersSize = sTrackers.size();
+        final int trackersSize = sTrackersSize;
         for (int i = 0; i < trackersSize; ++i) {
-            final PointerTracker tracker = sTrackers.get(i);
+            final PointerTracker tracker = sTrackers[i];
             tracker.setReleasedKeyGraphics(tracker.getKey(), true /* withAnimation */);
         }
     }
 
     public static void dismissAllMoreKeysPanels() {
-        final int trackersSize = sTrackers.size();
+        final int trackersSize = sTrackersSize;
         for (int i = 0; i < trackersSize; ++i) {
-            final PointerTracker tracker = sTrackers.get(i);
+            final PointerTracker tracker = sTrackers[i];
             tracker.dismissMoreKeysPanel();
         }
     }
@@ -373,6 +373,11 @@ public final class PointerTracker implements PointerTrackerQueue.Element,
         return mCurrentKey;
     }
 
+    @Override
+    public int getPointerId() {
+        return mPointerId;
+    }
+
     @Override
     public boolean isModifier() {
         return mCurrentKey != null && mCurrentKey.isModifier();
@@ -19,6 +19,7 @@ package com.android.inputmethod.keyboard;
 import android.graphics.Rect;
 import android.util.Log;
 
+import com.android.inputmethod.annotations.UsedForTesting;
 import com.android.inputmethod.keyboard.internal.TouchPositionCorrection;
 import com.android.inputmethod.latin.common.Constants;
 import com.android.inputmethod.latin.utils.JniUtils;
@@ -26,7 +27,15 @@ import com.android.inputmethod.latin.utils.JniUtils;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
 
@@ -41,6 +50,17 @@ public class ProximityInfo {
     @Nonnull
     private static final List<Key> EMPTY_KEY_LIST = Collections.emptyList();
     private static final float DEFAULT_TOUCH_POSITION_CORRECTION_RADIUS = 0.15f;
+    /**
+     * Minimum number of (grid cell, key) pairs before the nearest neighbor computation is split
+     * over several threads. With the default 32x16 grid, this is 48 keys: phone layouts, with up
+     * to about 45 keys, are computed serially, and tablet layouts in parallel.
+     */
+    private static final int MIN_CELL_KEY_PAIRS_FOR_PARALLEL_GRID_BUILD = 32 * 16 * 48;
+    /** Minimum number of grid rows each thread of the nearest neighbor computation works on. */
+    private static final int MIN_GRID_ROWS_PER_BAND = 4;
+    private static final long GRID_BUILD_THREAD_KEEP_ALIVE_SECONDS = 1;
+
+    private static boolean sParallelGridBuildEnabled = true;
 
     private final int mGridWidth;
     private final int mGridHeight;
@@ -77,11 +97,18 @@ public class ProximityInfo {
             // No proximity required. Keyboard might be more keys keyboard.
             return;
         }
-        computeNearestNeighbors();
-        mNativeProximityInfo = createNativeProximityInfo(touchPositionCorrection);
+        final int[] proximityCharsArray = new int[mGridSize * MAX_PROXIMITY_CHARS_SIZE];
+        computeNearestNeighbors(proximityCharsArray);
+        mNativeProximityInfo = createNativeProximityInfo(proximityCharsArray,
+                touchPositionCorrection);
     }
 
     private long mNativeProximityInfo;
+    private NativeProximityInfoKey mNativeProximityInfoKey;
+    // Native proximity infos are shared between keyboards with the same geometry, such as a
+    // keyboard that is rebuilt after a configuration change.
+    private static final HashMap<NativeProximityInfoKey, SharedNativeProximityInfo>
+            sSharedNativeProximityInfos = new HashMap<>();
     static {
         JniUtils.loadNativeLibrary();
     }
@@ -110,25 +137,8 @@ public class ProximityInfo {
         return count;
     }
 
-    private long createNativeProximityInfo(
+    private long createNativeProximityInfo(@Nonnull final int[] proximityCharsArray,
             @Nonnull final TouchPositionCorrection touchPositionCorrection) {
-        final List<Key>[] gridNeighborKeys = mGridNeighbors;
-        final int[] proximityCharsArray = new int[mGridSize * MAX_PROXIMITY_CHARS_SIZE];
-        Arrays.fill(proximityCharsArray, Constants.NOT_A_CODE);
-        for (int i = 0; i < mGridSize; ++i) {
-            final List<Key> neighborKeys = gridNeighborKeys[i];
-            final int proximityCharsLength = neighborKeys.size();
-            int infoIndex = i * MAX_PROXIMITY_CHARS_SIZE;
-            for (int j = 0; j < proximityCharsLength; ++j) {
-                final Key neighborKey = neighborKeys.get(j);
-                // Excluding from proximityCharsArray
-                if (!needsProximityInfo(neighborKey)) {
-                    continue;
-                }
-                proximityCharsArray[infoIndex] = neighborKey.getCode();
-                infoIndex++;
-            }
-        }
         if (DEBUG) {
             final StringBuilder sb = new StringBuilder();
             for (int i = 0; i < mGridSize; i++) {
@@ -218,33 +228,269 @@ public class ProximityInfo {
             }
         }
 
-        // TODO: Stop passing proximityCharsArray
-        return setProximityInfoNative(mKeyboardMinWidth, mKeyboardHeight, mGridWidth, mGridHeight,
-                mMostCommonKeyWidth, mMostCommonKeyHeight, proximityCharsArray, keyCount,
+        final NativeProximityInfoKey nativeKey = new NativeProximityInfoKey(new int[] {
+                mKeyboardMinWidth, mKeyboardHeight, mGridWidth, mGridHeight,
+                mMostCommonKeyWidth, mMostCommonKeyHeight, keyCount }, proximityCharsArray,
                 keyXCoordinates, keyYCoordinates, keyWidths, keyHeights, keyCharCodes,
                 sweetSpotCenterXs, sweetSpotCenterYs, sweetSpotRadii);
+        synchronized (sSharedNativeProximityInfos) {
+            final SharedNativeProximityInfo sharedInfo = sSharedNativeProximityInfos.get(nativeKey);
+            if (sharedInfo != null) {
+                sharedInfo.mRefCount++;
+                // Keep the key already in the map, and let the one just built go, as keys hold
+                // copies of the keyboard arrays.
+                mNativeProximityInfoKey = sharedInfo.mKey;
+                if (DEBUG) {
+                    Log.d(TAG, "Reusing native proximity info: refCount=" + sharedInfo.mRefCount);
+                }
+                return sharedInfo.mNativeProximityInfo;
+            }
+            // TODO: Stop passing proximityCharsArray
+            final long nativeProximityInfo = setProximityInfoNative(mKeyboardMinWidth,
+                    mKeyboardHeight, mGridWidth, mGridHeight, mMostCommonKeyWidth,
+                    mMostCommonKeyHeight, proximityCharsArray, keyCount, keyXCoordinates,
+                    keyYCoordinates, keyWidths, keyHeights, keyCharCodes, sweetSpotCenterXs,
+                    sweetSpotCenterYs, sweetSpotRadii);
+            if (nativeProximityInfo != 0) {
+                sSharedNativeProximityInfos.put(nativeKey,
+                        new SharedNativeProximityInfo(nativeKey, nativeProximityInfo));
+                mNativeProximityInfoKey = nativeKey;
+            }
+            if (DEBUG) {
+                Log.d(TAG, "Created native proximity info: shared infos="
+                        + sSharedNativeProximityInfos.size());
+            }
+            return nativeProximityInfo;
+        }
     }
 
     public long getNativeProximityInfo() {
         return mNativeProximityInfo;
     }
 
+    @UsedForTesting
+    static int getSharedNativeProximityInfoCountForTesting() {
+        synchronized (sSharedNativeProximityInfos) {
+            return sSharedNativeProximityInfos.size();
+        }
+    }
+
     @Override
     protected void finalize() throws Throwable {
         try {
             if (mNativeProximityInfo != 0) {
-                releaseProximityInfoNative(mNativeProximityInfo);
+                releaseSharedNativeProximityInfo(mNativeProximityInfoKey);
                 mNativeProximityInfo = 0;
+                mNativeProximityInfoKey = null;
             }
         } finally {
             super.finalize();
         }
     }
 
-    private void computeNearestNeighbors() {
+    private static void releaseSharedNativeProximityInfo(
+            @Nonnull final NativeProximityInfoKey nativeKey) {
+        synchronized (sSharedNativeProximityInfos) {
+            final SharedNativeProximityInfo sharedInfo = sSharedNativeProximityInfos.get(nativeKey);
+            if (sharedInfo == null) {
+                Log.e(TAG, "Releasing a native proximity info that is not shared");
+                return;
+            }
+            sharedInfo.mRefCount--;
+            if (sharedInfo.mRefCount > 0) {
+                return;
+            }
+            sSharedNativeProximityInfos.remove(nativeKey);
+            releaseProximityInfoNative(sharedInfo.mNativeProximityInfo);
+        }
+    }
+
+    /**
+     * A native proximity info that is shared by all the {@link ProximityInfo}s with the same
+     * content, and that is released when the last of them goes away.
+     */
+    private static final class SharedNativeProximityInfo {
+        @Nonnull
+        public final NativeProximityInfoKey mKey;
+        public final long mNativeProximityInfo;
+        public int mRefCount;
+
+        public SharedNativeProximityInfo(@Nonnull final NativeProximityInfoKey key,
+                final long nativeProximityInfo) {
+            mKey = key;
+            mNativeProximityInfo = nativeProximityInfo;
+            mRefCount = 1;
+        }
+    }
+
+    /**
+     * The content of a native proximity info: the keyboard and grid dimensions, the key codes
+     * and rectangles, and the touch position correction. Two keyboards with the same content can
+     * share the same native proximity info.
+     */
+    private static final class NativeProximityInfoKey {
+        private final int[] mDimensions;
+        private final int[] mProximityChars;
+        private final int[] mKeyXCoordinates;
+        private final int[] mKeyYCoordinates;
+        private final int[] mKeyWidths;
+        private final int[] mKeyHeights;
+        private final int[] mKeyCharCodes;
+        private final float[] mSweetSpotCenterXs;
+        private final float[] mSweetSpotCenterYs;
+        private final float[] mSweetSpotRadii;
+        private final int mHashCode;
+
+        public NativeProximityInfoKey(final int[] dimensions, final int[] proximityChars,
+                final int[] keyXCoordinates, final int[] keyYCoordinates, final int[] keyWidths,
+                final int[] keyHeights, final int[] keyCharCodes, final float[] sweetSpotCenterXs,
+                final float[] sweetSpotCenterYs, final float[] sweetSpotRadii) {
+            mDimensions = dimensions;
+            mProximityChars = proximityChars;
+            mKeyXCoordinates = keyXCoordinates;
+            mKeyYCoordinates = keyYCoordinates;
+            mKeyWidths = keyWidths;
+            mKeyHeights = keyHeights;
+            mKeyCharCodes = keyCharCodes;
+            mSweetSpotCenterXs = sweetSpotCenterXs;
+            mSweetSpotCenterYs = sweetSpotCenterYs;
+            mSweetSpotRadii = sweetSpotRadii;
+            mHashCode = Arrays.hashCode(new int[] {
+                    Arrays.hashCode(dimensions),
+                    Arrays.hashCode(proximityChars),
+                    Arrays.hashCode(keyXCoordinates),
+                    Arrays.hashCode(keyYCoordinates),
+                    Arrays.hashCode(keyWidths),
+                    Arrays.hashCode(keyHeights),
+                    Arrays.hashCode(keyCharCodes),
+                    Arrays.hashCode(sweetSpotCenterXs),
+                    Arrays.hashCode(sweetSpotCenterYs),
+                    Arrays.hashCode(sweetSpotRadii)
+            });
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof NativeProximityInfoKey)) return false;
+            final NativeProximityInfoKey key = (NativeProximityInfoKey)o;
+            return mHashCode == key.mHashCode
+                    && Arrays.equals(mDimensions, key.mDimensions)
+                    && Arrays.equals(mKeyCharCodes, key.mKeyCharCodes)
+                    && Arrays.equals(mKeyXCoordinates, key.mKeyXCoordinates)
+                    && Arrays.equals(mKeyYCoordinates, key.mKeyYCoordinates)
+                    && Arrays.equals(mKeyWidths, key.mKeyWidths)
+                    && Arrays.equals(mKeyHeights, key.mKeyHeights)
+                    && Arrays.equals(mSweetSpotCenterXs, key.mSweetSpotCenterXs)
+                    && Arrays.equals(mSweetSpotCenterYs, key.mSweetSpotCenterYs)
+                    && Arrays.equals(mSweetSpotRadii, key.mSweetSpotRadii)
+                    && Arrays.equals(mProximityChars, key.mProximityChars);
+        }
+    }
+
+    @UsedForTesting
+    static void setParallelGridBuildEnabledForTesting(final boolean enabled) {
+        sParallelGridBuildEnabled = enabled;
+    }
+
+    private static final class GridBuildExecutorHolder {
+        static final ExecutorService EXECUTOR = newGridBuildExecutor();
+
+        private static ExecutorService newGridBuildExecutor() {
+            final int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount,
+                    GRID_BUILD_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable runnable) {
+                            final Thread thread = new Thread(runnable, TAG);
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    private int getGridRowBandCount(final int keyCount) {
+        if (!sParallelGridBuildEnabled
+                || mGridSize * keyCount < MIN_CELL_KEY_PAIRS_FOR_PARALLEL_GRID_BUILD) {
+            return 1;
+        }
+        final int processors = Runtime.getRuntime().availableProcessors();
+        return Math.max(1, Math.min(processors, mGridHeight / MIN_GRID_ROWS_PER_BAND));
+    }
+
+    /**
+     * Computes the neighbor keys of each grid cell, and at the same time fills in the
+     * proximity chars array that is passed to the native code.
+     *
+     * The grid is split in bands of rows that are independent from each other. For large
+     * layouts, these bands are computed in parallel, the calling thread taking care of the
+     * first one.
+     */
+    private void computeNearestNeighbors(@Nonnull final int[] proximityCharsArray) {
+        Arrays.fill(proximityCharsArray, Constants.NOT_A_CODE);
+        final Key[] keys = mSortedKeys.toArray(new Key[mSortedKeys.size()]);
+        final int bandCount = getGridRowBandCount(keys.length);
+        if (bandCount <= 1) {
+            computeNearestNeighborsInRows(keys, 0 /* firstRow */, mGridHeight /* endRow */,
+                    proximityCharsArray);
+            return;
+        }
+        final int rowsPerBand = (mGridHeight + bandCount - 1) / bandCount;
+        final ArrayList<Future<?>> futures = new ArrayList<>(bandCount - 1);
+        for (int firstRow = rowsPerBand; firstRow < mGridHeight; firstRow += rowsPerBand) {
+            final int bandFirstRow = firstRow;
+            final int bandEndRow = Math.min(mGridHeight, firstRow + rowsPerBand);
+            futures.add(GridBuildExecutorHolder.EXECUTOR.submit(new Runnable() {
+                @Override
+                public void run() {
+                    computeNearestNeighborsInRows(keys, bandFirstRow, bandEndRow,
+                            proximityCharsArray);
+                }
+            }));
+        }
+        computeNearestNeighborsInRows(keys, 0 /* firstRow */, rowsPerBand /* endRow */,
+                proximityCharsArray);
+        waitForGridRowBands(futures);
+    }
+
+    private static void waitForGridRowBands(@Nonnull final List<Future<?>> futures) {
+        boolean interrupted = false;
+        try {
+            for (final Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get();
+                        break;
+                    } catch (final InterruptedException e) {
+                        // The bands must be complete before the grid can be used.
+                        interrupted = true;
+                    }
+                }
+            }
+        } catch (final ExecutionException e) {
+            throw new RuntimeException("Failed to compute nearest neighbors", e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void computeNearestNeighborsInRows(@Nonnull final Key[] keys, final int firstRow,
+            final int endRow, @Nonnull final int[] proximityCharsArray) {
         final int defaultWidth = mMostCommonKeyWidth;
-        final int keyCount = mSortedKeys.size();
-        final int gridSize = mGridNeighbors.length;
+        final int keyCount = keys.length;
+        final int firstCell = firstRow * mGridWidth;
+        final int bandCellCount = (endRow - firstRow) * mGridWidth;
         final int threshold = (int) (defaultWidth * SEARCH_DISTANCE);
         final int thresholdSquared = threshold * threshold;
         // Round-up so we don't have any pixels outside the grid
@@ -252,17 +498,18 @@ public class ProximityInfo {
         final int lastPixelYCoordinate = mGridHeight * mCellHeight - 1;
 
         // For large layouts, 'neighborsFlatBuffer' is about 80k of memory: gridSize is usually 512,
-        // keycount is about 40 and a pointer to a Key is 4 bytes. This contains, for each cell,
-        // enough space for as many keys as there are on the keyboard. Hence, every
+        // keycount is about 40 and a key index is 4 bytes. This contains, for each cell of this
+        // band, enough space for as many keys as there are on the keyboard. Hence, every
         // keycount'th element is the start of a new cell, and each of these virtual subarrays
         // start empty with keycount spaces available. This fills up gradually in the loop below.
         // Since in the practice each cell does not have a lot of neighbors, most of this space is
         // actually just empty padding in this fixed-size buffer.
-        final Key[] neighborsFlatBuffer = new Key[gridSize * keyCount];
-        final int[] neighborCountPerCell = new int[gridSize];
+        final int[] neighborsFlatBuffer = new int[bandCellCount * keyCount];
+        final int[] neighborCountPerCell = new int[bandCellCount];
         final int halfCellWidth = mCellWidth / 2;
         final int halfCellHeight = mCellHeight / 2;
-        for (final Key key : mSortedKeys) {
+        for (int keyIndex = 0; keyIndex < keyCount; keyIndex++) {
+            final Key key = keys[keyIndex];
             if (key.isSpacer()) continue;
 
 /* HOW WE PRE-SELECT THE CELLS (iterate over only the relevant cells, instead of all of them)
@@ -341,12 +588,20 @@ y |---+---+---+---+-v-+-|-+---+---+---+---+---|          | thresholdBase and get
                     xMiddleOfLeftCell + (xDeltaToGrid <= halfCellWidth ? 0 : mCellWidth));
             final int xEnd = Math.min(lastPixelXCoordinate, keyX + key.getWidth() + threshold);
 
-            int baseIndexOfCurrentRow = (yStart / mCellHeight) * mGridWidth + (xStart / mCellWidth);
-            for (int centerY = yStart; centerY <= yEnd; centerY += mCellHeight) {
+            // Only the rows of this band are computed here; skip the ones above it.
+            int row = yStart / mCellHeight;
+            int centerY = yStart;
+            if (row < firstRow) {
+                centerY += (firstRow - row) * mCellHeight;
+                row = firstRow;
+            }
+            int baseIndexOfCurrentRow = (row - firstRow) * mGridWidth + (xStart / mCellWidth);
+            for (; centerY <= yEnd && row < endRow; centerY += mCellHeight, ++row) {
                 int index = baseIndexOfCurrentRow;
                 for (int centerX = xStart; centerX <= xEnd; centerX += mCellWidth) {
                     if (key.squaredDistanceToEdge(centerX, centerY) < thresholdSquared) {
-                        neighborsFlatBuffer[index * keyCount + neighborCountPerCell[index]] = key;
+                        neighborsFlatBuffer[index * keyCount + neighborCountPerCell[index]] =
+                                keyIndex;
                         ++neighborCountPerCell[index];
                     }
                     ++index;
@@ -355,14 +610,22 @@ y |---+---+---+---+-v-+-|-+---+---+---+---+---|          | thresholdBase and get
             }
         }
 
-        for (int i = 0; i < gridSize; ++i) {
+        for (int i = 0; i < bandCellCount; ++i) {
             final int indexStart = i * keyCount;
             final int indexEnd = indexStart + neighborCountPerCell[i];
             final ArrayList<Key> neighbors = new ArrayList<>(indexEnd - indexStart);
+            int infoIndex = (firstCell + i) * MAX_PROXIMITY_CHARS_SIZE;
+            final int infoEnd = infoIndex + MAX_PROXIMITY_CHARS_SIZE;
             for (int index = indexStart; index < indexEnd; index++) {
-                neighbors.add(neighborsFlatBuffer[index]);
+                final Key neighborKey = keys[neighborsFlatBuffer[index]];
+                neighbors.add(neighborKey);
+                // Excluding from proximityCharsArray
+                if (infoIndex < infoEnd && needsProximityInfo(neighborKey)) {
+                    proximityCharsArray[infoIndex] = neighborKey.getCode();
+                    infoIndex++;
+                }
             }
-            mGridNeighbors[i] = Collections.unmodifiableList(neighbors);
+            mGridNeighbors[firstCell + i] = Collections.unmodifiableList(neighbors);
         }
     }
 
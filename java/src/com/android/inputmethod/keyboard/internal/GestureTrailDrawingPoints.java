@@ -26,6 +26,8 @@ import android.os.SystemClock;
 import com.android.inputmethod.latin.common.Constants;
 import com.android.inputmethod.latin.common.ResizableIntArray;
 
+import java.util.Arrays;
+
 /**
  * This class holds drawing points to represent a gesture trail. The gesture trail may contain
  * multiple non-contiguous gesture strokes and will be animated asynchronously from gesture input.
@@ -52,6 +54,13 @@ final class GestureTrailDrawingPoints {
     private long mCurrentTimeBase;
     private int mTrailStartIndex;
     private int mLastInterpolatedDrawIndex;
+    // The angles of the rounded line that ends at each point of the trail. They don't change as
+    // the trail fades out, so they are computed once per segment instead of once per frame.
+    // See {@link RoundedLine#computeGeometry(float,float,float,float,float,float,float[],int)}.
+    private float[] mSegmentGeometries = new float[DEFAULT_CAPACITY * RoundedLine.GEOMETRY_SIZE];
+    // The segment geometries are valid for the points before this index.
+    private int mSegmentGeometriesEndIndex;
+    private GestureTrailDrawingParams mSegmentGeometriesParams;
 
     // Use this value as imaginary zero because x-coordinates may be zero.
     private static final int DOWN_EVENT_MARKER = -128;
@@ -95,6 +104,9 @@ final class GestureTrailDrawingPoints {
                 ? mLastInterpolatedDrawIndex : trailSize;
         mLastInterpolatedDrawIndex = stroke.interpolateStrokeAndReturnStartIndexOfLastSegment(
                 lastInterpolatedIndex, mEventTimes, mXCoordinates, mYCoordinates, mPointTypes);
+        // The points after the last interpolated index may have been rewritten.
+        mSegmentGeometriesEndIndex = Math.min(mSegmentGeometriesEndIndex,
+                Math.min(lastInterpolatedIndex, trailSize));
         if (strokeId != mCurrentStrokeId) {
             final int elapsedTime = (int)(downTime - mCurrentTimeBase);
             for (int i = mTrailStartIndex; i < trailSize; i++) {
@@ -146,6 +158,39 @@ final class GestureTrailDrawingPoints {
     private final RoundedLine mRoundedLine = new RoundedLine();
     private final Rect mRoundedLineBounds = new Rect();
 
+    /**
+     * Compute the segment geometries of the points that don't have one yet.
+     * The geometry of a segment only depends on the difference of the radii at its end points,
+     * which is the same for every frame because the width of the trail decreases linearly with
+     * the elapsed time.
+     */
+    private void updateSegmentGeometries(final int startIndex, final int endIndex,
+            final int sinceDown, final GestureTrailDrawingParams params) {
+        if (params != mSegmentGeometriesParams) {
+            mSegmentGeometriesParams = params;
+            mSegmentGeometriesEndIndex = 0;
+        }
+        final int geometrySize = RoundedLine.GEOMETRY_SIZE;
+        if (mSegmentGeometries.length < endIndex * geometrySize) {
+            mSegmentGeometries = Arrays.copyOf(mSegmentGeometries,
+                    Math.max(endIndex, mSegmentGeometries.length / geometrySize * 2)
+                            * geometrySize);
+        }
+        final int[] eventTimes = mEventTimes.getPrimitiveArray();
+        final int[] xCoords = mXCoordinates.getPrimitiveArray();
+        final int[] yCoords = mYCoordinates.getPrimitiveArray();
+        for (int i = Math.max(startIndex + 1, mSegmentGeometriesEndIndex); i < endIndex; i++) {
+            final float body1 = getWidth(sinceDown - eventTimes[i - 1], params) / 2.0f
+                    * params.mTrailBodyRatio;
+            final float body2 = getWidth(sinceDown - eventTimes[i], params) / 2.0f
+                    * params.mTrailBodyRatio;
+            RoundedLine.computeGeometry(getXCoordValue(xCoords[i - 1]), yCoords[i - 1], body1,
+                    getXCoordValue(xCoords[i]), yCoords[i], body2, mSegmentGeometries,
+                    i * geometrySize);
+        }
+        mSegmentGeometriesEndIndex = endIndex;
+    }
+
     /**
      * Draw gesture trail
      * @param canvas The canvas to draw the gesture trail
@@ -186,6 +231,8 @@ final class GestureTrailDrawingPoints {
         mTrailStartIndex = startIndex;
 
         if (startIndex < trailSize) {
+            updateSegmentGeometries(startIndex, trailSize, sinceDown, params);
+            final float[] segmentGeometries = mSegmentGeometries;
             paint.setColor(params.mTrailColor);
             paint.setStyle(Paint.Style.FILL);
             final RoundedLine roundedLine = mRoundedLine;
@@ -202,7 +249,8 @@ final class GestureTrailDrawingPoints {
                 if (!isDownEventXCoord(xCoords[i])) {
                     final float body1 = r1 * params.mTrailBodyRatio;
                     final float body2 = r2 * params.mTrailBodyRatio;
-                    final Path path = roundedLine.makePath(p1x, p1y, body1, p2x, p2y, body2);
+                    final Path path = roundedLine.makePath(p1x, p1y, body1, p2x, p2y, body2,
+                            segmentGeometries, i * RoundedLine.GEOMETRY_SIZE);
                     if (!path.isEmpty()) {
                         roundedLine.getBounds(mRoundedLineBounds);
                         if (params.mTrailShadowEnabled) {
@@ -237,6 +285,9 @@ final class GestureTrailDrawingPoints {
                 if (DEBUG_SHOW_POINTS) {
                     System.arraycopy(pointTypes, startIndex, pointTypes, 0, newSize);
                 }
+                final int geometrySize = RoundedLine.GEOMETRY_SIZE;
+                System.arraycopy(mSegmentGeometries, startIndex * geometrySize,
+                        mSegmentGeometries, 0, newSize * geometrySize);
             }
             mEventTimes.setLength(newSize);
             mXCoordinates.setLength(newSize);
@@ -248,6 +299,7 @@ final class GestureTrailDrawingPoints {
             // {@link mLastInterpolatedDrawIndex} should also be updated because all array
             // elements have just been shifted for compaction or been zeroed.
             mLastInterpolatedDrawIndex = Math.max(mLastInterpolatedDrawIndex - startIndex, 0);
+            mSegmentGeometriesEndIndex = Math.max(mSegmentGeometriesEndIndex - startIndex, 0);
         }
         return newSize > 0;
     }
@@ -81,6 +81,66 @@ public final class KeyDrawParams {
         mAnimAlpha = copyFrom.mAnimAlpha;
     }
 
+    @Nonnull
+    public KeyDrawParams copy() {
+        return new KeyDrawParams(this);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (!(o instanceof KeyDrawParams)) return false;
+        final KeyDrawParams params = (KeyDrawParams)o;
+        return mTypeface.equals(params.mTypeface)
+                && mLetterSize == params.mLetterSize
+                && mLabelSize == params.mLabelSize
+                && mLargeLetterSize == params.mLargeLetterSize
+                && mHintLetterSize == params.mHintLetterSize
+                && mShiftedLetterHintSize == params.mShiftedLetterHintSize
+                && mHintLabelSize == params.mHintLabelSize
+                && mPreviewTextSize == params.mPreviewTextSize
+                && mTextColor == params.mTextColor
+                && mTextInactivatedColor == params.mTextInactivatedColor
+                && mTextShadowColor == params.mTextShadowColor
+                && mFunctionalTextColor == params.mFunctionalTextColor
+                && mHintLetterColor == params.mHintLetterColor
+                && mHintLabelColor == params.mHintLabelColor
+                && mShiftedLetterHintInactivatedColor == params.mShiftedLetterHintInactivatedColor
+                && mShiftedLetterHintActivatedColor == params.mShiftedLetterHintActivatedColor
+                && mPreviewTextColor == params.mPreviewTextColor
+                && mHintLabelVerticalAdjustment == params.mHintLabelVerticalAdjustment
+                && mLabelOffCenterRatio == params.mLabelOffCenterRatio
+                && mHintLabelOffCenterRatio == params.mHintLabelOffCenterRatio
+                && mAnimAlpha == params.mAnimAlpha;
+    }
+
+    @Override
+    public int hashCode() {
+        // Computed without boxing, as this is used when looking up key visuals while drawing.
+        int result = mTypeface.hashCode();
+        result = 31 * result + mLetterSize;
+        result = 31 * result + mLabelSize;
+        result = 31 * result + mLargeLetterSize;
+        result = 31 * result + mHintLetterSize;
+        result = 31 * result + mShiftedLetterHintSize;
+        result = 31 * result + mHintLabelSize;
+        result = 31 * result + mPreviewTextSize;
+        result = 31 * result + mTextColor;
+        result = 31 * result + mTextInactivatedColor;
+        result = 31 * result + mTextShadowColor;
+        result = 31 * result + mFunctionalTextColor;
+        result = 31 * result + mHintLetterColor;
+        result = 31 * result + mHintLabelColor;
+        result = 31 * result + mShiftedLetterHintInactivatedColor;
+        result = 31 * result + mShiftedLetterHintActivatedColor;
+        result = 31 * result + mPreviewTextColor;
+        result = 31 * result + Float.floatToIntBits(mHintLabelVerticalAdjustment);
+        result = 31 * result + Float.floatToIntBits(mLabelOffCenterRatio);
+        result = 31 * result + Float.floatToIntBits(mHintLabelOffCenterRatio);
+        result = 31 * result + mAnimAlpha;
+        return result;
+    }
+
     public void updateParams(final int keyHeight, @Nullable final KeyVisualAttributes attr) {
         if (attr == null) {
             return;
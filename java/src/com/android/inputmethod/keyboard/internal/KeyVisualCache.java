@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard.internal;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import com.android.inputmethod.keyboard.Key;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A cache of rendered key visuals, so that redrawing a key whose visual has not changed is a
+ * bitmap blit instead of laying out its label, hint label and icon again.
+ *
+ * A key visual is identified by the key content (see {@link Key#equals(Object)}), its draw
+ * width, its pressed and enabled states and the {@link KeyDrawParams} it is drawn with.
+ * This class is not thread safe and is meant to be used from the UI thread.
+ */
+public final class KeyVisualCache {
+    private static final int MAX_CACHE_SIZE_IN_BYTES = 16 * 1024 * 1024;
+    // The cache can take at most this fraction of the maximum heap size.
+    private static final int HEAP_SIZE_DIVIDER = 16;
+
+    private static final class VisualKey {
+        Key mKey;
+        int mDrawWidth;
+        boolean mPressed;
+        boolean mEnabled;
+        KeyDrawParams mParams;
+        int mHashCode;
+
+        void set(@Nonnull final Key key, @Nonnull final KeyDrawParams params) {
+            mKey = key;
+            mDrawWidth = key.getDrawWidth();
+            mPressed = key.isPressed();
+            mEnabled = key.isEnabled();
+            mParams = params;
+            int result = key.hashCode();
+            result = 31 * result + mDrawWidth;
+            result = 31 * result + (mPressed ? 1 : 0);
+            result = 31 * result + (mEnabled ? 1 : 0);
+            result = 31 * result + params.hashCode();
+            mHashCode = result;
+        }
+
+        @Nonnull
+        VisualKey freeze() {
+            final VisualKey frozen = new VisualKey();
+            frozen.mKey = mKey;
+            frozen.mDrawWidth = mDrawWidth;
+            frozen.mPressed = mPressed;
+            frozen.mEnabled = mEnabled;
+            // {@link KeyDrawParams} is mutable, keep a snapshot of it.
+            frozen.mParams = mParams.copy();
+            frozen.mHashCode = mHashCode;
+            return frozen;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof VisualKey)) return false;
+            final VisualKey visualKey = (VisualKey)o;
+            return mHashCode == visualKey.mHashCode
+                    && mDrawWidth == visualKey.mDrawWidth
+                    && mPressed == visualKey.mPressed
+                    && mEnabled == visualKey.mEnabled
+                    && mKey.equals(visualKey.mKey)
+                    && mParams.equals(visualKey.mParams);
+        }
+    }
+
+    @Nonnull
+    private final LruCache<VisualKey, Bitmap> mVisuals;
+    // Reused to look up visuals without allocating.
+    @Nonnull
+    private final VisualKey mProbe = new VisualKey();
+    private int mHitCount;
+    private int mMissCount;
+
+    public KeyVisualCache() {
+        this((int)Math.min(MAX_CACHE_SIZE_IN_BYTES,
+                Runtime.getRuntime().maxMemory() / HEAP_SIZE_DIVIDER));
+    }
+
+    public KeyVisualCache(final int maxSizeInBytes) {
+        mVisuals = new LruCache<VisualKey, Bitmap>(maxSizeInBytes) {
+            @Override
+            protected int sizeOf(final VisualKey visualKey, final Bitmap visual) {
+                return visual.getRowBytes() * visual.getHeight();
+            }
+
+            @Override
+            protected void entryRemoved(final boolean evicted, final VisualKey visualKey,
+                    final Bitmap oldVisual, final Bitmap newVisual) {
+                if (oldVisual != newVisual) {
+                    oldVisual.recycle();
+                }
+            }
+        };
+    }
+
+    @Nullable
+    public Bitmap get(@Nonnull final Key key, @Nonnull final KeyDrawParams params) {
+        mProbe.set(key, params);
+        final Bitmap visual = mVisuals.get(mProbe);
+        mProbe.mKey = null;
+        mProbe.mParams = null;
+        if (visual == null) {
+            mMissCount++;
+        } else {
+            mHitCount++;
+        }
+        return visual;
+    }
+
+    public void put(@Nonnull final Key key, @Nonnull final KeyDrawParams params,
+            @Nonnull final Bitmap visual) {
+        mProbe.set(key, params);
+        mVisuals.put(mProbe.freeze(), visual);
+        mProbe.mKey = null;
+        mProbe.mParams = null;
+    }
+
+    public void clear() {
+        mVisuals.evictAll();
+    }
+
+    public int getHitCount() {
+        return mHitCount;
+    }
+
+    public int getMissCount() {
+        return mMissCount;
+    }
+
+    public float getHitRatio() {
+        final int lookupCount = mHitCount + mMissCount;
+        return (lookupCount == 0) ? 0.0f : (float)mHitCount / lookupCount;
+    }
+
+    public int getSizeInBytes() {
+        return mVisuals.size();
+    }
+}
@@ -18,122 +18,148 @@ package com.android.inputmethod.keyboard.internal;
 
 import android.util.Log;
 
-import java.util.ArrayList;
-
+/**
+ * The queue of active pointers, ordered from the oldest to the newest.
+ *
+ * Elements are stored in a fixed-capacity array indexed by pointer id and ordered by the sequence
+ * number assigned when they are added, so that no operation allocates or shifts elements around.
+ * This class is not thread safe. It is meant to be used from the UI thread, where both touch
+ * events and key timer messages are dispatched.
+ */
 public final class PointerTrackerQueue {
     private static final String TAG = PointerTrackerQueue.class.getSimpleName();
     private static final boolean DEBUG = false;
 
+    // {@link android.view.MotionEvent} pointer ids are in the range of [0, 32).
+    public static final int MAX_POINTER_ID_COUNT = 32;
+
+    private static final int NOT_A_POINTER_ID = -1;
+
     public interface Element {
+        public int getPointerId();
         public boolean isModifier();
         public boolean isInDraggingFinger();
         public void onPhantomUpEvent(long eventTime);
         public void cancelTrackingForAction();
     }
 
-    private static final int INITIAL_CAPACITY = 10;
-    // Note: {@link #mExpandableArrayOfActivePointers} and {@link #mArraySize} are synchronized by
-    // {@link #mExpandableArrayOfActivePointers}
-    private final ArrayList<Element> mExpandableArrayOfActivePointers =
-            new ArrayList<>(INITIAL_CAPACITY);
-    private int mArraySize = 0;
+    private final Element[] mElements = new Element[MAX_POINTER_ID_COUNT];
+    private final long[] mSequenceNumbers = new long[MAX_POINTER_ID_COUNT];
+    // A bit is set for each pointer id that has an element in {@link #mElements}.
+    private int mActivePointerIds;
+    private long mNextSequenceNumber;
 
     public int size() {
-        synchronized (mExpandableArrayOfActivePointers) {
-            return mArraySize;
+        return Integer.bitCount(mActivePointerIds);
+    }
+
+    private static boolean isValidPointerId(final int pointerId) {
+        return pointerId >= 0 && pointerId < MAX_POINTER_ID_COUNT;
+    }
+
+    private boolean contains(final Element pointer) {
+        if (pointer == null) {
+            return false;
         }
+        final int pointerId = pointer.getPointerId();
+        return isValidPointerId(pointerId) && mElements[pointerId] == pointer;
     }
 
-    public void add(final Element pointer) {
-        synchronized (mExpandableArrayOfActivePointers) {
-            if (DEBUG) {
-                Log.d(TAG, "add: " + pointer + " " + this);
-            }
-            final ArrayList<Element> expandableArray = mExpandableArrayOfActivePointers;
-            final int arraySize = mArraySize;
-            if (arraySize < expandableArray.size()) {
-                expandableArray.set(arraySize, pointer);
-            } else {
-                expandableArray.add(pointer);
+    // Returns the sequence number of the pointer, or {@link Long#MAX_VALUE} if the pointer is not
+    // in this queue, so that every element in this queue is older than it.
+    private long getSequenceNumber(final Element pointer) {
+        return contains(pointer) ? mSequenceNumbers[pointer.getPointerId()] : Long.MAX_VALUE;
+    }
+
+    // Returns the pointer id of the oldest element added after the sequence number among the
+    // elements of <code>pointerIds</code>, or {@link #NOT_A_POINTER_ID} if there is none.
+    private int getNextPointerId(final int pointerIds, final long sequenceNumber) {
+        int nextPointerId = NOT_A_POINTER_ID;
+        long nextSequenceNumber = Long.MAX_VALUE;
+        int remainingIds = pointerIds;
+        while (remainingIds != 0) {
+            final int pointerId = Integer.numberOfTrailingZeros(remainingIds);
+            remainingIds &= remainingIds - 1;
+            final long elementSequenceNumber = mSequenceNumbers[pointerId];
+            if (elementSequenceNumber > sequenceNumber
+                    && elementSequenceNumber < nextSequenceNumber) {
+                nextPointerId = pointerId;
+                nextSequenceNumber = elementSequenceNumber;
             }
-            mArraySize = arraySize + 1;
         }
+        return nextPointerId;
+    }
+
+    private void removeAll(final int pointerIds) {
+        int remainingIds = pointerIds;
+        while (remainingIds != 0) {
+            final int pointerId = Integer.numberOfTrailingZeros(remainingIds);
+            remainingIds &= remainingIds - 1;
+            mElements[pointerId] = null;
+        }
+        mActivePointerIds &= ~pointerIds;
+    }
+
+    public void add(final Element pointer) {
+        if (DEBUG) {
+            Log.d(TAG, "add: " + pointer + " " + this);
+        }
+        final int pointerId = pointer.getPointerId();
+        if (!isValidPointerId(pointerId)) {
+            Log.w(TAG, "Invalid pointer id in add: " + pointer);
+            return;
+        }
+        final Element element = mElements[pointerId];
+        if (element == pointer) {
+            Log.w(TAG, "Found duplicated element in add: " + pointer);
+            return;
+        }
+        if (element != null) {
+            Log.w(TAG, "Found element with the same pointer id in add: " + pointer);
+        }
+        mElements[pointerId] = pointer;
+        mSequenceNumbers[pointerId] = mNextSequenceNumber++;
+        mActivePointerIds |= 1 << pointerId;
     }
 
     public void remove(final Element pointer) {
-        synchronized (mExpandableArrayOfActivePointers) {
-            if (DEBUG) {
-                Log.d(TAG, "remove: " + pointer + " " + this);
-            }
-            final ArrayList<Element> expandableArray = mExpandableArrayOfActivePointers;
-            final int arraySize = mArraySize;
-            int newIndex = 0;
-            for (int index = 0; index < arraySize; index++) {
-                final Element element = expandableArray.get(index);
-                if (element == pointer) {
-                    if (newIndex != index) {
-                        Log.w(TAG, "Found duplicated element in remove: " + pointer);
-                    }
-                    continue; // Remove this element from the expandableArray.
-                }
-                if (newIndex != index) {
-                    // Shift this element toward the beginning of the expandableArray.
-                    expandableArray.set(newIndex, element);
-                }
-                newIndex++;
-            }
-            mArraySize = newIndex;
+        if (DEBUG) {
+            Log.d(TAG, "remove: " + pointer + " " + this);
+        }
+        if (contains(pointer)) {
+            removeAll(1 << pointer.getPointerId());
         }
     }
 
     public Element getOldestElement() {
-        synchronized (mExpandableArrayOfActivePointers) {
-            return (mArraySize == 0) ? null : mExpandableArrayOfActivePointers.get(0);
-        }
+        final int pointerId = getNextPointerId(mActivePointerIds, -1);
+        return (pointerId == NOT_A_POINTER_ID) ? null : mElements[pointerId];
     }
 
     public void releaseAllPointersOlderThan(final Element pointer, final long eventTime) {
-        synchronized (mExpandableArrayOfActivePointers) {
-            if (DEBUG) {
-                Log.d(TAG, "releaseAllPointerOlderThan: " + pointer + " " + this);
-            }
-            final ArrayList<Element> expandableArray = mExpandableArrayOfActivePointers;
-            final int arraySize = mArraySize;
-            int newIndex, index;
-            for (newIndex = index = 0; index < arraySize; index++) {
-                final Element element = expandableArray.get(index);
-                if (element == pointer) {
-                    break; // Stop releasing elements.
-                }
-                if (!element.isModifier()) {
-                    element.onPhantomUpEvent(eventTime);
-                    continue; // Remove this element from the expandableArray.
-                }
-                if (newIndex != index) {
-                    // Shift this element toward the beginning of the expandableArray.
-                    expandableArray.set(newIndex, element);
-                }
-                newIndex++;
+        if (DEBUG) {
+            Log.d(TAG, "releaseAllPointerOlderThan: " + pointer + " " + this);
+        }
+        final long pointerSequenceNumber = getSequenceNumber(pointer);
+        final int activePointerIds = mActivePointerIds;
+        // Elements are removed only after all phantom up events have been sent, so that the
+        // elements see the same {@link #size()} while handling them.
+        int releasedIds = 0;
+        long sequenceNumber = -1;
+        int pointerId;
+        while ((pointerId = getNextPointerId(activePointerIds, sequenceNumber))
+                != NOT_A_POINTER_ID) {
+            sequenceNumber = mSequenceNumbers[pointerId];
+            if (sequenceNumber >= pointerSequenceNumber) {
+                break; // Stop releasing elements.
             }
-            // Shift rest of the expandableArray.
-            int count = 0;
-            for (; index < arraySize; index++) {
-                final Element element = expandableArray.get(index);
-                if (element == pointer) {
-                    count++;
-                    if (count > 1) {
-                        Log.w(TAG, "Found duplicated element in releaseAllPointersOlderThan: "
-                                + pointer);
-                    }
-                }
-                if (newIndex != index) {
-                    // Shift this element toward the beginning of the expandableArray.
-                    expandableArray.set(newIndex, expandableArray.get(index));
-                }
-                newIndex++;
+            final Element element = mElements[pointerId];
+            if (!element.isModifier()) {
+                element.onPhantomUpEvent(eventTime);
+                releasedIds |= 1 << pointerId;
             }
-            mArraySize = newIndex;
         }
+        removeAll(releasedIds);
     }
 
     public void releaseAllPointers(final long eventTime) {
@@ -141,98 +167,78 @@ public final class PointerTrackerQueue {
     }
 
     public void releaseAllPointersExcept(final Element pointer, final long eventTime) {
-        synchronized (mExpandableArrayOfActivePointers) {
-            if (DEBUG) {
-                if (pointer == null) {
-                    Log.d(TAG, "releaseAllPointers: " + this);
-                } else {
-                    Log.d(TAG, "releaseAllPointerExcept: " + pointer + " " + this);
-                }
-            }
-            final ArrayList<Element> expandableArray = mExpandableArrayOfActivePointers;
-            final int arraySize = mArraySize;
-            int newIndex = 0, count = 0;
-            for (int index = 0; index < arraySize; index++) {
-                final Element element = expandableArray.get(index);
-                if (element == pointer) {
-                    count++;
-                    if (count > 1) {
-                        Log.w(TAG, "Found duplicated element in releaseAllPointersExcept: "
-                                + pointer);
-                    }
-                } else {
-                    element.onPhantomUpEvent(eventTime);
-                    continue; // Remove this element from the expandableArray.
-                }
-                if (newIndex != index) {
-                    // Shift this element toward the beginning of the expandableArray.
-                    expandableArray.set(newIndex, element);
-                }
-                newIndex++;
+        if (DEBUG) {
+            if (pointer == null) {
+                Log.d(TAG, "releaseAllPointers: " + this);
+            } else {
+                Log.d(TAG, "releaseAllPointerExcept: " + pointer + " " + this);
             }
-            mArraySize = newIndex;
         }
+        int releasedIds = mActivePointerIds;
+        if (contains(pointer)) {
+            releasedIds &= ~(1 << pointer.getPointerId());
+        }
+        long sequenceNumber = -1;
+        int pointerId;
+        while ((pointerId = getNextPointerId(releasedIds, sequenceNumber)) != NOT_A_POINTER_ID) {
+            sequenceNumber = mSequenceNumbers[pointerId];
+            mElements[pointerId].onPhantomUpEvent(eventTime);
+        }
+        removeAll(releasedIds);
     }
 
     public boolean hasModifierKeyOlderThan(final Element pointer) {
-        synchronized (mExpandableArrayOfActivePointers) {
-            final ArrayList<Element> expandableArray = mExpandableArrayOfActivePointers;
-            final int arraySize = mArraySize;
-            for (int index = 0; index < arraySize; index++) {
-                final Element element = expandableArray.get(index);
-                if (element == pointer) {
-                    return false; // Stop searching modifier key.
-                }
-                if (element.isModifier()) {
-                    return true;
-                }
+        final long pointerSequenceNumber = getSequenceNumber(pointer);
+        int remainingIds = mActivePointerIds;
+        while (remainingIds != 0) {
+            final int pointerId = Integer.numberOfTrailingZeros(remainingIds);
+            remainingIds &= remainingIds - 1;
+            if (mSequenceNumbers[pointerId] < pointerSequenceNumber
+                    && mElements[pointerId].isModifier()) {
+                return true;
             }
-            return false;
         }
+        return false;
     }
 
     public boolean isAnyInDraggingFinger() {
-        synchronized (mExpandableArrayOfActivePointers) {
-            final ArrayList<Element> expandableArray = mExpandableArrayOfActivePointers;
-            final int arraySize = mArraySize;
-            for (int index = 0; index < arraySize; index++) {
-                final Element element = expandableArray.get(index);
-                if (element.isInDraggingFinger()) {
-                    return true;
-                }
+        int remainingIds = mActivePointerIds;
+        while (remainingIds != 0) {
+            final int pointerId = Integer.numberOfTrailingZeros(remainingIds);
+            remainingIds &= remainingIds - 1;
+            if (mElements[pointerId].isInDraggingFinger()) {
+                return true;
             }
-            return false;
         }
+        return false;
     }
 
     public void cancelAllPointerTrackers() {
-        synchronized (mExpandableArrayOfActivePointers) {
-            if (DEBUG) {
-                Log.d(TAG, "cancelAllPointerTracker: " + this);
-            }
-            final ArrayList<Element> expandableArray = mExpandableArrayOfActivePointers;
-            final int arraySize = mArraySize;
-            for (int index = 0; index < arraySize; index++) {
-                final Element element = expandableArray.get(index);
-                element.cancelTrackingForAction();
-            }
+        if (DEBUG) {
+            Log.d(TAG, "cancelAllPointerTracker: " + this);
+        }
+        int remainingIds = mActivePointerIds;
+        while (remainingIds != 0) {
+            final int pointerId = Integer.numberOfTrailingZeros(remainingIds);
+            remainingIds &= remainingIds - 1;
+            mElements[pointerId].cancelTrackingForAction();
         }
     }
 
     @Override
     public String toString() {
-        synchronized (mExpandableArrayOfActivePointers) {
-            final StringBuilder sb = new StringBuilder();
-            final ArrayList<Element> expandableArray = mExpandableArrayOfActivePointers;
-            final int arraySize = mArraySize;
-            for (int index = 0; index < arraySize; index++) {
-                final Element element = expandableArray.get(index);
-                if (sb.length() > 0) {
-                    sb.append(" ");
-                }
-                sb.append(element.toString());
+        final StringBuilder sb = new StringBuilder();
+        final int activePointerIds = mActivePointerIds;
+        long sequenceNumber = -1;
+        int pointerId;
+        while ((pointerId = getNextPointerId(activePointerIds, sequenceNumber))
+                != NOT_A_POINTER_ID) {
+            sequenceNumber = mSequenceNumbers[pointerId];
+            if (sb.length() > 0) {
+                sb.append(" ");
             }
-            return "[" + sb.toString() + "]";
+            sb.append(mElements[pointerId].toString());
         }
+        return "[" + sb.toString() + "]";
     }
 }
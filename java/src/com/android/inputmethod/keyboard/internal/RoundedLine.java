@@ -28,6 +28,17 @@ public final class RoundedLine {
     private static final double RADIAN_TO_DEGREE = 180.0d / Math.PI;
     private static final double RIGHT_ANGLE = Math.PI / 2.0d;
 
+    /** The number of floats that {@link #computeGeometry} writes for a rounded line. */
+    public static final int GEOMETRY_SIZE = 7;
+    private static final int GEOMETRY_LENGTH = 0;
+    private static final int GEOMETRY_COS_A = 1;
+    private static final int GEOMETRY_SIN_A = 2;
+    private static final int GEOMETRY_COS_B = 3;
+    private static final int GEOMETRY_SIN_B = 4;
+    private static final int GEOMETRY_START_ANGLE = 5;
+    private static final int GEOMETRY_AR_2_DEGREE = 6;
+    private final float[] mGeometry = new float[GEOMETRY_SIZE];
+
     /**
      * Make a rounded line path
      *
@@ -42,13 +53,34 @@ public final class RoundedLine {
      */
     public Path makePath(final float p1x, final float p1y, final float r1,
             final float p2x, final float p2y, final float r2) {
-        mPath.rewind();
+        computeGeometry(p1x, p1y, r1, p2x, p2y, r2, mGeometry, 0 /* offset */);
+        return makePath(p1x, p1y, r1, p2x, p2y, r2, mGeometry, 0 /* offset */);
+    }
+
+    /**
+     * Compute the angles of a rounded line. They only depend on the direction of the line and on
+     * the difference of its radii, so they can be reused to make the path of the same line with
+     * other radii as long as <code>r2 - r1</code> stays the same.
+     *
+     * @param p1x the x-coordinate of the start point.
+     * @param p1y the y-coordinate of the start point.
+     * @param r1 the radius at the start point
+     * @param p2x the x-coordinate of the end point.
+     * @param p2y the y-coordinate of the end point.
+     * @param r2 the radius at the end point
+     * @param outGeometry the array to write {@link #GEOMETRY_SIZE} floats into.
+     * @param offset the index of <code>outGeometry</code> to start writing at.
+     */
+    public static void computeGeometry(final float p1x, final float p1y, final float r1,
+            final float p2x, final float p2y, final float r2, final float[] outGeometry,
+            final int offset) {
         final double dx = p2x - p1x;
         final double dy = p2y - p1y;
         // Distance of the points.
         final double l = Math.hypot(dx, dy);
+        outGeometry[offset + GEOMETRY_LENGTH] = (float)l;
         if (Double.compare(0.0d, l) == 0) {
-            return mPath; // Return an empty path
+            return;
         }
         // Angle of the line p1-p2
         final double a = Math.atan2(dy, dx);
@@ -60,10 +92,41 @@ public final class RoundedLine {
         final double aa = a - (RIGHT_ANGLE + ar);
         // The end angle of trail cap arc at P2.
         final double ab = a + (RIGHT_ANGLE + ar);
-        final float cosa = (float)Math.cos(aa);
-        final float sina = (float)Math.sin(aa);
-        final float cosb = (float)Math.cos(ab);
-        final float sinb = (float)Math.sin(ab);
+        outGeometry[offset + GEOMETRY_COS_A] = (float)Math.cos(aa);
+        outGeometry[offset + GEOMETRY_SIN_A] = (float)Math.sin(aa);
+        outGeometry[offset + GEOMETRY_COS_B] = (float)Math.cos(ab);
+        outGeometry[offset + GEOMETRY_SIN_B] = (float)Math.sin(ab);
+        // Start angle of the trail arcs.
+        outGeometry[offset + GEOMETRY_START_ANGLE] = (float)(aa * RADIAN_TO_DEGREE);
+        outGeometry[offset + GEOMETRY_AR_2_DEGREE] = (float)(ar * 2.0d * RADIAN_TO_DEGREE);
+    }
+
+    /**
+     * Make a rounded line path from angles computed by
+     * {@link #computeGeometry(float,float,float,float,float,float,float[],int)}.
+     *
+     * @param p1x the x-coordinate of the start point.
+     * @param p1y the y-coordinate of the start point.
+     * @param r1 the radius at the start point
+     * @param p2x the x-coordinate of the end point.
+     * @param p2y the y-coordinate of the end point.
+     * @param r2 the radius at the end point
+     * @param geometry the array holding the angles of the rounded line.
+     * @param offset the index of <code>geometry</code> where the angles start.
+     * @return an instance of {@link Path} that holds the result rounded line, or an instance of
+     * {@link Path} that holds an empty path if the start and end points are equal.
+     */
+    public Path makePath(final float p1x, final float p1y, final float r1,
+            final float p2x, final float p2y, final float r2, final float[] geometry,
+            final int offset) {
+        mPath.rewind();
+        if (Float.compare(0.0f, geometry[offset + GEOMETRY_LENGTH]) == 0) {
+            return mPath; // Return an empty path
+        }
+        final float cosa = geometry[offset + GEOMETRY_COS_A];
+        final float sina = geometry[offset + GEOMETRY_SIN_A];
+        final float cosb = geometry[offset + GEOMETRY_COS_B];
+        final float sinb = geometry[offset + GEOMETRY_SIN_B];
         // Closing point of arc at P1.
         final float p1ax = p1x + r1 * cosa;
         final float p1ay = p1y + r1 * sina;
@@ -77,8 +140,8 @@ public final class RoundedLine {
         final float p2bx = p2x + r2 * cosb;
         final float p2by = p2y + r2 * sinb;
         // Start angle of the trail arcs.
-        final float angle = (float)(aa * RADIAN_TO_DEGREE);
-        final float ar2degree = (float)(ar * 2.0d * RADIAN_TO_DEGREE);
+        final float angle = geometry[offset + GEOMETRY_START_ANGLE];
+        final float ar2degree = geometry[offset + GEOMETRY_AR_2_DEGREE];
         // Sweep angle of the trail arc at P1.
         final float a1 = -180.0f + ar2degree;
         // Sweep angle of the trail arc at P2.
@@ -34,6 +34,7 @@ import com.android.inputmethod.latin.makedict.UnsupportedFormatException;
 import com.android.inputmethod.latin.makedict.WordProperty;
 import com.android.inputmethod.latin.settings.SettingsValuesForSuggestion;
 import com.android.inputmethod.latin.utils.BinaryDictionaryUtils;
+import com.android.inputmethod.latin.utils.BloomFilter;
 import com.android.inputmethod.latin.utils.JniUtils;
 import com.android.inputmethod.latin.utils.WordInputEventForPersonalization;
 
@@ -45,6 +46,7 @@ import java.util.Locale;
 import java.util.Map;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * Implements a static, compacted, binary dictionary of standard words.
@@ -71,6 +73,11 @@ public final class BinaryDictionary extends Dictionary {
 
     public static final int NOT_A_VALID_TIMESTAMP = -1;
 
+    // The count of unigrams that dictionaries keep before GC removes some, when their header does
+    // not tell. Note that this is a corresponding definition in native code in
+    // latinime::HeaderPolicy.
+    private static final int DEFAULT_MAX_UNIGRAM_COUNT = 10000;
+
     // Format to get unigram flags from native side via getWordPropertyNative().
     private static final int FORMAT_WORD_PROPERTY_OUTPUT_FLAG_COUNT = 5;
     private static final int FORMAT_WORD_PROPERTY_IS_NOT_A_WORD_INDEX = 0;
@@ -94,7 +101,12 @@ public final class BinaryDictionary extends Dictionary {
     private final String mDictFilePath;
     private final boolean mUseFullEditDistance;
     private final boolean mIsUpdatable;
+    private final boolean mHasWordFilter;
     private boolean mHasUpdated;
+    // The words of the dictionary, to tell without a native lookup that a word is not in it.
+    // Words are added when they are added to the dictionary, and stay in the filter when they
+    // are removed. Null when the dictionary has no filter.
+    private volatile BloomFilter mWordFilter;
 
     private final SparseArray<DicTraverseSession> mDicTraverseSessions = new SparseArray<>();
 
@@ -123,13 +135,34 @@ public final class BinaryDictionary extends Dictionary {
     public BinaryDictionary(final String filename, final long offset, final long length,
             final boolean useFullEditDistance, final Locale locale, final String dictType,
             final boolean isUpdatable) {
+        this(filename, offset, length, useFullEditDistance, locale, dictType, isUpdatable,
+                isUpdatable /* hasWordFilter */);
+    }
+
+    /**
+     * Constructs binary dictionary using existing dictionary file.
+     * @param filename the name of the file to read through native code.
+     * @param offset the offset of the dictionary data within the file.
+     * @param length the length of the binary data.
+     * @param useFullEditDistance whether to use the full edit distance in suggestions
+     * @param dictType the dictionary type, as a human-readable string
+     * @param isUpdatable whether to open the dictionary file in writable mode.
+     * @param hasWordFilter whether to keep a filter of the words of the dictionary to answer
+     * lookups of words that are not in it without native code. Reading the filter walks the
+     * whole dictionary, which only pays off for updatable dictionaries that are looked up for
+     * the whole input session, not for dictionaries read once by tools.
+     */
+    public BinaryDictionary(final String filename, final long offset, final long length,
+            final boolean useFullEditDistance, final Locale locale, final String dictType,
+            final boolean isUpdatable, final boolean hasWordFilter) {
         super(dictType, locale);
         mDictSize = length;
         mDictFilePath = filename;
         mIsUpdatable = isUpdatable;
+        mHasWordFilter = isUpdatable && hasWordFilter;
         mHasUpdated = false;
         mUseFullEditDistance = useFullEditDistance;
-        loadDictionary(filename, offset, length, isUpdatable);
+        loadDictionary(filename, offset, length, isUpdatable, null /* wordFilter */);
     }
 
     /**
@@ -148,6 +181,7 @@ public final class BinaryDictionary extends Dictionary {
         mDictFilePath = filename;
         // On memory dictionary is always updatable.
         mIsUpdatable = true;
+        mHasWordFilter = true;
         mHasUpdated = false;
         mUseFullEditDistance = useFullEditDistance;
         final String[] keyArray = new String[attributeMap.size()];
@@ -159,6 +193,8 @@ public final class BinaryDictionary extends Dictionary {
             index++;
         }
         mNativeDict = createOnMemoryNative(formatVersion, locale.toString(), keyArray, valueArray);
+        mWordFilter = new BloomFilter(getIntAttribute(attributeMap,
+                DictionaryHeader.MAX_UNIGRAM_COUNT_KEY, DEFAULT_MAX_UNIGRAM_COUNT));
     }
 
 
@@ -218,10 +254,89 @@ public final class BinaryDictionary extends Dictionary {
             long newFormatVersion);
 
     // TODO: Move native dict into session
+    /**
+     * Opens the native dictionary.
+     *
+     * @param wordFilter the filter of the dictionary when it is reopened with the same words,
+     * or null to read the filter from the dictionary.
+     */
     private void loadDictionary(final String path, final long startOffset,
-            final long length, final boolean isUpdatable) {
+            final long length, final boolean isUpdatable, @Nullable final BloomFilter wordFilter) {
         mHasUpdated = false;
         mNativeDict = openNative(path, startOffset, length, isUpdatable);
+        // Words removed by GC may stay in the filter, which only costs a native lookup. The
+        // filter is only read again once it holds more words than it was sized for.
+        mWordFilter = (wordFilter != null && wordFilter.hasRoomFor(0))
+                ? wordFilter : createWordFilter();
+    }
+
+    /**
+     * Reads all the words of the dictionary into a new filter. This walks the whole dictionary,
+     * which is about as long as reading it for makedict.
+     *
+     * @return the filter, or null if the dictionary has no filter.
+     */
+    private BloomFilter createWordFilter() {
+        if (!mHasWordFilter || !isValidDictionary()) {
+            return null;
+        }
+        // The header counts the words as of the last flush. Leave room for as many words again,
+        // and for at least as many words as the dictionary keeps before GC removes some.
+        final HashMap<String, String> attributes =
+                readHeaderAttributes(new int[1] /* outHeaderSize */,
+                        new int[1] /* outFormatVersion */);
+        final int unigramCount = getIntAttribute(attributes, DictionaryHeader.UNIGRAM_COUNT_KEY,
+                0 /* defaultValue */);
+        final int maxUnigramCount = getIntAttribute(attributes,
+                DictionaryHeader.MAX_UNIGRAM_COUNT_KEY, DEFAULT_MAX_UNIGRAM_COUNT);
+        final BloomFilter filter = new BloomFilter(Math.max(unigramCount * 2, maxUnigramCount));
+        final int[] codePoints = new int[DICTIONARY_MAX_WORD_LENGTH];
+        final boolean[] isBeginningOfSentence = new boolean[1];
+        int token = 0;
+        do {
+            // The word is not null terminated: clear what is left of the previous one.
+            Arrays.fill(codePoints, 0);
+            token = getNextWordNative(mNativeDict, token, codePoints, isBeginningOfSentence);
+            if (!isBeginningOfSentence[0]) {
+                final String word =
+                        StringUtils.getStringFromNullTerminatedCodePointArray(codePoints);
+                if (!word.isEmpty()) {
+                    filter.add(word);
+                }
+            }
+        } while (token != 0);
+        return filter;
+    }
+
+    private static int getIntAttribute(final Map<String, String> attributes, final String key,
+            final int defaultValue) {
+        final String value = attributes.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    // Must be called before the word is added to the native dictionary, so that there is never
+    // a time when the word is in the dictionary but not in the filter. Once the filter holds more
+    // words than it was sized for, it only gives more false positives until it is read again.
+    private void addToWordFilter(final String word) {
+        final BloomFilter filter = mWordFilter;
+        if (filter != null) {
+            filter.add(word);
+        }
+    }
+
+    /**
+     * Returns false when the word is certainly not in the dictionary, without a native lookup.
+     */
+    private boolean mightContainWord(final String word) {
+        final BloomFilter filter = mWordFilter;
+        return filter == null || filter.mightContain(word);
     }
 
     // TODO: Check isCorrupted() for main dictionaries.
@@ -240,12 +355,8 @@ public final class BinaryDictionary extends Dictionary {
         return true;
     }
 
-    public DictionaryHeader getHeader() throws UnsupportedFormatException {
-        if (mNativeDict == 0) {
-            return null;
-        }
-        final int[] outHeaderSize = new int[1];
-        final int[] outFormatVersion = new int[1];
+    private HashMap<String, String> readHeaderAttributes(final int[] outHeaderSize,
+            final int[] outFormatVersion) {
         final ArrayList<int[]> outAttributeKeys = new ArrayList<>();
         final ArrayList<int[]> outAttributeValues = new ArrayList<>();
         getHeaderInfoNative(mNativeDict, outHeaderSize, outFormatVersion, outAttributeKeys,
@@ -258,6 +369,17 @@ public final class BinaryDictionary extends Dictionary {
                     outAttributeValues.get(i));
             attributes.put(attributeKey, attributeValue);
         }
+        return attributes;
+    }
+
+    public DictionaryHeader getHeader() throws UnsupportedFormatException {
+        if (mNativeDict == 0) {
+            return null;
+        }
+        final int[] outHeaderSize = new int[1];
+        final int[] outFormatVersion = new int[1];
+        final HashMap<String, String> attributes =
+                readHeaderAttributes(outHeaderSize, outFormatVersion);
         final boolean hasHistoricalInfo = DictionaryHeader.ATTRIBUTE_VALUE_TRUE.equals(
                 attributes.get(DictionaryHeader.HAS_HISTORICAL_INFO_KEY));
         return new DictionaryHeader(outHeaderSize[0], new DictionaryOptions(attributes),
@@ -355,7 +477,7 @@ public final class BinaryDictionary extends Dictionary {
 
     @Override
     public int getFrequency(final String word) {
-        if (TextUtils.isEmpty(word)) {
+        if (TextUtils.isEmpty(word) || !mightContainWord(word)) {
             return NOT_A_PROBABILITY;
         }
         final int[] codePoints = StringUtils.toCodePointArray(word);
@@ -454,6 +576,9 @@ public final class BinaryDictionary extends Dictionary {
         final int[] codePoints = StringUtils.toCodePointArray(word);
         final int[] shortcutTargetCodePoints = (shortcutTarget != null) ?
                 StringUtils.toCodePointArray(shortcutTarget) : null;
+        if (!isBeginningOfSentence) {
+            addToWordFilter(word);
+        }
         if (!addUnigramEntryNative(mNativeDict, codePoints, probability, shortcutTargetCodePoints,
                 shortcutProbability, isBeginningOfSentence, isNotAWord, isPossiblyOffensive,
                 timestamp)) {
@@ -504,6 +629,7 @@ public final class BinaryDictionary extends Dictionary {
         final boolean[] isBeginningOfSentenceArray = new boolean[ngramContext.getPrevWordCount()];
         ngramContext.outputToArray(prevWordCodePointArrays, isBeginningOfSentenceArray);
         final int[] wordCodePoints = StringUtils.toCodePointArray(word);
+        addToWordFilter(word);
         if (!updateEntriesForWordWithNgramContextNative(mNativeDict, prevWordCodePointArrays,
                 isBeginningOfSentenceArray, wordCodePoints, isValidWord, count, timestamp)) {
             return false;
@@ -522,23 +648,42 @@ public final class BinaryDictionary extends Dictionary {
             if (needsToRunGC(true /* mindsBlockByGC */)) {
                 flushWithGC();
             }
+            // Flushing may read the filter again from the dictionary, which does not have the
+            // words of the remaining events yet.
+            addToWordFilter(inputEvents, processedEventCount);
             processedEventCount = updateEntriesForInputEventsNative(mNativeDict, inputEvents,
                     processedEventCount);
             mHasUpdated = true;
             if (processedEventCount <= 0) {
-                return;
+                break;
+            }
+        }
+    }
+
+    private void addToWordFilter(final WordInputEventForPersonalization[] inputEvents,
+            final int startIndex) {
+        final BloomFilter filter = mWordFilter;
+        if (filter == null) {
+            return;
+        }
+        for (int i = startIndex; i < inputEvents.length; i++) {
+            final String word = StringUtils.getStringFromNullTerminatedCodePointArray(
+                    inputEvents[i].mTargetWord);
+            if (!word.isEmpty()) {
+                filter.add(word);
             }
         }
     }
 
     private void reopen() {
+        final BloomFilter wordFilter = mWordFilter;
         close();
         final File dictFile = new File(mDictFilePath);
         // WARNING: Because we pass 0 as the offset and file.length() as the length, this can
         // only be called for actual files. Right now it's only called by the flush() family of
         // functions, which require an updatable dictionary, so it's okay. But beware.
         loadDictionary(dictFile.getAbsolutePath(), 0 /* startOffset */,
-                dictFile.length(), mIsUpdatable);
+                dictFile.length(), mIsUpdatable, wordFilter);
     }
 
     // Flush to dict file if the dictionary has been updated.
@@ -610,6 +755,7 @@ public final class BinaryDictionary extends Dictionary {
             if (!migrateNative(mNativeDict, tmpDictFilePath, newFormatVersion)) {
                 return false;
             }
+            final BloomFilter wordFilter = mWordFilter;
             close();
             final File dictFile = new File(mDictFilePath);
             final File tmpDictFile = new File(tmpDictFilePath);
@@ -620,7 +766,7 @@ public final class BinaryDictionary extends Dictionary {
                 return false;
             }
             loadDictionary(dictFile.getAbsolutePath(), 0 /* startOffset */,
-                    dictFile.length(), mIsUpdatable);
+                    dictFile.length(), mIsUpdatable, wordFilter);
             return true;
         } finally {
             isMigratingDir.delete();
@@ -660,6 +806,7 @@ public final class BinaryDictionary extends Dictionary {
             closeNative(mNativeDict);
             mNativeDict = 0;
         }
+        mWordFilter = null;
     }
 
     // TODO: Manage BinaryDictionary instances without using WeakReference or something.
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.text.TextUtils;
+
+import com.android.inputmethod.latin.common.Constants;
+import com.android.inputmethod.latin.settings.SpacingAndPunctuations;
+import com.android.inputmethod.latin.utils.CapsModeUtils;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Answers {@link CapsModeUtils#getCapsMode} for the text of an {@link EditorTextMirror} without
+ * rescanning it backwards on every call.
+ *
+ * For each char of the text, this keeps the lengths of the runs of start punctuation, spaces,
+ * closing punctuation and whitespace ending at that char. These only depend on the text before
+ * the char, so they are computed once as chars are appended and dropped when the text is
+ * truncated. Getting the caps mode is then a few lookups; only the abbreviation check after a
+ * period still looks at the word before it.
+ *
+ * After the text is cleared, which happens when the cursor jumps, the next call falls back to
+ * the backward scan, and the runs are rebuilt from the text on the call after that.
+ * This class is not thread safe.
+ */
+public final class CapsModeTracker {
+    private static final int ALL_CAPS_MODES = TextUtils.CAP_MODE_CHARACTERS
+            | TextUtils.CAP_MODE_WORDS | TextUtils.CAP_MODE_SENTENCES;
+
+    // The runs ending at each char, indexed by the end offset of the char modulo mCapacity.
+    // The run lengths are capped to mCapacity.
+    private final int mCapacity;
+    private final int[] mStartPunctuationRuns;
+    private final int[] mSpaceRuns;
+    private final int[] mClosingPunctuationRuns;
+    private final int[] mWhitespaceRuns;
+    private final boolean[] mWhitespaceRunHasNewLine;
+
+    private int mGeneration = -1;
+    private boolean mIsTracking;
+    // The end offset of the text the runs have been computed for.
+    private int mEndOffset;
+
+    public CapsModeTracker(final int maxTextLength) {
+        // One more than the text length, for the runs before the first char.
+        mCapacity = maxTextLength + 1;
+        mStartPunctuationRuns = new int[mCapacity];
+        mSpaceRuns = new int[mCapacity];
+        mClosingPunctuationRuns = new int[mCapacity];
+        mWhitespaceRuns = new int[mCapacity];
+        mWhitespaceRunHasNewLine = new boolean[mCapacity];
+    }
+
+    private static boolean isSpaceOrTab(final char c) {
+        return Character.isSpaceChar(c) || c == Constants.CODE_TAB;
+    }
+
+    private static boolean isClosingPunctuation(final char c) {
+        return c == Constants.CODE_DOUBLE_QUOTE || c == Constants.CODE_SINGLE_QUOTE
+                || Character.getType(c) == Character.END_PUNCTUATION;
+    }
+
+    private static int nextRun(final boolean isInRun, final int previousRun, final int capacity) {
+        return isInRun ? Math.min(previousRun + 1, capacity) : 0;
+    }
+
+    private void resetRuns(final int endOffset) {
+        final int index = endOffset % mCapacity;
+        mStartPunctuationRuns[index] = 0;
+        mSpaceRuns[index] = 0;
+        mClosingPunctuationRuns[index] = 0;
+        mWhitespaceRuns[index] = 0;
+        mWhitespaceRunHasNewLine[index] = false;
+        mEndOffset = endOffset;
+    }
+
+    private void appendRuns(final char c) {
+        final int previousIndex = mEndOffset % mCapacity;
+        final int index = (mEndOffset + 1) % mCapacity;
+        mStartPunctuationRuns[index] = nextRun(CapsModeUtils.isStartPunctuation(c),
+                mStartPunctuationRuns[previousIndex], mCapacity);
+        mSpaceRuns[index] = nextRun(isSpaceOrTab(c), mSpaceRuns[previousIndex], mCapacity);
+        mClosingPunctuationRuns[index] = nextRun(isClosingPunctuation(c),
+                mClosingPunctuationRuns[previousIndex], mCapacity);
+        final boolean isWhitespace = Character.isWhitespace(c);
+        mWhitespaceRuns[index] = nextRun(isWhitespace, mWhitespaceRuns[previousIndex], mCapacity);
+        mWhitespaceRunHasNewLine[index] = isWhitespace
+                && (c == Constants.CODE_ENTER || mWhitespaceRunHasNewLine[previousIndex]);
+        mEndOffset++;
+    }
+
+    /**
+     * Brings the runs up to date with the text of the mirror.
+     *
+     * @return whether the runs can be used for the text of the mirror.
+     */
+    private boolean updateRuns(@Nonnull final EditorTextMirror mirror,
+            @Nonnull final CharSequence text) {
+        final int generation = mirror.getGeneration();
+        final int lowestEndOffset = mirror.getLowestEndOffsetSinceLastCall();
+        final int endOffset = mirror.getEndOffset();
+        if (generation != mGeneration || text.length() >= mCapacity) {
+            // The cursor jumped: use the scan this time, and start tracking the new text.
+            mGeneration = generation;
+            mIsTracking = false;
+            return false;
+        }
+        final int startOffset = endOffset - text.length();
+        final int fromOffset = Math.min(lowestEndOffset, mEndOffset);
+        if (!mIsTracking || fromOffset < startOffset) {
+            // Rebuild the runs from the whole text.
+            resetRuns(startOffset);
+            mIsTracking = true;
+        } else {
+            // The runs up to fromOffset are still valid.
+            mEndOffset = fromOffset;
+        }
+        for (int offset = mEndOffset; offset < endOffset; offset++) {
+            appendRuns(text.charAt(offset - startOffset));
+        }
+        return true;
+    }
+
+    /**
+     * Gets the caps mode at the end of the text of the mirror. This returns the same value as
+     * {@link CapsModeUtils#getCapsMode} for the text of the mirror.
+     *
+     * @param mirror the mirror of the text before the cursor.
+     * @param reqModes the modes to be checked.
+     * @param spacingAndPunctuations the current spacing and punctuations settings.
+     * @param hasSpaceBefore whether we should consider there is a space at the end of the text.
+     * @return the caps modes that are in effect.
+     */
+    public int getCapsMode(@Nonnull final EditorTextMirror mirror, final int reqModes,
+            @Nonnull final SpacingAndPunctuations spacingAndPunctuations,
+            final boolean hasSpaceBefore) {
+        final CharSequence text = mirror.getText();
+        if (!updateRuns(mirror, text)) {
+            return CapsModeUtils.getCapsMode(text, reqModes, spacingAndPunctuations,
+                    hasSpaceBefore);
+        }
+        // The following follows the steps of CapsModeUtils#getCapsMode, with the offsets of the
+        // text: the text starts at offset s and ends at offset n.
+        if ((reqModes & (TextUtils.CAP_MODE_WORDS | TextUtils.CAP_MODE_SENTENCES)) == 0) {
+            return TextUtils.CAP_MODE_CHARACTERS & reqModes;
+        }
+        final int n = mEndOffset;
+        final int s = n - text.length();
+
+        // Step 2 : Skip any opening punctuation at the end of the text.
+        final int i = hasSpaceBefore ? n + 1
+                : n - Math.min(mStartPunctuationRuns[n % mCapacity], n - s);
+
+        // Step 3 : Go back over any space or tab, and look for the start of a paragraph.
+        int j = hasSpaceBefore ? n : i;
+        if (j > s) {
+            j -= Math.min(mSpaceRuns[j % mCapacity], j - s);
+        }
+        final char prevChar = (j > s) ? text.charAt(j - 1 - s) : Constants.CODE_SPACE;
+        if (j <= s || Character.isWhitespace(prevChar)) {
+            if (j > s && spacingAndPunctuations.mUsesGermanRules) {
+                // The first character of a new line should not be capitalized if the previous
+                // line ends in a comma.
+                final int whitespaceRun = mWhitespaceRuns[j % mCapacity];
+                if (whitespaceRun < j - s && mWhitespaceRunHasNewLine[j % mCapacity]
+                        && Constants.CODE_COMMA == text.charAt(j - whitespaceRun - 1 - s)) {
+                    return (TextUtils.CAP_MODE_CHARACTERS | TextUtils.CAP_MODE_WORDS) & reqModes;
+                }
+            }
+            return ALL_CAPS_MODES & reqModes;
+        }
+        if (i == j) {
+            return TextUtils.CAP_MODE_CHARACTERS & reqModes;
+        }
+        if ((reqModes & TextUtils.CAP_MODE_SENTENCES) == 0) {
+            return (TextUtils.CAP_MODE_CHARACTERS | TextUtils.CAP_MODE_WORDS) & reqModes;
+        }
+
+        // Step 4 : Search for MODE_SENTENCES.
+        if (spacingAndPunctuations.mUsesAmericanTypography) {
+            j -= Math.min(mClosingPunctuationRuns[j % mCapacity], j - s);
+        }
+        if (j <= s) {
+            return TextUtils.CAP_MODE_CHARACTERS & reqModes;
+        }
+        final char c = text.charAt(--j - s);
+        if (spacingAndPunctuations.isSentenceTerminator(c)
+                && !spacingAndPunctuations.isAbbreviationMarker(c)) {
+            return ALL_CAPS_MODES & reqModes;
+        }
+        if (!spacingAndPunctuations.isSentenceSeparator(c) || j <= s) {
+            return (TextUtils.CAP_MODE_CHARACTERS | TextUtils.CAP_MODE_WORDS) & reqModes;
+        }
+        return CapsModeUtils.isSentenceSeparatorEndingSentence(text, j - s,
+                spacingAndPunctuations) ? ALL_CAPS_MODES & reqModes
+                        : (TextUtils.CAP_MODE_CHARACTERS | TextUtils.CAP_MODE_WORDS) & reqModes;
+    }
+}
@@ -83,6 +83,12 @@ public interface DictionaryFacilitator {
 
     interface DictionaryInitializationListener {
         void onUpdateMainDictionaryAvailability(boolean isMainDictionaryAvailable);
+
+        /**
+         * Called from a non-UI thread when a dictionary has been reloaded, e.g. because the
+         * contacts or the user dictionary changed.
+         */
+        void onDictionaryReloaded();
     }
 
     /**
@@ -152,6 +158,12 @@ public interface DictionaryFacilitator {
             @Nonnull final NgramContext ngramContext, final long timeStampInSeconds,
             final boolean blockPotentiallyOffensive);
 
+    /**
+     * Learns the words passed to {@link #addToUserHistory} that are still pending, e.g. because
+     * the input session ends.
+     */
+    void learnPendingWords();
+
     void unlearnFromUserHistory(final String word,
             @Nonnull final NgramContext ngramContext, final long timeStampInSeconds,
             final int eventType);
@@ -18,12 +18,14 @@ package com.android.inputmethod.latin;
 
 import android.Manifest;
 import android.content.Context;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.LruCache;
 
 import com.android.inputmethod.annotations.UsedForTesting;
 import com.android.inputmethod.keyboard.Keyboard;
+import com.android.inputmethod.latin.ExpandableBinaryDictionary.WordEntryUpdate;
 import com.android.inputmethod.latin.NgramContext.WordInfo;
 import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
 import com.android.inputmethod.latin.common.ComposedData;
@@ -38,15 +40,18 @@ import com.android.inputmethod.latin.utils.SuggestionResults;
 import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
@@ -86,6 +91,52 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
     private static final Class<?>[] DICT_FACTORY_METHOD_ARG_TYPES =
             new Class[] { Context.class, Locale.class, File.class, String.class, String.class };
 
+    // The maximum number of words waiting to be learned. Once there are that many, they are
+    // handed to the background thread as a batch.
+    private static final int MAX_PENDING_LEARNING_EVENT_COUNT = 64;
+
+    /**
+     * A word committed by the user, waiting to be learned. This is immutable.
+     *
+     * The word is learned into the dictionary group in use when it is handed to the dictionaries,
+     * if that group is still for the locale the word was committed for.
+     */
+    private static final class LearningEvent {
+        @Nonnull public final Locale mLocale;
+        @Nonnull public final String mSuggestion;
+        public final boolean mWasAutoCapitalized;
+        @Nonnull public final NgramContext mNgramContext;
+        public final int mTimeStampInSeconds;
+        public final boolean mBlockPotentiallyOffensive;
+        // When the word is due to be learned, in the time base of SystemClock.uptimeMillis().
+        public final long mDueTimeMillis;
+
+        public LearningEvent(@Nonnull final Locale locale, @Nonnull final String suggestion,
+                final boolean wasAutoCapitalized, @Nonnull final NgramContext ngramContext,
+                final int timeStampInSeconds, final boolean blockPotentiallyOffensive,
+                final long dueTimeMillis) {
+            mLocale = locale;
+            mSuggestion = suggestion;
+            mWasAutoCapitalized = wasAutoCapitalized;
+            mNgramContext = ngramContext;
+            mTimeStampInSeconds = timeStampInSeconds;
+            mBlockPotentiallyOffensive = blockPotentiallyOffensive;
+            mDueTimeMillis = dueTimeMillis;
+        }
+    }
+
+    // How long a learned word stays pending before it is written to the user history
+    // dictionary, unless it is learned earlier with learnPendingWords(). A word reverted in the
+    // meantime is just dropped, instead of being written and then removed.
+    @UsedForTesting
+    static final long LEARNING_GRACE_PERIOD_IN_MILLISECONDS = 3000;
+
+    // The words waiting to be learned, oldest first. Synchronized by itself, as is
+    // mScheduledLearning, which is set while learning the oldest word is scheduled.
+    private final ArrayDeque<LearningEvent> mPendingLearningEvents = new ArrayDeque<>();
+    @Nullable
+    private ScheduledFuture<?> mScheduledLearning;
+
     private LruCache<String, Boolean> mValidSpellingWordReadCache;
     private LruCache<String, Boolean> mValidSpellingWordWriteCache;
 
@@ -225,6 +276,8 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
 
     @Override
     public void onFinishInput(Context context) {
+        // The words committed in this session can no longer be reverted.
+        learnPendingWords();
     }
 
     @Override
@@ -285,6 +338,9 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
             @Nullable final String account,
             final String dictNamePrefix,
             @Nullable final DictionaryInitializationListener listener) {
+        // The pending words are learned into the dictionaries they were committed for, before
+        // these may be closed.
+        final ArrayList<LearningEvent> pendingLearningEvents = takePendingLearningEvents();
         final HashMap<Locale, ArrayList<String>> existingDictionariesToCleanup = new HashMap<>();
         // TODO: Make subDictTypesToUse configurable by resource or a static final list.
         final HashSet<String> subDictTypesToUse = new HashSet<>();
@@ -344,6 +400,10 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
                 subDict = dictionaryGroupForLocale.getSubDict(subDictType);
                 dictTypesToCleanupForLocale.remove(subDictType);
             }
+            if (subDict != null) {
+                // The contacts and the user dictionary are reloaded when their sources change.
+                subDict.setReloadListener(listener);
+            }
             subDicts.put(subDictType, subDict);
         }
         DictionaryGroup newDictionaryGroup =
@@ -362,16 +422,23 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
             listener.onUpdateMainDictionaryAvailability(hasAtLeastOneInitializedMainDictionary());
         }
 
-        // Clean up old dictionaries.
-        for (final Locale localeToCleanUp : existingDictionariesToCleanup.keySet()) {
-            final ArrayList<String> dictTypesToCleanUp =
-                    existingDictionariesToCleanup.get(localeToCleanUp);
-            final DictionaryGroup dictionarySetToCleanup =
-                    findDictionaryGroupWithLocale(oldDictionaryGroup, localeToCleanUp);
-            for (final String dictType : dictTypesToCleanUp) {
-                dictionarySetToCleanup.closeDict(dictType);
+        // Clean up old dictionaries, once the pending words have been learned on the background
+        // thread.
+        ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(new Runnable() {
+            @Override
+            public void run() {
+                learnEvents(pendingLearningEvents, oldDictionaryGroup);
+                for (final Locale localeToCleanUp : existingDictionariesToCleanup.keySet()) {
+                    final ArrayList<String> dictTypesToCleanUp =
+                            existingDictionariesToCleanup.get(localeToCleanUp);
+                    final DictionaryGroup dictionarySetToCleanup =
+                            findDictionaryGroupWithLocale(oldDictionaryGroup, localeToCleanUp);
+                    for (final String dictType : dictTypesToCleanUp) {
+                        dictionarySetToCleanup.closeDict(dictType);
+                    }
+                }
             }
-        }
+        });
 
         if (mValidSpellingWordWriteCache != null) {
             mValidSpellingWordWriteCache.evictAll();
@@ -449,14 +516,23 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
     }
 
     public void closeDictionaries() {
+        final ArrayList<LearningEvent> pendingLearningEvents = takePendingLearningEvents();
         final DictionaryGroup dictionaryGroupToClose;
         synchronized (mLock) {
             dictionaryGroupToClose = mDictionaryGroup;
             mDictionaryGroup = new DictionaryGroup();
         }
-        for (final String dictType : ALL_DICTIONARY_TYPES) {
-            dictionaryGroupToClose.closeDict(dictType);
-        }
+        // Close the dictionaries once the pending words have been learned on the background
+        // thread.
+        ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(new Runnable() {
+            @Override
+            public void run() {
+                learnEvents(pendingLearningEvents, dictionaryGroupToClose);
+                for (final String dictType : ALL_DICTIONARY_TYPES) {
+                    dictionaryGroupToClose.closeDict(dictType);
+                }
+            }
+        });
     }
 
     @UsedForTesting
@@ -491,6 +567,16 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
     public void waitForLoadingDictionariesForTesting(final long timeout, final TimeUnit unit)
             throws InterruptedException {
         waitForLoadingMainDictionaries(timeout, unit);
+        // Wait for the words waiting to be learned to be handed to the dictionaries.
+        learnPendingWords();
+        final CountDownLatch learningLatch = new CountDownLatch(1);
+        ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(new Runnable() {
+            @Override
+            public void run() {
+                learningLatch.countDown();
+            }
+        });
+        learningLatch.await(timeout, unit);
         for (final ExpandableBinaryDictionary dict : mDictionaryGroup.mSubDictMap.values()) {
             dict.waitAllTasksForTests();
         }
@@ -499,21 +585,202 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
     public void addToUserHistory(final String suggestion, final boolean wasAutoCapitalized,
             @Nonnull final NgramContext ngramContext, final long timeStampInSeconds,
             final boolean blockPotentiallyOffensive) {
-        // Update the spelling cache before learning. Words that are not yet added to user history
-        // and appear in no other language model are not considered valid.
-        putWordIntoValidSpellingWordCache("addToUserHistory", suggestion);
+        // Learning looks up the word in every dictionary before updating the user history
+        // dictionary: queue the word and learn it on the background thread, so that committing
+        // a word does not wait for this.
+        final Locale locale = mDictionaryGroup.mLocale;
+        if (locale == null) {
+            return;
+        }
+        // The word stays pending for a grace period, in case the user reverts it.
+        final LearningEvent event = new LearningEvent(locale, suggestion, wasAutoCapitalized,
+                ngramContext, (int) timeStampInSeconds, blockPotentiallyOffensive,
+                SystemClock.uptimeMillis() + LEARNING_GRACE_PERIOD_IN_MILLISECONDS);
+        synchronized (mPendingLearningEvents) {
+            if (mPendingLearningEvents.size() >= MAX_PENDING_LEARNING_EVENT_COUNT) {
+                // Don't let the pending words pile up: learn them now.
+                final ArrayList<LearningEvent> events = takePendingLearningEvents();
+                ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                learnEvents(events, mDictionaryGroup);
+                            }
+                        });
+            }
+            mPendingLearningEvents.addLast(event);
+            // Learning is scheduled for the oldest word, if there is one.
+            if (mScheduledLearning == null) {
+                scheduleLearningLocked(event);
+            }
+        }
+    }
 
-        final String[] words = suggestion.split(Constants.WORD_SEPARATOR);
-        NgramContext ngramContextForCurrentWord = ngramContext;
-        for (int i = 0; i < words.length; i++) {
-            final String currentWord = words[i];
-            final boolean wasCurrentWordAutoCapitalized = (i == 0) ? wasAutoCapitalized : false;
-            addWordToUserHistory(mDictionaryGroup, ngramContextForCurrentWord, currentWord,
-                    wasCurrentWordAutoCapitalized, (int) timeStampInSeconds,
-                    blockPotentiallyOffensive);
-            ngramContextForCurrentWord =
-                    ngramContextForCurrentWord.getNextNgramContext(new WordInfo(currentWord));
+    private void scheduleLearningLocked(@Nonnull final LearningEvent oldestEvent) {
+        mScheduledLearning = ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD)
+                .schedule(mLearnDueEventsTask,
+                        Math.max(0, oldestEvent.mDueTimeMillis - SystemClock.uptimeMillis()),
+                        TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void learnPendingWords() {
+        synchronized (mPendingLearningEvents) {
+            if (mPendingLearningEvents.isEmpty()) {
+                return;
+            }
         }
+        ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(
+                mLearnPendingEventsTask);
+    }
+
+    private final Runnable mLearnPendingEventsTask = new Runnable() {
+        @Override
+        public void run() {
+            learnEvents(takePendingLearningEvents(), mDictionaryGroup);
+        }
+    };
+
+    private final Runnable mLearnDueEventsTask = new Runnable() {
+        @Override
+        public void run() {
+            learnEvents(takeDueLearningEvents(), mDictionaryGroup);
+        }
+    };
+
+    /**
+     * Takes the pending words whose grace period is over, and schedules learning the next one.
+     */
+    @Nonnull
+    private ArrayList<LearningEvent> takeDueLearningEvents() {
+        final long now = SystemClock.uptimeMillis();
+        synchronized (mPendingLearningEvents) {
+            mScheduledLearning = null;
+            final ArrayList<LearningEvent> events = new ArrayList<>();
+            while (!mPendingLearningEvents.isEmpty()
+                    && mPendingLearningEvents.peekFirst().mDueTimeMillis <= now) {
+                events.add(mPendingLearningEvents.pollFirst());
+            }
+            if (!mPendingLearningEvents.isEmpty()) {
+                scheduleLearningLocked(mPendingLearningEvents.peekFirst());
+            }
+            return events;
+        }
+    }
+
+    @Nonnull
+    private ArrayList<LearningEvent> takePendingLearningEvents() {
+        synchronized (mPendingLearningEvents) {
+            final ArrayList<LearningEvent> events = new ArrayList<>(mPendingLearningEvents);
+            mPendingLearningEvents.clear();
+            if (mScheduledLearning != null) {
+                mScheduledLearning.cancel(false /* mayInterruptIfRunning */);
+            }
+            mScheduledLearning = null;
+            return events;
+        }
+    }
+
+    /**
+     * Cancels learning the most recent pending occurrence of a word in an n-gram context.
+     *
+     * @return whether a pending occurrence of the word was found.
+     */
+    private boolean cancelPendingLearning(@Nonnull final String word,
+            @Nonnull final NgramContext ngramContext) {
+        synchronized (mPendingLearningEvents) {
+            final Iterator<LearningEvent> iterator = mPendingLearningEvents.descendingIterator();
+            while (iterator.hasNext()) {
+                final LearningEvent event = iterator.next();
+                if (word.equals(event.mSuggestion) && ngramContext.equals(event.mNgramContext)) {
+                    iterator.remove();
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Learns words committed by the user into a dictionary group. The words committed for
+     * another locale than the group's are dropped. This is called on the background thread.
+     */
+    private void learnEvents(@Nonnull final ArrayList<LearningEvent> events,
+            @Nonnull final DictionaryGroup dictionaryGroup) {
+        // Merge the events of the same word in the same context, so that each is looked up and
+        // updated only once. There are only a few events at a time, so this just looks them up.
+        final ArrayList<LearningEvent> mergedEvents = new ArrayList<>(events.size());
+        final ArrayList<Integer> counts = new ArrayList<>(events.size());
+        for (final LearningEvent event : events) {
+            if (!event.mLocale.equals(dictionaryGroup.mLocale)) {
+                continue;
+            }
+            final int index = indexOfSameLearningEvent(mergedEvents, event);
+            if (index < 0) {
+                mergedEvents.add(event);
+                counts.add(1);
+            } else {
+                // Keep the latest event for its timestamp.
+                mergedEvents.set(index, event);
+                counts.set(index, counts.get(index) + 1);
+            }
+        }
+        final HashSet<String> wordsInSpellingCache = new HashSet<>();
+        final HashMap<ExpandableBinaryDictionary, ArrayList<WordEntryUpdate>> updates =
+                new HashMap<>();
+        for (int i = 0; i < mergedEvents.size(); i++) {
+            final LearningEvent event = mergedEvents.get(i);
+            // Update the spelling cache before learning. Words that are not yet added to user
+            // history and appear in no other language model are not considered valid.
+            if (wordsInSpellingCache.add(event.mSuggestion)) {
+                putWordIntoValidSpellingWordCache("addToUserHistory", event.mSuggestion);
+            }
+            final ExpandableBinaryDictionary userHistoryDictionary =
+                    dictionaryGroup.getSubDict(Dictionary.TYPE_USER_HISTORY);
+            if (userHistoryDictionary == null) {
+                continue;
+            }
+            ArrayList<WordEntryUpdate> updatesForDictionary = updates.get(userHistoryDictionary);
+            if (updatesForDictionary == null) {
+                updatesForDictionary = new ArrayList<>();
+                updates.put(userHistoryDictionary, updatesForDictionary);
+            }
+            final String[] words = event.mSuggestion.split(Constants.WORD_SEPARATOR);
+            NgramContext ngramContextForCurrentWord = event.mNgramContext;
+            for (int j = 0; j < words.length; j++) {
+                final String currentWord = words[j];
+                final boolean wasCurrentWordAutoCapitalized =
+                        (j == 0) ? event.mWasAutoCapitalized : false;
+                final WordEntryUpdate update = getUserHistoryEntryUpdate(dictionaryGroup,
+                        ngramContextForCurrentWord, currentWord, wasCurrentWordAutoCapitalized,
+                        event.mTimeStampInSeconds, event.mBlockPotentiallyOffensive,
+                        counts.get(i));
+                if (update != null) {
+                    updatesForDictionary.add(update);
+                }
+                ngramContextForCurrentWord =
+                        ngramContextForCurrentWord.getNextNgramContext(new WordInfo(currentWord));
+            }
+        }
+        for (final Map.Entry<ExpandableBinaryDictionary, ArrayList<WordEntryUpdate>> entry
+                : updates.entrySet()) {
+            UserHistoryDictionary.addToDictionary(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static int indexOfSameLearningEvent(@Nonnull final ArrayList<LearningEvent> events,
+            @Nonnull final LearningEvent event) {
+        for (int i = 0; i < events.size(); i++) {
+            final LearningEvent other = events.get(i);
+            if (other.mLocale.equals(event.mLocale)
+                    && other.mWasAutoCapitalized == event.mWasAutoCapitalized
+                    && other.mBlockPotentiallyOffensive == event.mBlockPotentiallyOffensive
+                    && other.mSuggestion.equals(event.mSuggestion)
+                    && other.mNgramContext.equals(event.mNgramContext)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     private void putWordIntoValidSpellingWordCache(
@@ -539,22 +806,25 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
         mValidSpellingWordWriteCache.put(capitalWord, capitalValid);
     }
 
-    private void addWordToUserHistory(final DictionaryGroup dictionaryGroup,
+    /**
+     * Gets the update of the user history dictionary for a word the user inputted.
+     *
+     * @return the update, or null if the word should not be learned.
+     */
+    @Nullable
+    private WordEntryUpdate getUserHistoryEntryUpdate(final DictionaryGroup dictionaryGroup,
             final NgramContext ngramContext, final String word, final boolean wasAutoCapitalized,
-            final int timeStampInSeconds, final boolean blockPotentiallyOffensive) {
-        final ExpandableBinaryDictionary userHistoryDictionary =
-                dictionaryGroup.getSubDict(Dictionary.TYPE_USER_HISTORY);
-        if (userHistoryDictionary == null || !isForLocale(userHistoryDictionary.mLocale)) {
-            return;
-        }
-        final int maxFreq = getFrequency(word);
+            final int timeStampInSeconds, final boolean blockPotentiallyOffensive,
+            final int count) {
+        final int maxFreq = getFrequency(dictionaryGroup, word);
         if (maxFreq == 0 && blockPotentiallyOffensive) {
-            return;
+            return null;
         }
         final String lowerCasedWord = word.toLowerCase(dictionaryGroup.mLocale);
         final String secondWord;
         if (wasAutoCapitalized) {
-            if (isValidSuggestionWord(word) && !isValidSuggestionWord(lowerCasedWord)) {
+            if (isValidWord(dictionaryGroup, word, ALL_DICTIONARY_TYPES)
+                    && !isValidWord(dictionaryGroup, lowerCasedWord, ALL_DICTIONARY_TYPES)) {
                 // If the word was auto-capitalized and exists only as a capitalized word in the
                 // dictionary, then we must not downcase it before registering it. For example,
                 // the name of the contacts in start-of-sentence position would come here with the
@@ -586,8 +856,13 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
         // We demote unrecognized words (frequency < 0, below) by specifying them as "invalid".
         // We don't add words with 0-frequency (assuming they would be profanity etc.).
         final boolean isValid = maxFreq > 0;
-        UserHistoryDictionary.addToDictionary(userHistoryDictionary, ngramContext, secondWord,
-                isValid, timeStampInSeconds);
+        return new WordEntryUpdate(ngramContext, secondWord, isValid, count, timeStampInSeconds);
+    }
+
+    private boolean isInUserHistory(final String word) {
+        final ExpandableBinaryDictionary userHistoryDictionary =
+                mDictionaryGroup.getSubDict(Dictionary.TYPE_USER_HISTORY);
+        return userHistoryDictionary != null && userHistoryDictionary.isInDictionary(word);
     }
 
     private void removeWord(final String dictName, final String word) {
@@ -602,13 +877,24 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
             @Nonnull final NgramContext ngramContext, final long timeStampInSeconds,
             final int eventType) {
         // TODO: Decide whether or not to remove the word on EVENT_BACKSPACE.
-        if (eventType != Constants.EVENT_BACKSPACE) {
-            removeWord(Dictionary.TYPE_USER_HISTORY, word);
-        }
-
-        // Update the spelling cache after unlearning. Words that are removed from user history
-        // and appear in no other language model are not considered valid.
-        putWordIntoValidSpellingWordCache("unlearnFromUserHistory", word.toLowerCase());
+        // A word unlearned right after it was committed is usually still pending: then it is
+        // just not learned, and the user history dictionary is left alone, unless the word had
+        // been learned there before.
+        final boolean shouldRemoveWord = eventType != Constants.EVENT_BACKSPACE;
+        final boolean wasPending = shouldRemoveWord && cancelPendingLearning(word, ngramContext);
+        // Unlearn on the thread that learns, so that this happens after the words already
+        // handed to it.
+        ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(new Runnable() {
+            @Override
+            public void run() {
+                if (shouldRemoveWord && (!wasPending || isInUserHistory(word))) {
+                    removeWord(Dictionary.TYPE_USER_HISTORY, word);
+                }
+                // Update the spelling cache after unlearning. Words that are removed from user
+                // history and appear in no other language model are not considered valid.
+                putWordIntoValidSpellingWordCache("unlearnFromUserHistory", word.toLowerCase());
+            }
+        });
     }
 
     // TODO: Revise the way to fusion suggestion results.
@@ -650,22 +936,23 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
             }
         }
 
-        return isValidWord(word, ALL_DICTIONARY_TYPES);
+        return isValidWord(mDictionaryGroup, word, ALL_DICTIONARY_TYPES);
     }
 
     public boolean isValidSuggestionWord(final String word) {
-        return isValidWord(word, ALL_DICTIONARY_TYPES);
+        return isValidWord(mDictionaryGroup, word, ALL_DICTIONARY_TYPES);
     }
 
-    private boolean isValidWord(final String word, final String[] dictionariesToCheck) {
+    private static boolean isValidWord(final DictionaryGroup dictionaryGroup, final String word,
+            final String[] dictionariesToCheck) {
         if (TextUtils.isEmpty(word)) {
             return false;
         }
-        if (mDictionaryGroup.mLocale == null) {
+        if (dictionaryGroup.mLocale == null) {
             return false;
         }
         for (final String dictType : dictionariesToCheck) {
-            final Dictionary dictionary = mDictionaryGroup.getDict(dictType);
+            final Dictionary dictionary = dictionaryGroup.getDict(dictType);
             // Ideally the passed map would come out of a {@link java.util.concurrent.Future} and
             // would be immutable once it's finished initializing, but concretely a null test is
             // probably good enough for the time being.
@@ -677,13 +964,13 @@ public class DictionaryFacilitatorImpl implements DictionaryFacilitator {
         return false;
     }
 
-    private int getFrequency(final String word) {
+    private static int getFrequency(final DictionaryGroup dictionaryGroup, final String word) {
         if (TextUtils.isEmpty(word)) {
             return Dictionary.NOT_A_PROBABILITY;
         }
         int maxFreq = Dictionary.NOT_A_PROBABILITY;
         for (final String dictType : ALL_DICTIONARY_TYPES) {
-            final Dictionary dictionary = mDictionaryGroup.getDict(dictType);
+            final Dictionary dictionary = dictionaryGroup.getDict(dictType);
             if (dictionary == null) continue;
             final int tempFreq = dictionary.getFrequency(word);
             if (tempFreq >= maxFreq) {
@@ -0,0 +1,290 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import com.android.inputmethod.annotations.UsedForTesting;
+import com.android.inputmethod.latin.common.Constants;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A bounded mirror of the text just before the cursor in the editor.
+ *
+ * Only the last {@link #getMaxLength()} chars are kept: older text is dropped from the head of
+ * the window as text is appended. All edits happen at the end of the text, which is how the
+ * keyboard edits the text before the cursor.
+ *
+ * The text is handed out as immutable {@link CharSequence} views sharing the backing array, so
+ * reading it does not copy. Chars that a view may still be reading are never overwritten:
+ * appending past the end of every view handed out so far is done in place, and appending after
+ * the text was truncated or cleared moves the window past the end of the views, in the same
+ * array as long as it has room. The backing array is only replaced once it is used up.
+ */
+public final class EditorTextMirror {
+    // The backing array is this many times larger than the window, so that text can be appended
+    // for a while before the window has to be moved back to the start of the array.
+    private static final int CAPACITY_MULTIPLIER = 2;
+
+    private final int mMaxLength;
+    // Note: all the following fields are synchronized by this object. The text is in
+    // [mStart, mEnd) of mChars.
+    @Nonnull
+    private char[] mChars;
+    private int mStart;
+    private int mEnd;
+    // The chars of mChars before this index may be read by views that have been handed out.
+    private int mSharedEnd;
+    // Incremented each time the text is cleared.
+    private int mGeneration;
+    // The offset of mStart in the text appended since the text was last cleared.
+    private int mStartOffset;
+    // The lowest end offset the text was truncated to since the last call to
+    // {@link #getLowestEndOffsetSinceLastCall}.
+    private int mLowestEndOffset;
+    // Incremented each time the text changes.
+    private int mModificationCount;
+
+    /**
+     * An immutable view of a range of chars of a backing array.
+     */
+    private static final class TextView implements CharSequence {
+        @Nonnull
+        private final char[] mChars;
+        private final int mOffset;
+        private final int mLength;
+
+        TextView(@Nonnull final char[] chars, final int offset, final int length) {
+            mChars = chars;
+            mOffset = offset;
+            mLength = length;
+        }
+
+        @Override
+        public int length() {
+            return mLength;
+        }
+
+        @Override
+        public char charAt(final int index) {
+            if (index < 0 || index >= mLength) {
+                throw new StringIndexOutOfBoundsException(index);
+            }
+            return mChars[mOffset + index];
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            if (start < 0 || end > mLength || start > end) {
+                throw new StringIndexOutOfBoundsException(
+                        "start=" + start + " end=" + end + " length=" + mLength);
+            }
+            return new TextView(mChars, mOffset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(mChars, mOffset, mLength);
+        }
+    }
+
+    public EditorTextMirror(final int maxLength) {
+        mMaxLength = maxLength;
+        mChars = new char[maxLength * CAPACITY_MULTIPLIER];
+    }
+
+    public int getMaxLength() {
+        return mMaxLength;
+    }
+
+    public synchronized int length() {
+        return mEnd - mStart;
+    }
+
+    public synchronized boolean isEmpty() {
+        return mEnd == mStart;
+    }
+
+    public synchronized void clear() {
+        // The views that were handed out may still read the start of the array: the next append
+        // moves the window past them.
+        mStart = mEnd = 0;
+        mGeneration++;
+        mStartOffset = mLowestEndOffset = 0;
+        mModificationCount++;
+    }
+
+    /**
+     * Truncates the text to the specified length. This may only shorten the text.
+     */
+    public synchronized void setLength(final int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("length=" + length);
+        }
+        if (mStart + length < mEnd) {
+            mEnd = mStart + length;
+            mModificationCount++;
+        }
+        mLowestEndOffset = Math.min(mLowestEndOffset, getEndOffset());
+    }
+
+    public synchronized void append(@Nonnull final CharSequence text) {
+        append(text, 0, text.length());
+    }
+
+    public synchronized void append(@Nonnull final CharSequence text, final int start,
+            final int end) {
+        int textStart = start;
+        if (end - textStart > mMaxLength) {
+            // Only the tail of the text fits in the window.
+            textStart = end - mMaxLength;
+            if (Character.isLowSurrogate(text.charAt(textStart))) {
+                textStart++;
+            }
+            clear();
+        }
+        final int textLength = end - textStart;
+        if (textLength == 0) {
+            return;
+        }
+        final int newLength = mEnd - mStart + textLength;
+        final int newStart = (newLength > mMaxLength)
+                ? adjustWindowStart(mStart + newLength - mMaxLength) : mStart;
+        mStartOffset += newStart - mStart;
+        if (mEnd < mSharedEnd || mEnd + textLength > mChars.length) {
+            // Either appending would overwrite chars that a view may still be reading, or there
+            // is no room left at the end of the array: move the window just past the chars the
+            // views may read, or to the start of a new array if this one has no room left.
+            final int keptLength = mEnd - newStart;
+            final int windowStart;
+            if (mSharedEnd + keptLength + textLength <= mChars.length) {
+                windowStart = mSharedEnd;
+                System.arraycopy(mChars, newStart, mChars, windowStart, keptLength);
+            } else {
+                final char[] chars = new char[Math.max(mMaxLength, keptLength + textLength)
+                        * CAPACITY_MULTIPLIER];
+                System.arraycopy(mChars, newStart, chars, 0, keptLength);
+                mChars = chars;
+                mSharedEnd = 0;
+                windowStart = 0;
+            }
+            mStart = windowStart;
+            mEnd = windowStart + keptLength;
+        } else {
+            mStart = newStart;
+        }
+        for (int i = textStart; i < end; i++) {
+            mChars[mEnd++] = text.charAt(i);
+        }
+        mModificationCount++;
+    }
+
+    /**
+     * Moves the start of the window forward so that it does not split a surrogate pair.
+     */
+    private int adjustWindowStart(final int start) {
+        if (start < mEnd && Character.isLowSurrogate(mChars[start])) {
+            return start + 1;
+        }
+        return start;
+    }
+
+    /**
+     * @return the code point just before the end of the text, or {@link Constants#NOT_A_CODE} if
+     * the text is empty.
+     */
+    public synchronized int getCodePointBeforeEnd() {
+        if (mEnd == mStart) {
+            return Constants.NOT_A_CODE;
+        }
+        return Character.codePointBefore(mChars, mEnd, mStart);
+    }
+
+    /**
+     * @return the code point ending <code>length</code> chars before the end of the text, or
+     * {@link Constants#NOT_A_CODE} if the text is not that long.
+     */
+    public synchronized int getCodePointBeforeEnd(final int length) {
+        final int end = mEnd - length;
+        if (length < 0 || end <= mStart) {
+            return Constants.NOT_A_CODE;
+        }
+        return Character.codePointBefore(mChars, end, mStart);
+    }
+
+    /**
+     * @return an immutable view of the whole text.
+     */
+    @Nonnull
+    public synchronized CharSequence getText() {
+        return getTail(mEnd - mStart);
+    }
+
+    /**
+     * @return an immutable view of the last <code>n</code> chars of the text, or of the whole
+     * text if it is shorter.
+     */
+    @Nonnull
+    public synchronized CharSequence getTail(final int n) {
+        final int length = Math.min(Math.max(n, 0), mEnd - mStart);
+        mSharedEnd = Math.max(mSharedEnd, mEnd);
+        return new TextView(mChars, mEnd - length, length);
+    }
+
+    /**
+     * @return a number that changes each time the text is cleared. Offsets are only comparable
+     * within the same generation.
+     */
+    public synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @return a number that changes each time the text changes.
+     */
+    public synchronized int getModificationCount() {
+        return mModificationCount;
+    }
+
+    /**
+     * @return the offset of the end of the text, counted in chars appended since the text was
+     * last cleared. Chars dropped from the head of the window still count.
+     */
+    public synchronized int getEndOffset() {
+        return mStartOffset + mEnd - mStart;
+    }
+
+    /**
+     * Returns the lowest end offset the text was truncated to since the last call, so that the
+     * text before this offset is known not to have changed. Meant for a single observer.
+     */
+    public synchronized int getLowestEndOffsetSinceLastCall() {
+        final int lowestEndOffset = mLowestEndOffset;
+        mLowestEndOffset = getEndOffset();
+        return lowestEndOffset;
+    }
+
+    @UsedForTesting
+    static boolean haveSameBackingArrayForTesting(@Nonnull final CharSequence view0,
+            @Nonnull final CharSequence view1) {
+        return ((TextView)view0).mChars == ((TextView)view1).mChars;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return new String(mChars, mStart, mEnd - mStart);
+    }
+}
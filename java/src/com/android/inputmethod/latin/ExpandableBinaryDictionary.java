@@ -20,6 +20,7 @@ import android.content.Context;
 import android.util.Log;
 
 import com.android.inputmethod.annotations.UsedForTesting;
+import com.android.inputmethod.latin.DictionaryFacilitator.DictionaryInitializationListener;
 import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
 import com.android.inputmethod.latin.common.ComposedData;
 import com.android.inputmethod.latin.common.FileUtils;
@@ -37,6 +38,7 @@ import com.android.inputmethod.latin.utils.WordInputEventForPersonalization;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
@@ -106,6 +108,10 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
 
     private Map<String, String> mAdditionalAttributeMap = null;
 
+    /** The listener to tell when the dictionary has been reloaded, if any. */
+    @Nullable
+    private volatile DictionaryInitializationListener mReloadListener;
+
     /* A extension for a binary dictionary file. */
     protected static final String DICT_FILE_EXTENSION = ".dict";
 
@@ -388,6 +394,55 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         });
     }
 
+    /**
+     * An update of the entries of a word with an n-gram context. This is immutable.
+     */
+    public static final class WordEntryUpdate {
+        @Nonnull public final NgramContext mNgramContext;
+        @Nonnull public final String mWord;
+        public final boolean mIsValidWord;
+        public final int mCount;
+        public final int mTimestamp;
+
+        public WordEntryUpdate(@Nonnull final NgramContext ngramContext,
+                @Nonnull final String word, final boolean isValidWord, final int count,
+                final int timestamp) {
+            mNgramContext = ngramContext;
+            mWord = word;
+            mIsValidWord = isValidWord;
+            mCount = count;
+            mTimestamp = timestamp;
+        }
+    }
+
+    /**
+     * Update dictionary for several words, in a single task holding the write lock.
+     */
+    public void updateEntriesForWords(@Nonnull final List<WordEntryUpdate> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        updateDictionaryWithWriteLock(new Runnable() {
+            @Override
+            public void run() {
+                final BinaryDictionary binaryDictionary = getBinaryDictionary();
+                if (binaryDictionary == null) {
+                    return;
+                }
+                for (final WordEntryUpdate update : updates) {
+                    if (!binaryDictionary.updateEntriesForWordWithNgramContext(
+                            update.mNgramContext, update.mWord, update.mIsValidWord,
+                            update.mCount, update.mTimestamp)) {
+                        if (DEBUG) {
+                            Log.e(TAG, "Cannot update counter. word: " + update.mWord
+                                    + " context: " + update.mNgramContext.toString());
+                        }
+                    }
+                }
+            }
+        });
+    }
+
     /**
      * Used by Sketch.
      * {@see https://cs.corp.google.com/#android/vendor/unbundled_google/packages/LatinIMEGoogle/tools/sketch/ime-simulator/src/com/android/inputmethod/sketch/imesimulator/ImeSimulator.java&q=updateEntriesForInputEventsCallback&l=286}
@@ -572,6 +627,14 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
         return mNeedsToRecreate;
     }
 
+    /**
+     * Sets the listener to tell each time the dictionary has been reloaded, so that the results
+     * computed from its previous contents can be dropped.
+     */
+    public void setReloadListener(@Nullable final DictionaryInitializationListener listener) {
+        mReloadListener = listener;
+    }
+
     /**
      * Load the current binary dictionary from internal storage. If the dictionary file doesn't
      * exists or needs to be regenerated, the new dictionary file will be asynchronously generated.
@@ -625,6 +688,10 @@ abstract public class ExpandableBinaryDictionary extends Dictionary {
                 } finally {
                     isReloading.set(false);
                 }
+                final DictionaryInitializationListener listener = mReloadListener;
+                if (listener != null) {
+                    listener.onDictionaryReloaded();
+                }
             }
         });
     }
@@ -56,6 +56,9 @@ public final class LastComposedWord {
             new InputPointers(DecoderSpecificConstants.DICTIONARY_MAX_WORD_LENGTH);
 
     private boolean mActive;
+    // The n-gram context for the word following this one, computed on first use. This is
+    // immutable, so computing it twice from different threads is harmless.
+    private NgramContext mNgramContextForNextWord;
 
     public static final LastComposedWord NOT_A_COMPOSED_WORD =
             new LastComposedWord(new ArrayList<Event>(), null, "", "",
@@ -87,6 +90,18 @@ public final class LastComposedWord {
         return mActive && !TextUtils.isEmpty(mCommittedWord) && !didCommitTypedWord();
     }
 
+    /**
+     * @return the n-gram context made of this word, for the word following it.
+     */
+    public NgramContext getNgramContextForNextWord() {
+        NgramContext ngramContext = mNgramContextForNextWord;
+        if (null == ngramContext) {
+            ngramContext = new NgramContext(new NgramContext.WordInfo(mCommittedWord.toString()));
+            mNgramContextForNextWord = ngramContext;
+        }
+        return ngramContext;
+    }
+
     private boolean didCommitTypedWord() {
         return TextUtils.equals(mTypedWord, mCommittedWord);
     }
@@ -320,6 +320,10 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
             postResumeSuggestionsInternal(shouldDelay, true /* forStartInput */);
         }
 
+        public void cancelResumeSuggestions() {
+            removeMessages(MSG_RESUME_SUGGESTIONS);
+        }
+
         public void postResetCaches(final boolean tryResumeSuggestions, final int remainingTries) {
             removeMessages(MSG_RESET_CACHES);
             sendMessage(obtainMessage(MSG_RESET_CACHES, tryResumeSuggestions ? 1 : 0,
@@ -351,6 +355,11 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
             return hasMessages(MSG_REOPEN_DICTIONARIES);
         }
 
+        @UsedForTesting
+        public boolean hasPendingResumeSuggestions() {
+            return hasMessages(MSG_RESUME_SUGGESTIONS);
+        }
+
         public void postUpdateShiftState() {
             removeMessages(MSG_UPDATE_SHIFT_STATE);
             sendMessageDelayed(obtainMessage(MSG_UPDATE_SHIFT_STATE),
@@ -625,12 +634,14 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
             // Remove user history dictionaries.
             PersonalizationHelper.removeAllUserHistoryDictionaries(this);
             mDictionaryFacilitator.clearUserHistoryDictionary(this);
+            mInputLogic.onDictionariesChanged();
         }
     }
 
     // Note that this method is called from a non-UI thread.
     @Override
     public void onUpdateMainDictionaryAvailability(final boolean isMainDictionaryAvailable) {
+        mInputLogic.onDictionariesChanged();
         final MainKeyboardView mainKeyboardView = mKeyboardSwitcher.getMainKeyboardView();
         if (mainKeyboardView != null) {
             mainKeyboardView.setMainDictionaryAvailability(isMainDictionaryAvailable);
@@ -641,6 +652,12 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         }
     }
 
+    // Note that this method is called from a non-UI thread.
+    @Override
+    public void onDictionaryReloaded() {
+        mInputLogic.onDictionariesChanged();
+    }
+
     void resetDictionaryFacilitatorIfNecessary() {
         final Locale subtypeSwitcherLocale = mRichImm.getCurrentSubtypeLocale();
         final Locale subtypeLocale;
@@ -1845,6 +1862,7 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
     @UsedForTesting
     void clearPersonalizedDictionariesForTest() {
         mDictionaryFacilitator.clearUserHistoryDictionary(this);
+        mInputLogic.onDictionariesChanged();
     }
 
     @UsedForTesting
@@ -1882,6 +1900,7 @@ public class LatinIME extends InputMethodService implements KeyboardActionListen
         final SettingsValues settingsValues = mSettings.getCurrent();
         p.println(settingsValues.dump());
         p.println(mDictionaryFacilitator.dump(this /* context */));
+        p.println(mInputLogic.mConnection.dumpLatencyHistograms());
         // TODO: Dump all settings values
     }
 
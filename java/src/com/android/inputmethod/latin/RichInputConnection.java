@@ -21,31 +21,36 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.SystemClock;
 import android.text.SpannableStringBuilder;
+import android.text.Spanned;
 import android.text.TextUtils;
 import android.text.style.CharacterStyle;
 import android.util.Log;
+import android.util.LruCache;
 import android.view.KeyEvent;
 import android.view.inputmethod.CompletionInfo;
 import android.view.inputmethod.CorrectionInfo;
+import android.view.inputmethod.EditorInfo;
 import android.view.inputmethod.ExtractedText;
 import android.view.inputmethod.ExtractedTextRequest;
 import android.view.inputmethod.InputConnection;
 import android.view.inputmethod.InputMethodManager;
 
 import com.android.inputmethod.compat.InputConnectionCompatUtils;
+import com.android.inputmethod.latin.TextAroundCursorPrefetcher.TextAroundCursor;
 import com.android.inputmethod.latin.common.Constants;
 import com.android.inputmethod.latin.common.UnicodeSurrogate;
 import com.android.inputmethod.latin.common.StringUtils;
 import com.android.inputmethod.latin.inputlogic.PrivateCommandPerformer;
 import com.android.inputmethod.latin.settings.SpacingAndPunctuations;
-import com.android.inputmethod.latin.utils.CapsModeUtils;
 import com.android.inputmethod.latin.utils.DebugLogUtils;
+import com.android.inputmethod.latin.utils.LatencyHistogram;
 import com.android.inputmethod.latin.utils.NgramContextUtils;
 import com.android.inputmethod.latin.utils.ScriptUtils;
 import com.android.inputmethod.latin.utils.SpannableStringUtils;
 import com.android.inputmethod.latin.utils.StatsUtils;
 import com.android.inputmethod.latin.utils.TextRange;
 
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nonnull;
@@ -67,6 +72,17 @@ public final class RichInputConnection implements PrivateCommandPerformer {
     private static final int NUM_CHARS_TO_GET_BEFORE_CURSOR = 40;
     private static final int NUM_CHARS_TO_GET_AFTER_CURSOR = 40;
     private static final int INVALID_CURSOR_POSITION = -1;
+    private static final int NGRAM_CONTEXT_INTERN_CACHE_SIZE = 16;
+    // Texts longer than this are not kept in the temporary object used to commit text.
+    private static final int LARGE_COMMITTED_TEXT_LENGTH = 1024;
+    // The chars that NgramContextUtils splits the text on.
+    private static final String NGRAM_CONTEXT_SEPARATOR_CHARS = " \t\n\u000B\f\r";
+    /**
+     * The maximum number of chars before the composing text that we keep a mirror of. Typing
+     * appends to the mirror, but older text is dropped past this length.
+     */
+    private static final int COMMITTED_TEXT_MIRROR_MAX_LENGTH =
+            Constants.EDITOR_CONTENTS_CACHE_SIZE * 2;
 
     /**
      * The amount of time a {@link #reloadTextCache} call needs to take for the keyboard to enter
@@ -78,6 +94,16 @@ public final class RichInputConnection implements PrivateCommandPerformer {
      * to take for the keyboard to enter the {@link #hasSlowInputConnection} state.
      */
     private static final long SLOW_INPUT_CONNECTION_ON_PARTIAL_RELOAD_MS = 200;
+    /**
+     * The amount of time we are willing to wait for the text around the cursor that is being
+     * prefetched. If it is not there by then, we degrade gracefully instead of blocking.
+     */
+    private static final long PREFETCHED_TEXT_WAIT_BUDGET_MS = 50;
+    /**
+     * The number of editor packages we keep InputConnection latencies for. The least recently
+     * started ones are forgotten first.
+     */
+    private static final int LATENCY_HISTOGRAM_PACKAGE_COUNT = 16;
 
     private static final int OPERATION_GET_TEXT_BEFORE_CURSOR = 0;
     private static final int OPERATION_GET_TEXT_AFTER_CURSOR = 1;
@@ -113,7 +139,46 @@ public final class RichInputConnection implements PrivateCommandPerformer {
      * This contains the committed text immediately preceding the cursor and the composing
      * text, if any. It is refreshed when the cursor moves by calling upon the TextView.
      */
-    private final StringBuilder mCommittedTextBeforeComposingText = new StringBuilder();
+    private final EditorTextMirror mCommittedTextBeforeComposingText =
+            new EditorTextMirror(COMMITTED_TEXT_MIRROR_MAX_LENGTH);
+    /**
+     * This answers the caps mode for {@link #mCommittedTextBeforeComposingText} incrementally.
+     */
+    private final CapsModeTracker mCapsModeTracker =
+            new CapsModeTracker(COMMITTED_TEXT_MIRROR_MAX_LENGTH);
+
+    /**
+     * The n-gram context last computed from the cached text before the cursor, along with what
+     * it was computed from. This is immutable so that it can be read from any thread.
+     */
+    private static final class CachedNgramContext {
+        public final int mModificationCount;
+        public final int mNthPreviousWord;
+        @Nonnull
+        public final SpacingAndPunctuations mSpacingAndPunctuations;
+        @Nonnull
+        public final String mComposingTextKey;
+        @Nonnull
+        public final NgramContext mNgramContext;
+
+        public CachedNgramContext(final int modificationCount, final int nthPreviousWord,
+                @Nonnull final SpacingAndPunctuations spacingAndPunctuations,
+                @Nonnull final String composingTextKey, @Nonnull final NgramContext ngramContext) {
+            mModificationCount = modificationCount;
+            mNthPreviousWord = nthPreviousWord;
+            mSpacingAndPunctuations = spacingAndPunctuations;
+            mComposingTextKey = composingTextKey;
+            mNgramContext = ngramContext;
+        }
+    }
+    @Nullable
+    private volatile CachedNgramContext mCachedNgramContext;
+    /**
+     * Equal n-gram contexts are shared, so that going back to a recent context (for example after
+     * deleting and retyping a word) does not keep new copies of it.
+     */
+    private final LruCache<NgramContext, NgramContext> mInternedNgramContexts =
+            new LruCache<>(NGRAM_CONTEXT_INTERN_CACHE_SIZE);
     /**
      * This contains the currently composing text, as LatinIME thinks the TextView is seeing it.
      */
@@ -134,6 +199,19 @@ public final class RichInputConnection implements PrivateCommandPerformer {
      */
     private long mLastSlowInputConnectionTime = -SLOW_INPUTCONNECTION_PERSIST_MS;
 
+    /**
+     * The text around the cursor, read ahead after each cursor move.
+     */
+    private final TextAroundCursorPrefetcher mTextAroundCursorPrefetcher =
+            new TextAroundCursorPrefetcher();
+    /**
+     * The latencies of the InputConnection reads, by editor package name. Synchronized by itself.
+     */
+    private final LruCache<String, LatencyHistogram> mLatencyHistograms =
+            new LruCache<>(LATENCY_HISTOGRAM_PACKAGE_COUNT);
+    @Nonnull
+    private LatencyHistogram mLatencyHistogram = new LatencyHistogram();
+
     public RichInputConnection(final InputMethodService parent) {
         mParent = parent;
         mIC = null;
@@ -155,6 +233,32 @@ public final class RichInputConnection implements PrivateCommandPerformer {
 
     public void onStartInput() {
         mLastSlowInputConnectionTime = -SLOW_INPUTCONNECTION_PERSIST_MS;
+        mTextAroundCursorPrefetcher.invalidate();
+        final EditorInfo editorInfo = mParent.getCurrentInputEditorInfo();
+        final String packageName = (null == editorInfo || null == editorInfo.packageName) ? ""
+                : editorInfo.packageName;
+        synchronized (mLatencyHistograms) {
+            LatencyHistogram latencyHistogram = mLatencyHistograms.get(packageName);
+            if (null == latencyHistogram) {
+                latencyHistogram = new LatencyHistogram();
+                mLatencyHistograms.put(packageName, latencyHistogram);
+            }
+            mLatencyHistogram = latencyHistogram;
+        }
+    }
+
+    /**
+     * @return the latencies of the InputConnection reads for each editor, for dumping.
+     */
+    public String dumpLatencyHistograms() {
+        final StringBuilder sb = new StringBuilder("InputConnection read latencies :");
+        synchronized (mLatencyHistograms) {
+            for (final Map.Entry<String, LatencyHistogram> entry
+                    : mLatencyHistograms.snapshot().entrySet()) {
+                sb.append("\n  ").append(entry.getKey()).append(" : ").append(entry.getValue());
+            }
+        }
+        return sb.toString();
     }
 
     private void checkConsistencyForDebug() {
@@ -166,8 +270,9 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         final ExtractedText et = mIC.getExtractedText(r, 0);
         final CharSequence beforeCursor = getTextBeforeCursor(Constants.EDITOR_CONTENTS_CACHE_SIZE,
                 0);
-        final StringBuilder internal = new StringBuilder(mCommittedTextBeforeComposingText)
-                .append(mComposingText);
+        final StringBuilder internal =
+                new StringBuilder(mCommittedTextBeforeComposingText.getText())
+                        .append(mComposingText);
         if (null == et || null == beforeCursor) return;
         final int actualLength = Math.min(beforeCursor.length(), internal.length());
         if (internal.length() > actualLength) {
@@ -242,6 +347,13 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         if (isConnected() && shouldFinishComposition) {
             mIC.finishComposingText();
         }
+        if (isConnected()) {
+            // Read ahead the text around the new cursor position, which is likely to be needed
+            // to resume suggestions on the word the cursor is touching.
+            mTextAroundCursorPrefetcher.prefetch(mIC, newSelStart, newSelEnd,
+                    NUM_CHARS_TO_GET_BEFORE_CURSOR, NUM_CHARS_TO_GET_AFTER_CURSOR,
+                    InputConnection.GET_TEXT_WITH_STYLES, mLatencyHistogram);
+        }
         return true;
     }
 
@@ -251,7 +363,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
      * @return true if successful
      */
     private boolean reloadTextCache() {
-        mCommittedTextBeforeComposingText.setLength(0);
+        mCommittedTextBeforeComposingText.clear();
         mIC = mParent.getCurrentInputConnection();
         // Call upon the inputconnection directly since our own method is using the cache, and
         // we want to refresh it.
@@ -283,6 +395,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
     public void finishComposingText() {
         if (DEBUG_BATCH_NESTING) checkBatchEdit();
         if (DEBUG_PREVIOUS_TEXT) checkConsistencyForDebug();
+        mTextAroundCursorPrefetcher.invalidate();
         // TODO: this is not correct! The cursor is not necessarily after the composing text.
         // In the practice right now this is only called when input ends so it will be reset so
         // it works, but it's wrong and should be fixed.
@@ -302,6 +415,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
     public void commitText(final CharSequence text, final int newCursorPosition) {
         if (DEBUG_BATCH_NESTING) checkBatchEdit();
         if (DEBUG_PREVIOUS_TEXT) checkConsistencyForDebug();
+        mTextAroundCursorPrefetcher.invalidate();
         mCommittedTextBeforeComposingText.append(text);
         // TODO: the following is exceedingly error-prone. Right now when the cursor is in the
         // middle of the composing word mComposingText only holds the part of the composing text
@@ -310,6 +424,12 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         mExpectedSelEnd = mExpectedSelStart;
         mComposingText.setLength(0);
         if (isConnected()) {
+            if (!(text instanceof Spanned)) {
+                // Plain text has no spans to fix up, so commit it as is instead of copying it.
+                // This matters for long texts, like dictated text or text from a text key.
+                mIC.commitText(text, newCursorPosition);
+                return;
+            }
             mTempObjectForCommitText.clear();
             mTempObjectForCommitText.append(text);
             final CharacterStyle[] spans = mTempObjectForCommitText.getSpans(
@@ -332,6 +452,10 @@ public final class RichInputConnection implements PrivateCommandPerformer {
                 }
             }
             mIC.commitText(mTempObjectForCommitText, newCursorPosition);
+            if (text.length() > LARGE_COMMITTED_TEXT_LENGTH) {
+                // Don't hold on to the storage of a long text until the next commit.
+                mTempObjectForCommitText = new SpannableStringBuilder();
+            }
         }
     }
 
@@ -379,27 +503,31 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         // heavy pressing of delete, for example DEFAULT_TEXT_CACHE_SIZE - 5 times or so.
         // getCapsMode should be updated to be able to return a "not enough info" result so that
         // we can get more context only when needed.
-        if (TextUtils.isEmpty(mCommittedTextBeforeComposingText) && 0 != mExpectedSelStart) {
+        if (mCommittedTextBeforeComposingText.isEmpty() && 0 != mExpectedSelStart) {
             if (!reloadTextCache()) {
                 Log.w(TAG, "Unable to connect to the editor. "
                         + "Setting caps mode without knowing text.");
             }
         }
-        // This never calls InputConnection#getCapsMode - in fact, it's a static method that
-        // never blocks or initiates IPC.
-        // TODO: don't call #toString() here. Instead, all accesses to
-        // mCommittedTextBeforeComposingText should be done on the main thread.
-        return CapsModeUtils.getCapsMode(mCommittedTextBeforeComposingText.toString(), inputType,
+        // This never calls InputConnection#getCapsMode - it never blocks or initiates IPC, and
+        // only looks at the text committed since the last call.
+        return mCapsModeTracker.getCapsMode(mCommittedTextBeforeComposingText, inputType,
                 spacingAndPunctuations, hasSpaceBefore);
     }
 
     public int getCodePointBeforeCursor() {
-        final int length = mCommittedTextBeforeComposingText.length();
-        if (length < 1) return Constants.NOT_A_CODE;
-        return Character.codePointBefore(mCommittedTextBeforeComposingText, length);
+        return mCommittedTextBeforeComposingText.getCodePointBeforeEnd();
     }
 
-    public CharSequence getTextBeforeCursor(final int n, final int flags) {
+    /**
+     * @return the code point before the cursor once <code>length</code> chars before the cursor
+     * have been deleted, or {@link Constants#NOT_A_CODE} if it is not known.
+     */
+    public int getCodePointBeforeCursor(final int length) {
+        return mCommittedTextBeforeComposingText.getCodePointBeforeEnd(length);
+    }
+
+    private boolean canGetTextBeforeCursorFromCache(final int n) {
         final int cachedLength =
                 mCommittedTextBeforeComposingText.length() + mComposingText.length();
         // If we have enough characters to satisfy the request, or if we have all characters in
@@ -407,9 +535,12 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         // However, if we don't have an expected cursor position, then we should always
         // go fetch the cache again (as it happens, INVALID_CURSOR_POSITION < 0, so we need to
         // test for this explicitly)
-        if (INVALID_CURSOR_POSITION != mExpectedSelStart
-                && (cachedLength >= n || cachedLength >= mExpectedSelStart)) {
-            final StringBuilder s = new StringBuilder(mCommittedTextBeforeComposingText);
+        return INVALID_CURSOR_POSITION != mExpectedSelStart
+                && (cachedLength >= n || cachedLength >= mExpectedSelStart);
+    }
+
+    public CharSequence getTextBeforeCursor(final int n, final int flags) {
+        if (canGetTextBeforeCursorFromCache(n)) {
             // We call #toString() here to create a temporary object.
             // In some situations, this method is called on a worker thread, and it's possible
             // the main thread touches the contents of mComposingText while this worker thread
@@ -417,11 +548,18 @@ public final class RichInputConnection implements PrivateCommandPerformer {
             // so we call #toString() on it. That will result in the return value being strictly
             // speaking wrong, but since this is used for basing bigram probability off, and
             // it's only going to matter for one getSuggestions call, it's fine in the practice.
-            s.append(mComposingText.toString());
-            if (s.length() > n) {
-                s.delete(0, s.length() - n);
+            final String composingText = mComposingText.toString();
+            if (composingText.isEmpty()) {
+                // The mirror hands out immutable views, so this does not copy the text.
+                return mCommittedTextBeforeComposingText.getTail(n);
+            }
+            if (composingText.length() >= n) {
+                return composingText.substring(composingText.length() - n);
             }
-            return s;
+            return new StringBuilder(n)
+                    .append(mCommittedTextBeforeComposingText.getTail(
+                            n - composingText.length()))
+                    .append(composingText);
         }
         return getTextBeforeCursorAndDetectLaggyConnection(
                 OPERATION_GET_TEXT_BEFORE_CURSOR,
@@ -462,6 +600,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
 
     private void detectLaggyConnection(final int operation, final long timeout, final long startTime) {
         final long duration = SystemClock.uptimeMillis() - startTime;
+        mLatencyHistogram.record(duration);
         if (duration >= timeout) {
             final String operationName = OPERATION_NAMES[operation];
             Log.w(TAG, "Slow InputConnection: " + operationName + " took " + duration + " ms.");
@@ -472,6 +611,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
 
     public void deleteTextBeforeCursor(final int beforeLength) {
         if (DEBUG_BATCH_NESTING) checkBatchEdit();
+        mTextAroundCursorPrefetcher.invalidate();
         // TODO: the following is incorrect if the cursor is not immediately after the composition.
         // Right now we never come here in this case because we reset the composing state before we
         // come here in this case, but we need to fix this.
@@ -509,6 +649,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
 
     public void sendKeyEvent(final KeyEvent keyEvent) {
         if (DEBUG_BATCH_NESTING) checkBatchEdit();
+        mTextAroundCursorPrefetcher.invalidate();
         if (keyEvent.getAction() == KeyEvent.ACTION_DOWN) {
             if (DEBUG_PREVIOUS_TEXT) checkConsistencyForDebug();
             // This method is only called for enter or backspace when speaking to old applications
@@ -526,9 +667,8 @@ public final class RichInputConnection implements PrivateCommandPerformer {
             case KeyEvent.KEYCODE_DEL:
                 if (0 == mComposingText.length()) {
                     if (mCommittedTextBeforeComposingText.length() > 0) {
-                        mCommittedTextBeforeComposingText.delete(
-                                mCommittedTextBeforeComposingText.length() - 1,
-                                mCommittedTextBeforeComposingText.length());
+                        mCommittedTextBeforeComposingText.setLength(
+                                mCommittedTextBeforeComposingText.length() - 1);
                     }
                 } else {
                     mComposingText.delete(mComposingText.length() - 1, mComposingText.length());
@@ -562,9 +702,10 @@ public final class RichInputConnection implements PrivateCommandPerformer {
     public void setComposingRegion(final int start, final int end) {
         if (DEBUG_BATCH_NESTING) checkBatchEdit();
         if (DEBUG_PREVIOUS_TEXT) checkConsistencyForDebug();
+        mTextAroundCursorPrefetcher.invalidate();
         final CharSequence textBeforeCursor =
                 getTextBeforeCursor(Constants.EDITOR_CONTENTS_CACHE_SIZE + (end - start), 0);
-        mCommittedTextBeforeComposingText.setLength(0);
+        mCommittedTextBeforeComposingText.clear();
         if (!TextUtils.isEmpty(textBeforeCursor)) {
             // The cursor is not necessarily at the end of the composing text, but we have its
             // position in mExpectedSelStart and mExpectedSelEnd. In this case we want the start
@@ -575,7 +716,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
             mComposingText.append(textBeforeCursor.subSequence(indexOfStartOfComposingText,
                     textBeforeCursor.length()));
             mCommittedTextBeforeComposingText.append(
-                    textBeforeCursor.subSequence(0, indexOfStartOfComposingText));
+                    textBeforeCursor, 0, indexOfStartOfComposingText);
         }
         if (isConnected()) {
             mIC.setComposingRegion(start, end);
@@ -585,6 +726,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
     public void setComposingText(final CharSequence text, final int newCursorPosition) {
         if (DEBUG_BATCH_NESTING) checkBatchEdit();
         if (DEBUG_PREVIOUS_TEXT) checkConsistencyForDebug();
+        mTextAroundCursorPrefetcher.invalidate();
         mExpectedSelStart += text.length() - mComposingText.length();
         mExpectedSelEnd = mExpectedSelStart;
         mComposingText.setLength(0);
@@ -611,6 +753,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
     public boolean setSelection(final int start, final int end) {
         if (DEBUG_BATCH_NESTING) checkBatchEdit();
         if (DEBUG_PREVIOUS_TEXT) checkConsistencyForDebug();
+        mTextAroundCursorPrefetcher.invalidate();
         if (start < 0 || end < 0) {
             return false;
         }
@@ -639,6 +782,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
     public void commitCompletion(final CompletionInfo completionInfo) {
         if (DEBUG_BATCH_NESTING) checkBatchEdit();
         if (DEBUG_PREVIOUS_TEXT) checkConsistencyForDebug();
+        mTextAroundCursorPrefetcher.invalidate();
         CharSequence text = completionInfo.getText();
         // text should never be null, but just in case, it's better to insert nothing than to crash
         if (null == text) text = "";
@@ -660,6 +804,10 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         if (!isConnected()) {
             return NgramContext.EMPTY_PREV_WORDS_INFO;
         }
+        if (!DEBUG_PREVIOUS_TEXT
+                && canGetTextBeforeCursorFromCache(NUM_CHARS_TO_GET_BEFORE_CURSOR)) {
+            return getNgramContextFromNthPreviousWordInCache(spacingAndPunctuations, n);
+        }
         final CharSequence prev = getTextBeforeCursor(NUM_CHARS_TO_GET_BEFORE_CURSOR, 0);
         if (DEBUG_PREVIOUS_TEXT && null != prev) {
             final int checkLength = NUM_CHARS_TO_GET_BEFORE_CURSOR - 1;
@@ -669,7 +817,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
             // composing text that is before the cursor, but this is very confusing. We should
             // fix it.
             final StringBuilder internal = new StringBuilder()
-                    .append(mCommittedTextBeforeComposingText).append(mComposingText);
+                    .append(mCommittedTextBeforeComposingText.getText()).append(mComposingText);
             if (internal.length() > checkLength) {
                 internal.delete(0, internal.length() - checkLength);
                 if (!(reference.equals(internal.toString()))) {
@@ -683,6 +831,75 @@ public final class RichInputConnection implements PrivateCommandPerformer {
                 prev, spacingAndPunctuations, n);
     }
 
+    /**
+     * Gets the n-gram context from the cached text before the cursor. The context only changes
+     * when the cached text does, so this reuses the context computed last time if it can.
+     */
+    @Nonnull
+    private NgramContext getNgramContextFromNthPreviousWordInCache(
+            final SpacingAndPunctuations spacingAndPunctuations, final int n) {
+        final int modificationCount = mCommittedTextBeforeComposingText.getModificationCount();
+        final String composingTextKey = getComposingTextKeyForNgramContext(n);
+        final CachedNgramContext cachedNgramContext = mCachedNgramContext;
+        if (null != cachedNgramContext
+                && cachedNgramContext.mModificationCount == modificationCount
+                && cachedNgramContext.mNthPreviousWord == n
+                && cachedNgramContext.mSpacingAndPunctuations == spacingAndPunctuations
+                && cachedNgramContext.mComposingTextKey.equals(composingTextKey)) {
+            return cachedNgramContext.mNgramContext;
+        }
+        final CharSequence prev;
+        if (composingTextKey.isEmpty()) {
+            prev = mCommittedTextBeforeComposingText.getTail(NUM_CHARS_TO_GET_BEFORE_CURSOR);
+        } else if (composingTextKey.length() >= NUM_CHARS_TO_GET_BEFORE_CURSOR) {
+            prev = composingTextKey.substring(
+                    composingTextKey.length() - NUM_CHARS_TO_GET_BEFORE_CURSOR);
+        } else {
+            prev = new StringBuilder(NUM_CHARS_TO_GET_BEFORE_CURSOR)
+                    .append(mCommittedTextBeforeComposingText.getTail(
+                            NUM_CHARS_TO_GET_BEFORE_CURSOR - composingTextKey.length()))
+                    .append(composingTextKey);
+        }
+        final NgramContext ngramContext = internNgramContext(
+                NgramContextUtils.getNgramContextFromNthPreviousWord(
+                        prev, spacingAndPunctuations, n));
+        mCachedNgramContext = new CachedNgramContext(modificationCount, n,
+                spacingAndPunctuations, composingTextKey, ngramContext);
+        return ngramContext;
+    }
+
+    @Nonnull
+    private NgramContext internNgramContext(@Nonnull final NgramContext ngramContext) {
+        synchronized (mInternedNgramContexts) {
+            final NgramContext internedNgramContext = mInternedNgramContexts.get(ngramContext);
+            if (null != internedNgramContext) {
+                return internedNgramContext;
+            }
+            mInternedNgramContexts.put(ngramContext, ngramContext);
+            return ngramContext;
+        }
+    }
+
+    /**
+     * Returns the part of the composing text the n-gram context is computed from. The context is
+     * computed by splitting the text on whitespace, so when the composing text is a single word
+     * and we look before it, only whether there is one and its first char matter: typing the rest
+     * of the word does not change the context.
+     */
+    @Nonnull
+    private String getComposingTextKeyForNgramContext(final int n) {
+        final String composingText = mComposingText.toString();
+        if (n < 2 || composingText.isEmpty()) {
+            return composingText;
+        }
+        for (int i = 0; i < composingText.length(); i++) {
+            if (NGRAM_CONTEXT_SEPARATOR_CHARS.indexOf(composingText.charAt(i)) >= 0) {
+                return composingText;
+            }
+        }
+        return composingText.substring(0, 1);
+    }
+
     private static boolean isPartOfCompositionForScript(final int codePoint,
             final SpacingAndPunctuations spacingAndPunctuations, final int scriptId) {
         // We always consider word connectors part of compositions.
@@ -705,16 +922,31 @@ public final class RichInputConnection implements PrivateCommandPerformer {
         if (!isConnected()) {
             return null;
         }
-        final CharSequence before = getTextBeforeCursorAndDetectLaggyConnection(
-                OPERATION_GET_WORD_RANGE_AT_CURSOR,
-                SLOW_INPUT_CONNECTION_ON_PARTIAL_RELOAD_MS,
-                NUM_CHARS_TO_GET_BEFORE_CURSOR,
-                InputConnection.GET_TEXT_WITH_STYLES);
-        final CharSequence after = getTextAfterCursorAndDetectLaggyConnection(
-                OPERATION_GET_WORD_RANGE_AT_CURSOR,
-                SLOW_INPUT_CONNECTION_ON_PARTIAL_RELOAD_MS,
-                NUM_CHARS_TO_GET_AFTER_CURSOR,
-                InputConnection.GET_TEXT_WITH_STYLES);
+        final CharSequence before;
+        final CharSequence after;
+        if (mTextAroundCursorPrefetcher.hasPrefetchFor(mExpectedSelStart, mExpectedSelEnd)) {
+            final TextAroundCursor textAroundCursor =
+                    mTextAroundCursorPrefetcher.get(PREFETCHED_TEXT_WAIT_BUDGET_MS);
+            if (null == textAroundCursor) {
+                // The editor is slow to answer: give up on the word rather than block on it.
+                Log.w(TAG, "Text around the cursor is not available within "
+                        + PREFETCHED_TEXT_WAIT_BUDGET_MS + " ms.");
+                return null;
+            }
+            before = textAroundCursor.mTextBeforeCursor;
+            after = textAroundCursor.mTextAfterCursor;
+        } else {
+            before = getTextBeforeCursorAndDetectLaggyConnection(
+                    OPERATION_GET_WORD_RANGE_AT_CURSOR,
+                    SLOW_INPUT_CONNECTION_ON_PARTIAL_RELOAD_MS,
+                    NUM_CHARS_TO_GET_BEFORE_CURSOR,
+                    InputConnection.GET_TEXT_WITH_STYLES);
+            after = getTextAfterCursorAndDetectLaggyConnection(
+                    OPERATION_GET_WORD_RANGE_AT_CURSOR,
+                    SLOW_INPUT_CONNECTION_ON_PARTIAL_RELOAD_MS,
+                    NUM_CHARS_TO_GET_AFTER_CURSOR,
+                    InputConnection.GET_TEXT_WITH_STYLES);
+        }
         if (before == null || after == null) {
             return null;
         }
@@ -756,21 +988,51 @@ public final class RichInputConnection implements PrivateCommandPerformer {
                         hasUrlSpans);
     }
 
+    /**
+     * Returns the word right before the cursor, as far as the text before the cursor is cached,
+     * without asking the editor.
+     *
+     * This does not look at the text after the cursor, so it is only the word at the cursor if
+     * the cursor is not followed by a word character.
+     *
+     * @param spacingAndPunctuations the rules for spacing and punctuation
+     * @param scriptId the script we consider to be writing words, as one of ScriptUtils.SCRIPT_*
+     * @return the word before the cursor, which may be empty, or null if the text before the
+     * cursor is not cached
+     */
+    @Nullable
+    public String getWordBeforeCursorFromCache(
+            final SpacingAndPunctuations spacingAndPunctuations, final int scriptId) {
+        if (hasSelection() || !canGetTextBeforeCursorFromCache(NUM_CHARS_TO_GET_BEFORE_CURSOR)) {
+            return null;
+        }
+        final CharSequence before = getTextBeforeCursor(NUM_CHARS_TO_GET_BEFORE_CURSOR, 0);
+        int startIndexInBefore = before.length();
+        while (startIndexInBefore > 0) {
+            final int codePoint = Character.codePointBefore(before, startIndexInBefore);
+            if (!isPartOfCompositionForScript(codePoint, spacingAndPunctuations, scriptId)) {
+                break;
+            }
+            startIndexInBefore -= Character.charCount(codePoint);
+        }
+        return before.subSequence(startIndexInBefore, before.length()).toString();
+    }
+
     public boolean isCursorTouchingWord(final SpacingAndPunctuations spacingAndPunctuations,
             boolean checkTextAfter) {
         if (checkTextAfter && isCursorFollowedByWordCharacter(spacingAndPunctuations)) {
             // If what's after the cursor is a word character, then we're touching a word.
             return true;
         }
-        final String textBeforeCursor = mCommittedTextBeforeComposingText.toString();
+        final CharSequence textBeforeCursor = mCommittedTextBeforeComposingText.getText();
         int indexOfCodePointInJavaChars = textBeforeCursor.length();
         int consideredCodePoint = 0 == indexOfCodePointInJavaChars ? Constants.NOT_A_CODE
-                : textBeforeCursor.codePointBefore(indexOfCodePointInJavaChars);
+                : Character.codePointBefore(textBeforeCursor, indexOfCodePointInJavaChars);
         // Search for the first non word-connector char
         if (spacingAndPunctuations.isWordConnector(consideredCodePoint)) {
             indexOfCodePointInJavaChars -= Character.charCount(consideredCodePoint);
             consideredCodePoint = 0 == indexOfCodePointInJavaChars ? Constants.NOT_A_CODE
-                    : textBeforeCursor.codePointBefore(indexOfCodePointInJavaChars);
+                    : Character.codePointBefore(textBeforeCursor, indexOfCodePointInJavaChars);
         }
         return !(Constants.NOT_A_CODE == consideredCodePoint
                 || spacingAndPunctuations.isWordSeparator(consideredCodePoint)
@@ -779,7 +1041,16 @@ public final class RichInputConnection implements PrivateCommandPerformer {
 
     public boolean isCursorFollowedByWordCharacter(
             final SpacingAndPunctuations spacingAndPunctuations) {
-        final CharSequence after = getTextAfterCursor(1, 0);
+        final CharSequence after;
+        if (mTextAroundCursorPrefetcher.hasPrefetchFor(mExpectedSelStart, mExpectedSelEnd)) {
+            final TextAroundCursor textAroundCursor =
+                    mTextAroundCursorPrefetcher.get(PREFETCHED_TEXT_WAIT_BUDGET_MS);
+            // If the editor is slow to answer, assume there is no word character after the
+            // cursor rather than block on it.
+            after = (null == textAroundCursor) ? null : textAroundCursor.mTextAfterCursor;
+        } else {
+            after = getTextAfterCursor(1, 0);
+        }
         if (TextUtils.isEmpty(after)) {
             return false;
         }
@@ -897,7 +1168,7 @@ public final class RichInputConnection implements PrivateCommandPerformer {
      * does not matter too much in the practice.
      */
     public boolean textBeforeCursorLooksLikeURL() {
-        return StringUtils.lastPartLooksLikeURL(mCommittedTextBeforeComposingText);
+        return StringUtils.lastPartLooksLikeURL(mCommittedTextBeforeComposingText.getText());
     }
 
     /**
@@ -908,7 +1179,8 @@ public final class RichInputConnection implements PrivateCommandPerformer {
      * long enough for this use.
      */
     public boolean isInsideDoubleQuoteOrAfterDigit() {
-        return StringUtils.isInsideDoubleQuoteOrAfterDigit(mCommittedTextBeforeComposingText);
+        return StringUtils.isInsideDoubleQuoteOrAfterDigit(
+                mCommittedTextBeforeComposingText.getText());
     }
 
     /**
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.inputmethod.InputConnection;
+
+import com.android.inputmethod.latin.utils.ExecutorUtils;
+import com.android.inputmethod.latin.utils.LatencyHistogram;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * Reads the text around the cursor from the editor on a worker thread, so that the UI thread
+ * does not have to block on the InputConnection IPC when it needs it later.
+ *
+ * A prefetch is made for a given selection, and is only served for this selection. The methods
+ * of this class are meant to be called from the UI thread.
+ */
+public final class TextAroundCursorPrefetcher {
+    private static final String TAG = TextAroundCursorPrefetcher.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    public static final class TextAroundCursor {
+        @Nullable
+        public final CharSequence mTextBeforeCursor;
+        @Nullable
+        public final CharSequence mTextAfterCursor;
+
+        public TextAroundCursor(@Nullable final CharSequence textBeforeCursor,
+                @Nullable final CharSequence textAfterCursor) {
+            mTextBeforeCursor = textBeforeCursor;
+            mTextAfterCursor = textAfterCursor;
+        }
+    }
+
+    @Nullable
+    private Future<TextAroundCursor> mPrefetch;
+    private int mSelectionStart;
+    private int mSelectionEnd;
+
+    /**
+     * Starts reading the text around the cursor for the given selection.
+     *
+     * @param ic the InputConnection to read the text from.
+     * @param selectionStart the selection start the text is read for.
+     * @param selectionEnd the selection end the text is read for.
+     * @param beforeLength the number of chars to read before the cursor.
+     * @param afterLength the number of chars to read after the cursor.
+     * @param flags the flags of the reads, see {@link InputConnection#getTextBeforeCursor}.
+     * @param latencyHistogram the histogram to record the latency of each read to.
+     */
+    public void prefetch(@Nonnull final InputConnection ic, final int selectionStart,
+            final int selectionEnd, final int beforeLength, final int afterLength,
+            final int flags, @Nonnull final LatencyHistogram latencyHistogram) {
+        invalidate();
+        mSelectionStart = selectionStart;
+        mSelectionEnd = selectionEnd;
+        mPrefetch = ExecutorUtils.getBackgroundExecutor(ExecutorUtils.INPUT_CONNECTION).submit(
+                new Callable<TextAroundCursor>() {
+                    @Override
+                    public TextAroundCursor call() {
+                        long startTime = SystemClock.uptimeMillis();
+                        final CharSequence textBeforeCursor =
+                                ic.getTextBeforeCursor(beforeLength, flags);
+                        latencyHistogram.record(SystemClock.uptimeMillis() - startTime);
+                        startTime = SystemClock.uptimeMillis();
+                        final CharSequence textAfterCursor =
+                                ic.getTextAfterCursor(afterLength, flags);
+                        latencyHistogram.record(SystemClock.uptimeMillis() - startTime);
+                        return new TextAroundCursor(textBeforeCursor, textAfterCursor);
+                    }
+                });
+    }
+
+    /**
+     * Forgets the prefetched text. This should be called whenever the text around the cursor
+     * may have changed.
+     */
+    public void invalidate() {
+        if (mPrefetch != null) {
+            mPrefetch.cancel(false /* mayInterruptIfRunning */);
+            mPrefetch = null;
+        }
+    }
+
+    /**
+     * @return whether a prefetch was made for the given selection.
+     */
+    public boolean hasPrefetchFor(final int selectionStart, final int selectionEnd) {
+        return mPrefetch != null && mSelectionStart == selectionStart
+                && mSelectionEnd == selectionEnd;
+    }
+
+    /**
+     * Returns the prefetched text, waiting at most for the given budget if it is still being read.
+     *
+     * @param budgetMs the maximum amount of time to wait for, in milliseconds.
+     * @return the prefetched text, or null if there is no prefetch or if it did not complete
+     * within the budget.
+     */
+    @Nullable
+    public TextAroundCursor get(final long budgetMs) {
+        if (mPrefetch == null) {
+            return null;
+        }
+        try {
+            return mPrefetch.get(budgetMs, TimeUnit.MILLISECONDS);
+        } catch (final TimeoutException e) {
+            if (DEBUG) {
+                Log.d(TAG, "Prefetch did not complete within " + budgetMs + " ms.");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            Log.e(TAG, "Failed to prefetch the text around the cursor.", e.getCause());
+        }
+        return null;
+    }
+}
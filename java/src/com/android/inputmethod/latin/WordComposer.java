@@ -24,7 +24,6 @@ import com.android.inputmethod.latin.common.ComposedData;
 import com.android.inputmethod.latin.common.Constants;
 import com.android.inputmethod.latin.common.CoordinateUtils;
 import com.android.inputmethod.latin.common.InputPointers;
-import com.android.inputmethod.latin.common.StringUtils;
 import com.android.inputmethod.latin.define.DebugFlags;
 import com.android.inputmethod.latin.define.DecoderSpecificConstants;
 
@@ -67,6 +66,10 @@ public final class WordComposer {
 
     // Cache these values for performance
     private CharSequence mTypedWordCache;
+    // The last snapshot of the composed data. This is immutable, so it is handed out again as
+    // long as the typed word and the batch mode have not changed. The input pointers are not
+    // copied into snapshots, so they don't need to be checked.
+    private ComposedData mComposedDataSnapshot;
     private int mCapsCount;
     private int mDigitsCount;
     private int mCapitalizedMode;
@@ -94,7 +97,15 @@ public final class WordComposer {
     }
 
     public ComposedData getComposedDataSnapshot() {
-        return new ComposedData(getInputPointers(), isBatchMode(), mTypedWordCache.toString());
+        final ComposedData snapshot = mComposedDataSnapshot;
+        final String typedWord = mTypedWordCache.toString();
+        if (null != snapshot && snapshot.mIsBatchMode == isBatchMode()
+                && snapshot.mTypedWord.equals(typedWord)) {
+            return snapshot;
+        }
+        mComposedDataSnapshot =
+                new ComposedData(getInputPointers(), isBatchMode(), typedWord);
+        return mComposedDataSnapshot;
     }
 
     /**
@@ -234,21 +245,30 @@ public final class WordComposer {
     public boolean moveCursorByAndReturnIfInsideComposingWord(final int expectedMoveAmount) {
         int actualMoveAmount = 0;
         int cursorPos = mCursorPositionWithinWord;
-        // TODO: Don't make that copy. We can do this directly from mTypedWordCache.
-        final int[] codePoints = StringUtils.toCodePointArray(mTypedWordCache);
+        // Walk the typed word directly rather than copying it to an array of code points.
+        final CharSequence typedWord = mTypedWordCache;
+        final int typedWordLength = typedWord.length();
+        int charIndex = Character.offsetByCodePoints(typedWord, 0,
+                Math.min(cursorPos, mCodePointSize));
         if (expectedMoveAmount >= 0) {
             // Moving the cursor forward for the expected amount or until the end of the word has
             // been reached, whichever comes first.
-            while (actualMoveAmount < expectedMoveAmount && cursorPos < codePoints.length) {
-                actualMoveAmount += Character.charCount(codePoints[cursorPos]);
+            while (actualMoveAmount < expectedMoveAmount && charIndex < typedWordLength) {
+                final int charCount =
+                        Character.charCount(Character.codePointAt(typedWord, charIndex));
+                actualMoveAmount += charCount;
+                charIndex += charCount;
                 ++cursorPos;
             }
         } else {
             // Moving the cursor backward for the expected amount or until the start of the word
             // has been reached, whichever comes first.
-            while (actualMoveAmount > expectedMoveAmount && cursorPos > 0) {
+            while (actualMoveAmount > expectedMoveAmount && charIndex > 0) {
+                final int charCount =
+                        Character.charCount(Character.codePointBefore(typedWord, charIndex));
+                actualMoveAmount -= charCount;
+                charIndex -= charCount;
                 --cursorPos;
-                actualMoveAmount -= Character.charCount(codePoints[cursorPos]);
             }
         }
         // If the actual and expected amounts differ, we crossed the start or the end of the word
@@ -86,6 +86,9 @@ public final class InputLogic {
     public SuggestedWords mSuggestedWords = SuggestedWords.getEmptyInstance();
     public final Suggest mSuggest;
     private final DictionaryFacilitator mDictionaryFacilitator;
+    // The suggestions computed for the words the cursor recently touched.
+    private final RecorrectionSuggestionsCache mRecorrectionSuggestionsCache =
+            new RecorrectionSuggestionsCache();
 
     public LastComposedWord mLastComposedWord = LastComposedWord.NOT_A_COMPOSED_WORD;
     // This has package visibility so it can be accessed from InputLogicHandler.
@@ -109,6 +112,14 @@ public final class InputLogic {
     // Note: This does not have a composing span, so it must be handled separately.
     private String mWordBeingCorrectedByCursor = null;
 
+    // Whether the cursor was followed by a word character when the backspace key was pressed.
+    // This does not change while the key repeats, since it only deletes before the cursor, so it
+    // is only asked of the editor once per press, when it is first needed.
+    private boolean mIsCursorFollowedByWordCharacterWhileDeleting;
+    private boolean mHasCheckedCursorFollowedByWordCharacterWhileDeleting;
+    // Whether restarting suggestions has been posted for when the backspace key repeat stops.
+    private boolean mIsResumingSuggestionsDeferredByBackspaceRepeat;
+
     /**
      * Create a new instance of the input logic.
      * @param latinIME the instance of the parent LatinIME. We should remove this when we can.
@@ -139,6 +150,8 @@ public final class InputLogic {
     public void startInput(final String combiningSpec, final SettingsValues settingsValues) {
         mEnteredText = null;
         mWordBeingCorrectedByCursor = null;
+        // The personal dictionaries may have been edited while we were not in this editor.
+        mRecorrectionSuggestionsCache.invalidate();
         mConnection.onStartInput();
         if (!mWordComposer.getTypedWord().isEmpty()) {
             // For messaging apps that offer send button, the IME does not get the opportunity
@@ -471,9 +484,18 @@ public final class InputLogic {
             }
             currentEvent = currentEvent.mNextEvent;
         }
+        if (mIsResumingSuggestionsDeferredByBackspaceRepeat
+                && Constants.CODE_DELETE != processedEvent.mKeyCode) {
+            // The backspace key repeat was interrupted by another key: don't let the deferred
+            // restart of suggestions interfere with it.
+            handler.cancelResumeSuggestions();
+            mIsResumingSuggestionsDeferredByBackspaceRepeat = false;
+        }
         // Try to record the word being corrected when the user enters a word character or
-        // the backspace key.
+        // the backspace key. This is not done while the backspace key repeats, since the word
+        // is being deleted rather than corrected.
         if (!mConnection.hasSlowInputConnection() && !mWordComposer.isComposingWord()
+                && !processedEvent.isKeyRepeat()
                 && (settingsValues.isWordCodePoint(processedEvent.mCodePoint) ||
                         processedEvent.mKeyCode == Constants.CODE_DELETE)) {
             mWordBeingCorrectedByCursor = getWordAtCursor(
@@ -991,6 +1013,15 @@ public final class InputLogic {
             final int currentKeyboardScriptId) {
         mSpaceState = SpaceState.NONE;
         mDeleteCount++;
+        if (!event.isKeyRepeat()) {
+            // A new press of the backspace key: whatever was found out about the text after the
+            // cursor or deferred during the previous key repeat does not hold any more.
+            mHasCheckedCursorFollowedByWordCharacterWhileDeleting = false;
+            if (mIsResumingSuggestionsDeferredByBackspaceRepeat) {
+                mLatinIME.mHandler.cancelResumeSuggestions();
+                mIsResumingSuggestionsDeferredByBackspaceRepeat = false;
+            }
+        }
 
         // In many cases after backspace, we need to update the shift state. Normally we need
         // to do this right away to avoid the shift state being out of date in case the user types
@@ -1049,8 +1080,8 @@ public final class InputLogic {
                 if (inputTransaction.mSettingsValues.isSuggestionsEnabledPerUserSettings()
                         && inputTransaction.mSettingsValues.mSpacingAndPunctuations
                                 .mCurrentLanguageHasSpaces
-                        && !mConnection.isCursorFollowedByWordCharacter(
-                                inputTransaction.mSettingsValues.mSpacingAndPunctuations)) {
+                        && !isCursorFollowedByWordCharacterWhileDeleting(
+                                inputTransaction.mSettingsValues)) {
                     restartSuggestionsOnWordTouchedByCursor(inputTransaction.mSettingsValues,
                             false /* forStartInput */, currentKeyboardScriptId);
                 }
@@ -1151,21 +1182,36 @@ public final class InputLogic {
                     }
                     final int lengthToDelete =
                             Character.isSupplementaryCodePoint(codePointBeforeCursor) ? 2 : 1;
-                    mConnection.deleteTextBeforeCursor(lengthToDelete);
+                    final int codePointBeforeDeletedCodePoint =
+                            mConnection.getCodePointBeforeCursor(lengthToDelete);
                     int totalDeletedLength = lengthToDelete;
-                    if (mDeleteCount > Constants.DELETE_ACCELERATE_AT) {
-                        // If this is an accelerated (i.e., double) deletion, then we need to
-                        // consider unlearning here because we may have already reached
-                        // the previous word, and will lose it after next deletion.
-                        hasUnlearnedWordBeingDeleted |= unlearnWordBeingDeleted(
-                                inputTransaction.mSettingsValues, currentKeyboardScriptId);
-                        final int codePointBeforeCursorToDeleteAgain =
-                                mConnection.getCodePointBeforeCursor();
-                        if (codePointBeforeCursorToDeleteAgain != Constants.NOT_A_CODE) {
-                            final int lengthToDeleteAgain = Character.isSupplementaryCodePoint(
-                                    codePointBeforeCursorToDeleteAgain) ? 2 : 1;
-                            mConnection.deleteTextBeforeCursor(lengthToDeleteAgain);
-                            totalDeletedLength += lengthToDeleteAgain;
+                    if (mDeleteCount > Constants.DELETE_ACCELERATE_AT
+                            && Constants.NOT_A_CODE != codePointBeforeDeletedCodePoint
+                            && !isDeletionStoppingAfterWord(inputTransaction.mSettingsValues,
+                                    codePointBeforeCursor, codePointBeforeDeletedCodePoint)) {
+                        // This is an accelerated (i.e., double) deletion that does not stop
+                        // right after a word on the way, so there is no word to consider
+                        // unlearning in between: delete both code points with a single call
+                        // to the InputConnection.
+                        totalDeletedLength += Character.charCount(codePointBeforeDeletedCodePoint);
+                        mConnection.deleteTextBeforeCursor(totalDeletedLength);
+                    } else {
+                        mConnection.deleteTextBeforeCursor(lengthToDelete);
+                        if (mDeleteCount > Constants.DELETE_ACCELERATE_AT) {
+                            // If this is an accelerated (i.e., double) deletion, then we need to
+                            // consider unlearning here because we may have already reached
+                            // the previous word, and will lose it after next deletion.
+                            hasUnlearnedWordBeingDeleted |= unlearnWordBeingDeleted(
+                                    inputTransaction.mSettingsValues, currentKeyboardScriptId);
+                            final int codePointBeforeCursorToDeleteAgain =
+                                    mConnection.getCodePointBeforeCursor();
+                            if (codePointBeforeCursorToDeleteAgain != Constants.NOT_A_CODE) {
+                                final int lengthToDeleteAgain =
+                                        Character.isSupplementaryCodePoint(
+                                                codePointBeforeCursorToDeleteAgain) ? 2 : 1;
+                                mConnection.deleteTextBeforeCursor(lengthToDeleteAgain);
+                                totalDeletedLength += lengthToDeleteAgain;
+                            }
                         }
                     }
                     StatsUtils.onBackspacePressed(totalDeletedLength);
@@ -1180,15 +1226,51 @@ public final class InputLogic {
                 mSuggestionStripViewAccessor.setNeutralSuggestionStrip();
             } else if (inputTransaction.mSettingsValues.isSuggestionsEnabledPerUserSettings()
                     && inputTransaction.mSettingsValues.mSpacingAndPunctuations
-                            .mCurrentLanguageHasSpaces
-                    && !mConnection.isCursorFollowedByWordCharacter(
-                            inputTransaction.mSettingsValues.mSpacingAndPunctuations)) {
-                restartSuggestionsOnWordTouchedByCursor(inputTransaction.mSettingsValues,
-                        false /* forStartInput */, currentKeyboardScriptId);
+                            .mCurrentLanguageHasSpaces) {
+                if (!isCursorFollowedByWordCharacterWhileDeleting(
+                        inputTransaction.mSettingsValues)) {
+                    if (!event.isKeyRepeat()) {
+                        restartSuggestionsOnWordTouchedByCursor(inputTransaction.mSettingsValues,
+                                false /* forStartInput */, currentKeyboardScriptId);
+                    } else {
+                        // Deleting before the cursor does not change the text after it. While
+                        // the key repeats, restarting suggestions after each deletion would be
+                        // wasted work: post it with a delay instead, so that it only happens once
+                        // the key repeat stops.
+                        mSuggestionStripViewAccessor.setNeutralSuggestionStrip();
+                        mLatinIME.mHandler.postResumeSuggestions(true /* shouldDelay */);
+                        mIsResumingSuggestionsDeferredByBackspaceRepeat = true;
+                    }
+                }
             }
         }
     }
 
+    /**
+     * Returns whether the cursor was followed by a word character when the backspace key was
+     * pressed. The editor is only asked once per press of the key, however long it repeats.
+     */
+    private boolean isCursorFollowedByWordCharacterWhileDeleting(
+            final SettingsValues settingsValues) {
+        if (!mHasCheckedCursorFollowedByWordCharacterWhileDeleting) {
+            mIsCursorFollowedByWordCharacterWhileDeleting =
+                    mConnection.isCursorFollowedByWordCharacter(
+                            settingsValues.mSpacingAndPunctuations);
+            mHasCheckedCursorFollowedByWordCharacterWhileDeleting = true;
+        }
+        return mIsCursorFollowedByWordCharacterWhileDeleting;
+    }
+
+    /**
+     * Returns whether deleting the code point before the cursor leaves the cursor right after a
+     * word, which should be considered for unlearning before it gets deleted in turn.
+     */
+    private static boolean isDeletionStoppingAfterWord(final SettingsValues settingsValues,
+            final int deletedCodePoint, final int codePointBeforeDeletedCodePoint) {
+        return !settingsValues.isWordCodePoint(deletedCodePoint)
+                && settingsValues.isWordCodePoint(codePointBeforeDeletedCodePoint);
+    }
+
     String getWordAtCursor(final SettingsValues settingsValues, final int currentKeyboardScriptId) {
         if (!mConnection.hasSelection()
                 && settingsValues.isSuggestionsEnabledPerUserSettings()
@@ -1215,9 +1297,17 @@ public final class InputLogic {
         // If we just started backspacing to delete a previous word (but have not
         // entered the composing state yet), unlearn the word.
         // TODO: Consider tracking whether or not this word was typed by the user.
-        if (!mConnection.isCursorFollowedByWordCharacter(settingsValues.mSpacingAndPunctuations)) {
-            final String wordBeingDeleted = getWordAtCursor(
-                    settingsValues, currentKeyboardScriptId);
+        if (!isCursorFollowedByWordCharacterWhileDeleting(settingsValues)) {
+            // The cursor is not followed by a word character, so the word at the cursor is the
+            // one before it: read it from the cached text, rather than from the editor after each
+            // deletion while the key repeats.
+            final String cachedWordBeingDeleted = mConnection.getWordBeforeCursorFromCache(
+                    settingsValues.mSpacingAndPunctuations, currentKeyboardScriptId);
+            final String wordBeingDeleted = (null != cachedWordBeingDeleted
+                    && settingsValues.isSuggestionsEnabledPerUserSettings()
+                    && settingsValues.mSpacingAndPunctuations.mCurrentLanguageHasSpaces)
+                    ? cachedWordBeingDeleted
+                    : getWordAtCursor(settingsValues, currentKeyboardScriptId);
             if (!TextUtils.isEmpty(wordBeingDeleted)) {
                 unlearnWord(wordBeingDeleted, settingsValues, Constants.EVENT_BACKSPACE);
                 return true;
@@ -1226,13 +1316,26 @@ public final class InputLogic {
         return false;
     }
 
+    /**
+     * Call this when the contents of the dictionaries may have changed, e.g. when they have been
+     * reloaded, so that suggestions that were computed before are not reused.
+     */
+    public void onDictionariesChanged() {
+        mRecorrectionSuggestionsCache.invalidate();
+    }
+
     void unlearnWord(final String word, final SettingsValues settingsValues, final int eventType) {
-        final NgramContext ngramContext = mConnection.getNgramContextFromNthPreviousWord(
-            settingsValues.mSpacingAndPunctuations, 2);
+        unlearnWord(word, mConnection.getNgramContextFromNthPreviousWord(
+                settingsValues.mSpacingAndPunctuations, 2), eventType);
+    }
+
+    private void unlearnWord(final String word, @Nonnull final NgramContext ngramContext,
+            final int eventType) {
         final long timeStampInSeconds = TimeUnit.MILLISECONDS.toSeconds(
             System.currentTimeMillis());
         mDictionaryFacilitator.unlearnFromUserHistory(
             word, ngramContext, timeStampInSeconds, eventType);
+        mRecorrectionSuggestionsCache.invalidate();
     }
 
     /**
@@ -1441,6 +1544,7 @@ public final class InputLogic {
                 System.currentTimeMillis());
         mDictionaryFacilitator.addToUserHistory(suggestion, wasAutoCapitalized,
                 ngramContext, timeStampInSeconds, settingsValues.mBlockPotentiallyOffensive);
+        mRecorrectionSuggestionsCache.invalidate();
     }
 
     public void performUpdateSuggestionStripSync(final SettingsValues settingsValues,
@@ -1599,10 +1703,24 @@ public final class InputLogic {
             // If there weren't any suggestion spans on this word, suggestions#size() will be 1
             // if shouldIncludeResumedWordInSuggestions is true, 0 otherwise. In this case, we
             // have no useful suggestions, so we will try to compute some for it instead.
+            // When moving the cursor back and forth over the same words, they were likely
+            // touched recently: reuse their suggestions if nothing they depend on has changed.
+            final RecorrectionSuggestionsCache.Key cacheKey =
+                    mRecorrectionSuggestionsCache.getKey(typedWordString,
+                            getNgramContextFromNthPreviousWordForSuggestion(
+                                    settingsValues.mSpacingAndPunctuations, 2),
+                            KeyboardSwitcher.getInstance().getKeyboard(), settingsValues);
+            final SuggestedWords cachedSuggestedWords =
+                    mRecorrectionSuggestionsCache.get(cacheKey);
+            if (null != cachedSuggestedWords) {
+                doShowSuggestionsAndClearAutoCorrectionIndicator(cachedSuggestedWords);
+                return;
+            }
             mInputLogicHandler.getSuggestedWords(Suggest.SESSION_ID_TYPING,
                     SuggestedWords.NOT_A_SEQUENCE_NUMBER, new OnGetSuggestedWordsCallback() {
                         @Override
                         public void onGetSuggestedWords(final SuggestedWords suggestedWords) {
+                            mRecorrectionSuggestionsCache.put(cacheKey, suggestedWords);
                             doShowSuggestionsAndClearAutoCorrectionIndicator(suggestedWords);
                         }});
         } else {
@@ -1662,7 +1780,8 @@ public final class InputLogic {
         }
         mConnection.deleteTextBeforeCursor(deleteLength);
         if (!TextUtils.isEmpty(committedWord)) {
-            unlearnWord(committedWordString, inputTransaction.mSettingsValues,
+            // Unlearn the word in the n-gram context it was learned in.
+            unlearnWord(committedWordString, mLastComposedWord.mNgramContext,
                     Constants.EVENT_REVERT);
         }
         final String stringToCommit = originallyTypedWord +
@@ -1802,8 +1921,7 @@ public final class InputLogic {
         if (LastComposedWord.NOT_A_COMPOSED_WORD == mLastComposedWord) {
             return NgramContext.BEGINNING_OF_SENTENCE;
         }
-        return new NgramContext(new NgramContext.WordInfo(
-                mLastComposedWord.mCommittedWord.toString()));
+        return mLastComposedWord.getNgramContextForNextWord();
     }
 
     /**
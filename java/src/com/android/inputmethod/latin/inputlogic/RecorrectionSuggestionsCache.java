@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.inputlogic;
+
+import android.util.LruCache;
+
+import com.android.inputmethod.annotations.UsedForTesting;
+import com.android.inputmethod.keyboard.Keyboard;
+import com.android.inputmethod.latin.NgramContext;
+import com.android.inputmethod.latin.SuggestedWords;
+import com.android.inputmethod.latin.settings.SettingsValues;
+
+import java.util.Arrays;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A cache of the suggestions computed for the words the cursor recently touched, so that moving
+ * the cursor back and forth over the same words does not compute their suggestions again.
+ *
+ * The suggestions for a word depend on the word, its n-gram context, the keyboard, the settings
+ * and the contents of the dictionaries. The keyboard and the settings are compared by identity,
+ * since new instances are created when they change. The dictionaries are accounted for with a
+ * generation that is incremented each time they may have changed, i.e. when they are reloaded
+ * and when words are learned or unlearned.
+ *
+ * This class is thread safe: suggestions are looked up on the UI thread and put from the thread
+ * computing them.
+ */
+final class RecorrectionSuggestionsCache {
+    @UsedForTesting
+    static final int CACHE_SIZE = 32;
+
+    /**
+     * The key of the suggestions for a word. This is immutable.
+     */
+    static final class Key {
+        @Nonnull
+        private final String mWord;
+        @Nonnull
+        private final NgramContext mNgramContext;
+        @Nullable
+        private final Keyboard mKeyboard;
+        @Nonnull
+        private final SettingsValues mSettingsValues;
+        private final int mGeneration;
+        private final int mHashCode;
+
+        Key(@Nonnull final String word, @Nonnull final NgramContext ngramContext,
+                @Nullable final Keyboard keyboard, @Nonnull final SettingsValues settingsValues,
+                final int generation) {
+            mWord = word;
+            mNgramContext = ngramContext;
+            mKeyboard = keyboard;
+            mSettingsValues = settingsValues;
+            mGeneration = generation;
+            mHashCode = Arrays.hashCode(new Object[] { word, ngramContext, generation });
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key)o;
+            return mGeneration == other.mGeneration && mKeyboard == other.mKeyboard
+                    && mSettingsValues == other.mSettingsValues && mWord.equals(other.mWord)
+                    && mNgramContext.equals(other.mNgramContext);
+        }
+    }
+
+    private final LruCache<Key, SuggestedWords> mSuggestedWords = new LruCache<>(CACHE_SIZE);
+    private volatile int mGeneration;
+
+    @Nonnull
+    public Key getKey(@Nonnull final String word, @Nonnull final NgramContext ngramContext,
+            @Nullable final Keyboard keyboard, @Nonnull final SettingsValues settingsValues) {
+        return new Key(word, ngramContext, keyboard, settingsValues, mGeneration);
+    }
+
+    @Nullable
+    public SuggestedWords get(@Nonnull final Key key) {
+        return mSuggestedWords.get(key);
+    }
+
+    public void put(@Nonnull final Key key, @Nonnull final SuggestedWords suggestedWords) {
+        if (key.mGeneration != mGeneration) {
+            // The dictionaries changed while the suggestions were computed.
+            return;
+        }
+        mSuggestedWords.put(key, suggestedWords);
+    }
+
+    /**
+     * Drops all the suggestions, e.g. because the dictionaries may have changed.
+     */
+    public void invalidate() {
+        synchronized (this) {
+            mGeneration++;
+        }
+        mSuggestedWords.evictAll();
+    }
+}
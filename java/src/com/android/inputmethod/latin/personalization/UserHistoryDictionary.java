@@ -23,12 +23,15 @@ import com.android.inputmethod.annotations.UsedForTesting;
 import com.android.inputmethod.latin.BinaryDictionary;
 import com.android.inputmethod.latin.Dictionary;
 import com.android.inputmethod.latin.ExpandableBinaryDictionary;
+import com.android.inputmethod.latin.ExpandableBinaryDictionary.WordEntryUpdate;
 import com.android.inputmethod.latin.NgramContext;
 import com.android.inputmethod.latin.define.DecoderSpecificConstants;
 import com.android.inputmethod.latin.define.ProductionFlags;
 import com.android.inputmethod.latin.makedict.DictionaryHeader;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 
@@ -106,6 +109,23 @@ public class UserHistoryDictionary extends ExpandableBinaryDictionary {
                 isValid, 1 /* count */, timestamp);
     }
 
+    /**
+     * Add several words to the user history dictionary at once.
+     *
+     * @param userHistoryDictionary the user history dictionary
+     * @param updates the updates of the words to add, with their n-gram contexts
+     */
+    public static void addToDictionary(final ExpandableBinaryDictionary userHistoryDictionary,
+            @Nonnull final List<WordEntryUpdate> updates) {
+        final ArrayList<WordEntryUpdate> updatesToApply = new ArrayList<>(updates.size());
+        for (final WordEntryUpdate update : updates) {
+            if (update.mWord.length() <= BinaryDictionary.DICTIONARY_MAX_WORD_LENGTH) {
+                updatesToApply.add(update);
+            }
+        }
+        userHistoryDictionary.updateEntriesForWords(updatesToApply);
+    }
+
     @Override
     public void close() {
         // Flush pending writes.
@@ -18,7 +18,9 @@ package com.android.inputmethod.latin.spellcheck;
 
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.database.ContentObserver;
 import android.preference.PreferenceManager;
+import android.provider.UserDictionary.Words;
 import android.service.textservice.SpellCheckerService;
 import android.text.InputType;
 import android.view.inputmethod.EditorInfo;
@@ -35,15 +37,23 @@ import com.android.inputmethod.latin.R;
 import com.android.inputmethod.latin.RichInputMethodSubtype;
 import com.android.inputmethod.latin.SuggestedWords;
 import com.android.inputmethod.latin.common.ComposedData;
+import com.android.inputmethod.latin.common.InputPointers;
+import com.android.inputmethod.latin.define.DecoderSpecificConstants;
 import com.android.inputmethod.latin.settings.SettingsValuesForSuggestion;
 import com.android.inputmethod.latin.utils.AdditionalSubtypeUtils;
 import com.android.inputmethod.latin.utils.ScriptUtils;
 import com.android.inputmethod.latin.utils.SuggestionResults;
 
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.Locale;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.Nonnull;
 
@@ -64,15 +74,36 @@ public final class AndroidSpellCheckerService extends SpellCheckerService
 
     private static final String[] EMPTY_STRING_ARRAY = new String[0];
 
-    private final int MAX_NUM_OF_THREADS_READ_DICTIONARY = 2;
-    private final Semaphore mSemaphore = new Semaphore(MAX_NUM_OF_THREADS_READ_DICTIONARY,
-            true /* fair */);
-    // TODO: Make each spell checker session has its own session id.
-    private final ConcurrentLinkedQueue<Integer> mSessionIdPool = new ConcurrentLinkedQueue<>();
+    private static final int LOOKUP_THREAD_KEEP_ALIVE_SECONDS = 10;
+
+    // Held for reading by every dictionary access, and for writing to close the dictionaries.
+    // Any number of lookups may read the dictionaries at the same time.
+    private final ReentrantReadWriteLock mDictionaryLock = new ReentrantReadWriteLock();
+    // Limits the number of suggestion lookups, which are much more expensive than validity
+    // checks, and gives each of them a session id.
+    private final SuggestionLookupScheduler mSuggestionLookupScheduler =
+            new SuggestionLookupScheduler();
+    // Runs the suggestion lookups of the words checked in batches, along with the binder thread
+    // that asked for them.
+    private final ExecutorService mLookupExecutor = newLookupExecutor(
+            mSuggestionLookupScheduler.getMaxConcurrentLookupCount() - 1 /* threadCount */);
+    // The suggestions for misspelled words, shared by all the sessions.
+    private final SpellCheckerResultCache mResultCache = new SpellCheckerResultCache();
+    private final ContentObserver mUserDictionaryObserver = new ContentObserver(null) {
+        @Override
+        public void onChange(final boolean selfChange) {
+            mResultCache.onDictionaryChanged(SpellCheckerResultCache.DICTIONARY_USER);
+        }
+    };
 
     private final DictionaryFacilitatorLruCache mDictionaryFacilitatorCache =
             new DictionaryFacilitatorLruCache(this /* context */, DICTIONARY_NAME_PREFIX);
     private final ConcurrentHashMap<Locale, Keyboard> mKeyboardCache = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Locale, KeyCoordinateTable> mKeyCoordinateTableCache =
+            new ConcurrentHashMap<>();
+    // The input pointers of each running lookup, indexed by its session id.
+    private final InputPointers[] mLookupInputPointers =
+            newLookupInputPointers(mSuggestionLookupScheduler.getMaxConcurrentLookupCount());
 
     // The threshold for a suggestion to be considered "recommended".
     private float mRecommendedThreshold;
@@ -85,9 +116,6 @@ public final class AndroidSpellCheckerService extends SpellCheckerService
 
     public AndroidSpellCheckerService() {
         super();
-        for (int i = 0; i < MAX_NUM_OF_THREADS_READ_DICTIONARY; i++) {
-            mSessionIdPool.add(i);
-        }
     }
 
     @Override
@@ -98,6 +126,39 @@ public final class AndroidSpellCheckerService extends SpellCheckerService
         final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(this);
         prefs.registerOnSharedPreferenceChangeListener(this);
         onSharedPreferenceChanged(prefs, PREF_USE_CONTACTS_KEY);
+        getContentResolver().registerContentObserver(Words.CONTENT_URI, true,
+                mUserDictionaryObserver);
+    }
+
+    @Override
+    public void onDestroy() {
+        getContentResolver().unregisterContentObserver(mUserDictionaryObserver);
+        mLookupExecutor.shutdown();
+        super.onDestroy();
+    }
+
+    private static ExecutorService newLookupExecutor(final int threadCount) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount,
+                LOOKUP_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, TAG);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Nonnull
+    ExecutorService getLookupExecutor() {
+        return mLookupExecutor;
+    }
+
+    int getMaxConcurrentLookupCount() {
+        return mSuggestionLookupScheduler.getMaxConcurrentLookupCount();
     }
 
     public float getRecommendedThreshold() {
@@ -129,6 +190,12 @@ public final class AndroidSpellCheckerService extends SpellCheckerService
         if (!PREF_USE_CONTACTS_KEY.equals(key)) return;
         final boolean useContactsDictionary = prefs.getBoolean(PREF_USE_CONTACTS_KEY, true);
         mDictionaryFacilitatorCache.setUseContactsDictionary(useContactsDictionary);
+        mResultCache.onDictionaryChanged(SpellCheckerResultCache.DICTIONARY_CONTACTS);
+    }
+
+    @Nonnull
+    SpellCheckerResultCache getResultCache() {
+        return mResultCache;
     }
 
     @Override
@@ -158,59 +225,94 @@ public final class AndroidSpellCheckerService extends SpellCheckerService
     }
 
     public boolean isValidWord(final Locale locale, final String word) {
-        mSemaphore.acquireUninterruptibly();
+        mDictionaryLock.readLock().lock();
         try {
             DictionaryFacilitator dictionaryFacilitatorForLocale =
                     mDictionaryFacilitatorCache.get(locale);
             return dictionaryFacilitatorForLocale.isValidSpellingWord(word);
         } finally {
-            mSemaphore.release();
+            mDictionaryLock.readLock().unlock();
+        }
+    }
+
+    private static InputPointers[] newLookupInputPointers(final int count) {
+        final InputPointers[] inputPointers = new InputPointers[count];
+        for (int i = 0; i < count; i++) {
+            inputPointers[i] = new InputPointers(
+                    DecoderSpecificConstants.DICTIONARY_MAX_WORD_LENGTH);
         }
+        return inputPointers;
     }
 
-    public SuggestionResults getSuggestionResults(final Locale locale,
-            final ComposedData composedData, final NgramContext ngramContext,
+    @Nonnull
+    private KeyCoordinateTable getKeyCoordinateTable(final Locale locale,
             @Nonnull final Keyboard keyboard) {
-        Integer sessionId = null;
-        mSemaphore.acquireUninterruptibly();
+        KeyCoordinateTable keyCoordinateTable = mKeyCoordinateTableCache.get(locale);
+        if (null == keyCoordinateTable) {
+            keyCoordinateTable = new KeyCoordinateTable(keyboard);
+            mKeyCoordinateTableCache.put(locale, keyCoordinateTable);
+        }
+        return keyCoordinateTable;
+    }
+
+    /**
+     * Gets the suggestions for a word, as if it had been typed on the keyboard.
+     */
+    public SuggestionResults getSuggestionResults(final Locale locale, final String word,
+            final NgramContext ngramContext, @Nonnull final Keyboard keyboard) {
+        final KeyCoordinateTable keyCoordinateTable = getKeyCoordinateTable(locale, keyboard);
+        final SuggestionLookupScheduler.Lookup lookup = mSuggestionLookupScheduler.startLookup();
+        mDictionaryLock.readLock().lock();
         try {
-            sessionId = mSessionIdPool.poll();
+            // Only this lookup uses the input pointers of its session id until it ends.
+            final InputPointers inputPointers = mLookupInputPointers[lookup.mSessionId];
+            keyCoordinateTable.setInputPointers(word, inputPointers);
+            final ComposedData composedData =
+                    new ComposedData(inputPointers, false /* isBatchMode */, word);
             DictionaryFacilitator dictionaryFacilitatorForLocale =
                     mDictionaryFacilitatorCache.get(locale);
             return dictionaryFacilitatorForLocale.getSuggestionResults(composedData, ngramContext,
                     keyboard, mSettingsValuesForSuggestion,
-                    sessionId, SuggestedWords.INPUT_STYLE_TYPING);
+                    lookup.mSessionId, SuggestedWords.INPUT_STYLE_TYPING);
         } finally {
-            if (sessionId != null) {
-                mSessionIdPool.add(sessionId);
-            }
-            mSemaphore.release();
+            mDictionaryLock.readLock().unlock();
+            mSuggestionLookupScheduler.endLookup(lookup);
         }
     }
 
     public boolean hasMainDictionaryForLocale(final Locale locale) {
-        mSemaphore.acquireUninterruptibly();
+        mDictionaryLock.readLock().lock();
         try {
             final DictionaryFacilitator dictionaryFacilitator =
                     mDictionaryFacilitatorCache.get(locale);
             return dictionaryFacilitator.hasAtLeastOneInitializedMainDictionary();
         } finally {
-            mSemaphore.release();
+            mDictionaryLock.readLock().unlock();
         }
     }
 
     @Override
     public boolean onUnbind(final Intent intent) {
-        mSemaphore.acquireUninterruptibly(MAX_NUM_OF_THREADS_READ_DICTIONARY);
+        mDictionaryLock.writeLock().lock();
         try {
             mDictionaryFacilitatorCache.closeDictionaries();
         } finally {
-            mSemaphore.release(MAX_NUM_OF_THREADS_READ_DICTIONARY);
+            mDictionaryLock.writeLock().unlock();
         }
+        // The dictionaries may have been updated by the time they are opened again.
+        mResultCache.onDictionaryChanged(SpellCheckerResultCache.DICTIONARY_MAIN);
         mKeyboardCache.clear();
+        mKeyCoordinateTableCache.clear();
         return false;
     }
 
+    @Override
+    protected void dump(final FileDescriptor fd, final PrintWriter fout, final String[] args) {
+        super.dump(fd, fout, args);
+        fout.println("AndroidSpellCheckerService state :");
+        fout.println(mSuggestionLookupScheduler.dump());
+    }
+
     public Keyboard getKeyboardForLocale(final Locale locale) {
         Keyboard keyboard = mKeyboardCache.get(locale);
         if (keyboard == null) {
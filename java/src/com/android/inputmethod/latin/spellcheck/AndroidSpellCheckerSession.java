@@ -31,6 +31,7 @@ import com.android.inputmethod.latin.NgramContext;
 import com.android.inputmethod.latin.utils.SpannableStringUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Locale;
 
 public final class AndroidSpellCheckerSession extends AndroidWordLevelSpellCheckerSession {
@@ -173,49 +174,73 @@ public final class AndroidSpellCheckerSession extends AndroidWordLevelSpellCheck
         if (sentenceLevelAdapter == null) {
             return SentenceLevelAdapter.getEmptySentenceSuggestionsInfo();
         }
+        // Check the words of all the sentences in one batch, so that the words repeated across
+        // sentences are only checked once and the lookups can all run in parallel.
         final int infosSize = textInfos.length;
-        final SentenceSuggestionsInfo[] retval = new SentenceSuggestionsInfo[infosSize];
+        final SentenceLevelAdapter.SentenceTextInfoParams[] textInfoParams =
+                new SentenceLevelAdapter.SentenceTextInfoParams[infosSize];
+        final ArrayList<TextInfo> splitTextInfos = new ArrayList<>();
+        final ArrayList<NgramContext> ngramContexts = new ArrayList<>();
         for (int i = 0; i < infosSize; ++i) {
-            final SentenceLevelAdapter.SentenceTextInfoParams textInfoParams =
-                    sentenceLevelAdapter.getSplitWords(textInfos[i]);
+            textInfoParams[i] = sentenceLevelAdapter.getSplitWords(textInfos[i]);
             final ArrayList<SentenceLevelAdapter.SentenceWordItem> mItems =
-                    textInfoParams.mItems;
+                    textInfoParams[i].mItems;
             final int itemsSize = mItems.size();
-            final TextInfo[] splitTextInfos = new TextInfo[itemsSize];
             for (int j = 0; j < itemsSize; ++j) {
-                splitTextInfos[j] = mItems.get(j).mTextInfo;
+                splitTextInfos.add(mItems.get(j).mTextInfo);
+                ngramContexts.add(getNgramContext(
+                        j > 0 ? mItems.get(j - 1).mTextInfo : null /* prevTextInfo */));
             }
-            retval[i] = SentenceLevelAdapter.reconstructSuggestions(
-                    textInfoParams, onGetSuggestionsMultiple(
-                            splitTextInfos, suggestionsLimit, true));
+        }
+        final SuggestionsInfo[] splitSuggestionsInfos = getSuggestionsInfos(
+                splitTextInfos.toArray(new TextInfo[splitTextInfos.size()]),
+                ngramContexts.toArray(new NgramContext[ngramContexts.size()]), suggestionsLimit);
+        final SentenceSuggestionsInfo[] retval = new SentenceSuggestionsInfo[infosSize];
+        int splitIndex = 0;
+        for (int i = 0; i < infosSize; ++i) {
+            final int itemsSize = textInfoParams[i].mItems.size();
+            retval[i] = SentenceLevelAdapter.reconstructSuggestions(textInfoParams[i],
+                    Arrays.copyOfRange(splitSuggestionsInfos, splitIndex, splitIndex + itemsSize));
+            splitIndex += itemsSize;
         }
         return retval;
     }
 
+    private static NgramContext getNgramContext(final TextInfo prevTextInfo) {
+        final CharSequence prevWord;
+        if (null != prevTextInfo) {
+            final CharSequence prevWordCandidate =
+                    TextInfoCompatUtils.getCharSequenceOrString(prevTextInfo);
+            // Note that an empty string would be used to indicate the initial word
+            // in the future.
+            prevWord = TextUtils.isEmpty(prevWordCandidate) ? null : prevWordCandidate;
+        } else {
+            prevWord = null;
+        }
+        return new NgramContext(new NgramContext.WordInfo(prevWord));
+    }
+
     @Override
     public SuggestionsInfo[] onGetSuggestionsMultiple(TextInfo[] textInfos,
             int suggestionsLimit, boolean sequentialWords) {
+        final int length = textInfos.length;
+        final NgramContext[] ngramContexts = new NgramContext[length];
+        for (int i = 0; i < length; ++i) {
+            ngramContexts[i] = getNgramContext(
+                    sequentialWords && i > 0 ? textInfos[i - 1] : null /* prevTextInfo */);
+        }
+        return getSuggestionsInfos(textInfos, ngramContexts, suggestionsLimit);
+    }
+
+    private SuggestionsInfo[] getSuggestionsInfos(final TextInfo[] textInfos,
+            final NgramContext[] ngramContexts, final int suggestionsLimit) {
         long ident = Binder.clearCallingIdentity();
         try {
-            final int length = textInfos.length;
-            final SuggestionsInfo[] retval = new SuggestionsInfo[length];
-            for (int i = 0; i < length; ++i) {
-                final CharSequence prevWord;
-                if (sequentialWords && i > 0) {
-                    final TextInfo prevTextInfo = textInfos[i - 1];
-                    final CharSequence prevWordCandidate =
-                            TextInfoCompatUtils.getCharSequenceOrString(prevTextInfo);
-                    // Note that an empty string would be used to indicate the initial word
-                    // in the future.
-                    prevWord = TextUtils.isEmpty(prevWordCandidate) ? null : prevWordCandidate;
-                } else {
-                    prevWord = null;
-                }
-                final NgramContext ngramContext =
-                        new NgramContext(new NgramContext.WordInfo(prevWord));
-                final TextInfo textInfo = textInfos[i];
-                retval[i] = onGetSuggestionsInternal(textInfo, ngramContext, suggestionsLimit);
-                retval[i].setCookieAndSequence(textInfo.getCookie(), textInfo.getSequence());
+            final SuggestionsInfo[] retval =
+                    onGetSuggestionsInternal(textInfos, ngramContexts, suggestionsLimit);
+            for (int i = 0; i < retval.length; ++i) {
+                retval[i].setCookieAndSequence(
+                        textInfos[i].getCookie(), textInfos[i].getSequence());
             }
             return retval;
         } finally {
@@ -24,6 +24,7 @@ import android.service.textservice.SpellCheckerService.Session;
 import android.text.TextUtils;
 import android.util.Log;
 import android.util.LruCache;
+import android.util.Pair;
 import android.view.textservice.SuggestionsInfo;
 import android.view.textservice.TextInfo;
 
@@ -31,7 +32,6 @@ import com.android.inputmethod.compat.SuggestionsInfoCompatUtils;
 import com.android.inputmethod.keyboard.Keyboard;
 import com.android.inputmethod.latin.NgramContext;
 import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
-import com.android.inputmethod.latin.WordComposer;
 import com.android.inputmethod.latin.common.Constants;
 import com.android.inputmethod.latin.common.LocaleUtils;
 import com.android.inputmethod.latin.common.StringUtils;
@@ -42,8 +42,15 @@ import com.android.inputmethod.latin.utils.StatsUtils;
 import com.android.inputmethod.latin.utils.SuggestionResults;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public abstract class AndroidWordLevelSpellCheckerSession extends Session {
     private static final String TAG = AndroidWordLevelSpellCheckerSession.class.getSimpleName();
@@ -58,9 +65,6 @@ public abstract class AndroidWordLevelSpellCheckerSession extends Session {
     protected final SuggestionsCache mSuggestionsCache = new SuggestionsCache();
     private final ContentObserver mObserver;
 
-    private static final String quotesRegexp =
-            "(\\u0022|\\u0027|\\u0060|\\u00B4|\\u2018|\\u2018|\\u201C|\\u201D)";
-
     private static final class SuggestionsParams {
         public final String[] mSuggestions;
         public final int mFlags;
@@ -125,61 +129,6 @@ public abstract class AndroidWordLevelSpellCheckerSession extends Session {
         cres.unregisterContentObserver(mObserver);
     }
 
-    private static final int CHECKABILITY_CHECKABLE = 0;
-    private static final int CHECKABILITY_TOO_MANY_NON_LETTERS = 1;
-    private static final int CHECKABILITY_CONTAINS_PERIOD = 2;
-    private static final int CHECKABILITY_EMAIL_OR_URL = 3;
-    private static final int CHECKABILITY_FIRST_LETTER_UNCHECKABLE = 4;
-    private static final int CHECKABILITY_TOO_SHORT = 5;
-    /**
-     * Finds out whether a particular string should be filtered out of spell checking.
-     *
-     * This will loosely match URLs, numbers, symbols. To avoid always underlining words that
-     * we know we will never recognize, this accepts a script identifier that should be one
-     * of the SCRIPT_* constants defined above, to rule out quickly characters from very
-     * different languages.
-     *
-     * @param text the string to evaluate.
-     * @param script the identifier for the script this spell checker recognizes
-     * @return one of the FILTER_OUT_* constants above.
-     */
-    private static int getCheckabilityInScript(final String text, final int script) {
-        if (TextUtils.isEmpty(text) || text.length() <= 1) return CHECKABILITY_TOO_SHORT;
-
-        // TODO: check if an equivalent processing can't be done more quickly with a
-        // compiled regexp.
-        // Filter by first letter
-        final int firstCodePoint = text.codePointAt(0);
-        // Filter out words that don't start with a letter or an apostrophe
-        if (!ScriptUtils.isLetterPartOfScript(firstCodePoint, script)
-                && '\'' != firstCodePoint) return CHECKABILITY_FIRST_LETTER_UNCHECKABLE;
-
-        // Filter contents
-        final int length = text.length();
-        int letterCount = 0;
-        for (int i = 0; i < length; i = text.offsetByCodePoints(i, 1)) {
-            final int codePoint = text.codePointAt(i);
-            // Any word containing a COMMERCIAL_AT is probably an e-mail address
-            // Any word containing a SLASH is probably either an ad-hoc combination of two
-            // words or a URI - in either case we don't want to spell check that
-            if (Constants.CODE_COMMERCIAL_AT == codePoint || Constants.CODE_SLASH == codePoint) {
-                return CHECKABILITY_EMAIL_OR_URL;
-            }
-            // If the string contains a period, native returns strange suggestions (it seems
-            // to return suggestions for everything up to the period only and to ignore the
-            // rest), so we suppress lookup if there is a period.
-            // TODO: investigate why native returns these suggestions and remove this code.
-            if (Constants.CODE_PERIOD == codePoint) {
-                return CHECKABILITY_CONTAINS_PERIOD;
-            }
-            if (ScriptUtils.isLetterPartOfScript(codePoint, script)) ++letterCount;
-        }
-        // Guestimate heuristic: perform spell checking if at least 3/4 of the characters
-        // in this word are letters
-        return (letterCount * 4 < length * 3)
-                ? CHECKABILITY_TOO_MANY_NON_LETTERS : CHECKABILITY_CHECKABLE;
-    }
-
     /**
      * Helper method to test valid capitalizations of a word.
      *
@@ -209,6 +158,62 @@ public abstract class AndroidWordLevelSpellCheckerSession extends Session {
                 StringUtils.capitalizeFirstAndDowncaseRest(lowerCaseText, mLocale));
     }
 
+    /**
+     * Returns the end of the words between the periods of the text, as
+     * {@link String#split(String)} would: trailing periods do not separate empty words.
+     */
+    private static int getEndOfWordsBetweenPeriods(final String text) {
+        int end = text.length();
+        while (end > 0 && Constants.CODE_PERIOD == text.charAt(end - 1)) {
+            --end;
+        }
+        return end;
+    }
+
+    private boolean areAllWordsBetweenPeriodsValid(final String text) {
+        final int end = getEndOfWordsBetweenPeriods(text);
+        int wordStart = 0;
+        while (wordStart < end) {
+            int wordEnd = text.indexOf(Constants.CODE_PERIOD, wordStart);
+            if (wordEnd < 0 || wordEnd > end) {
+                wordEnd = end;
+            }
+            if (!mService.isValidWord(mLocale, text.substring(wordStart, wordEnd))) {
+                return false;
+            }
+            wordStart = wordEnd + 1;
+        }
+        return true;
+    }
+
+    private static String joinWordsBetweenPeriods(final String text) {
+        return text.substring(0, getEndOfWordsBetweenPeriods(text))
+                .replace((char)Constants.CODE_PERIOD, (char)Constants.CODE_SPACE);
+    }
+
+    /**
+     * The check of a word. Checks which are not done after {@link #checkWithoutLookup} need
+     * a suggestion lookup, which {@link #lookUpSuggestions} does.
+     */
+    private static final class WordCheck {
+        public final NgramContext mNgramContext;
+        public final int mSuggestionsLimit;
+        public String mText;
+        public int mCapitalizeType;
+        public Keyboard mKeyboard;
+        public int[] mGenerations;
+        public SuggestionsInfo mResult;
+
+        public WordCheck(final NgramContext ngramContext, final int suggestionsLimit) {
+            mNgramContext = ngramContext;
+            mSuggestionsLimit = suggestionsLimit;
+        }
+
+        public boolean isDone() {
+            return null != mResult;
+        }
+    }
+
     // Note : this must be reentrant
     /**
      * Gets a list of suggestions for a specific string. This returns a list of possible
@@ -222,51 +227,202 @@ public abstract class AndroidWordLevelSpellCheckerSession extends Session {
 
     protected SuggestionsInfo onGetSuggestionsInternal(
             final TextInfo textInfo, final NgramContext ngramContext, final int suggestionsLimit) {
+        final WordCheck check = checkWithoutLookup(textInfo, ngramContext, suggestionsLimit);
+        if (!check.isDone()) {
+            lookUpSuggestions(check);
+        }
+        return check.mResult;
+    }
+
+    /**
+     * Gets the suggestions for many words at once, as {@link #onGetSuggestionsInternal} would for
+     * each of them.
+     *
+     * Words that appear several times with the same previous word are only checked once. The
+     * words are first all checked against the dictionaries on the calling thread, then the
+     * misspelled ones are spread over the lookup executor of the service, the calling thread
+     * taking its share.
+     *
+     * @param textInfos the words to check.
+     * @param ngramContexts the n-gram context of each word.
+     * @param suggestionsLimit the maximum number of suggestions for each word.
+     * @return the suggestions for each word, in the same order.
+     */
+    protected SuggestionsInfo[] onGetSuggestionsInternal(final TextInfo[] textInfos,
+            final NgramContext[] ngramContexts, final int suggestionsLimit) {
+        final int length = textInfos.length;
+        final WordCheck[] checks = new WordCheck[length];
+        final HashMap<Pair<String, NgramContext>, WordCheck> uniqueChecks = new HashMap<>();
+        final ArrayList<WordCheck> checksToLookUp = new ArrayList<>();
+        for (int i = 0; i < length; ++i) {
+            final Pair<String, NgramContext> query =
+                    Pair.create(textInfos[i].getText(), ngramContexts[i]);
+            WordCheck check = uniqueChecks.get(query);
+            if (null == check) {
+                check = checkWithoutLookup(textInfos[i], ngramContexts[i], suggestionsLimit);
+                uniqueChecks.put(query, check);
+                if (!check.isDone()) {
+                    checksToLookUp.add(check);
+                }
+            }
+            checks[i] = check;
+        }
+        lookUpSuggestions(checksToLookUp);
+        final SuggestionsInfo[] suggestionsInfos = new SuggestionsInfo[length];
+        final HashSet<WordCheck> returnedChecks = new HashSet<>();
+        for (int i = 0; i < length; ++i) {
+            // A SuggestionsInfo carries the cookie and sequence of its word, so the repeated
+            // words each get their own copy.
+            suggestionsInfos[i] = returnedChecks.add(checks[i])
+                    ? checks[i].mResult : copySuggestionsInfo(checks[i].mResult);
+        }
+        return suggestionsInfos;
+    }
+
+    private static SuggestionsInfo copySuggestionsInfo(final SuggestionsInfo suggestionsInfo) {
+        final String[] suggestions = new String[suggestionsInfo.getSuggestionsCount()];
+        for (int i = 0; i < suggestions.length; ++i) {
+            suggestions[i] = suggestionsInfo.getSuggestionAt(i);
+        }
+        return new SuggestionsInfo(suggestionsInfo.getSuggestionsAttributes(), suggestions);
+    }
+
+    private void lookUpSuggestions(final List<WordCheck> checks) {
+        final int checkCount = checks.size();
+        if (checkCount <= 1) {
+            for (final WordCheck check : checks) {
+                lookUpSuggestions(check);
+            }
+            return;
+        }
+        // The executor and the calling thread take the next check to look up until none is left.
+        final AtomicInteger nextCheckIndex = new AtomicInteger();
+        final Runnable lookUpRemainingChecks = new Runnable() {
+            @Override
+            public void run() {
+                for (int i = nextCheckIndex.getAndIncrement(); i < checkCount;
+                        i = nextCheckIndex.getAndIncrement()) {
+                    lookUpSuggestions(checks.get(i));
+                }
+            }
+        };
+        final ExecutorService executor = mService.getLookupExecutor();
+        final int helperCount = Math.min(checkCount, mService.getMaxConcurrentLookupCount()) - 1;
+        final ArrayList<LookupHelper> helpers = new ArrayList<>(helperCount);
+        for (int i = 0; i < helperCount; ++i) {
+            final LookupHelper helper = new LookupHelper(lookUpRemainingChecks);
+            helper.mFuture = executor.submit(helper);
+            helpers.add(helper);
+        }
+        lookUpRemainingChecks.run();
+        waitForLookups(helpers);
+    }
+
+    /**
+     * A task that looks up the remaining checks together with the calling thread, unless the
+     * calling thread claims it first because no check is left by then.
+     */
+    private static final class LookupHelper implements Runnable {
+        private final Runnable mLookup;
+        private final AtomicBoolean mClaimed = new AtomicBoolean();
+        Future<?> mFuture;
+
+        public LookupHelper(final Runnable lookup) {
+            mLookup = lookup;
+        }
+
+        public boolean claim() {
+            return mClaimed.compareAndSet(false, true);
+        }
+
+        @Override
+        public void run() {
+            if (claim()) {
+                mLookup.run();
+            }
+        }
+    }
+
+    private static void waitForLookups(final List<LookupHelper> helpers) {
+        boolean interrupted = false;
+        try {
+            for (final LookupHelper helper : helpers) {
+                if (helper.claim()) {
+                    // The helper has not started: nothing is left for it to look up, so drop
+                    // it rather than wait for its turn on the executor.
+                    helper.mFuture.cancel(false /* mayInterruptIfRunning */);
+                    continue;
+                }
+                while (true) {
+                    try {
+                        helper.mFuture.get();
+                        break;
+                    } catch (final InterruptedException e) {
+                        // The binder thread needs all the results.
+                        interrupted = true;
+                    }
+                }
+            }
+        } catch (final ExecutionException e) {
+            // lookUpSuggestions catches the exceptions of the spell checker itself.
+            throw new RuntimeException("Failed to look up suggestions", e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Checks a word as far as possible without looking up suggestions, i.e. against the
+     * dictionaries and the caches.
+     */
+    private WordCheck checkWithoutLookup(final TextInfo textInfo,
+            final NgramContext ngramContext, final int suggestionsLimit) {
+        final WordCheck check = new WordCheck(ngramContext, suggestionsLimit);
         try {
-            final String text = textInfo.getText().
-                    replaceAll(AndroidSpellCheckerService.APOSTROPHE,
-                            AndroidSpellCheckerService.SINGLE_QUOTE).
-                    replaceAll("^" + quotesRegexp, "").
-                    replaceAll(quotesRegexp + "$", "");
+            final String token = textInfo.getText();
+            final SpellCheckerTokenClassifier.Token classifiedToken =
+                    new SpellCheckerTokenClassifier.Token();
+            SpellCheckerTokenClassifier.classify(token, mScript, classifiedToken);
+            final String text = SpellCheckerTokenClassifier.getWord(token, classifiedToken);
+            check.mText = text;
 
             if (!mService.hasMainDictionaryForLocale(mLocale)) {
-                return AndroidSpellCheckerService.getNotInDictEmptySuggestions(
+                check.mResult = AndroidSpellCheckerService.getNotInDictEmptySuggestions(
                         false /* reportAsTypo */);
+                return check;
             }
 
             // Handle special patterns like email, URI, telephone number.
-            final int checkability = getCheckabilityInScript(text, mScript);
-            if (CHECKABILITY_CHECKABLE != checkability) {
-                if (CHECKABILITY_CONTAINS_PERIOD == checkability) {
-                    final String[] splitText = text.split(Constants.REGEXP_PERIOD);
-                    boolean allWordsAreValid = true;
-                    for (final String word : splitText) {
-                        if (!mService.isValidWord(mLocale, word)) {
-                            allWordsAreValid = false;
-                            break;
-                        }
-                    }
-                    if (allWordsAreValid) {
-                        return new SuggestionsInfo(SuggestionsInfo.RESULT_ATTR_LOOKS_LIKE_TYPO
-                                | SuggestionsInfo.RESULT_ATTR_HAS_RECOMMENDED_SUGGESTIONS,
-                                new String[] {
-                                        TextUtils.join(Constants.STRING_SPACE, splitText) });
-                    }
+            final int checkability = classifiedToken.mCheckability;
+            if (SpellCheckerTokenClassifier.CHECKABILITY_CHECKABLE != checkability) {
+                final boolean containsPeriod =
+                        SpellCheckerTokenClassifier.CHECKABILITY_CONTAINS_PERIOD == checkability;
+                if (containsPeriod && areAllWordsBetweenPeriodsValid(text)) {
+                    check.mResult = new SuggestionsInfo(
+                            SuggestionsInfo.RESULT_ATTR_LOOKS_LIKE_TYPO
+                                    | SuggestionsInfo.RESULT_ATTR_HAS_RECOMMENDED_SUGGESTIONS,
+                            new String[] { joinWordsBetweenPeriods(text) });
+                    return check;
                 }
-                return mService.isValidWord(mLocale, text) ?
+                check.mResult = mService.isValidWord(mLocale, text) ?
                         AndroidSpellCheckerService.getInDictEmptySuggestions() :
                         AndroidSpellCheckerService.getNotInDictEmptySuggestions(
-                                CHECKABILITY_CONTAINS_PERIOD == checkability /* reportAsTypo */);
+                                containsPeriod /* reportAsTypo */);
+                return check;
             }
 
             // Handle normal words.
             final int capitalizeType = StringUtils.getCapitalizationType(text);
+            check.mCapitalizeType = capitalizeType;
 
             if (isInDictForAnyCapitalization(text, capitalizeType)) {
                 if (DebugFlags.DEBUG_ENABLED) {
                     Log.i(TAG, "onGetSuggestionsInternal() : [" + text + "] is a valid word");
                 }
-                return AndroidSpellCheckerService.getInDictEmptySuggestions();
+                check.mResult = AndroidSpellCheckerService.getInDictEmptySuggestions();
+                return check;
             }
             if (DebugFlags.DEBUG_ENABLED) {
                 Log.i(TAG, "onGetSuggestionsInternal() : [" + text + "] is NOT a valid word");
@@ -276,20 +432,45 @@ public abstract class AndroidWordLevelSpellCheckerSession extends Session {
             if (null == keyboard) {
                 Log.w(TAG, "onGetSuggestionsInternal() : No keyboard for locale: " + mLocale);
                 // If there is no keyboard for this locale, don't do any spell-checking.
-                return AndroidSpellCheckerService.getNotInDictEmptySuggestions(
+                check.mResult = AndroidSpellCheckerService.getNotInDictEmptySuggestions(
                         false /* reportAsTypo */);
+                return check;
+            }
+            check.mKeyboard = keyboard;
+
+            // Another session may have checked the same word already.
+            final SpellCheckerResultCache resultCache = mService.getResultCache();
+            final SpellCheckerResultCache.Entry cachedEntry =
+                    resultCache.get(mLocale, text, ngramContext, suggestionsLimit);
+            if (null != cachedEntry) {
+                StatsUtils.onInvalidWordIdentification(text);
+                mSuggestionsCache.putSuggestionsToCache(
+                        text, cachedEntry.mSuggestions, cachedEntry.mFlags);
+                check.mResult = new SuggestionsInfo(cachedEntry.mFlags, cachedEntry.mSuggestions);
+                return check;
             }
+            check.mGenerations = resultCache.getGenerations();
+        } catch (RuntimeException e) {
+            // Don't kill the keyboard if there is a bug in the spell checker
+            Log.e(TAG, "Exception while spellchecking", e);
+            check.mResult = AndroidSpellCheckerService.getNotInDictEmptySuggestions(
+                    false /* reportAsTypo */);
+        }
+        return check;
+    }
 
-            final WordComposer composer = new WordComposer();
-            final int[] codePoints = StringUtils.toCodePointArray(text);
-            final int[] coordinates;
-            coordinates = keyboard.getCoordinates(codePoints);
-            composer.setComposingWord(codePoints, coordinates);
+    /**
+     * Looks up the suggestions for a misspelled word. This may run on any thread.
+     */
+    private void lookUpSuggestions(final WordCheck check) {
+        try {
+            final String text = check.mText;
             // TODO: Don't gather suggestions if the limit is <= 0 unless necessary
-            final SuggestionResults suggestionResults = mService.getSuggestionResults(
-                    mLocale, composer.getComposedDataSnapshot(), ngramContext, keyboard);
-            final Result result = getResult(capitalizeType, mLocale, suggestionsLimit,
-                    mService.getRecommendedThreshold(), text, suggestionResults);
+            final SuggestionResults suggestionResults = mService.getSuggestionResults(mLocale,
+                    text, check.mNgramContext, check.mKeyboard);
+            final Result result = getResult(check.mCapitalizeType, mLocale,
+                    check.mSuggestionsLimit, mService.getRecommendedThreshold(), text,
+                    suggestionResults);
             if (DebugFlags.DEBUG_ENABLED) {
                 if (result.mSuggestions != null && result.mSuggestions.length > 0) {
                     final StringBuilder builder = new StringBuilder();
@@ -315,13 +496,14 @@ public abstract class AndroidWordLevelSpellCheckerSession extends Session {
                             ? SuggestionsInfoCompatUtils
                                     .getValueOf_RESULT_ATTR_HAS_RECOMMENDED_SUGGESTIONS()
                             : 0);
-            final SuggestionsInfo retval = new SuggestionsInfo(flags, result.mSuggestions);
             mSuggestionsCache.putSuggestionsToCache(text, result.mSuggestions, flags);
-            return retval;
+            mService.getResultCache().put(mLocale, text, check.mNgramContext,
+                    check.mSuggestionsLimit, result.mSuggestions, flags, check.mGenerations);
+            check.mResult = new SuggestionsInfo(flags, result.mSuggestions);
         } catch (RuntimeException e) {
             // Don't kill the keyboard if there is a bug in the spell checker
             Log.e(TAG, "Exception while spellchecking", e);
-            return AndroidSpellCheckerService.getNotInDictEmptySuggestions(
+            check.mResult = AndroidSpellCheckerService.getNotInDictEmptySuggestions(
                     false /* reportAsTypo */);
         }
     }
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.spellcheck;
+
+import com.android.inputmethod.annotations.UsedForTesting;
+import com.android.inputmethod.keyboard.Key;
+import com.android.inputmethod.keyboard.Keyboard;
+import com.android.inputmethod.keyboard.internal.MoreKeySpec;
+import com.android.inputmethod.latin.common.Constants;
+import com.android.inputmethod.latin.common.InputPointers;
+import com.android.inputmethod.latin.define.DecoderSpecificConstants;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Nonnull;
+
+/**
+ * The coordinates on a spell checker keyboard of the code points that can be typed with it.
+ *
+ * A code point is placed at the center of the key that types it. Code points that no key types
+ * are placed at the key of their other case, then at the key whose more keys type them, so
+ * that "É" is placed on the "e" key. Other code points have no coordinates.
+ *
+ * The coordinates are kept in pages of 256 code points of the basic multilingual plane, which
+ * are only allocated for the code points of the keyboard. This class is immutable.
+ */
+final class KeyCoordinateTable {
+    private static final int PAGE_SHIFT = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int PAGE_COUNT = 0x10000 >> PAGE_SHIFT;
+    private static final int MAX_WORD_LENGTH =
+            DecoderSpecificConstants.DICTIONARY_MAX_WORD_LENGTH;
+
+    // For each page, the x and y coordinates of its code points one after the other, as in the
+    // arrays of CoordinateUtils, or null when no code point of the page is on the keyboard.
+    @Nonnull
+    private final int[][] mPages = new int[PAGE_COUNT][];
+
+    public KeyCoordinateTable(@Nonnull final Keyboard keyboard) {
+        final List<Key> keys = keyboard.getSortedKeys();
+        // The code points of the keys come first, so that nothing else overrides them.
+        for (final Key key : keys) {
+            put(key.getCode(), key);
+        }
+        for (final Key key : keys) {
+            putOtherCases(key.getCode(), key);
+        }
+        for (final Key key : keys) {
+            final MoreKeySpec[] moreKeys = key.getMoreKeys();
+            if (null == moreKeys) {
+                continue;
+            }
+            for (final MoreKeySpec moreKey : moreKeys) {
+                put(moreKey.mCode, key);
+                putOtherCases(moreKey.mCode, key);
+            }
+        }
+    }
+
+    private void putOtherCases(final int codePoint, @Nonnull final Key key) {
+        if (codePoint <= 0) {
+            return;
+        }
+        put(Character.toUpperCase(codePoint), key);
+        put(Character.toLowerCase(codePoint), key);
+    }
+
+    /**
+     * Places the code point at the center of the key, unless it already has coordinates.
+     */
+    private void put(final int codePoint, @Nonnull final Key key) {
+        // Negative codes are functional keys, and the code points out of the basic multilingual
+        // plane are not typed in words.
+        if (codePoint <= 0 || codePoint >= PAGE_COUNT << PAGE_SHIFT) {
+            return;
+        }
+        int[] page = mPages[codePoint >> PAGE_SHIFT];
+        if (null == page) {
+            page = new int[PAGE_SIZE * 2];
+            Arrays.fill(page, Constants.NOT_A_COORDINATE);
+            mPages[codePoint >> PAGE_SHIFT] = page;
+        }
+        final int index = (codePoint & PAGE_MASK) * 2;
+        if (Constants.NOT_A_COORDINATE != page[index]) {
+            return;
+        }
+        page[index] = key.getX() + key.getWidth() / 2;
+        page[index + 1] = key.getY() + key.getHeight() / 2;
+    }
+
+    @UsedForTesting
+    int getX(final int codePoint) {
+        final int[] page = getPage(codePoint);
+        return null == page ? Constants.NOT_A_COORDINATE : page[(codePoint & PAGE_MASK) * 2];
+    }
+
+    @UsedForTesting
+    int getY(final int codePoint) {
+        final int[] page = getPage(codePoint);
+        return null == page ? Constants.NOT_A_COORDINATE : page[(codePoint & PAGE_MASK) * 2 + 1];
+    }
+
+    private int[] getPage(final int codePoint) {
+        if (codePoint < 0 || codePoint >= PAGE_COUNT << PAGE_SHIFT) {
+            return null;
+        }
+        return mPages[codePoint >> PAGE_SHIFT];
+    }
+
+    /**
+     * Sets the input pointers to the coordinates of the code points of a word, as if it had
+     * been typed on the keyboard. Like in a {@link com.android.inputmethod.latin.WordComposer},
+     * there are no pointers past {@link DecoderSpecificConstants#DICTIONARY_MAX_WORD_LENGTH}.
+     *
+     * @param word the word.
+     * @param inputPointers the input pointers to clear and fill in.
+     */
+    public void setInputPointers(@Nonnull final String word,
+            @Nonnull final InputPointers inputPointers) {
+        inputPointers.clear();
+        final int length = word.length();
+        int index = 0;
+        for (int i = 0; i < length && index < MAX_WORD_LENGTH; ++index) {
+            final int codePoint = word.codePointAt(i);
+            final int[] page = getPage(codePoint);
+            if (null == page) {
+                inputPointers.addPointerAt(index, Constants.NOT_A_COORDINATE,
+                        Constants.NOT_A_COORDINATE, 0 /* pointerId */, 0 /* time */);
+            } else {
+                final int pageIndex = (codePoint & PAGE_MASK) * 2;
+                inputPointers.addPointerAt(index, page[pageIndex], page[pageIndex + 1],
+                        0 /* pointerId */, 0 /* time */);
+            }
+            i += Character.charCount(codePoint);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.spellcheck;
+
+import android.util.LruCache;
+
+import com.android.inputmethod.annotations.UsedForTesting;
+import com.android.inputmethod.latin.NgramContext;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A cache of the suggestions for misspelled words, shared by all the sessions of the spell
+ * checker, so that editors checking the same text do not compute them again.
+ *
+ * The suggestions are keyed by locale, word, n-gram context and suggestion limit. Each entry
+ * records the generations of the dictionaries it was computed with, and is ignored once any of
+ * them changed. The cache is split into shards, each with its own lock, so that sessions
+ * checking text concurrently rarely wait for each other.
+ *
+ * This class is thread safe.
+ */
+final class SpellCheckerResultCache {
+    // The dictionaries whose contents may change while the service runs.
+    public static final int DICTIONARY_MAIN = 0;
+    public static final int DICTIONARY_USER = 1;
+    public static final int DICTIONARY_CONTACTS = 2;
+    private static final int DICTIONARY_COUNT = 3;
+
+    private static final int SHARD_COUNT = 4;
+    // Roughly how many bytes of heap to allow for each entry, to size the cache from the memory
+    // available to the process.
+    private static final int HEAP_BYTES_PER_ENTRY = 64 * 1024;
+    private static final int MIN_ENTRY_COUNT = 64;
+    private static final int MAX_ENTRY_COUNT = 1024;
+
+    /**
+     * The suggestions for a misspelled word. This is immutable.
+     */
+    public static final class Entry {
+        @Nullable public final String[] mSuggestions;
+        public final int mFlags;
+        @Nonnull final int[] mGenerations;
+
+        Entry(@Nullable final String[] suggestions, final int flags,
+                @Nonnull final int[] generations) {
+            mSuggestions = suggestions;
+            mFlags = flags;
+            mGenerations = generations;
+        }
+    }
+
+    private static final class Key {
+        @Nonnull private final Locale mLocale;
+        @Nonnull private final String mWord;
+        @Nullable private final NgramContext mNgramContext;
+        private final int mSuggestionsLimit;
+        private final int mHashCode;
+
+        Key(@Nonnull final Locale locale, @Nonnull final String word,
+                @Nullable final NgramContext ngramContext, final int suggestionsLimit) {
+            mLocale = locale;
+            mWord = word;
+            mNgramContext = ngramContext;
+            mSuggestionsLimit = suggestionsLimit;
+            mHashCode = Arrays.hashCode(
+                    new Object[] { locale, word, ngramContext, suggestionsLimit });
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key other = (Key)o;
+            return mSuggestionsLimit == other.mSuggestionsLimit && mWord.equals(other.mWord)
+                    && mLocale.equals(other.mLocale)
+                    && (mNgramContext == null ? other.mNgramContext == null
+                            : mNgramContext.equals(other.mNgramContext));
+        }
+    }
+
+    private final LruCache<Key, Entry>[] mShards;
+    private final AtomicInteger[] mGenerations = new AtomicInteger[DICTIONARY_COUNT];
+
+    public SpellCheckerResultCache() {
+        this(getEntryCountForMaxMemory(Runtime.getRuntime().maxMemory()));
+    }
+
+    @UsedForTesting
+    @SuppressWarnings("unchecked")
+    SpellCheckerResultCache(final int entryCount) {
+        mShards = new LruCache[SHARD_COUNT];
+        final int entryCountPerShard = Math.max(1, entryCount / SHARD_COUNT);
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            mShards[i] = new LruCache<>(entryCountPerShard);
+        }
+        for (int i = 0; i < DICTIONARY_COUNT; i++) {
+            mGenerations[i] = new AtomicInteger();
+        }
+    }
+
+    @UsedForTesting
+    static int getEntryCountForMaxMemory(final long maxMemory) {
+        return (int) Math.max(MIN_ENTRY_COUNT,
+                Math.min(MAX_ENTRY_COUNT, maxMemory / HEAP_BYTES_PER_ENTRY));
+    }
+
+    private LruCache<Key, Entry> getShard(@Nonnull final Key key) {
+        return mShards[(key.hashCode() & Integer.MAX_VALUE) % SHARD_COUNT];
+    }
+
+    /**
+     * Returns the generations of the dictionaries, to be passed to {@link #put} with the
+     * suggestions computed from now on.
+     */
+    @Nonnull
+    public int[] getGenerations() {
+        final int[] generations = new int[DICTIONARY_COUNT];
+        for (int i = 0; i < DICTIONARY_COUNT; i++) {
+            generations[i] = mGenerations[i].get();
+        }
+        return generations;
+    }
+
+    @Nullable
+    public Entry get(@Nonnull final Locale locale, @Nonnull final String word,
+            @Nullable final NgramContext ngramContext, final int suggestionsLimit) {
+        final Key key = new Key(locale, word, ngramContext, suggestionsLimit);
+        final LruCache<Key, Entry> shard = getShard(key);
+        final Entry entry = shard.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!Arrays.equals(entry.mGenerations, getGenerations())) {
+            shard.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Puts the suggestions for a word.
+     *
+     * @param generations the generations of the dictionaries before the suggestions were
+     * computed, as returned by {@link #getGenerations}.
+     */
+    public void put(@Nonnull final Locale locale, @Nonnull final String word,
+            @Nullable final NgramContext ngramContext, final int suggestionsLimit,
+            @Nullable final String[] suggestions, final int flags,
+            @Nonnull final int[] generations) {
+        final Key key = new Key(locale, word, ngramContext, suggestionsLimit);
+        getShard(key).put(key, new Entry(suggestions, flags, generations));
+    }
+
+    /**
+     * Call this when the contents of a dictionary may have changed.
+     *
+     * @param dictionary one of the DICTIONARY_* constants.
+     */
+    public void onDictionaryChanged(final int dictionary) {
+        mGenerations[dictionary].incrementAndGet();
+    }
+}
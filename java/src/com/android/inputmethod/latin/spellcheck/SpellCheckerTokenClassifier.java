@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.spellcheck;
+
+import com.android.inputmethod.latin.common.Constants;
+import com.android.inputmethod.latin.utils.ScriptUtils;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Finds out, in a single pass over a token to spell check, which part of it is the word and
+ * whether that word should be spell checked at all.
+ *
+ * The word is the token without one leading and one trailing quote. Apostrophes (U+2019) in the
+ * word are to be read as single quotes, which is what {@link #getWord} returns.
+ */
+final class SpellCheckerTokenClassifier {
+    public static final int CHECKABILITY_CHECKABLE = 0;
+    public static final int CHECKABILITY_TOO_MANY_NON_LETTERS = 1;
+    public static final int CHECKABILITY_CONTAINS_PERIOD = 2;
+    public static final int CHECKABILITY_EMAIL_OR_URL = 3;
+    public static final int CHECKABILITY_FIRST_LETTER_UNCHECKABLE = 4;
+    public static final int CHECKABILITY_TOO_SHORT = 5;
+
+    private static final char CODE_APOSTROPHE = '\u2019';
+
+    private SpellCheckerTokenClassifier() {
+        // This utility class is not publicly instantiable.
+    }
+
+    /**
+     * The result of {@link #classify}: the bounds of the word in the token, and one of the
+     * CHECKABILITY_* constants.
+     */
+    public static final class Token {
+        public int mStart;
+        public int mEnd;
+        public int mCheckability;
+    }
+
+    private static boolean isQuote(final char c) {
+        switch (c) {
+        case '"':
+        case '\'':
+        case '`':
+        case '\u00B4': // ACUTE ACCENT
+        case '\u2018': // LEFT SINGLE QUOTATION MARK
+        case CODE_APOSTROPHE: // RIGHT SINGLE QUOTATION MARK
+        case '\u201C': // LEFT DOUBLE QUOTATION MARK
+        case '\u201D': // RIGHT DOUBLE QUOTATION MARK
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Finds the word in a token and whether it should be filtered out of spell checking.
+     *
+     * This will loosely match URLs, numbers, symbols. To avoid always underlining words that
+     * we know we will never recognize, this accepts a script identifier that should be one
+     * of the SCRIPT_* constants of {@link ScriptUtils}, to rule out quickly characters from
+     * very different languages.
+     *
+     * @param text the token to evaluate.
+     * @param script the identifier for the script this spell checker recognizes.
+     * @param token the token to write the result to.
+     */
+    public static void classify(@Nonnull final CharSequence text, final int script,
+            @Nonnull final Token token) {
+        int start = 0;
+        int end = text.length();
+        if (end > 0 && isQuote(text.charAt(0))) {
+            ++start;
+        }
+        if (end > start && isQuote(text.charAt(end - 1))) {
+            --end;
+        }
+        token.mStart = start;
+        token.mEnd = end;
+        token.mCheckability = getCheckability(text, start, end, script);
+    }
+
+    private static int getCheckability(final CharSequence text, final int start, final int end,
+            final int script) {
+        final int length = end - start;
+        if (length <= 1) return CHECKABILITY_TOO_SHORT;
+
+        int letterCount = 0;
+        for (int i = start; i < end; ) {
+            final int codePoint = Character.codePointAt(text, i);
+            final boolean isLetter = ScriptUtils.isLetterPartOfScript(codePoint, script);
+            // Filter out words that don't start with a letter or an apostrophe
+            if (i == start && !isLetter
+                    && Constants.CODE_SINGLE_QUOTE != codePoint && CODE_APOSTROPHE != codePoint) {
+                return CHECKABILITY_FIRST_LETTER_UNCHECKABLE;
+            }
+            // Any word containing a COMMERCIAL_AT is probably an e-mail address
+            // Any word containing a SLASH is probably either an ad-hoc combination of two
+            // words or a URI - in either case we don't want to spell check that
+            if (Constants.CODE_COMMERCIAL_AT == codePoint || Constants.CODE_SLASH == codePoint) {
+                return CHECKABILITY_EMAIL_OR_URL;
+            }
+            // If the string contains a period, native returns strange suggestions (it seems
+            // to return suggestions for everything up to the period only and to ignore the
+            // rest), so we suppress lookup if there is a period.
+            // TODO: investigate why native returns these suggestions and remove this code.
+            if (Constants.CODE_PERIOD == codePoint) {
+                return CHECKABILITY_CONTAINS_PERIOD;
+            }
+            if (isLetter) ++letterCount;
+            i += Character.charCount(codePoint);
+        }
+        // Guestimate heuristic: perform spell checking if at least 3/4 of the characters
+        // in this word are letters
+        return (letterCount * 4 < length * 3)
+                ? CHECKABILITY_TOO_MANY_NON_LETTERS : CHECKABILITY_CHECKABLE;
+    }
+
+    /**
+     * Returns the word found by {@link #classify}, with apostrophes replaced by single quotes.
+     * This does not copy the text when it is already the word.
+     */
+    @Nonnull
+    public static String getWord(@Nonnull final String text, @Nonnull final Token token) {
+        return text.substring(token.mStart, token.mEnd)
+                .replace(CODE_APOSTROPHE, (char)Constants.CODE_SINGLE_QUOTE);
+    }
+}
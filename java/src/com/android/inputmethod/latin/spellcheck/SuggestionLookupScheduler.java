@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.spellcheck;
+
+import android.util.Log;
+
+import com.android.inputmethod.annotations.UsedForTesting;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of suggestion lookups running at the same time in the spell checker.
+ *
+ * Each lookup needs its own traverse session in the native dictionaries, and takes a core for
+ * its duration. The number of concurrent lookups starts from half the available cores. It is
+ * raised when lookups wait in the queue for a significant part of their service time, and
+ * lowered again when they do not wait at all, within [{@link #MIN_CONCURRENT_LOOKUP_COUNT},
+ * the number of available cores].
+ *
+ * The average queue wait and service time of the lookups are kept for dumps.
+ */
+public final class SuggestionLookupScheduler {
+    private static final String TAG = SuggestionLookupScheduler.class.getSimpleName();
+    private static final boolean DEBUG = false;
+
+    static final int MIN_CONCURRENT_LOOKUP_COUNT = 2;
+    // The number of lookups between two adjustments of the number of concurrent lookups.
+    private static final int ADJUSTMENT_INTERVAL_IN_LOOKUPS = 32;
+    // The weight of a new measure in the moving averages, as a right shift: 1/8.
+    private static final int MOVING_AVERAGE_SHIFT = 3;
+    // Above this ratio of the average queue wait to the average service time, allow one more
+    // concurrent lookup. Below the lower one, allow one less.
+    private static final int QUEUE_WAIT_PERCENT_TO_GROW = 50;
+    private static final int QUEUE_WAIT_PERCENT_TO_SHRINK = 5;
+
+    private final int mMaxConcurrentLookupCount;
+    private final Semaphore mSemaphore;
+    // Each running lookup takes a session id from this pool. There are as many ids as the
+    // maximum number of concurrent lookups.
+    private final ConcurrentLinkedQueue<Integer> mSessionIdPool = new ConcurrentLinkedQueue<>();
+
+    // Note: all the following fields are synchronized by this object.
+    private int mConcurrentLookupCount;
+    private int mLookupCountSinceAdjustment;
+    private long mAverageQueueWaitNanos;
+    private long mAverageServiceTimeNanos;
+    private long mLookupCount;
+
+    public SuggestionLookupScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    @UsedForTesting
+    SuggestionLookupScheduler(final int availableProcessors) {
+        mMaxConcurrentLookupCount = Math.max(MIN_CONCURRENT_LOOKUP_COUNT, availableProcessors);
+        mConcurrentLookupCount = Math.max(MIN_CONCURRENT_LOOKUP_COUNT, availableProcessors / 2);
+        mSemaphore = new Semaphore(mConcurrentLookupCount, true /* fair */);
+        for (int i = 0; i < mMaxConcurrentLookupCount; i++) {
+            mSessionIdPool.add(i);
+        }
+    }
+
+    /**
+     * A running lookup, to be passed back to {@link #endLookup}.
+     */
+    public static final class Lookup {
+        public final int mSessionId;
+        final long mStartTimeNanos;
+
+        Lookup(final int sessionId, final long startTimeNanos) {
+            mSessionId = sessionId;
+            mStartTimeNanos = startTimeNanos;
+        }
+    }
+
+    /**
+     * Waits until a lookup may start. The returned lookup must be passed to {@link #endLookup}.
+     */
+    public Lookup startLookup() {
+        final long queuedTimeNanos = System.nanoTime();
+        mSemaphore.acquireUninterruptibly();
+        final long startTimeNanos = System.nanoTime();
+        synchronized (this) {
+            mAverageQueueWaitNanos += (startTimeNanos - queuedTimeNanos - mAverageQueueWaitNanos)
+                    >> MOVING_AVERAGE_SHIFT;
+        }
+        // There are never more lookups running than session ids.
+        return new Lookup(mSessionIdPool.poll(), startTimeNanos);
+    }
+
+    public void endLookup(final Lookup lookup) {
+        final long serviceTimeNanos = System.nanoTime() - lookup.mStartTimeNanos;
+        mSessionIdPool.add(lookup.mSessionId);
+        final int permitCountChange;
+        synchronized (this) {
+            mAverageServiceTimeNanos += (serviceTimeNanos - mAverageServiceTimeNanos)
+                    >> MOVING_AVERAGE_SHIFT;
+            mLookupCount++;
+            permitCountChange = adjustConcurrentLookupCountLocked();
+        }
+        // Not releasing the permit of this lookup leaves one less for the next ones.
+        if (permitCountChange >= 0) {
+            mSemaphore.release(1 + permitCountChange);
+        }
+    }
+
+    /**
+     * @return the change in the number of concurrent lookups.
+     */
+    private int adjustConcurrentLookupCountLocked() {
+        if (++mLookupCountSinceAdjustment < ADJUSTMENT_INTERVAL_IN_LOOKUPS) {
+            return 0;
+        }
+        mLookupCountSinceAdjustment = 0;
+        final long queueWaitPercent = (mAverageServiceTimeNanos <= 0) ? 0
+                : mAverageQueueWaitNanos * 100 / mAverageServiceTimeNanos;
+        final int change;
+        if (queueWaitPercent > QUEUE_WAIT_PERCENT_TO_GROW
+                && mConcurrentLookupCount < mMaxConcurrentLookupCount) {
+            change = 1;
+        } else if (queueWaitPercent < QUEUE_WAIT_PERCENT_TO_SHRINK
+                && mConcurrentLookupCount > MIN_CONCURRENT_LOOKUP_COUNT) {
+            change = -1;
+        } else {
+            return 0;
+        }
+        mConcurrentLookupCount += change;
+        if (DEBUG) {
+            Log.d(TAG, "Queue wait is " + queueWaitPercent + "% of the service time: now "
+                    + mConcurrentLookupCount + " concurrent lookups");
+        }
+        return change;
+    }
+
+    public int getMaxConcurrentLookupCount() {
+        return mMaxConcurrentLookupCount;
+    }
+
+    public synchronized int getConcurrentLookupCount() {
+        return mConcurrentLookupCount;
+    }
+
+    public synchronized String dump() {
+        return "  SuggestionLookupScheduler: concurrentLookups=" + mConcurrentLookupCount
+                + "/" + mMaxConcurrentLookupCount
+                + " lookups=" + mLookupCount
+                + " averageQueueWaitMs="
+                + TimeUnit.NANOSECONDS.toMicros(mAverageQueueWaitNanos) / 1000.0f
+                + " averageServiceTimeMs="
+                + TimeUnit.NANOSECONDS.toMicros(mAverageServiceTimeNanos) / 1000.0f;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A Bloom filter of strings: it tells for sure that a string was never added, but may be wrong
+ * when it tells that a string might have been added.
+ *
+ * With {@link #BITS_PER_ENTRY} bits per string, about 1% of the strings that were never added
+ * are reported as possibly added, until more than the expected count of strings are added.
+ * Strings cannot be removed.
+ *
+ * This class is not thread safe: adding strings must be synchronized with the other calls.
+ */
+public final class BloomFilter {
+    public static final int BITS_PER_ENTRY = 10;
+    // The optimal hash count for 10 bits per entry is 10 * ln(2).
+    private static final int HASH_COUNT = 7;
+    private static final int MIN_EXPECTED_ENTRY_COUNT = 64;
+
+    @Nonnull
+    private final long[] mBits;
+    private final int mBitCount;
+    private final int mExpectedEntryCount;
+    private int mEntryCount;
+
+    /**
+     * @param expectedEntryCount how many strings are expected to be added.
+     */
+    public BloomFilter(final int expectedEntryCount) {
+        mExpectedEntryCount = Math.max(MIN_EXPECTED_ENTRY_COUNT, expectedEntryCount);
+        mBits = new long[(int) (((long) mExpectedEntryCount * BITS_PER_ENTRY + 63) / 64)];
+        mBitCount = mBits.length * 64;
+    }
+
+    // 64-bit hash of the characters of the string, with the finalizer of MurmurHash3 so that
+    // both halves are well mixed.
+    private static long hash(@Nonnull final String string) {
+        long hash = string.length();
+        final int length = string.length();
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ string.charAt(i)) * 0x100000001B3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        hash *= 0xC4CEB9FE1A85EC53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Adds a string.
+     */
+    public void add(@Nonnull final String string) {
+        final long hash = hash(string);
+        final int hash1 = (int) hash;
+        final int hash2 = (int) (hash >>> 32);
+        boolean isNewEntry = false;
+        for (int i = 0; i < HASH_COUNT; i++) {
+            // Double hashing, as in "Less Hashing, Same Performance" by Kirsch and Mitzenmacher.
+            final int bit = ((hash1 + i * hash2) & Integer.MAX_VALUE) % mBitCount;
+            final long mask = 1L << bit;
+            if ((mBits[bit >>> 6] & mask) == 0) {
+                mBits[bit >>> 6] |= mask;
+                isNewEntry = true;
+            }
+        }
+        // Adding the same string again does not use the filter any further.
+        if (isNewEntry) {
+            mEntryCount++;
+        }
+    }
+
+    /**
+     * Returns false if the string was certainly never added, and true if it might have been.
+     */
+    public boolean mightContain(@Nonnull final String string) {
+        final long hash = hash(string);
+        final int hash1 = (int) hash;
+        final int hash2 = (int) (hash >>> 32);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            final int bit = ((hash1 + i * hash2) & Integer.MAX_VALUE) % mBitCount;
+            if ((mBits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns how many different strings were added, short of the few that collided with the
+     * strings added before.
+     */
+    public int getEntryCount() {
+        return mEntryCount;
+    }
+
+    /**
+     * Returns whether the given count of strings can be added without giving more false
+     * positives than the filter was sized for. Otherwise, it should be rebuilt with a larger
+     * count.
+     */
+    public boolean hasRoomFor(final int entryCount) {
+        return mEntryCount + entryCount <= mExpectedEntryCount;
+    }
+}
@@ -72,7 +72,7 @@ public final class CapsModeUtils {
      * @param codePoint the code point
      * @return true if it's starting punctuation, false otherwise.
      */
-    private static boolean isStartPunctuation(final int codePoint) {
+    public static boolean isStartPunctuation(final int codePoint) {
         return (codePoint == Constants.CODE_DOUBLE_QUOTE || codePoint == Constants.CODE_SINGLE_QUOTE
                 || codePoint == Constants.CODE_INVERTED_QUESTION_MARK
                 || codePoint == Constants.CODE_INVERTED_EXCLAMATION_MARK
@@ -235,6 +235,25 @@ public final class CapsModeUtils {
             return (TextUtils.CAP_MODE_CHARACTERS | TextUtils.CAP_MODE_WORDS) & reqModes;
         }
 
+        final int caps = (TextUtils.CAP_MODE_CHARACTERS | TextUtils.CAP_MODE_WORDS
+                | TextUtils.CAP_MODE_SENTENCES) & reqModes;
+        final int noCaps = (TextUtils.CAP_MODE_CHARACTERS | TextUtils.CAP_MODE_WORDS) & reqModes;
+        return isSentenceSeparatorEndingSentence(cs, j, spacingAndPunctuations) ? caps : noCaps;
+    }
+
+    /**
+     * Determines whether a sentence separator ends a sentence, as opposed to being part of an
+     * abbreviation like "e.g." or of a German whitespace-digits-period sequence.
+     *
+     * This only looks at the text before the sentence separator.
+     *
+     * @param cs the text.
+     * @param separatorIndex the index of the sentence separator in the text.
+     * @param spacingAndPunctuations the current spacing and punctuations settings.
+     * @return true if the separator ends a sentence, false otherwise.
+     */
+    public static boolean isSentenceSeparatorEndingSentence(final CharSequence cs,
+            final int separatorIndex, final SpacingAndPunctuations spacingAndPunctuations) {
         // We found out that we have a period. We need to determine if this is a full stop or
         // otherwise sentence-ending period, or an abbreviation like "e.g.". An abbreviation
         // looks like (\w\.){2,}. Moreover, in German, you put periods after digits for dates
@@ -271,10 +290,9 @@ public final class CapsModeUtils {
         final int PERIOD = 2;
         final int LETTER = 3;
         final int NUMBER = 4;
-        final int caps = (TextUtils.CAP_MODE_CHARACTERS | TextUtils.CAP_MODE_WORDS
-                | TextUtils.CAP_MODE_SENTENCES) & reqModes;
-        final int noCaps = (TextUtils.CAP_MODE_CHARACTERS | TextUtils.CAP_MODE_WORDS) & reqModes;
         int state = START;
+        int j = separatorIndex;
+        char c;
         while (j > 0) {
             c = cs.charAt(--j);
             switch (state) {
@@ -282,11 +300,11 @@ public final class CapsModeUtils {
                 if (Character.isLetter(c)) {
                     state = WORD;
                 } else if (Character.isWhitespace(c)) {
-                    return noCaps;
+                    return false;
                 } else if (Character.isDigit(c) && spacingAndPunctuations.mUsesGermanRules) {
                     state = NUMBER;
                 } else {
-                    return caps;
+                    return true;
                 }
                 break;
             case WORD:
@@ -295,14 +313,14 @@ public final class CapsModeUtils {
                 } else if (spacingAndPunctuations.isSentenceSeparator(c)) {
                     state = PERIOD;
                 } else {
-                    return caps;
+                    return true;
                 }
                 break;
             case PERIOD:
                 if (Character.isLetter(c)) {
                     state = LETTER;
                 } else {
-                    return caps;
+                    return true;
                 }
                 break;
             case LETTER:
@@ -311,7 +329,7 @@ public final class CapsModeUtils {
                 } else if (spacingAndPunctuations.isSentenceSeparator(c)) {
                     state = PERIOD;
                 } else {
-                    return noCaps;
+                    return false;
                 }
                 break;
             case NUMBER:
@@ -320,12 +338,12 @@ public final class CapsModeUtils {
                 } else if (Character.isDigit(c)) {
                     state = NUMBER;
                 } else {
-                    return noCaps;
+                    return false;
                 }
             }
         }
         // Here we arrived at the start of the line. This should behave exactly like whitespace.
-        return (START == state || LETTER == state) ? noCaps : caps;
+        return !(START == state || LETTER == state);
     }
 
     /**
@@ -35,9 +35,12 @@ public class ExecutorUtils {
 
     public static final String KEYBOARD = "Keyboard";
     public static final String SPELLING = "Spelling";
+    public static final String INPUT_CONNECTION = "InputConnection";
 
     private static ScheduledExecutorService sKeyboardExecutorService = newExecutorService(KEYBOARD);
     private static ScheduledExecutorService sSpellingExecutorService = newExecutorService(SPELLING);
+    private static ScheduledExecutorService sInputConnectionExecutorService =
+            newExecutorService(INPUT_CONNECTION);
 
     private static ScheduledExecutorService newExecutorService(final String name) {
         return Executors.newSingleThreadScheduledExecutor(new ExecutorFactory(name));
@@ -89,6 +92,8 @@ public class ExecutorUtils {
                 return sKeyboardExecutorService;
             case SPELLING:
                 return sSpellingExecutorService;
+            case INPUT_CONNECTION:
+                return sInputConnectionExecutorService;
             default:
                 throw new IllegalArgumentException("Invalid executor: " + name);
         }
@@ -113,6 +118,9 @@ public class ExecutorUtils {
             case SPELLING:
                 sSpellingExecutorService = newExecutorService(SPELLING);
                 break;
+            case INPUT_CONNECTION:
+                sInputConnectionExecutorService = newExecutorService(INPUT_CONNECTION);
+                break;
             default:
                 throw new IllegalArgumentException("Invalid executor: " + name);
         }
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+/**
+ * A histogram of latencies, with fixed buckets in milliseconds.
+ *
+ * This class is thread safe: latencies may be recorded from worker threads.
+ */
+public final class LatencyHistogram {
+    // The upper bounds of the buckets, in milliseconds. The last bucket has no upper bound.
+    private static final long[] BUCKET_UPPER_BOUNDS_MS = { 5, 10, 20, 50, 100, 200, 500, 1000 };
+
+    private final int[] mBucketCounts = new int[BUCKET_UPPER_BOUNDS_MS.length + 1];
+    private int mCount;
+    private long mTotalMs;
+    private long mMaxMs;
+
+    public synchronized void record(final long durationMs) {
+        int bucket = 0;
+        while (bucket < BUCKET_UPPER_BOUNDS_MS.length
+                && durationMs >= BUCKET_UPPER_BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        mBucketCounts[bucket]++;
+        mCount++;
+        mTotalMs += durationMs;
+        mMaxMs = Math.max(mMaxMs, durationMs);
+    }
+
+    public synchronized int getCount() {
+        return mCount;
+    }
+
+    public synchronized long getMaxMs() {
+        return mMaxMs;
+    }
+
+    /**
+     * Returns an upper bound of the given percentile of the recorded latencies, that is the upper
+     * bound of the bucket the percentile falls into, or the maximum latency for the last bucket.
+     *
+     * @param percentile the percentile, between 0 and 100.
+     * @return the upper bound in milliseconds, or 0 if no latency has been recorded.
+     */
+    public synchronized long getPercentileUpperBoundMs(final int percentile) {
+        if (mCount == 0) {
+            return 0;
+        }
+        // The rank of the percentile, rounded up.
+        final int rank = Math.max(1, (mCount * percentile + 99) / 100);
+        int cumulativeCount = 0;
+        for (int bucket = 0; bucket < BUCKET_UPPER_BOUNDS_MS.length; bucket++) {
+            cumulativeCount += mBucketCounts[bucket];
+            if (cumulativeCount >= rank) {
+                return Math.min(BUCKET_UPPER_BOUNDS_MS[bucket], mMaxMs);
+            }
+        }
+        return mMaxMs;
+    }
+
+    @Override
+    public synchronized String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("count=").append(mCount);
+        if (mCount > 0) {
+            sb.append(" mean=").append(mTotalMs / mCount).append("ms")
+                    .append(" p50<=").append(getPercentileUpperBoundMs(50)).append("ms")
+                    .append(" p95<=").append(getPercentileUpperBoundMs(95)).append("ms")
+                    .append(" max=").append(mMaxMs).append("ms");
+        }
+        sb.append(" [");
+        for (int bucket = 0; bucket < mBucketCounts.length; bucket++) {
+            if (bucket > 0) {
+                sb.append(" ");
+            }
+            if (bucket < BUCKET_UPPER_BOUNDS_MS.length) {
+                sb.append("<").append(BUCKET_UPPER_BOUNDS_MS[bucket]);
+            } else {
+                sb.append(">=").append(BUCKET_UPPER_BOUNDS_MS[bucket - 1]);
+            }
+            sb.append(":").append(mBucketCounts[bucket]);
+        }
+        return sb.append("]").toString();
+    }
+}
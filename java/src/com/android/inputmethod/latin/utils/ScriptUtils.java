@@ -16,8 +16,11 @@
 
 package com.android.inputmethod.latin.utils;
 
+import com.android.inputmethod.annotations.UsedForTesting;
+
 import java.util.Locale;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * A class to help with handling different writing scripts.
@@ -45,6 +48,15 @@ public class ScriptUtils {
     public static final int SCRIPT_TAMIL = 15;
     public static final int SCRIPT_TELUGU = 16;
     public static final int SCRIPT_THAI = 17;
+    @UsedForTesting
+    static final int SCRIPT_COUNT = 18;
+
+    // The letters of all the scripts above are in the basic multilingual plane.
+    private static final int LETTER_TABLE_CODE_POINT_COUNT = 0x10000;
+    // For each script, a bit set of the code points that are letters of the script, built the
+    // first time the script is used. Spell checking looks up every code point of every word.
+    private static final AtomicReferenceArray<long[]> sLetterTables =
+            new AtomicReferenceArray<>(SCRIPT_COUNT);
 
     private static final TreeMap<String, Integer> mLanguageCodeToScriptCode;
 
@@ -70,6 +82,42 @@ public class ScriptUtils {
         mLanguageCodeToScriptCode.put("th", SCRIPT_THAI);
     }
 
+    /**
+     * Returns whether the code point is a letter that makes sense for the specified
+     * locale for this spell checker.
+     *
+     * This looks the code point up in a table built from {@link #isLetterInScriptBlocks}.
+     */
+    public static boolean isLetterPartOfScript(final int codePoint, final int scriptId) {
+        if (SCRIPT_UNKNOWN == scriptId) {
+            return true;
+        }
+        if (scriptId < 0 || scriptId >= SCRIPT_COUNT) {
+            // Should never come here
+            throw new RuntimeException("Impossible value of script: " + scriptId);
+        }
+        if (codePoint < 0 || codePoint >= LETTER_TABLE_CODE_POINT_COUNT) {
+            return false;
+        }
+        long[] letterTable = sLetterTables.get(scriptId);
+        if (null == letterTable) {
+            // Threads racing here build identical tables, so whichever is kept does not matter.
+            letterTable = buildLetterTable(scriptId);
+            sLetterTables.set(scriptId, letterTable);
+        }
+        return (letterTable[codePoint >>> 6] & (1L << codePoint)) != 0;
+    }
+
+    private static long[] buildLetterTable(final int scriptId) {
+        final long[] letterTable = new long[LETTER_TABLE_CODE_POINT_COUNT / Long.SIZE];
+        for (int codePoint = 0; codePoint < LETTER_TABLE_CODE_POINT_COUNT; codePoint++) {
+            if (isLetterInScriptBlocks(codePoint, scriptId)) {
+                letterTable[codePoint >>> 6] |= 1L << codePoint;
+            }
+        }
+        return letterTable;
+    }
+
     /*
      * Returns whether the code point is a letter that makes sense for the specified
      * locale for this spell checker.
@@ -78,7 +126,8 @@ public class ScriptUtils {
      * Hence at the moment this explicitly tests for Cyrillic characters or Latin characters
      * as appropriate, and explicitly excludes CJK, Arabic and Hebrew characters.
      */
-    public static boolean isLetterPartOfScript(final int codePoint, final int scriptId) {
+    @UsedForTesting
+    public static boolean isLetterInScriptBlocks(final int codePoint, final int scriptId) {
         switch (scriptId) {
         case SCRIPT_ARABIC:
             // Arabic letters can be in any of the following blocks:
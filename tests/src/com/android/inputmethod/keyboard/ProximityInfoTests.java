@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.android.inputmethod.keyboard.internal.KeyboardIconsSet;
+import com.android.inputmethod.keyboard.internal.TouchPositionCorrection;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@LargeTest
+public class ProximityInfoTests extends AndroidTestCase {
+    private static final String TAG = ProximityInfoTests.class.getSimpleName();
+
+    private static final int GRID_WIDTH = 32;
+    private static final int GRID_HEIGHT = 16;
+    private static final int ITERATION_COUNT = 50;
+
+    private static List<Key> createKeys(final int keyboardWidth, final int keyboardHeight,
+            final int columns, final int rows) {
+        final int keyWidth = keyboardWidth / columns;
+        final int keyHeight = keyboardHeight / rows;
+        final ArrayList<Key> keys = new ArrayList<>();
+        int code = 'a';
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                keys.add(new Key(null /* label */, KeyboardIconsSet.ICON_UNDEFINED, code++,
+                        null /* outputText */, null /* hintLabel */, 0 /* labelFlags */,
+                        Key.BACKGROUND_TYPE_NORMAL, column * keyWidth, row * keyHeight,
+                        keyWidth, keyHeight, keyWidth / 10 /* horizontalGap */,
+                        keyHeight / 10 /* verticalGap */));
+            }
+        }
+        return keys;
+    }
+
+    private static ProximityInfo createProximityInfo(final int keyboardWidth,
+            final int keyboardHeight, final List<Key> keys) {
+        final Key key = keys.get(0);
+        return new ProximityInfo(GRID_WIDTH, GRID_HEIGHT, keyboardWidth, keyboardHeight,
+                key.getWidth(), key.getHeight(), keys, new TouchPositionCorrection());
+    }
+
+    private static void assertSameNearestKeys(final String message, final ProximityInfo expected,
+            final ProximityInfo actual, final int keyboardWidth, final int keyboardHeight) {
+        final int cellWidth = (keyboardWidth + GRID_WIDTH - 1) / GRID_WIDTH;
+        final int cellHeight = (keyboardHeight + GRID_HEIGHT - 1) / GRID_HEIGHT;
+        for (int y = 0; y < keyboardHeight; y += cellHeight) {
+            for (int x = 0; x < keyboardWidth; x += cellWidth) {
+                assertEquals(message + " x=" + x + " y=" + y, expected.getNearestKeys(x, y),
+                        actual.getNearestKeys(x, y));
+            }
+        }
+    }
+
+    private void runGridBuildBenchmark(final String geometry, final int keyboardWidth,
+            final int keyboardHeight, final int columns, final int rows) {
+        final List<Key> keys = createKeys(keyboardWidth, keyboardHeight, columns, rows);
+        try {
+            ProximityInfo.setParallelGridBuildEnabledForTesting(false);
+            final ProximityInfo serial = createProximityInfo(keyboardWidth, keyboardHeight, keys);
+            final long serialStart = System.nanoTime();
+            for (int i = 0; i < ITERATION_COUNT; i++) {
+                createProximityInfo(keyboardWidth, keyboardHeight, keys);
+            }
+            final long serialTime = System.nanoTime() - serialStart;
+
+            ProximityInfo.setParallelGridBuildEnabledForTesting(true);
+            final ProximityInfo parallel =
+                    createProximityInfo(keyboardWidth, keyboardHeight, keys);
+            final long parallelStart = System.nanoTime();
+            for (int i = 0; i < ITERATION_COUNT; i++) {
+                createProximityInfo(keyboardWidth, keyboardHeight, keys);
+            }
+            final long parallelTime = System.nanoTime() - parallelStart;
+
+            assertSameNearestKeys(geometry, serial, parallel, keyboardWidth, keyboardHeight);
+            Log.d(TAG, geometry + ": " + keys.size() + " keys, serial "
+                    + (serialTime / ITERATION_COUNT / 1000) + " us, parallel "
+                    + (parallelTime / ITERATION_COUNT / 1000) + " us");
+        } finally {
+            ProximityInfo.setParallelGridBuildEnabledForTesting(true);
+        }
+    }
+
+    public void testPhoneGeometry() {
+        runGridBuildBenchmark("phone", 1080 /* keyboardWidth */, 640 /* keyboardHeight */,
+                10 /* columns */, 4 /* rows */);
+    }
+
+    public void testTabletGeometry() {
+        runGridBuildBenchmark("tablet", 2560 /* keyboardWidth */, 900 /* keyboardHeight */,
+                13 /* columns */, 5 /* rows */);
+    }
+
+    public void testLargeTabletGeometry() {
+        runGridBuildBenchmark("large tablet", 2560 /* keyboardWidth */, 1200 /* keyboardHeight */,
+                16 /* columns */, 6 /* rows */);
+    }
+
+    public void testSharedNativeProximityInfo() {
+        final List<Key> keys = createKeys(1080 /* keyboardWidth */, 640 /* keyboardHeight */,
+                10 /* columns */, 4 /* rows */);
+        final ProximityInfo info = createProximityInfo(1080, 640, keys);
+        final int sharedCount = ProximityInfo.getSharedNativeProximityInfoCountForTesting();
+        // The same geometry built from other key instances shares the native proximity info.
+        final ProximityInfo sameInfo = createProximityInfo(1080, 640,
+                createKeys(1080, 640, 10 /* columns */, 4 /* rows */));
+        assertEquals(info.getNativeProximityInfo(), sameInfo.getNativeProximityInfo());
+        assertEquals(sharedCount, ProximityInfo.getSharedNativeProximityInfoCountForTesting());
+
+        final ProximityInfo otherInfo = createProximityInfo(1080, 640,
+                createKeys(1080, 640, 11 /* columns */, 4 /* rows */));
+        assertFalse(info.getNativeProximityInfo() == otherInfo.getNativeProximityInfo());
+    }
+}
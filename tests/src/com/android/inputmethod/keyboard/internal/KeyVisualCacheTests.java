@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard.internal;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.inputmethod.keyboard.Key;
+
+@SmallTest
+public class KeyVisualCacheTests extends AndroidTestCase {
+    private static final int KEY_WIDTH = 10;
+    private static final int KEY_HEIGHT = 20;
+    private static final int VISUAL_SIZE_IN_BYTES = KEY_WIDTH * KEY_HEIGHT * 4;
+
+    private static Key newKey(final String label, final int x) {
+        return new Key(label, KeyboardIconsSet.ICON_UNDEFINED, label.codePointAt(0),
+                null /* outputText */, null /* hintLabel */, 0 /* labelFlags */,
+                Key.BACKGROUND_TYPE_NORMAL, x, 0 /* y */, KEY_WIDTH, KEY_HEIGHT,
+                0 /* horizontalGap */, 0 /* verticalGap */);
+    }
+
+    private static Bitmap newVisual() {
+        return Bitmap.createBitmap(KEY_WIDTH, KEY_HEIGHT, Bitmap.Config.ARGB_8888);
+    }
+
+    public void testHitForSameKeyContent() {
+        final KeyVisualCache cache = new KeyVisualCache(VISUAL_SIZE_IN_BYTES * 4);
+        final KeyDrawParams params = new KeyDrawParams();
+        final Bitmap visual = newVisual();
+        cache.put(newKey("a", 0), params, visual);
+
+        assertSame(visual, cache.get(newKey("a", 0), params));
+        assertNull(cache.get(newKey("b", 0), params));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0.5f, cache.getHitRatio());
+    }
+
+    public void testMissForDifferentState() {
+        final KeyVisualCache cache = new KeyVisualCache(VISUAL_SIZE_IN_BYTES * 4);
+        final KeyDrawParams params = new KeyDrawParams();
+        final Key key = newKey("a", 0);
+        cache.put(key, params, newVisual());
+
+        key.onPressed();
+        assertNull(cache.get(key, params));
+        key.onReleased();
+        key.setEnabled(false);
+        assertNull(cache.get(key, params));
+    }
+
+    public void testMissForDifferentParams() {
+        final KeyVisualCache cache = new KeyVisualCache(VISUAL_SIZE_IN_BYTES * 4);
+        final KeyDrawParams params = new KeyDrawParams();
+        final Key key = newKey("a", 0);
+        cache.put(key, params, newVisual());
+
+        // The cache must keep a snapshot of the parameters, not the parameters themselves.
+        params.mTextColor = 0xFF00FF00;
+        assertNull(cache.get(key, params));
+        final KeyDrawParams otherParams = new KeyDrawParams();
+        assertNotNull(cache.get(key, otherParams));
+    }
+
+    public void testEviction() {
+        final KeyVisualCache cache = new KeyVisualCache(VISUAL_SIZE_IN_BYTES * 2);
+        final KeyDrawParams params = new KeyDrawParams();
+        final Bitmap visualA = newVisual();
+        cache.put(newKey("a", 0), params, visualA);
+        cache.put(newKey("b", KEY_WIDTH), params, newVisual());
+        cache.put(newKey("c", KEY_WIDTH * 2), params, newVisual());
+
+        assertNull(cache.get(newKey("a", 0), params));
+        assertTrue(visualA.isRecycled());
+        assertNotNull(cache.get(newKey("c", KEY_WIDTH * 2), params));
+        assertEquals(VISUAL_SIZE_IN_BYTES * 2, cache.getSizeInBytes());
+    }
+}
@@ -34,6 +34,11 @@ public class PointerTrackerQueueTests extends AndroidTestCase {
             mId = id;
         }
 
+        @Override
+        public int getPointerId() {
+            return mId;
+        }
+
         @Override
         public boolean isModifier() {
             return mIsModifier;
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.keyboard.internal;
+
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+
+@SmallTest
+public class RoundedLineTests extends AndroidTestCase {
+    private static final String TAG = RoundedLineTests.class.getSimpleName();
+
+    // A recorded gesture stroke, as x and y coordinates.
+    private static final int[] STROKE = {
+        102, 310, 131, 296, 167, 281, 210, 270, 262, 262, 319, 259, 377, 262, 431, 271,
+        478, 288, 514, 313, 536, 345, 541, 382, 529, 418, 503, 447, 466, 466, 421, 473,
+        374, 468, 332, 452, 301, 428, 287, 399, 291, 368, 312, 340, 347, 320, 392, 309,
+        443, 307, 497, 315, 551, 331, 602, 354, 647, 383, 682, 417, 703, 455, 708, 494,
+        697, 531, 671, 562, 633, 585, 587, 598, 537, 600, 488, 591, 445, 572, 412, 545
+    };
+    private static final int FRAME_COUNT = 200;
+
+    private static void assertSamePath(final String message, final Path expected,
+            final Path actual) {
+        final Rect expectedBounds = new Rect();
+        final Rect actualBounds = new Rect();
+        final RectF bounds = new RectF();
+        expected.computeBounds(bounds, true /* unused */);
+        bounds.roundOut(expectedBounds);
+        actual.computeBounds(bounds, true /* unused */);
+        bounds.roundOut(actualBounds);
+        assertEquals(message, expectedBounds, actualBounds);
+    }
+
+    public void testGeometryIsReusableForSameRadiusDifference() {
+        final RoundedLine roundedLine = new RoundedLine();
+        final RoundedLine expectedLine = new RoundedLine();
+        final float[] geometry = new float[RoundedLine.GEOMETRY_SIZE];
+        for (int i = 2; i < STROKE.length; i += 2) {
+            final int p1x = STROKE[i - 2];
+            final int p1y = STROKE[i - 1];
+            final int p2x = STROKE[i];
+            final int p2y = STROKE[i + 1];
+            RoundedLine.computeGeometry(p1x, p1y, 10.0f, p2x, p2y, 8.0f, geometry, 0);
+            // The radii shrink over time, but their difference stays the same.
+            for (float shrink = 0.0f; shrink < 6.0f; shrink += 1.5f) {
+                final float r1 = 10.0f - shrink;
+                final float r2 = 8.0f - shrink;
+                assertSamePath("segment " + (i / 2) + " shrink " + shrink,
+                        expectedLine.makePath(p1x, p1y, r1, p2x, p2y, r2),
+                        roundedLine.makePath(p1x, p1y, r1, p2x, p2y, r2, geometry, 0));
+            }
+        }
+    }
+
+    public void testEmptyPath() {
+        final RoundedLine roundedLine = new RoundedLine();
+        final float[] geometry = new float[RoundedLine.GEOMETRY_SIZE];
+        RoundedLine.computeGeometry(10, 20, 5.0f, 10, 20, 4.0f, geometry, 0);
+        assertTrue(roundedLine.makePath(10, 20, 5.0f, 10, 20, 4.0f, geometry, 0).isEmpty());
+        assertTrue(roundedLine.makePath(10, 20, 5.0f, 10, 20, 4.0f).isEmpty());
+    }
+
+    @LargeTest
+    public void testFrameTimeOverRecordedStroke() {
+        final RoundedLine roundedLine = new RoundedLine();
+        final int segmentCount = STROKE.length / 2 - 1;
+        final float[] geometries = new float[(segmentCount + 1) * RoundedLine.GEOMETRY_SIZE];
+        for (int i = 1; i <= segmentCount; i++) {
+            RoundedLine.computeGeometry(STROKE[i * 2 - 2], STROKE[i * 2 - 1], 10.0f,
+                    STROKE[i * 2], STROKE[i * 2 + 1], 9.5f, geometries,
+                    i * RoundedLine.GEOMETRY_SIZE);
+        }
+
+        final long uncachedStart = System.nanoTime();
+        for (int frame = 0; frame < FRAME_COUNT; frame++) {
+            final float shrink = frame * 0.01f;
+            for (int i = 1; i <= segmentCount; i++) {
+                roundedLine.makePath(STROKE[i * 2 - 2], STROKE[i * 2 - 1], 10.0f - shrink,
+                        STROKE[i * 2], STROKE[i * 2 + 1], 9.5f - shrink);
+            }
+        }
+        final long uncachedTime = System.nanoTime() - uncachedStart;
+
+        final long cachedStart = System.nanoTime();
+        for (int frame = 0; frame < FRAME_COUNT; frame++) {
+            final float shrink = frame * 0.01f;
+            for (int i = 1; i <= segmentCount; i++) {
+                roundedLine.makePath(STROKE[i * 2 - 2], STROKE[i * 2 - 1], 10.0f - shrink,
+                        STROKE[i * 2], STROKE[i * 2 + 1], 9.5f - shrink, geometries,
+                        i * RoundedLine.GEOMETRY_SIZE);
+            }
+        }
+        final long cachedTime = System.nanoTime() - cachedStart;
+
+        Log.d(TAG, segmentCount + " segments per frame: uncached "
+                + (uncachedTime / FRAME_COUNT / 1000) + " us/frame, cached "
+                + (cachedTime / FRAME_COUNT / 1000) + " us/frame");
+    }
+}
@@ -385,6 +385,57 @@ public class BinaryDictionaryTests extends AndroidTestCase {
                 getTrigramProbability(binaryDictionary, "bcc", "abb", "aaa"));
     }
 
+    public void testFrequencyOfWordsAddedAndRemoved() {
+        final File dictFile = createEmptyDictionaryAndGetFile(FormatSpec.VERSION403);
+        BinaryDictionary binaryDictionary = getBinaryDictionary(dictFile);
+        final int probability = 100;
+        // More words than the filter of the empty dictionary was sized for.
+        final int wordCount = 1000;
+        for (int i = 0; i < wordCount; i++) {
+            addUnigramWord(binaryDictionary, "word" + i, probability);
+        }
+        for (int i = 0; i < wordCount; i++) {
+            assertEquals(probability, binaryDictionary.getFrequency("word" + i));
+        }
+        assertFalse(binaryDictionary.isInDictionary("notaword"));
+
+        binaryDictionary.removeUnigramEntry("word0");
+        assertFalse(binaryDictionary.isInDictionary("word0"));
+        binaryDictionary.flush();
+        assertFalse(binaryDictionary.isInDictionary("word0"));
+        assertEquals(probability, binaryDictionary.getFrequency("word1"));
+        binaryDictionary.close();
+
+        binaryDictionary = getBinaryDictionary(dictFile);
+        assertFalse(binaryDictionary.isInDictionary("word0"));
+        for (int i = 1; i < wordCount; i++) {
+            assertEquals(probability, binaryDictionary.getFrequency("word" + i));
+        }
+        addUnigramWord(binaryDictionary, "word0", probability);
+        assertEquals(probability, binaryDictionary.getFrequency("word0"));
+        binaryDictionary.close();
+    }
+
+    public void testFrequencyOfWordsAfterReopen() {
+        final File dictFile = createEmptyDictionaryAndGetFile(FormatSpec.VERSION403);
+        BinaryDictionary binaryDictionary = getBinaryDictionary(dictFile);
+        final int probability = 100;
+        // Words that are read from the dictionary after longer ones.
+        final String[] words = { "abc", "ab", "a", "abcd", "xy", "b" };
+        for (final String word : words) {
+            addUnigramWord(binaryDictionary, word, probability);
+        }
+        binaryDictionary.flush();
+        binaryDictionary.close();
+
+        binaryDictionary = getBinaryDictionary(dictFile);
+        for (final String word : words) {
+            assertEquals(word, probability, binaryDictionary.getFrequency(word));
+        }
+        assertFalse(binaryDictionary.isInDictionary("xyc"));
+        binaryDictionary.close();
+    }
+
     public void testFlushDictionary() {
         final File dictFile = createEmptyDictionaryAndGetFile(FormatSpec.VERSION403);
         BinaryDictionary binaryDictionary = getBinaryDictionary(dictFile);
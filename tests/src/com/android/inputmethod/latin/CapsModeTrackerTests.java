@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.content.res.Resources;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.text.TextUtils;
+
+import com.android.inputmethod.latin.settings.SpacingAndPunctuations;
+import com.android.inputmethod.latin.utils.CapsModeUtils;
+import com.android.inputmethod.latin.utils.RunInLocale;
+
+import java.util.Locale;
+import java.util.Random;
+
+@SmallTest
+public class CapsModeTrackerTests extends AndroidTestCase {
+    private static final int MAX_LENGTH = 40;
+    private static final String ALPHABET = "ab.U.S .,\n\t\"')(¿e?!   ";
+    private static final int[] REQ_MODES = {
+        TextUtils.CAP_MODE_CHARACTERS,
+        TextUtils.CAP_MODE_WORDS,
+        TextUtils.CAP_MODE_SENTENCES,
+        TextUtils.CAP_MODE_CHARACTERS | TextUtils.CAP_MODE_WORDS,
+        TextUtils.CAP_MODE_WORDS | TextUtils.CAP_MODE_SENTENCES,
+        TextUtils.CAP_MODE_CHARACTERS | TextUtils.CAP_MODE_WORDS
+                | TextUtils.CAP_MODE_SENTENCES
+    };
+
+    private SpacingAndPunctuations getSpacingAndPunctuations(final Locale locale) {
+        final RunInLocale<SpacingAndPunctuations> job = new RunInLocale<SpacingAndPunctuations>() {
+            @Override
+            protected SpacingAndPunctuations job(final Resources res) {
+                return new SpacingAndPunctuations(res);
+            }
+        };
+        return job.runInLocale(getContext().getResources(), locale);
+    }
+
+    private static void assertSameCapsMode(final CapsModeTracker tracker,
+            final EditorTextMirror mirror, final SpacingAndPunctuations sp) {
+        final String text = mirror.toString();
+        for (final int reqModes : REQ_MODES) {
+            for (final boolean hasSpaceBefore : new boolean[] { false, true }) {
+                assertEquals("After >" + text + "< reqModes=" + reqModes
+                        + " hasSpaceBefore=" + hasSpaceBefore,
+                        CapsModeUtils.getCapsMode(text, reqModes, sp, hasSpaceBefore),
+                        tracker.getCapsMode(mirror, reqModes, sp, hasSpaceBefore));
+            }
+        }
+    }
+
+    private static String randomText(final Random random, final int length) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    private static void runRandomEdits(final SpacingAndPunctuations sp) {
+        final Random random = new Random(42);
+        final EditorTextMirror mirror = new EditorTextMirror(MAX_LENGTH);
+        final CapsModeTracker tracker = new CapsModeTracker(MAX_LENGTH);
+        for (int step = 0; step < 5000; step++) {
+            final int edit = random.nextInt(20);
+            if (edit == 0) {
+                mirror.clear();
+            } else if (edit < 4) {
+                mirror.setLength(Math.max(0, mirror.length() - random.nextInt(4)));
+            } else if (edit == 4) {
+                mirror.append(randomText(random, random.nextInt(MAX_LENGTH * 2)));
+            } else {
+                mirror.append(randomText(random, 1 + random.nextInt(3)));
+            }
+            assertSameCapsMode(tracker, mirror, sp);
+        }
+    }
+
+    public void testTypingSentences() {
+        final SpacingAndPunctuations sp = getSpacingAndPunctuations(Locale.ENGLISH);
+        final EditorTextMirror mirror = new EditorTextMirror(MAX_LENGTH);
+        final CapsModeTracker tracker = new CapsModeTracker(MAX_LENGTH);
+        final String text = "Word. In the U.S. and \"Word.\" (e.g. this)\n\tWord... Word, it";
+        for (int i = 0; i < text.length(); i++) {
+            mirror.append(text, i, i + 1);
+            assertSameCapsMode(tracker, mirror, sp);
+        }
+        // Delete it all back.
+        while (!mirror.isEmpty()) {
+            mirror.setLength(mirror.length() - 1);
+            assertSameCapsMode(tracker, mirror, sp);
+        }
+    }
+
+    public void testRandomEditsEnglish() {
+        runRandomEdits(getSpacingAndPunctuations(Locale.ENGLISH));
+    }
+
+    public void testRandomEditsGerman() {
+        runRandomEdits(getSpacingAndPunctuations(Locale.GERMAN));
+    }
+
+    public void testRandomEditsFrench() {
+        runRandomEdits(getSpacingAndPunctuations(Locale.FRENCH));
+    }
+}
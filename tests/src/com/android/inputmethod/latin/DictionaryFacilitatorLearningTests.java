@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.android.inputmethod.latin.common.Constants;
+import com.android.inputmethod.latin.makedict.WordProperty;
+import com.android.inputmethod.latin.personalization.UserHistoryDictionaryTestsHelper;
+import com.android.inputmethod.latin.utils.ExecutorUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the grace period of the words learned by DictionaryFacilitatorImpl.
+ */
+@LargeTest
+public class DictionaryFacilitatorLearningTests extends AndroidTestCase {
+    private static final long GRACE_PERIOD =
+            DictionaryFacilitatorImpl.LEARNING_GRACE_PERIOD_IN_MILLISECONDS;
+
+    private DictionaryFacilitatorImpl mDictionaryFacilitator;
+    private ExpandableBinaryDictionary mUserHistoryDictionary;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        UserHistoryDictionaryTestsHelper.removeAllTestDictFiles(
+                UserHistoryDictionaryTestsHelper.TEST_LOCALE_PREFIX, mContext);
+        final Locale dummyLocale = UserHistoryDictionaryTestsHelper.getDummyLocale("learning");
+        final ArrayList<String> dictionaryTypes = new ArrayList<>();
+        dictionaryTypes.add(Dictionary.TYPE_USER_HISTORY);
+        mDictionaryFacilitator = new DictionaryFacilitatorImpl();
+        mDictionaryFacilitator.resetDictionariesForTesting(mContext, dummyLocale,
+                dictionaryTypes, new HashMap<String, File>(),
+                new HashMap<String, Map<String, String>>(), null /* account */);
+        mUserHistoryDictionary =
+                mDictionaryFacilitator.getSubDictForTesting(Dictionary.TYPE_USER_HISTORY);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDictionaryFacilitator.closeDictionaries();
+        UserHistoryDictionaryTestsHelper.removeAllTestDictFiles(
+                UserHistoryDictionaryTestsHelper.TEST_LOCALE_PREFIX, mContext);
+        super.tearDown();
+    }
+
+    private void addWord(final String word) {
+        mDictionaryFacilitator.addToUserHistory(word, false /* wasAutoCapitalized */,
+                NgramContext.EMPTY_PREV_WORDS_INFO,
+                TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()),
+                false /* blockPotentiallyOffensive */);
+    }
+
+    private void revertWord(final String word) {
+        mDictionaryFacilitator.unlearnFromUserHistory(word, NgramContext.EMPTY_PREV_WORDS_INFO,
+                TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()),
+                Constants.EVENT_REVERT);
+    }
+
+    /**
+     * Waits for the tasks already handed to the background thread, and for the dictionary
+     * updates they started.
+     */
+    private void waitForLearning() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        ExecutorUtils.getBackgroundExecutor(ExecutorUtils.KEYBOARD).execute(new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(GRACE_PERIOD, TimeUnit.MILLISECONDS));
+        mUserHistoryDictionary.waitAllTasksForTests();
+    }
+
+    private void sleepUntil(final long startTime, final long delay) throws InterruptedException {
+        final long remaining = startTime + delay - System.currentTimeMillis();
+        if (remaining > 0) {
+            Thread.sleep(remaining);
+        }
+    }
+
+    private boolean isLearned(final String word) throws InterruptedException {
+        waitForLearning();
+        // A word learned once may not be valid yet, so look for its entry.
+        final WordProperty[] wordProperties = mUserHistoryDictionary.getWordPropertiesForSyncing();
+        if (wordProperties == null) {
+            return false;
+        }
+        for (final WordProperty wordProperty : wordProperties) {
+            if (word.equals(wordProperty.mWord)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void testWordIsLearnedAfterGracePeriod() throws InterruptedException {
+        final long startTime = System.currentTimeMillis();
+        addWord("hello");
+        sleepUntil(startTime, GRACE_PERIOD / 2);
+        assertFalse(isLearned("hello"));
+        sleepUntil(startTime, GRACE_PERIOD * 3 / 2);
+        assertTrue(isLearned("hello"));
+    }
+
+    public void testEachWordHasItsOwnGracePeriod() throws InterruptedException {
+        final long startTime = System.currentTimeMillis();
+        addWord("hello");
+        sleepUntil(startTime, GRACE_PERIOD * 2 / 3);
+        addWord("world");
+        // Committing a word must not put off learning the words committed before it.
+        sleepUntil(startTime, GRACE_PERIOD * 7 / 6);
+        assertTrue(isLearned("hello"));
+        assertFalse(isLearned("world"));
+        sleepUntil(startTime, GRACE_PERIOD * 2);
+        assertTrue(isLearned("world"));
+    }
+
+    public void testRevertDuringGracePeriod() throws InterruptedException {
+        final long startTime = System.currentTimeMillis();
+        addWord("hello");
+        revertWord("hello");
+        sleepUntil(startTime, GRACE_PERIOD * 3 / 2);
+        assertFalse(isLearned("hello"));
+    }
+
+    public void testRevertAfterGracePeriod() throws InterruptedException {
+        addWord("hello");
+        mDictionaryFacilitator.learnPendingWords();
+        assertTrue(isLearned("hello"));
+        revertWord("hello");
+        assertFalse(isLearned("hello"));
+    }
+
+    public void testLearnPendingWords() throws InterruptedException {
+        addWord("hello");
+        addWord("world");
+        // As done at the end of an input session: the words are learned without waiting for
+        // their grace period.
+        mDictionaryFacilitator.learnPendingWords();
+        assertTrue(isLearned("hello"));
+        assertTrue(isLearned("world"));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.inputmethod.latin.common.Constants;
+
+import java.util.ArrayList;
+
+@SmallTest
+public class EditorTextMirrorTests extends AndroidTestCase {
+    public void testAppendAndTruncate() {
+        final EditorTextMirror mirror = new EditorTextMirror(16);
+        assertTrue(mirror.isEmpty());
+        assertEquals(Constants.NOT_A_CODE, mirror.getCodePointBeforeEnd());
+        mirror.append("Hello");
+        mirror.append(" world");
+        assertEquals("Hello world", mirror.getText().toString());
+        assertEquals('d', mirror.getCodePointBeforeEnd());
+        mirror.setLength(5);
+        assertEquals("Hello", mirror.toString());
+        mirror.append("xx, there", 2, 9);
+        assertEquals("Hello, there", mirror.toString());
+        assertEquals("there", mirror.getTail(5).toString());
+        assertEquals("Hello, there", mirror.getTail(100).toString());
+        mirror.clear();
+        assertEquals("", mirror.getText().toString());
+    }
+
+    public void testWindowKeepsTail() {
+        final EditorTextMirror mirror = new EditorTextMirror(8);
+        mirror.append("abcdef");
+        mirror.append("ghijk");
+        assertEquals("defghijk", mirror.toString());
+        for (int i = 0; i < 100; i++) {
+            mirror.append(Integer.toString(i % 10));
+        }
+        assertEquals("23456789", mirror.toString());
+        mirror.append("0123456789ABCDEF");
+        assertEquals("89ABCDEF", mirror.toString());
+    }
+
+    public void testWindowDoesNotSplitSurrogatePairs() {
+        final String smiley = new String(Character.toChars(0x1F600));
+        final EditorTextMirror mirror = new EditorTextMirror(4);
+        mirror.append("a" + smiley + "b");
+        mirror.append("c");
+        assertEquals(smiley + "bc", mirror.toString());
+        assertEquals(0x1F600, Character.codePointAt(mirror.getText(), 0));
+        mirror.setLength(2);
+        assertEquals(0x1F600, mirror.getCodePointBeforeEnd());
+    }
+
+    public void testGetCodePointBeforeEndWithLength() {
+        final String smiley = new String(Character.toChars(0x1F600));
+        final EditorTextMirror mirror = new EditorTextMirror(16);
+        mirror.append("a" + smiley + "b");
+        assertEquals('b', mirror.getCodePointBeforeEnd(0));
+        assertEquals(0x1F600, mirror.getCodePointBeforeEnd(1));
+        assertEquals('a', mirror.getCodePointBeforeEnd(3));
+        assertEquals(Constants.NOT_A_CODE, mirror.getCodePointBeforeEnd(4));
+        assertEquals(Constants.NOT_A_CODE, mirror.getCodePointBeforeEnd(-1));
+    }
+
+    public void testViewsAreImmutable() {
+        final EditorTextMirror mirror = new EditorTextMirror(8);
+        mirror.append("abcd");
+        final CharSequence view = mirror.getText();
+        final CharSequence subView = view.subSequence(1, 3);
+        // Appending after the view leaves it untouched.
+        mirror.append("ef");
+        // Overwriting chars the view covers must not change it.
+        mirror.setLength(2);
+        mirror.append("XYZ");
+        // Moving the window must not change it either.
+        for (int i = 0; i < 20; i++) {
+            mirror.append("-");
+        }
+        assertEquals("abcd", view.toString());
+        assertEquals("bc", subView.toString());
+        assertEquals("--------", mirror.toString());
+    }
+
+    public void testTypingAfterBackspaceKeepsViews() {
+        final EditorTextMirror mirror = new EditorTextMirror(64);
+        mirror.append("Hello");
+        final ArrayList<CharSequence> views = new ArrayList<>();
+        final ArrayList<String> expectedTexts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            // Type a char, and overwrite it after a backspace.
+            mirror.append("x");
+            views.add(mirror.getText());
+            expectedTexts.add(mirror.toString());
+            mirror.setLength(mirror.length() - 1);
+            views.add(mirror.getText());
+            expectedTexts.add(mirror.toString());
+            mirror.append(Integer.toString(i % 10));
+        }
+        for (int i = 0; i < views.size(); i++) {
+            assertEquals(expectedTexts.get(i), views.get(i).toString());
+        }
+    }
+
+    public void testTypingAfterBackspaceReusesBackingArray() {
+        final EditorTextMirror mirror = new EditorTextMirror(64);
+        mirror.append("Hello");
+        final CharSequence firstView = mirror.getText();
+        for (int i = 0; i < 8; i++) {
+            mirror.append("x");
+            mirror.getText();
+            mirror.setLength(mirror.length() - 1);
+            mirror.getText();
+            mirror.append("y");
+            mirror.getText();
+        }
+        // The text is short: the window moves within the same array.
+        assertTrue(EditorTextMirror.haveSameBackingArrayForTesting(firstView,
+                mirror.getText()));
+        assertEquals("Hello" + "yyyyyyyy", mirror.toString());
+        assertEquals("Hello", firstView.toString());
+    }
+
+    public void testAppendAfterClearReusesBackingArray() {
+        final EditorTextMirror mirror = new EditorTextMirror(64);
+        mirror.append("Hello");
+        final CharSequence view = mirror.getText();
+        mirror.clear();
+        mirror.append("World");
+        assertTrue(EditorTextMirror.haveSameBackingArrayForTesting(view, mirror.getText()));
+        assertEquals("Hello", view.toString());
+        assertEquals("World", mirror.toString());
+    }
+}
@@ -459,6 +459,34 @@ public class InputLogicTests extends InputTestsBase {
                 BaseInputConnection.getComposingSpanEnd(mEditText.getText()));
     }
 
+    public void testResumeSuggestionOnceAfterBackspaceRepeat() {
+        // Press backspace once with the cursor followed by a word character, so that a stale
+        // answer from this press would prevent resuming suggestions during the next one.
+        mEditText.setText("and this");
+        sendUpdateForCursorMoveTo(4);
+        type(Constants.CODE_DELETE);
+        sendUpdateForCursorMoveToEndOfLine();
+        type(" wo");
+        // Hold backspace from inside the composing word, until past the space before it.
+        type(Constants.CODE_DELETE);
+        repeatKey(Constants.CODE_DELETE);
+        repeatKey(Constants.CODE_DELETE);
+        assertEquals("backspace repeat", "andthis", mEditText.getText().toString());
+        assertEquals("no resume during backspace repeat", -1,
+                BaseInputConnection.getComposingSpanStart(mEditText.getText()));
+        assertTrue("resume deferred by backspace repeat",
+                mLatinIME.mHandler.hasPendingResumeSuggestions());
+        // Release the key.
+        sleep(DELAY_TO_WAIT_FOR_PREDICTIONS_MILLIS);
+        runMessages();
+        assertEquals("resume after backspace repeat", 0,
+                BaseInputConnection.getComposingSpanStart(mEditText.getText()));
+        assertEquals("resume after backspace repeat", 7,
+                BaseInputConnection.getComposingSpanEnd(mEditText.getText()));
+        assertFalse("resume only once after backspace repeat",
+                mLatinIME.mHandler.hasPendingResumeSuggestions());
+    }
+
     private void helperTestComposing(final String wordToType, final boolean shouldBeComposing) {
         mEditText.setText("");
         type(wordToType);
@@ -135,6 +135,16 @@ public class RichInputConnectionAndTextRangeTests extends AndroidTestCase {
         public boolean finishComposingText() {
             return true;
         }
+
+        @Override
+        public boolean setComposingText(CharSequence text, int newCursorPosition) {
+            return true;
+        }
+
+        @Override
+        public boolean commitText(CharSequence text, int newCursorPosition) {
+            return true;
+        }
     }
 
     static class MockInputMethodService extends InputMethodService {
@@ -279,6 +289,55 @@ public class RichInputConnectionAndTextRangeTests extends AndroidTestCase {
         assertTrue(TextUtils.equals(GREEK_WORD, r.mWord));
     }
 
+    /**
+     * Test that the n-gram context before the cursor is reused while typing a word.
+     */
+    public void testGetNgramContextWhileComposing() {
+        final MockInputMethodService ims = new MockInputMethodService();
+        final RichInputConnection ic = new RichInputConnection(ims);
+        final SpacingAndPunctuations sap = mSpacingAndPunctuations;
+        ims.setInputConnection(new MockConnection("abc def ", 8));
+        ic.resetCachesUponCursorMoveAndReturnSuccess(ims.cursorPos(), ims.cursorPos(), true);
+
+        ic.setComposingText("g", 1);
+        final NgramContext ngramContext = ic.getNgramContextFromNthPreviousWord(sap, 2);
+        assertEquals(NgramContextUtils.getNgramContextFromNthPreviousWord(
+                "abc def g", sap, 2), ngramContext);
+        ic.setComposingText("gh", 1);
+        assertSame(ngramContext, ic.getNgramContextFromNthPreviousWord(sap, 2));
+        ic.setComposingText("ghi", 1);
+        assertSame(ngramContext, ic.getNgramContextFromNthPreviousWord(sap, 2));
+
+        ic.commitText("ghi", 1);
+        ic.commitText(" ", 1);
+        assertEquals(NgramContextUtils.getNgramContextFromNthPreviousWord(
+                "abc def ghi ", sap, 1), ic.getNgramContextFromNthPreviousWord(sap, 1));
+        ic.setComposingText("j", 1);
+        assertEquals(NgramContextUtils.getNgramContextFromNthPreviousWord(
+                "abc def ghi j", sap, 2), ic.getNgramContextFromNthPreviousWord(sap, 2));
+    }
+
+    /**
+     * Test that committing a long text keeps the text before the cursor up to date.
+     */
+    public void testCommitLongText() {
+        final MockInputMethodService ims = new MockInputMethodService();
+        final RichInputConnection ic = new RichInputConnection(ims);
+        ims.setInputConnection(new MockConnection("abc ", 4));
+        ic.resetCachesUponCursorMoveAndReturnSuccess(ims.cursorPos(), ims.cursorPos(), true);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("word").append(i).append(' ');
+        }
+        final String longText = sb.toString();
+        ic.beginBatchEdit();
+        ic.commitText(longText, 1);
+        ic.endBatchEdit();
+        assertEquals(longText.substring(longText.length() - 40),
+                ic.getTextBeforeCursor(40, 0).toString());
+        assertEquals(Constants.CODE_SPACE, ic.getCodePointBeforeCursor());
+    }
+
     /**
      * Test logic in getting the word range at the cursor.
      */
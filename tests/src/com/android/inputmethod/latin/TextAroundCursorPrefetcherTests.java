@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin;
+
+import android.inputmethodservice.InputMethodService;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.text.TextUtils;
+import android.view.inputmethod.InputConnection;
+import android.view.inputmethod.InputConnectionWrapper;
+
+import com.android.inputmethod.latin.TextAroundCursorPrefetcher.TextAroundCursor;
+import com.android.inputmethod.latin.common.Constants;
+import com.android.inputmethod.latin.settings.SpacingAndPunctuations;
+import com.android.inputmethod.latin.utils.LatencyHistogram;
+import com.android.inputmethod.latin.utils.ScriptUtils;
+import com.android.inputmethod.latin.utils.TextRange;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@SmallTest
+public class TextAroundCursorPrefetcherTests extends AndroidTestCase {
+    private static final long WAIT_BUDGET_MS = 50;
+    private static final String TEXT_BEFORE_CURSOR = "word wo";
+    private static final String TEXT_AFTER_CURSOR = "rd";
+
+    /**
+     * An editor that only answers reads from other threads than the test thread once it is
+     * allowed to, like an editor busy with something else.
+     */
+    private static class SlowConnection extends InputConnectionWrapper {
+        private final Thread mTestThread = Thread.currentThread();
+        private final CountDownLatch mAnswerLatch;
+        // The reads of the text after the cursor made on the test thread.
+        final AtomicInteger mSynchronousReadCount = new AtomicInteger();
+
+        public SlowConnection(final boolean isSlow) {
+            super(null, false);
+            mAnswerLatch = new CountDownLatch(isSlow ? 1 : 0);
+        }
+
+        public void answer() {
+            mAnswerLatch.countDown();
+        }
+
+        private void waitUntilAllowedToAnswer() {
+            if (Thread.currentThread() == mTestThread) {
+                return;
+            }
+            try {
+                mAnswerLatch.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public CharSequence getTextBeforeCursor(final int n, final int flags) {
+            waitUntilAllowedToAnswer();
+            return TEXT_BEFORE_CURSOR;
+        }
+
+        @Override
+        public CharSequence getTextAfterCursor(final int n, final int flags) {
+            if (Thread.currentThread() == mTestThread) {
+                mSynchronousReadCount.incrementAndGet();
+            }
+            waitUntilAllowedToAnswer();
+            return TEXT_AFTER_CURSOR;
+        }
+
+        @Override
+        public boolean beginBatchEdit() {
+            return true;
+        }
+
+        @Override
+        public boolean endBatchEdit() {
+            return true;
+        }
+
+        @Override
+        public boolean finishComposingText() {
+            return true;
+        }
+    }
+
+    private static class MockInputMethodService extends InputMethodService {
+        private final InputConnection mInputConnection;
+
+        public MockInputMethodService(final InputConnection inputConnection) {
+            mInputConnection = inputConnection;
+        }
+
+        @Override
+        public InputConnection getCurrentInputConnection() {
+            return mInputConnection;
+        }
+    }
+
+    private SpacingAndPunctuations getSpacing() {
+        return new SpacingAndPunctuations(new SpacingAndPunctuations(getContext().getResources()),
+                new int[] { Constants.CODE_SPACE });
+    }
+
+    public void testGetPrefetchedText() {
+        final SlowConnection connection = new SlowConnection(false /* isSlow */);
+        final TextAroundCursorPrefetcher prefetcher = new TextAroundCursorPrefetcher();
+        final LatencyHistogram latencyHistogram = new LatencyHistogram();
+        prefetcher.prefetch(connection, 7, 7, 40, 40, 0 /* flags */, latencyHistogram);
+        assertTrue(prefetcher.hasPrefetchFor(7, 7));
+        assertFalse(prefetcher.hasPrefetchFor(6, 7));
+
+        final TextAroundCursor textAroundCursor = prefetcher.get(WAIT_BUDGET_MS);
+        assertNotNull(textAroundCursor);
+        assertEquals(TEXT_BEFORE_CURSOR, textAroundCursor.mTextBeforeCursor);
+        assertEquals(TEXT_AFTER_CURSOR, textAroundCursor.mTextAfterCursor);
+        assertEquals(2, latencyHistogram.getCount());
+
+        prefetcher.invalidate();
+        assertFalse(prefetcher.hasPrefetchFor(7, 7));
+        assertNull(prefetcher.get(WAIT_BUDGET_MS));
+    }
+
+    public void testGetFallsBackAfterBudget() {
+        final SlowConnection connection = new SlowConnection(true /* isSlow */);
+        final TextAroundCursorPrefetcher prefetcher = new TextAroundCursorPrefetcher();
+        try {
+            prefetcher.prefetch(connection, 7, 7, 40, 40, 0 /* flags */, new LatencyHistogram());
+            final long startTime = SystemClock.uptimeMillis();
+            assertNull(prefetcher.get(WAIT_BUDGET_MS));
+            assertTrue(SystemClock.uptimeMillis() - startTime >= WAIT_BUDGET_MS);
+        } finally {
+            connection.answer();
+        }
+    }
+
+    public void testWordRangeAtCursorUsesPrefetchedText() {
+        final SlowConnection connection = new SlowConnection(false /* isSlow */);
+        final RichInputConnection ic =
+                new RichInputConnection(new MockInputMethodService(connection));
+        ic.resetCachesUponCursorMoveAndReturnSuccess(TEXT_BEFORE_CURSOR.length(),
+                TEXT_BEFORE_CURSOR.length(), true /* shouldFinishComposition */);
+
+        ic.beginBatchEdit();
+        final TextRange r = ic.getWordRangeAtCursor(getSpacing(), ScriptUtils.SCRIPT_LATIN);
+        assertTrue(ic.isCursorFollowedByWordCharacter(getSpacing()));
+        ic.endBatchEdit();
+        assertTrue(TextUtils.equals("word", r.mWord));
+        // Both reads were served from the prefetch rather than by the editor on this thread.
+        assertEquals(0, connection.mSynchronousReadCount.get());
+    }
+
+    public void testWordRangeAtCursorFallsBackWhenEditorIsSlow() {
+        final SlowConnection connection = new SlowConnection(true /* isSlow */);
+        final RichInputConnection ic =
+                new RichInputConnection(new MockInputMethodService(connection));
+        try {
+            ic.resetCachesUponCursorMoveAndReturnSuccess(TEXT_BEFORE_CURSOR.length(),
+                    TEXT_BEFORE_CURSOR.length(), true /* shouldFinishComposition */);
+
+            ic.beginBatchEdit();
+            final long startTime = SystemClock.uptimeMillis();
+            assertNull(ic.getWordRangeAtCursor(getSpacing(), ScriptUtils.SCRIPT_LATIN));
+            assertFalse(ic.isCursorFollowedByWordCharacter(getSpacing()));
+            final long duration = SystemClock.uptimeMillis() - startTime;
+            ic.endBatchEdit();
+            // Each read waited for the budget, and then gave up instead of asking the editor.
+            assertTrue(duration >= 2 * WAIT_BUDGET_MS);
+            assertEquals(0, connection.mSynchronousReadCount.get());
+        } finally {
+            connection.answer();
+        }
+    }
+}
@@ -19,6 +19,7 @@ package com.android.inputmethod.latin;
 import android.test.AndroidTestCase;
 import android.test.suitebuilder.annotation.SmallTest;
 
+import com.android.inputmethod.latin.common.ComposedData;
 import com.android.inputmethod.latin.common.Constants;
 import com.android.inputmethod.latin.common.CoordinateUtils;
 import com.android.inputmethod.latin.common.StringUtils;
@@ -120,4 +121,27 @@ public class WordComposerTests extends AndroidTestCase {
         wc.setCursorPositionWithinWord(2);
         assertTrue(wc.moveCursorByAndReturnIfInsideComposingWord(0));
     }
+
+    public void testComposedDataSnapshotIsReused() {
+        final WordComposer wc = new WordComposer();
+        final int[] codePoints = StringUtils.toCodePointArray("abc");
+        final int[] coordinates = CoordinateUtils.newCoordinateArray(codePoints.length,
+                Constants.NOT_A_COORDINATE, Constants.NOT_A_COORDINATE);
+        wc.setComposingWord(codePoints, coordinates);
+        final ComposedData snapshot = wc.getComposedDataSnapshot();
+        assertEquals("abc", snapshot.mTypedWord);
+        assertSame(snapshot, wc.getComposedDataSnapshot());
+        // Moving the cursor within the word does not change the word.
+        assertTrue(wc.moveCursorByAndReturnIfInsideComposingWord(-1));
+        assertSame(snapshot, wc.getComposedDataSnapshot());
+
+        wc.setComposingWord(StringUtils.toCodePointArray("abcd"),
+                CoordinateUtils.newCoordinateArray(4,
+                        Constants.NOT_A_COORDINATE, Constants.NOT_A_COORDINATE));
+        final ComposedData newSnapshot = wc.getComposedDataSnapshot();
+        assertNotSame(snapshot, newSnapshot);
+        assertEquals("abcd", newSnapshot.mTypedWord);
+        // The previous snapshot is immutable.
+        assertEquals("abc", snapshot.mTypedWord);
+    }
 }
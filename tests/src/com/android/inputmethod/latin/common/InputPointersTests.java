@@ -49,6 +49,22 @@ public class InputPointersTests extends AndroidTestCase {
         assertNotSame("times after reset", times, src.getTimes());
     }
 
+    public void testClear() {
+        final InputPointers src = new InputPointers(DEFAULT_CAPACITY);
+        src.addPointer(1 /* x */, 2 /* y */, 3 /* pointerId */, 4 /* time */);
+        final int[] xCoordinates = src.getXCoordinates();
+        final int[] yCoordinates = src.getYCoordinates();
+        final int[] pointerIds = src.getPointerIds();
+        final int[] times = src.getTimes();
+
+        src.clear();
+        assertEquals("size after clear", 0, src.getPointerSize());
+        assertSame("xCoordinates after clear", xCoordinates, src.getXCoordinates());
+        assertSame("yCoordinates after clear", yCoordinates, src.getYCoordinates());
+        assertSame("pointerIds after clear", pointerIds, src.getPointerIds());
+        assertSame("times after clear", times, src.getTimes());
+    }
+
     public void testAdd() {
         final InputPointers src = new InputPointers(DEFAULT_CAPACITY);
         final int limit = src.getXCoordinates().length * 2 + 10;
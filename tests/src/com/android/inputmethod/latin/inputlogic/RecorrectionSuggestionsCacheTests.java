@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.inputlogic;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.inputmethod.latin.NgramContext;
+import com.android.inputmethod.latin.SuggestedWords;
+import com.android.inputmethod.latin.SuggestedWords.SuggestedWordInfo;
+import com.android.inputmethod.latin.inputlogic.RecorrectionSuggestionsCache.Key;
+import com.android.inputmethod.latin.settings.SettingsValues;
+
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.ArrayList;
+
+@SmallTest
+public class RecorrectionSuggestionsCacheTests extends AndroidTestCase {
+    @Mock private SettingsValues mMockSettingsValues;
+    @Mock private SettingsValues mOtherMockSettingsValues;
+
+    private RecorrectionSuggestionsCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        MockitoAnnotations.initMocks(this);
+        mCache = new RecorrectionSuggestionsCache();
+    }
+
+    private static SuggestedWords createSuggestedWords() {
+        return new SuggestedWords(new ArrayList<SuggestedWordInfo>(), null /* rawSuggestions */,
+                null /* typedWord */,
+                false /* typedWordValid */,
+                false /* willAutoCorrect */,
+                false /* isObsoleteSuggestions */,
+                SuggestedWords.INPUT_STYLE_NONE,
+                SuggestedWords.NOT_A_SEQUENCE_NUMBER);
+    }
+
+    private Key getKey(final String word) {
+        return mCache.getKey(word, NgramContext.BEGINNING_OF_SENTENCE, null /* keyboard */,
+                mMockSettingsValues);
+    }
+
+    public void testHit() {
+        final SuggestedWords suggestedWords = createSuggestedWords();
+        mCache.put(getKey("word"), suggestedWords);
+        assertSame(suggestedWords, mCache.get(getKey("word")));
+        assertNull(mCache.get(getKey("other")));
+        assertNull(mCache.get(mCache.getKey("word", NgramContext.EMPTY_PREV_WORDS_INFO,
+                null /* keyboard */, mMockSettingsValues)));
+        assertNull(mCache.get(mCache.getKey("word", NgramContext.BEGINNING_OF_SENTENCE,
+                null /* keyboard */, mOtherMockSettingsValues)));
+    }
+
+    public void testMissAfterGenerationBump() {
+        final Key key = getKey("word");
+        mCache.put(key, createSuggestedWords());
+        mCache.invalidate();
+        assertNull(mCache.get(getKey("word")));
+        // Suggestions computed for the previous generation are not put.
+        mCache.put(key, createSuggestedWords());
+        assertNull(mCache.get(key));
+        assertNull(mCache.get(getKey("word")));
+    }
+
+    public void testLruEviction() {
+        for (int i = 0; i < RecorrectionSuggestionsCache.CACHE_SIZE; ++i) {
+            mCache.put(getKey("word" + i), createSuggestedWords());
+        }
+        // Use the oldest entry, so that the next oldest one is evicted instead.
+        assertNotNull(mCache.get(getKey("word0")));
+        mCache.put(getKey("word"), createSuggestedWords());
+        assertNotNull(mCache.get(getKey("word0")));
+        assertNull(mCache.get(getKey("word1")));
+        for (int i = 2; i < RecorrectionSuggestionsCache.CACHE_SIZE; ++i) {
+            assertNotNull(mCache.get(getKey("word" + i)));
+        }
+        assertNotNull(mCache.get(getKey("word")));
+    }
+}
@@ -29,6 +29,14 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Encodes binary files for a FusionDictionary.
@@ -52,6 +60,13 @@ public class BinaryDictEncoderUtils {
     // suspicion that a bug might be causing an infinite loop.
     private static final int MAX_PASSES = 24;
 
+    // Below this number of PtNode arrays per segment, splitting the passes over the PtNode arrays
+    // between threads costs more than it saves.
+    private static final int MIN_PTNODE_ARRAYS_PER_SEGMENT = 4096;
+    private static final long SEGMENT_THREAD_KEEP_ALIVE_SECONDS = 10;
+
+    private static boolean sParallelAddressComputationEnabled = true;
+
     /**
      * Compute the binary size of the character array.
      *
@@ -301,108 +316,65 @@ public class BinaryDictEncoderUtils {
         return list;
     }
 
-    /**
-     * Get the offset from a position inside a current node array to a target node array, during
-     * update.
-     *
-     * If the current node array is before the target node array, the target node array has not
-     * been updated yet, so we should return the offset from the old position of the current node
-     * array to the old position of the target node array. If on the other hand the target is
-     * before the current node array, it already has been updated, so we should return the offset
-     * from the new position in the current node array to the new position in the target node
-     * array.
-     *
-     * @param currentNodeArray node array containing the PtNode where the offset will be written
-     * @param offsetFromStartOfCurrentNodeArray offset, in bytes, from the start of currentNodeArray
-     * @param targetNodeArray the target node array to get the offset to
-     * @return the offset to the target node array
-     */
-    private static int getOffsetToTargetNodeArrayDuringUpdate(final PtNodeArray currentNodeArray,
-            final int offsetFromStartOfCurrentNodeArray, final PtNodeArray targetNodeArray) {
-        final boolean isTargetBeforeCurrent = (targetNodeArray.mCachedAddressBeforeUpdate
-                < currentNodeArray.mCachedAddressBeforeUpdate);
-        if (isTargetBeforeCurrent) {
-            return targetNodeArray.mCachedAddressAfterUpdate
-                    - (currentNodeArray.mCachedAddressAfterUpdate
-                            + offsetFromStartOfCurrentNodeArray);
-        }
-        return targetNodeArray.mCachedAddressBeforeUpdate
-                - (currentNodeArray.mCachedAddressBeforeUpdate + offsetFromStartOfCurrentNodeArray);
-    }
-
-    /**
-     * Get the offset from a position inside a current node array to a target PtNode, during
-     * update.
-     *
-     * @param currentNodeArray node array containing the PtNode where the offset will be written
-     * @param offsetFromStartOfCurrentNodeArray offset, in bytes, from the start of currentNodeArray
-     * @param targetPtNode the target PtNode to get the offset to
-     * @return the offset to the target PtNode
-     */
-    // TODO: is there any way to factorize this method with the one above?
-    private static int getOffsetToTargetPtNodeDuringUpdate(final PtNodeArray currentNodeArray,
-            final int offsetFromStartOfCurrentNodeArray, final PtNode targetPtNode) {
-        final int oldOffsetBasePoint = currentNodeArray.mCachedAddressBeforeUpdate
-                + offsetFromStartOfCurrentNodeArray;
-        final boolean isTargetBeforeCurrent = (targetPtNode.mCachedAddressBeforeUpdate
-                < oldOffsetBasePoint);
-        // If the target is before the current node array, then its address has already been
-        // updated. We can use the AfterUpdate member, and compare it to our own member after
-        // update. Otherwise, the AfterUpdate member is not updated yet, so we need to use the
-        // BeforeUpdate member, and of course we have to compare this to our own address before
-        // update.
-        if (isTargetBeforeCurrent) {
-            final int newOffsetBasePoint = currentNodeArray.mCachedAddressAfterUpdate
-                    + offsetFromStartOfCurrentNodeArray;
-            return targetPtNode.mCachedAddressAfterUpdate - newOffsetBasePoint;
-        }
-        return targetPtNode.mCachedAddressBeforeUpdate - oldOffsetBasePoint;
-    }
-
     /**
      * Computes the actual node array size, based on the cached addresses of the children nodes.
      *
      * Each node array stores its tentative address. During dictionary address computing, these
      * are not final, but they can be used to compute the node array size (the node array size
      * depends on the address of the children because the number of bytes necessary to store an
-     * address depends on its numeric value. The return value indicates whether the node array
-     * contents (as in, any of the addresses stored in the cache fields) have changed with
-     * respect to their previous value.
+     * address depends on its numeric value. The return value indicates whether the size of the
+     * node array or of any of its PtNodes has changed with respect to their previous value.
+     *
+     * The offsets are all computed between the addresses before update, so that each node array
+     * can be updated independently from the others, and sizes never increase from one pass to
+     * the next. This only reads the cached addresses of other node arrays, so it can run for
+     * several node arrays at the same time.
      *
      * @param ptNodeArray the node array to compute the size of.
-     * @param dict the dictionary in which the word/attributes are to be found.
-     * @return false if none of the cached addresses inside the node array changed, true otherwise.
+     * @param bigramTargets the PtNodes of the bigrams of the node array, in order.
+     * @param addressSizes the sizes of the children and bigram addresses of the node array before
+     *   update, in order, which are updated to their new sizes.
+     * @return false if none of the cached sizes inside the node array changed, true otherwise.
      */
     private static boolean computeActualPtNodeArraySize(final PtNodeArray ptNodeArray,
-            final FusionDictionary dict,
+            final PtNode[] bigramTargets, final int[] addressSizes,
             final HashMap<Integer, Integer> codePointToOneByteCodeMap) {
         boolean changed = false;
         int size = getPtNodeCountSize(ptNodeArray);
+        int bigramIndex = 0;
+        int addressIndex = 0;
         for (PtNode ptNode : ptNodeArray.mData) {
-            ptNode.mCachedAddressAfterUpdate = ptNodeArray.mCachedAddressAfterUpdate + size;
-            if (ptNode.mCachedAddressAfterUpdate != ptNode.mCachedAddressBeforeUpdate) {
-                changed = true;
-            }
             int nodeSize = getNodeHeaderSize(ptNode, codePointToOneByteCodeMap);
             if (ptNode.isTerminal()) {
                 nodeSize += FormatSpec.PTNODE_FREQUENCY_SIZE;
             }
-            if (null != ptNode.mChildren) {
-                nodeSize += getByteSize(getOffsetToTargetNodeArrayDuringUpdate(ptNodeArray,
-                        nodeSize + size, ptNode.mChildren));
-            }
+            // The address of the current field of the PtNode before update.
+            int fieldAddress = ptNode.mCachedAddressBeforeUpdate + nodeSize;
+            final int childrenAddressSize = null == ptNode.mChildren ? 0
+                    : getByteSize(ptNode.mChildren.mCachedAddressBeforeUpdate - fieldAddress);
+            fieldAddress += addressSizes[addressIndex];
+            addressSizes[addressIndex++] = childrenAddressSize;
+            nodeSize += childrenAddressSize;
             // TODO: Use codePointToOneByteCodeMap for shortcuts.
-            nodeSize += getShortcutListSize(ptNode.mShortcutTargets,
+            final int shortcutListSize = getShortcutListSize(ptNode.mShortcutTargets,
                     null /* codePointToOneByteCodeMap */);
+            fieldAddress += shortcutListSize;
+            nodeSize += shortcutListSize;
             if (null != ptNode.mBigrams) {
-                for (WeightedString bigram : ptNode.mBigrams) {
-                    final int offset = getOffsetToTargetPtNodeDuringUpdate(ptNodeArray,
-                            nodeSize + size + FormatSpec.PTNODE_ATTRIBUTE_FLAGS_SIZE,
-                            FusionDictionary.findWordInTree(dict.mRootNodeArray, bigram.mWord));
-                    nodeSize += getByteSize(offset) + FormatSpec.PTNODE_ATTRIBUTE_FLAGS_SIZE;
+                for (int i = 0; i < ptNode.mBigrams.size(); ++i) {
+                    fieldAddress += FormatSpec.PTNODE_ATTRIBUTE_FLAGS_SIZE;
+                    final int bigramAddressSize = getByteSize(
+                            bigramTargets[bigramIndex++].mCachedAddressBeforeUpdate
+                                    - fieldAddress);
+                    fieldAddress += addressSizes[addressIndex];
+                    addressSizes[addressIndex++] = bigramAddressSize;
+                    nodeSize += FormatSpec.PTNODE_ATTRIBUTE_FLAGS_SIZE + bigramAddressSize;
                 }
             }
-            ptNode.mCachedSize = nodeSize;
+            if (ptNode.mCachedSize != nodeSize) {
+                ptNode.mCachedSize = nodeSize;
+                changed = true;
+            }
             size += nodeSize;
         }
         if (ptNodeArray.mCachedSize != size) {
@@ -413,40 +385,87 @@ public class BinaryDictEncoderUtils {
     }
 
     /**
-     * Initializes the cached addresses of node arrays and their containing nodes from their size.
+     * Finds the PtNodes of the bigrams of a node array once, rather than at each pass.
      *
-     * @param flatNodes the list of node arrays.
-     * @return the byte size of the entire stack.
+     * @param ptNodeArray the node array.
+     * @param dict the dictionary in which the bigrams are to be found.
+     * @return the PtNodes of the bigrams of all the PtNodes of the node array, in order.
      */
-    private static int initializePtNodeArraysCachedAddresses(
-            final ArrayList<PtNodeArray> flatNodes) {
-        int nodeArrayOffset = 0;
-        for (final PtNodeArray nodeArray : flatNodes) {
-            nodeArray.mCachedAddressBeforeUpdate = nodeArrayOffset;
-            int nodeCountSize = getPtNodeCountSize(nodeArray);
-            int nodeffset = 0;
-            for (final PtNode ptNode : nodeArray.mData) {
-                ptNode.mCachedAddressBeforeUpdate = ptNode.mCachedAddressAfterUpdate =
-                        nodeCountSize + nodeArrayOffset + nodeffset;
-                nodeffset += ptNode.mCachedSize;
+    private static PtNode[] findBigramTargets(final PtNodeArray ptNodeArray,
+            final FusionDictionary dict) {
+        int bigramCount = 0;
+        for (final PtNode ptNode : ptNodeArray.mData) {
+            if (null != ptNode.mBigrams) {
+                bigramCount += ptNode.mBigrams.size();
+            }
+        }
+        final PtNode[] bigramTargets = new PtNode[bigramCount];
+        int bigramIndex = 0;
+        for (final PtNode ptNode : ptNodeArray.mData) {
+            if (null == ptNode.mBigrams) continue;
+            for (final WeightedString bigram : ptNode.mBigrams) {
+                bigramTargets[bigramIndex++] =
+                        FusionDictionary.findWordInTree(dict.mRootNodeArray, bigram.mWord);
             }
-            nodeArrayOffset += nodeArray.mCachedSize;
         }
-        return nodeArrayOffset;
+        return bigramTargets;
     }
 
     /**
-     * Updates the cached addresses of node arrays after recomputing their new positions.
+     * Returns the maximum sizes of the children and bigram addresses of a node array, as
+     * assumed by {@link #calculatePtNodeArrayMaximumSize}. Each PtNode has a children address,
+     * followed by the addresses of its bigrams.
+     *
+     * @param ptNodeArray the node array.
+     * @return the maximum sizes of the addresses of all the PtNodes of the node array, in order.
+     */
+    private static int[] getMaximumAddressSizes(final PtNodeArray ptNodeArray) {
+        int addressCount = ptNodeArray.mData.size();
+        for (final PtNode ptNode : ptNodeArray.mData) {
+            if (null != ptNode.mBigrams) {
+                addressCount += ptNode.mBigrams.size();
+            }
+        }
+        final int[] addressSizes = new int[addressCount];
+        int addressIndex = 0;
+        for (final PtNode ptNode : ptNodeArray.mData) {
+            addressSizes[addressIndex++] = FormatSpec.PTNODE_MAX_ADDRESS_SIZE;
+            if (null == ptNode.mBigrams) continue;
+            for (int i = 0; i < ptNode.mBigrams.size(); ++i) {
+                addressSizes[addressIndex++] = FormatSpec.PTNODE_ATTRIBUTE_MAX_ADDRESS_SIZE;
+            }
+        }
+        return addressSizes;
+    }
+
+    /**
+     * Updates the cached addresses of node arrays and their containing nodes from their size.
      *
      * @param flatNodes the list of node arrays.
+     * @return whether any of the cached addresses changed.
      */
-    private static void updatePtNodeArraysCachedAddresses(final ArrayList<PtNodeArray> flatNodes) {
+    private static boolean updatePtNodeArraysCachedAddresses(
+            final ArrayList<PtNodeArray> flatNodes) {
+        boolean changed = false;
+        int nodeArrayOffset = 0;
         for (final PtNodeArray nodeArray : flatNodes) {
-            nodeArray.mCachedAddressBeforeUpdate = nodeArray.mCachedAddressAfterUpdate;
+            if (nodeArray.mCachedAddressBeforeUpdate != nodeArrayOffset) {
+                changed = true;
+            }
+            nodeArray.mCachedAddressBeforeUpdate = nodeArray.mCachedAddressAfterUpdate =
+                    nodeArrayOffset;
+            int ptNodeOffset = nodeArrayOffset + getPtNodeCountSize(nodeArray);
             for (final PtNode ptNode : nodeArray.mData) {
-                ptNode.mCachedAddressBeforeUpdate = ptNode.mCachedAddressAfterUpdate;
+                if (ptNode.mCachedAddressBeforeUpdate != ptNodeOffset) {
+                    changed = true;
+                }
+                ptNode.mCachedAddressBeforeUpdate = ptNode.mCachedAddressAfterUpdate =
+                        ptNodeOffset;
+                ptNodeOffset += ptNode.mCachedSize;
             }
+            nodeArrayOffset += nodeArray.mCachedSize;
         }
+        return changed;
     }
 
     /**
@@ -459,6 +478,11 @@ public class BinaryDictEncoderUtils {
      * The order of the PtNode is given by the order of the array. This method makes no effort
      * to find a good order; it only mechanically computes the size this order results in.
      *
+     * Each pass computes the sizes of all the node arrays from the addresses of the previous
+     * pass, on contiguous segments of the list that are processed in parallel for large
+     * dictionaries. Sizes only decrease from one pass to the next, until the smallest sizes
+     * consistent with their own addresses.
+     *
      * @param dict the dictionary
      * @param flatNodes the ordered list of PtNode arrays
      * @return the same array it was passed. The nodes have been updated for address and size.
@@ -467,10 +491,22 @@ public class BinaryDictEncoderUtils {
             final ArrayList<PtNodeArray> flatNodes,
             final HashMap<Integer, Integer> codePointToOneByteCodeMap) {
         // First get the worst possible sizes and offsets
-        for (final PtNodeArray n : flatNodes) {
-            calculatePtNodeArrayMaximumSize(n, codePointToOneByteCodeMap);
-        }
-        final int offset = initializePtNodeArraysCachedAddresses(flatNodes);
+        final PtNode[][] bigramTargets = new PtNode[flatNodes.size()][];
+        final int[][] addressSizes = new int[flatNodes.size()][];
+        runOnSegments(flatNodes.size(), new SegmentTask() {
+            @Override
+            public boolean run(final int start, final int end) {
+                for (int i = start; i < end; ++i) {
+                    calculatePtNodeArrayMaximumSize(flatNodes.get(i), codePointToOneByteCodeMap);
+                    bigramTargets[i] = findBigramTargets(flatNodes.get(i), dict);
+                    addressSizes[i] = getMaximumAddressSizes(flatNodes.get(i));
+                }
+                return false;
+            }
+        });
+        updatePtNodeArraysCachedAddresses(flatNodes);
+        final PtNodeArray lastPtNodeArray = flatNodes.get(flatNodes.size() - 1);
+        final int offset = lastPtNodeArray.mCachedAddressAfterUpdate + lastPtNodeArray.mCachedSize;
 
         MakedictLog.i("Compressing the array addresses. Original size : " + offset);
         MakedictLog.i("(Recursively seen size : " + offset + ")");
@@ -478,26 +514,28 @@ public class BinaryDictEncoderUtils {
         int passes = 0;
         boolean changesDone = false;
         do {
-            changesDone = false;
-            int ptNodeArrayStartOffset = 0;
-            for (final PtNodeArray ptNodeArray : flatNodes) {
-                ptNodeArray.mCachedAddressAfterUpdate = ptNodeArrayStartOffset;
-                final int oldNodeArraySize = ptNodeArray.mCachedSize;
-                final boolean changed = computeActualPtNodeArraySize(ptNodeArray, dict,
-                        codePointToOneByteCodeMap);
-                final int newNodeArraySize = ptNodeArray.mCachedSize;
-                if (oldNodeArraySize < newNodeArraySize) {
-                    throw new RuntimeException("Increased size ?!");
+            final boolean sizesChanged = runOnSegments(flatNodes.size(), new SegmentTask() {
+                @Override
+                public boolean run(final int start, final int end) {
+                    boolean changed = false;
+                    for (int i = start; i < end; ++i) {
+                        final PtNodeArray ptNodeArray = flatNodes.get(i);
+                        final int oldNodeArraySize = ptNodeArray.mCachedSize;
+                        changed |= computeActualPtNodeArraySize(ptNodeArray, bigramTargets[i],
+                                addressSizes[i], codePointToOneByteCodeMap);
+                        if (oldNodeArraySize < ptNodeArray.mCachedSize) {
+                            throw new RuntimeException("Increased size ?!");
+                        }
+                    }
+                    return changed;
                 }
-                ptNodeArrayStartOffset += newNodeArraySize;
-                changesDone |= changed;
-            }
-            updatePtNodeArraysCachedAddresses(flatNodes);
+            });
+            final boolean addressesChanged = updatePtNodeArraysCachedAddresses(flatNodes);
+            changesDone = sizesChanged || addressesChanged;
             ++passes;
             if (passes > MAX_PASSES) throw new RuntimeException("Too many passes - probably a bug");
         } while (changesDone);
 
-        final PtNodeArray lastPtNodeArray = flatNodes.get(flatNodes.size() - 1);
         MakedictLog.i("Compression complete in " + passes + " passes.");
         MakedictLog.i("After address compression : "
                 + (lastPtNodeArray.mCachedAddressAfterUpdate + lastPtNodeArray.mCachedSize));
@@ -505,6 +543,103 @@ public class BinaryDictEncoderUtils {
         return flatNodes;
     }
 
+    @UsedForTesting
+    static void setParallelAddressComputationEnabledForTesting(final boolean enabled) {
+        sParallelAddressComputationEnabled = enabled;
+    }
+
+    /**
+     * A task on a contiguous segment of the flattened PtNode arrays. The tasks of different
+     * segments may run at the same time.
+     */
+    private interface SegmentTask {
+        /**
+         * @param start the index of the first PtNode array of the segment.
+         * @param end the index after the last PtNode array of the segment.
+         * @return whether the task changed anything in the segment.
+         */
+        boolean run(final int start, final int end);
+    }
+
+    private static final class SegmentExecutorHolder {
+        static final ExecutorService EXECUTOR = newSegmentExecutor();
+
+        private static ExecutorService newSegmentExecutor() {
+            final int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount,
+                    SEGMENT_THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(final Runnable runnable) {
+                            final Thread thread = new Thread(runnable,
+                                    BinaryDictEncoderUtils.class.getSimpleName());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    /**
+     * Runs a task on all the PtNode arrays, split in segments that are run in parallel when
+     * there are enough PtNode arrays. The calling thread takes care of the first segment.
+     *
+     * @param count the number of PtNode arrays.
+     * @param task the task to run on each segment.
+     * @return whether the task changed anything in any of the segments.
+     */
+    private static boolean runOnSegments(final int count, final SegmentTask task) {
+        final int segmentCount = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                count / MIN_PTNODE_ARRAYS_PER_SEGMENT));
+        if (!sParallelAddressComputationEnabled || segmentCount <= 1) {
+            return task.run(0 /* start */, count /* end */);
+        }
+        final int segmentSize = (count + segmentCount - 1) / segmentCount;
+        final ArrayList<Future<Boolean>> futures = new ArrayList<>(segmentCount - 1);
+        for (int start = segmentSize; start < count; start += segmentSize) {
+            final int segmentStart = start;
+            final int segmentEnd = Math.min(count, start + segmentSize);
+            futures.add(SegmentExecutorHolder.EXECUTOR.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return task.run(segmentStart, segmentEnd);
+                }
+            }));
+        }
+        final boolean changed = task.run(0 /* start */, segmentSize /* end */);
+        return waitForSegments(futures) || changed;
+    }
+
+    private static boolean waitForSegments(final ArrayList<Future<Boolean>> futures) {
+        boolean changed = false;
+        boolean interrupted = false;
+        try {
+            for (final Future<Boolean> future : futures) {
+                while (true) {
+                    try {
+                        changed |= future.get();
+                        break;
+                    } catch (final InterruptedException e) {
+                        // The segments must be complete before the next pass can start.
+                        interrupted = true;
+                    }
+                }
+            }
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Failed to compute the addresses", e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return changed;
+    }
+
     /**
      * Sanity-checking method.
      *
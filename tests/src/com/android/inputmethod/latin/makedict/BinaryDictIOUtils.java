@@ -56,6 +56,19 @@ public final class BinaryDictIOUtils {
         return getDictDecoder(dictFile, offset, length, DictDecoder.USE_READONLY_BYTEBUFFER);
     }
 
+    /**
+     * Opens a dictionary file to read its words one at a time, without reading the whole
+     * dictionary into memory.
+     *
+     * @param dictFile the dictionary file.
+     * @return the word reader, which the caller must close.
+     * @throws IOException if the file is not a dictionary that can be opened.
+     */
+    public static Ver4DictDecoder.WordReader openWordReader(final File dictFile)
+            throws IOException {
+        return new Ver4DictDecoder(dictFile).openWordReader();
+    }
+
     private static final class Position {
         public static final int NOT_READ_PTNODE_COUNT = -1;
 
@@ -145,6 +145,10 @@ public final class FusionDictionary implements Iterable<WordProperty> {
             return isTerminal() ? mProbabilityInfo.mProbability : NOT_A_TERMINAL;
         }
 
+        public ProbabilityInfo getProbabilityInfo() {
+            return mProbabilityInfo;
+        }
+
         public boolean getIsNotAWord() {
             return mIsNotAWord;
         }
@@ -440,9 +444,11 @@ public final class FusionDictionary implements Iterable<WordProperty> {
             } else {
                 if (0 == differentCharIndex) {
                     // Exact same word. Update the frequency if higher. This will also add the
-                    // new shortcuts to the existing shortcut list if it already exists.
+                    // new shortcuts to the existing shortcut list if it already exists. If the
+                    // PtNode was not a terminal yet, it takes the flags of the new word.
                     currentPtNode.update(probabilityInfo, shortcutTargets, null,
-                            currentPtNode.mIsNotAWord && isNotAWord,
+                            (!currentPtNode.isTerminal() || currentPtNode.mIsNotAWord)
+                                    && isNotAWord,
                             currentPtNode.mIsPossiblyOffensive || isPossiblyOffensive);
                 } else {
                     // Partial prefix match only. We have to replace the current node with a node
@@ -507,7 +513,7 @@ public final class FusionDictionary implements Iterable<WordProperty> {
             if (dstOffset + i >= dst.length) return i;
             if (src[i] != dst[dstOffset + i]) return i;
         }
-        if (dst.length > src.length) return src.length;
+        if (dst.length - dstOffset > src.length) return src.length;
         return ARRAYS_ARE_EQUAL;
     }
 
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import com.android.inputmethod.annotations.UsedForTesting;
+import com.android.inputmethod.latin.define.DecoderSpecificConstants;
+import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNode;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Builds a FusionDictionary from all its words at once.
+ *
+ * {@link FusionDictionary#add} walks the trie from the root for each word, and
+ * {@link FusionDictionary#setBigram} walks it again for both words of each bigram. This builder
+ * instead sorts the words by code points, which is a linear pass for words that are already
+ * sorted, and builds each PtNode of the trie once, directly with its final characters. Bigrams are
+ * recorded as they are added and resolved once the trie is built, from the ids of their words.
+ *
+ * The dictionary is the same as if the words were passed to {@link FusionDictionary#add} and the
+ * bigrams to {@link FusionDictionary#setBigram} in the same order, except that bigrams may be
+ * added before their first word.
+ */
+@UsedForTesting
+public final class FusionDictionaryBuilder {
+    private static final class Entry {
+        final int[] mCodePoints;
+        final String mWord;
+        final ProbabilityInfo mProbabilityInfo;
+        final ArrayList<WeightedString> mShortcutTargets;
+        final boolean mIsNotAWord;
+        final boolean mIsPossiblyOffensive;
+
+        Entry(final int[] codePoints, final String word, final ProbabilityInfo probabilityInfo,
+                final ArrayList<WeightedString> shortcutTargets, final boolean isNotAWord,
+                final boolean isPossiblyOffensive) {
+            mCodePoints = codePoints;
+            mWord = word;
+            mProbabilityInfo = probabilityInfo;
+            mShortcutTargets = shortcutTargets;
+            mIsNotAWord = isNotAWord;
+            mIsPossiblyOffensive = isPossiblyOffensive;
+        }
+    }
+
+    private static final class Bigram {
+        final String mWord0;
+        final String mWord1;
+        final ProbabilityInfo mProbabilityInfo;
+
+        Bigram(final String word0, final String word1, final ProbabilityInfo probabilityInfo) {
+            mWord0 = word0;
+            mWord1 = word1;
+            mProbabilityInfo = probabilityInfo;
+        }
+    }
+
+    /**
+     * Orders entries by the code points of their words, shorter words first.
+     */
+    private static final Comparator<Entry> CODE_POINT_COMPARATOR = new Comparator<Entry>() {
+        @Override
+        public int compare(final Entry e1, final Entry e2) {
+            final int[] codePoints1 = e1.mCodePoints;
+            final int[] codePoints2 = e2.mCodePoints;
+            final int length = Math.min(codePoints1.length, codePoints2.length);
+            for (int i = 0; i < length; ++i) {
+                if (codePoints1[i] != codePoints2[i]) {
+                    return codePoints1[i] < codePoints2[i] ? -1 : 1;
+                }
+            }
+            return codePoints1.length - codePoints2.length;
+        }
+    };
+
+    private final DictionaryOptions mOptions;
+    private final ArrayList<Entry> mEntries = new ArrayList<>();
+    private final ArrayList<Bigram> mBigrams = new ArrayList<>();
+    private final HashSet<String> mWords = new HashSet<>();
+
+    public FusionDictionaryBuilder(final DictionaryOptions options) {
+        mOptions = options;
+    }
+
+    /**
+     * Adds a word. Words are best added sorted by code points, but don't have to be.
+     *
+     * @param word the word to add.
+     * @param probabilityInfo probability information of the word.
+     * @param shortcutTargets a list of shortcut targets for this word, or null.
+     * @param isNotAWord true if this should not be considered a word (e.g. shortcut only)
+     * @param isPossiblyOffensive true if this word is possibly offensive
+     */
+    public void add(final String word, final ProbabilityInfo probabilityInfo,
+            final ArrayList<WeightedString> shortcutTargets, final boolean isNotAWord,
+            final boolean isPossiblyOffensive) {
+        assert(probabilityInfo.mProbability <= FormatSpec.MAX_TERMINAL_FREQUENCY);
+        final int[] codePoints = FusionDictionary.getCodePoints(word);
+        if (codePoints.length >= DecoderSpecificConstants.DICTIONARY_MAX_WORD_LENGTH) {
+            MakedictLog.w("Ignoring a word that is too long: word.length = " + codePoints.length);
+            return;
+        }
+        if (codePoints.length == 0) {
+            MakedictLog.w("Ignoring an empty word");
+            return;
+        }
+        mEntries.add(new Entry(codePoints, word, probabilityInfo, shortcutTargets, isNotAWord,
+                isPossiblyOffensive));
+        mWords.add(word);
+    }
+
+    /**
+     * Adds a bigram. Its first word must be added to the builder before or after the bigram. Like
+     * with {@link FusionDictionary#setBigram}, its second word is added with a probability of 0
+     * if it was not added yet.
+     *
+     * @param word0 the previous word of the context
+     * @param word1 the next word of the context
+     * @param probabilityInfo the bigram probability info
+     */
+    public void setBigram(final String word0, final String word1,
+            final ProbabilityInfo probabilityInfo) {
+        if (!mWords.contains(word1)) {
+            add(word1, new ProbabilityInfo(0), null /* shortcutTargets */,
+                    false /* isNotAWord */, false /* isPossiblyOffensive */);
+        }
+        mBigrams.add(new Bigram(word0, word1, probabilityInfo));
+    }
+
+    /**
+     * Builds the dictionary from the words and bigrams added so far.
+     *
+     * @throws RuntimeException if the first word of a bigram was not added.
+     */
+    public FusionDictionary build() {
+        // The sort is stable, so that repeated words are merged in the order they were added.
+        Collections.sort(mEntries, CODE_POINT_COMPARATOR);
+
+        final PtNode[] terminals = new PtNode[mEntries.size()];
+        final FusionDictionary dict = new FusionDictionary(new PtNodeArray(), mOptions);
+        buildNodeArray(dict.mRootNodeArray, 0 /* start */, mEntries.size(), 0 /* depth */,
+                terminals);
+
+        // The id of a word is the index of its first entry once sorted.
+        final HashMap<String, Integer> wordIds = new HashMap<>();
+        for (int i = 0; i < terminals.length; ++i) {
+            if (null != terminals[i]) {
+                wordIds.put(mEntries.get(i).mWord, i);
+            }
+        }
+        for (final Bigram bigram : mBigrams) {
+            final Integer wordId0 = wordIds.get(bigram.mWord0);
+            if (null == wordId0) {
+                throw new RuntimeException("First word of bigram not found " + bigram.mWord0);
+            }
+            terminals[wordId0].addBigram(bigram.mWord1, bigram.mProbabilityInfo);
+        }
+        return dict;
+    }
+
+    /**
+     * Fills a node array with the PtNodes for the sorted entries from start to end, all of which
+     * have the same code points before depth.
+     *
+     * @param terminals receives the terminal PtNode of the first entry of each word.
+     */
+    private void buildNodeArray(final PtNodeArray nodeArray, final int start, final int end,
+            final int depth, final PtNode[] terminals) {
+        int groupStart = start;
+        while (groupStart < end) {
+            // The entries of a PtNode are the ones with the same code point at depth.
+            final int firstCodePoint = mEntries.get(groupStart).mCodePoints[depth];
+            int groupEnd = groupStart + 1;
+            while (groupEnd < end && mEntries.get(groupEnd).mCodePoints[depth] == firstCodePoint) {
+                ++groupEnd;
+            }
+            // As the entries are sorted, the characters they all share are the ones the first
+            // and last entries share.
+            final int[] first = mEntries.get(groupStart).mCodePoints;
+            final int[] last = mEntries.get(groupEnd - 1).mCodePoints;
+            int nodeEnd = depth + 1;
+            while (nodeEnd < first.length && nodeEnd < last.length
+                    && first[nodeEnd] == last[nodeEnd]) {
+                ++nodeEnd;
+            }
+            final PtNode ptNode = new PtNode(Arrays.copyOfRange(first, depth, nodeEnd),
+                    null /* shortcutTargets */, null /* bigrams */, null /* probabilityInfo */,
+                    false /* isNotAWord */, false /* isPossiblyOffensive */);
+            // Only the first entries can end at this PtNode, as shorter words sort first.
+            int childrenStart = groupStart;
+            while (childrenStart < groupEnd
+                    && mEntries.get(childrenStart).mCodePoints.length == nodeEnd) {
+                final Entry entry = mEntries.get(childrenStart);
+                if (childrenStart == groupStart) {
+                    ptNode.mProbabilityInfo = entry.mProbabilityInfo;
+                    ptNode.mTerminalId = entry.mProbabilityInfo.mProbability;
+                    ptNode.mShortcutTargets = entry.mShortcutTargets;
+                    ptNode.mIsNotAWord = entry.mIsNotAWord;
+                    ptNode.mIsPossiblyOffensive = entry.mIsPossiblyOffensive;
+                    terminals[childrenStart] = ptNode;
+                } else {
+                    // The same word again: merge it like FusionDictionary#add does.
+                    ptNode.update(entry.mProbabilityInfo, entry.mShortcutTargets,
+                            null /* bigrams */, ptNode.mIsNotAWord && entry.mIsNotAWord,
+                            ptNode.mIsPossiblyOffensive || entry.mIsPossiblyOffensive);
+                }
+                ++childrenStart;
+            }
+            if (childrenStart < groupEnd) {
+                ptNode.mChildren = new PtNodeArray();
+                buildNodeArray(ptNode.mChildren, childrenStart, groupEnd, nodeEnd, terminals);
+            }
+            nodeArray.mData.add(ptNode);
+            groupStart = groupEnd;
+        }
+    }
+}
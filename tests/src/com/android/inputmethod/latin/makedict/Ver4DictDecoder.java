@@ -20,10 +20,16 @@ import com.android.inputmethod.annotations.UsedForTesting;
 import com.android.inputmethod.latin.BinaryDictionary;
 import com.android.inputmethod.latin.common.FileUtils;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * An implementation of binary dictionary decoder for version 4 binary dictionary.
@@ -38,13 +44,125 @@ public class Ver4DictDecoder extends AbstractDictDecoder {
 
     }
 
+    /**
+     * Reads the words of a dictionary one at a time, straight from the native dictionary, which
+     * maps the dictionary file in memory. Unlike {@link #readDictionaryBinary}, this never holds
+     * more than a word on the Java heap, so that tools can inspect very large dictionaries.
+     */
+    @UsedForTesting
+    public static final class WordReader implements Iterable<WordProperty>, Closeable {
+        @Nonnull
+        private final BinaryDictionary mBinaryDictionary;
+
+        WordReader(@Nonnull final BinaryDictionary binaryDictionary) {
+            mBinaryDictionary = binaryDictionary;
+        }
+
+        public DictionaryHeader getHeader() throws IOException, UnsupportedFormatException {
+            final DictionaryHeader header = mBinaryDictionary.getHeader();
+            if (header == null) {
+                throw new IOException("Cannot read the dictionary header.");
+            }
+            return header;
+        }
+
+        /**
+         * Returns the properties of a word, or null if the word is not in the dictionary.
+         */
+        @Nullable
+        public WordProperty getWordProperty(@Nonnull final String word) {
+            final WordProperty wordProperty = mBinaryDictionary.getWordProperty(word,
+                    false /* isBeginningOfSentence */);
+            return wordProperty.isValid() ? wordProperty : null;
+        }
+
+        /**
+         * Returns an iterator over the words, in the order of the dictionary. Each iterator
+         * starts again from the first word.
+         */
+        @Override
+        public Iterator<WordProperty> iterator() {
+            return new WordIterator(mBinaryDictionary);
+        }
+
+        @Override
+        public void close() {
+            mBinaryDictionary.close();
+        }
+    }
+
+    private static final class WordIterator implements Iterator<WordProperty> {
+        @Nonnull
+        private final BinaryDictionary mBinaryDictionary;
+        private int mToken = 0;
+        private boolean mHasReadLastWord = false;
+        private WordProperty mNextWordProperty;
+
+        WordIterator(@Nonnull final BinaryDictionary binaryDictionary) {
+            mBinaryDictionary = binaryDictionary;
+            mNextWordProperty = readNextWordProperty();
+        }
+
+        // The beginning-of-sentence entry, and the empty word of an empty dictionary, are skipped.
+        private WordProperty readNextWordProperty() {
+            while (!mHasReadLastWord) {
+                final BinaryDictionary.GetNextWordPropertyResult result =
+                        mBinaryDictionary.getNextWordProperty(mToken);
+                mToken = result.mNextToken;
+                mHasReadLastWord = (mToken == 0);
+                final WordProperty wordProperty = result.mWordProperty;
+                if (wordProperty.isValid() && !wordProperty.mIsBeginningOfSentence) {
+                    return wordProperty;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return null != mNextWordProperty;
+        }
+
+        @Override
+        public WordProperty next() {
+            if (null == mNextWordProperty) {
+                throw new NoSuchElementException();
+            }
+            final WordProperty wordProperty = mNextWordProperty;
+            mNextWordProperty = readNextWordProperty();
+            return wordProperty;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Unsupported yet");
+        }
+    }
+
+    /**
+     * Opens the dictionary to read its words one at a time. The caller must close the reader.
+     */
+    @UsedForTesting
+    public WordReader openWordReader() throws IOException {
+        // dictType is not being used in dicttool. Passing an empty string.
+        final BinaryDictionary binaryDictionary = new BinaryDictionary(
+              mDictDirectory.getAbsolutePath(), 0 /* offset */, 0 /* length */,
+              true /* useFullEditDistance */, null /* locale */,
+              "" /* dictType */, true /* isUpdatable */, false /* hasWordFilter */);
+        if (!binaryDictionary.isValidDictionary()) {
+            binaryDictionary.close();
+            throw new IOException("Cannot open the dictionary " + mDictDirectory);
+        }
+        return new WordReader(binaryDictionary);
+    }
+
     @Override
     public DictionaryHeader readHeader() throws IOException, UnsupportedFormatException {
         // dictType is not being used in dicttool. Passing an empty string.
         final BinaryDictionary binaryDictionary= new BinaryDictionary(
               mDictDirectory.getAbsolutePath(), 0 /* offset */, 0 /* length */,
               true /* useFullEditDistance */, null /* locale */,
-              "" /* dictType */, true /* isUpdatable */);
+              "" /* dictType */, true /* isUpdatable */, false /* hasWordFilter */);
         final DictionaryHeader header = binaryDictionary.getHeader();
         binaryDictionary.close();
         if (header == null) {
@@ -60,7 +178,7 @@ public class Ver4DictDecoder extends AbstractDictDecoder {
         final BinaryDictionary binaryDictionary = new BinaryDictionary(
               mDictDirectory.getAbsolutePath(), 0 /* offset */, 0 /* length */,
               true /* useFullEditDistance */, null /* locale */,
-              "" /* dictType */, true /* isUpdatable */);
+              "" /* dictType */, true /* isUpdatable */, false /* hasWordFilter */);
         final DictionaryHeader header = readHeader();
         final FusionDictionary fusionDict =
                 new FusionDictionary(new FusionDictionary.PtNodeArray(), header.mDictionaryOptions);
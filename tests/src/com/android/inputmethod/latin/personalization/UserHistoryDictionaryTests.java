@@ -20,10 +20,16 @@ import android.test.AndroidTestCase;
 import android.test.suitebuilder.annotation.LargeTest;
 import android.util.Log;
 
+import com.android.inputmethod.latin.BinaryDictionary;
 import com.android.inputmethod.latin.ExpandableBinaryDictionary;
+import com.android.inputmethod.latin.ExpandableBinaryDictionary.WordEntryUpdate;
+import com.android.inputmethod.latin.NgramContext;
+import com.android.inputmethod.latin.NgramContext.WordInfo;
 import com.android.inputmethod.latin.utils.BinaryDictionaryUtils;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Random;
 
@@ -210,4 +216,28 @@ public class UserHistoryDictionaryTests extends AndroidTestCase {
                 numberOfWords, random, true /* checksContents */, mCurrentTime));
         assertDictionaryExists(dict, dictFile);
     }
-}
\ No newline at end of file
+
+    public void testAddWordsInBatch() {
+        final Locale dummyLocale =
+                UserHistoryDictionaryTestsHelper.getDummyLocale("words_in_batch");
+        final UserHistoryDictionary dict = PersonalizationHelper.getUserHistoryDictionary(
+                getContext(), dummyLocale, TEST_ACCOUNT);
+        clearHistory(dict);
+        final List<String> words =
+                UserHistoryDictionaryTestsHelper.generateWords(100, new Random(123456));
+        final ArrayList<WordEntryUpdate> updates = new ArrayList<>();
+        NgramContext ngramContext = NgramContext.getEmptyPrevWordsContext(
+                BinaryDictionary.MAX_PREV_WORD_COUNT_FOR_N_GRAM);
+        for (final String word : words) {
+            updates.add(new WordEntryUpdate(ngramContext, word, true /* isValidWord */,
+                    2 /* count */, mCurrentTime));
+            ngramContext = ngramContext.getNextNgramContext(new WordInfo(word));
+        }
+        UserHistoryDictionary.addToDictionary(dict, updates);
+        dict.waitAllTasksForTests();
+        for (final String word : words) {
+            assertTrue(word, dict.isInDictionary(word));
+        }
+        clearHistory(dict);
+    }
+}
@@ -17,6 +17,7 @@
 package com.android.inputmethod.latin.spellcheck;
 
 import android.test.suitebuilder.annotation.LargeTest;
+import android.text.Editable;
 import android.text.style.SuggestionSpan;
 
 import com.android.inputmethod.latin.InputTestsBase;
@@ -73,4 +74,24 @@ public class AndroidSpellCheckerServiceTest extends InputTestsBase {
         assertEquals("Test spell checking of mistyped period for space", "I'm sure",
                 suggestions[0]);
     }
+
+    public void testSpellcheckRepeatedWords() {
+        changeLanguage("en_US");
+        mEditText.setText("tgis is tgis and tgis ");
+        mEditText.setSelection(mEditText.getText().length());
+        mEditText.onAttachedToWindow();
+        sleep(1000);
+        runMessages();
+        sleep(1000);
+
+        // Each occurrence of the misspelled word gets its own span, with the same suggestions.
+        final Editable text = mEditText.getText();
+        final SuggestionSpan[] spans = text.getSpans(0, text.length(), SuggestionSpan.class);
+        assertEquals(3, spans.length);
+        for (final SuggestionSpan span : spans) {
+            assertEquals("tgis", text.subSequence(text.getSpanStart(span),
+                    text.getSpanEnd(span)).toString());
+            assertEquals("this", span.getSuggestions()[0]);
+        }
+    }
 }
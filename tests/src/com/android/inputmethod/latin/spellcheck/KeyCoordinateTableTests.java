@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.spellcheck;
+
+import android.test.suitebuilder.annotation.SmallTest;
+import android.text.InputType;
+import android.view.inputmethod.EditorInfo;
+
+import com.android.inputmethod.keyboard.Key;
+import com.android.inputmethod.keyboard.Keyboard;
+import com.android.inputmethod.keyboard.KeyboardId;
+import com.android.inputmethod.keyboard.KeyboardLayoutSetTestsBase;
+import com.android.inputmethod.keyboard.KeyboardTheme;
+import com.android.inputmethod.keyboard.internal.MoreKeySpec;
+import com.android.inputmethod.latin.common.Constants;
+import com.android.inputmethod.latin.common.CoordinateUtils;
+import com.android.inputmethod.latin.common.InputPointers;
+
+import java.util.Locale;
+
+@SmallTest
+public class KeyCoordinateTableTests extends KeyboardLayoutSetTestsBase {
+    @Override
+    protected int getKeyboardThemeForTests() {
+        return KeyboardTheme.THEME_ID_LXX_LIGHT;
+    }
+
+    private Keyboard createKeyboard() {
+        final EditorInfo editorInfo = new EditorInfo();
+        editorInfo.inputType = InputType.TYPE_CLASS_TEXT;
+        return createKeyboardLayoutSet(getSubtype(Locale.US, "qwerty"), editorInfo)
+                .getKeyboard(KeyboardId.ELEMENT_ALPHABET);
+    }
+
+    private static void assertCoordinates(final String message, final KeyCoordinateTable table,
+            final int codePoint, final Key key) {
+        assertEquals(message + " x", key.getX() + key.getWidth() / 2, table.getX(codePoint));
+        assertEquals(message + " y", key.getY() + key.getHeight() / 2, table.getY(codePoint));
+    }
+
+    public void testKeyCodes() {
+        final Keyboard keyboard = createKeyboard();
+        final KeyCoordinateTable table = new KeyCoordinateTable(keyboard);
+        for (final Key key : keyboard.getSortedKeys()) {
+            final int code = key.getCode();
+            if (code <= 0) {
+                continue;
+            }
+            final int[] coordinates = keyboard.getCoordinates(new int[] { code });
+            assertEquals("x of " + code, CoordinateUtils.xFromArray(coordinates, 0),
+                    table.getX(code));
+            assertEquals("y of " + code, CoordinateUtils.yFromArray(coordinates, 0),
+                    table.getY(code));
+        }
+    }
+
+    public void testOtherCasesAndMoreKeys() {
+        final Keyboard keyboard = createKeyboard();
+        final KeyCoordinateTable table = new KeyCoordinateTable(keyboard);
+        final Key keyE = keyboard.getKey('e');
+        assertCoordinates("E", table, 'E', keyE);
+        for (final MoreKeySpec moreKey : keyE.getMoreKeys()) {
+            if (moreKey.mCode <= 0 || null != keyboard.getKey(moreKey.mCode)) {
+                continue;
+            }
+            assertCoordinates("more key " + moreKey.mCode, table, moreKey.mCode, keyE);
+            assertCoordinates("more key " + moreKey.mCode, table,
+                    Character.toUpperCase(moreKey.mCode), keyE);
+        }
+        assertEquals(Constants.NOT_A_COORDINATE, table.getX(0x1F600));
+        assertEquals(Constants.NOT_A_COORDINATE, table.getY(0x4E00));
+    }
+
+    public void testSetInputPointers() {
+        final Keyboard keyboard = createKeyboard();
+        final KeyCoordinateTable table = new KeyCoordinateTable(keyboard);
+        final InputPointers inputPointers = new InputPointers(4);
+        table.setInputPointers("Hi😀", inputPointers);
+        assertEquals(3, inputPointers.getPointerSize());
+        assertEquals(table.getX('H'), inputPointers.getXCoordinates()[0]);
+        assertEquals(table.getY('i'), inputPointers.getYCoordinates()[1]);
+        assertEquals(Constants.NOT_A_COORDINATE, inputPointers.getXCoordinates()[2]);
+
+        final StringBuilder longWord = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            longWord.append('a');
+        }
+        table.setInputPointers(longWord.toString(), inputPointers);
+        assertEquals(48, inputPointers.getPointerSize());
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.spellcheck;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.inputmethod.latin.NgramContext;
+
+import java.util.Locale;
+
+@SmallTest
+public class SpellCheckerResultCacheTests extends AndroidTestCase {
+    private static final String[] SUGGESTIONS = new String[] { "hello", "hell" };
+    private static final int FLAGS = 1;
+
+    public void testGetEntryCountForMaxMemory() {
+        assertEquals(64, SpellCheckerResultCache.getEntryCountForMaxMemory(1024 * 1024));
+        assertEquals(256, SpellCheckerResultCache.getEntryCountForMaxMemory(16 * 1024 * 1024));
+        assertEquals(1024, SpellCheckerResultCache.getEntryCountForMaxMemory(Long.MAX_VALUE));
+    }
+
+    public void testKey() {
+        final SpellCheckerResultCache cache = new SpellCheckerResultCache(64);
+        final NgramContext ngramContext =
+                new NgramContext(new NgramContext.WordInfo("say"));
+        cache.put(Locale.US, "helo", ngramContext, 5, SUGGESTIONS, FLAGS,
+                cache.getGenerations());
+        final SpellCheckerResultCache.Entry entry = cache.get(Locale.US, "helo",
+                new NgramContext(new NgramContext.WordInfo("say")), 5);
+        assertNotNull(entry);
+        assertEquals(FLAGS, entry.mFlags);
+        assertSame(SUGGESTIONS, entry.mSuggestions);
+        assertNull(cache.get(Locale.UK, "helo", ngramContext, 5));
+        assertNull(cache.get(Locale.US, "hell", ngramContext, 5));
+        assertNull(cache.get(Locale.US, "helo", null, 5));
+        assertNull(cache.get(Locale.US, "helo", ngramContext, 3));
+    }
+
+    public void testDictionaryChange() {
+        final SpellCheckerResultCache cache = new SpellCheckerResultCache(64);
+        cache.put(Locale.US, "helo", null, 5, SUGGESTIONS, FLAGS, cache.getGenerations());
+        assertNotNull(cache.get(Locale.US, "helo", null, 5));
+        cache.onDictionaryChanged(SpellCheckerResultCache.DICTIONARY_USER);
+        assertNull(cache.get(Locale.US, "helo", null, 5));
+
+        // Suggestions computed while a dictionary changed are never returned.
+        final int[] generations = cache.getGenerations();
+        cache.onDictionaryChanged(SpellCheckerResultCache.DICTIONARY_CONTACTS);
+        cache.put(Locale.US, "helo", null, 5, SUGGESTIONS, FLAGS, generations);
+        assertNull(cache.get(Locale.US, "helo", null, 5));
+    }
+}
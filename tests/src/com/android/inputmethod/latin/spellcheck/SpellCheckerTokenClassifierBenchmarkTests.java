@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.spellcheck;
+
+import static com.android.inputmethod.latin.spellcheck.SpellCheckerTokenClassifier.CHECKABILITY_CHECKABLE;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+@LargeTest
+public class SpellCheckerTokenClassifierBenchmarkTests extends AndroidTestCase {
+    private static final String TAG =
+            SpellCheckerTokenClassifierBenchmarkTests.class.getSimpleName();
+
+    private static ArrayList<String> createCorpus(final int tokenCount) {
+        final Random random = new Random(1234);
+        final ArrayList<String> corpus = new ArrayList<>(tokenCount);
+        for (int i = 0; i < tokenCount; i++) {
+            final String word = SpellCheckerTokenClassifierTests.CORPUS_WORDS[
+                    random.nextInt(SpellCheckerTokenClassifierTests.CORPUS_WORDS.length)];
+            // Keep the strings distinct, as they would be when read from text.
+            corpus.add(random.nextBoolean() ? new String(word) : "\"" + word);
+        }
+        return corpus;
+    }
+
+    public void testBenchmark() {
+        final ArrayList<String> corpus = createCorpus(100000);
+        final SpellCheckerTokenClassifier.Token token = new SpellCheckerTokenClassifier.Token();
+        for (final int script : SpellCheckerTokenClassifierTests.SCRIPTS) {
+            int regexpCheckableCount = 0;
+            final long regexpStart = System.nanoTime();
+            for (final String word : corpus) {
+                if (CHECKABILITY_CHECKABLE == SpellCheckerTokenClassifierTests
+                        .getCheckabilityInScript(
+                                SpellCheckerTokenClassifierTests.getWordWithRegexps(word),
+                                script)) {
+                    ++regexpCheckableCount;
+                }
+            }
+            final long regexpTime = System.nanoTime() - regexpStart;
+
+            int checkableCount = 0;
+            final long classifierStart = System.nanoTime();
+            for (final String word : corpus) {
+                SpellCheckerTokenClassifier.classify(word, script, token);
+                if (CHECKABILITY_CHECKABLE == token.mCheckability) {
+                    ++checkableCount;
+                }
+            }
+            final long classifierTime = System.nanoTime() - classifierStart;
+
+            assertEquals(regexpCheckableCount, checkableCount);
+            Log.d(TAG, "script=" + script + ": " + corpus.size() + " tokens, regexps "
+                    + (regexpTime / 1000000) + " ms, classifier "
+                    + (classifierTime / 1000000) + " ms");
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.spellcheck;
+
+import static com.android.inputmethod.latin.spellcheck.SpellCheckerTokenClassifier.CHECKABILITY_CHECKABLE;
+import static com.android.inputmethod.latin.spellcheck.SpellCheckerTokenClassifier.CHECKABILITY_CONTAINS_PERIOD;
+import static com.android.inputmethod.latin.spellcheck.SpellCheckerTokenClassifier.CHECKABILITY_EMAIL_OR_URL;
+import static com.android.inputmethod.latin.spellcheck.SpellCheckerTokenClassifier.CHECKABILITY_FIRST_LETTER_UNCHECKABLE;
+import static com.android.inputmethod.latin.spellcheck.SpellCheckerTokenClassifier.CHECKABILITY_TOO_MANY_NON_LETTERS;
+import static com.android.inputmethod.latin.spellcheck.SpellCheckerTokenClassifier.CHECKABILITY_TOO_SHORT;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.android.inputmethod.latin.common.Constants;
+import com.android.inputmethod.latin.utils.ScriptUtils;
+
+@SmallTest
+public class SpellCheckerTokenClassifierTests extends AndroidTestCase {
+    static final int[] SCRIPTS = {
+        ScriptUtils.SCRIPT_LATIN, ScriptUtils.SCRIPT_CYRILLIC, ScriptUtils.SCRIPT_GREEK,
+        ScriptUtils.SCRIPT_HEBREW, ScriptUtils.SCRIPT_ARABIC, ScriptUtils.SCRIPT_THAI,
+        ScriptUtils.SCRIPT_UNKNOWN
+    };
+    static final String[] CORPUS_WORDS = {
+        "hello", "Don’t", "'quoted'", "\"double\"", "“fancy”", "‘single’",
+        "`tick´", "e.g.", "end.", "a..b", "user@example.com", "and/or", "http://a.b/c",
+        "x", "'", "''", "12345", "abc123", "été", "naïve", "Straße",
+        "привет", "Москва.",
+        "καλημέρα", "ἀθήνα",
+        "שלום", "مرحبا",
+        "สวัสดี", "你好", "😀😀",
+        "a😀", "𝐀bc", "--", "'s", "’tis", "naive”"
+    };
+
+    // The classification the spell checker made before, with regular expressions and the range
+    // checks of the script blocks rather than the letter tables.
+    private static final String QUOTES_REGEXP =
+            "(\\u0022|\\u0027|\\u0060|\\u00B4|\\u2018|\\u2018|\\u201C|\\u201D)";
+
+    static String getWordWithRegexps(final String token) {
+        return token.replaceAll(AndroidSpellCheckerService.APOSTROPHE,
+                AndroidSpellCheckerService.SINGLE_QUOTE)
+                .replaceAll("^" + QUOTES_REGEXP, "")
+                .replaceAll(QUOTES_REGEXP + "$", "");
+    }
+
+    static int getCheckabilityInScript(final String text, final int script) {
+        if (text.length() <= 1) return CHECKABILITY_TOO_SHORT;
+        final int firstCodePoint = text.codePointAt(0);
+        if (!ScriptUtils.isLetterInScriptBlocks(firstCodePoint, script)
+                && '\'' != firstCodePoint) return CHECKABILITY_FIRST_LETTER_UNCHECKABLE;
+        final int length = text.length();
+        int letterCount = 0;
+        for (int i = 0; i < length; i = text.offsetByCodePoints(i, 1)) {
+            final int codePoint = text.codePointAt(i);
+            if (Constants.CODE_COMMERCIAL_AT == codePoint || Constants.CODE_SLASH == codePoint) {
+                return CHECKABILITY_EMAIL_OR_URL;
+            }
+            if (Constants.CODE_PERIOD == codePoint) {
+                return CHECKABILITY_CONTAINS_PERIOD;
+            }
+            if (ScriptUtils.isLetterInScriptBlocks(codePoint, script)) ++letterCount;
+        }
+        return (letterCount * 4 < length * 3)
+                ? CHECKABILITY_TOO_MANY_NON_LETTERS : CHECKABILITY_CHECKABLE;
+    }
+
+    private static void assertClassification(final String token, final int script) {
+        final SpellCheckerTokenClassifier.Token classifiedToken =
+                new SpellCheckerTokenClassifier.Token();
+        SpellCheckerTokenClassifier.classify(token, script, classifiedToken);
+        final String expectedWord = getWordWithRegexps(token);
+        final String message = "[" + token + "] script=" + script;
+        assertEquals(message, expectedWord,
+                SpellCheckerTokenClassifier.getWord(token, classifiedToken));
+        assertEquals(message, getCheckabilityInScript(expectedWord, script),
+                classifiedToken.mCheckability);
+    }
+
+    public void testClassify() {
+        final SpellCheckerTokenClassifier.Token token = new SpellCheckerTokenClassifier.Token();
+        SpellCheckerTokenClassifier.classify("“Don’t”", ScriptUtils.SCRIPT_LATIN,
+                token);
+        assertEquals(1, token.mStart);
+        assertEquals(6, token.mEnd);
+        assertEquals(CHECKABILITY_CHECKABLE, token.mCheckability);
+        assertEquals("Don't", SpellCheckerTokenClassifier.getWord("“Don’t”", token));
+
+        SpellCheckerTokenClassifier.classify("e.g.", ScriptUtils.SCRIPT_LATIN, token);
+        assertEquals(CHECKABILITY_CONTAINS_PERIOD, token.mCheckability);
+        SpellCheckerTokenClassifier.classify("a@b", ScriptUtils.SCRIPT_LATIN, token);
+        assertEquals(CHECKABILITY_EMAIL_OR_URL, token.mCheckability);
+        SpellCheckerTokenClassifier.classify("1a", ScriptUtils.SCRIPT_LATIN, token);
+        assertEquals(CHECKABILITY_FIRST_LETTER_UNCHECKABLE, token.mCheckability);
+        SpellCheckerTokenClassifier.classify("'a'", ScriptUtils.SCRIPT_LATIN, token);
+        assertEquals(CHECKABILITY_TOO_SHORT, token.mCheckability);
+        SpellCheckerTokenClassifier.classify("ab12", ScriptUtils.SCRIPT_LATIN, token);
+        assertEquals(CHECKABILITY_TOO_MANY_NON_LETTERS, token.mCheckability);
+    }
+
+    public void testClassifyLikeRegexps() {
+        for (final int script : SCRIPTS) {
+            for (final String word : CORPUS_WORDS) {
+                assertClassification(word, script);
+            }
+        }
+    }
+
+    public void testClassifyLikeRegexpsForAllCodePoints() {
+        for (final int script : SCRIPTS) {
+            for (int codePoint = 0; codePoint <= Character.MAX_VALUE; codePoint++) {
+                final String text = String.valueOf((char)codePoint);
+                assertClassification(text + "ab", script);
+                assertClassification("ab" + text, script);
+            }
+        }
+    }
+}
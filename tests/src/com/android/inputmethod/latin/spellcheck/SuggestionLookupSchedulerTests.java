@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.spellcheck;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.HashSet;
+
+@SmallTest
+public class SuggestionLookupSchedulerTests extends AndroidTestCase {
+    public void testInitialConcurrentLookupCount() {
+        assertEquals(SuggestionLookupScheduler.MIN_CONCURRENT_LOOKUP_COUNT,
+                new SuggestionLookupScheduler(1).getConcurrentLookupCount());
+        assertEquals(4, new SuggestionLookupScheduler(8).getConcurrentLookupCount());
+    }
+
+    public void testConcurrentLookupsHaveDistinctSessionIds() {
+        final SuggestionLookupScheduler scheduler = new SuggestionLookupScheduler(8);
+        final SuggestionLookupScheduler.Lookup[] lookups =
+                new SuggestionLookupScheduler.Lookup[scheduler.getConcurrentLookupCount()];
+        final HashSet<Integer> sessionIds = new HashSet<>();
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = scheduler.startLookup();
+            assertTrue(sessionIds.add(lookups[i].mSessionId));
+        }
+        for (final SuggestionLookupScheduler.Lookup lookup : lookups) {
+            scheduler.endLookup(lookup);
+        }
+    }
+
+    public void testShrinksWithoutQueueWait() {
+        final SuggestionLookupScheduler scheduler = new SuggestionLookupScheduler(8);
+        for (int i = 0; i < 1000; i++) {
+            final SuggestionLookupScheduler.Lookup lookup = scheduler.startLookup();
+            // Give the lookup some service time, so that the queue wait is negligible.
+            final long endTimeNanos = System.nanoTime() + 100000;
+            while (System.nanoTime() < endTimeNanos) {
+                // Busy wait.
+            }
+            scheduler.endLookup(lookup);
+        }
+        assertEquals(SuggestionLookupScheduler.MIN_CONCURRENT_LOOKUP_COUNT,
+                scheduler.getConcurrentLookupCount());
+        // The lookups can still run.
+        scheduler.endLookup(scheduler.startLookup());
+    }
+}
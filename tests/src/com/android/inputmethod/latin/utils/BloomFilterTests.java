@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+@SmallTest
+public class BloomFilterTests extends AndroidTestCase {
+    public void testNoFalseNegatives() {
+        final int count = 10000;
+        final BloomFilter filter = new BloomFilter(count);
+        for (int i = 0; i < count; i++) {
+            filter.add("word" + i);
+        }
+        for (int i = 0; i < count; i++) {
+            assertTrue(filter.mightContain("word" + i));
+        }
+        assertTrue(filter.hasRoomFor(0));
+    }
+
+    public void testFalsePositiveRate() {
+        final int count = 10000;
+        final BloomFilter filter = new BloomFilter(count);
+        for (int i = 0; i < count; i++) {
+            filter.add("word" + i);
+        }
+        int falsePositiveCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (filter.mightContain("other" + i)) {
+                falsePositiveCount++;
+            }
+        }
+        // About 1% is expected.
+        assertTrue("false positives: " + falsePositiveCount, falsePositiveCount < count / 50);
+    }
+
+    public void testEmpty() {
+        final BloomFilter filter = new BloomFilter(0);
+        assertFalse(filter.mightContain(""));
+        assertFalse(filter.mightContain("word"));
+        filter.add("");
+        assertTrue(filter.mightContain(""));
+    }
+
+    public void testCapacity() {
+        final BloomFilter filter = new BloomFilter(100);
+        for (int i = 0; i < 100; i++) {
+            filter.add("word" + i);
+        }
+        final int entryCount = filter.getEntryCount();
+        // Adding the same words again does not count.
+        for (int i = 0; i < 100; i++) {
+            filter.add("word" + i);
+        }
+        assertEquals(entryCount, filter.getEntryCount());
+        assertTrue(filter.hasRoomFor(100 - entryCount));
+        assertFalse(filter.hasRoomFor(101 - entryCount));
+        for (int i = 100; i < 200; i++) {
+            filter.add("word" + i);
+        }
+        assertFalse(filter.hasRoomFor(0));
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+@SmallTest
+public class LatencyHistogramTests extends AndroidTestCase {
+    public void testEmpty() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileUpperBoundMs(50));
+    }
+
+    public void testPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(3);
+        }
+        for (int i = 0; i < 9; i++) {
+            histogram.record(150);
+        }
+        histogram.record(4000);
+        assertEquals(100, histogram.getCount());
+        assertEquals(4000, histogram.getMaxMs());
+        assertEquals(5, histogram.getPercentileUpperBoundMs(50));
+        assertEquals(5, histogram.getPercentileUpperBoundMs(90));
+        assertEquals(200, histogram.getPercentileUpperBoundMs(95));
+        assertEquals(4000, histogram.getPercentileUpperBoundMs(100));
+    }
+
+    public void testPercentileIsCappedByMax() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(60);
+        assertEquals(60, histogram.getPercentileUpperBoundMs(50));
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.utils;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.SmallTest;
+
+@SmallTest
+public class ScriptUtilsTests extends AndroidTestCase {
+    public void testLetterTablesMatchScriptBlocks() {
+        for (int scriptId = 0; scriptId < ScriptUtils.SCRIPT_COUNT; scriptId++) {
+            for (int codePoint = 0; codePoint <= Character.MAX_VALUE; codePoint++) {
+                final boolean isLetter = ScriptUtils.isLetterInScriptBlocks(codePoint, scriptId);
+                if (isLetter != ScriptUtils.isLetterPartOfScript(codePoint, scriptId)) {
+                    fail("script=" + scriptId + " codePoint=U+"
+                            + Integer.toHexString(codePoint) + " isLetter=" + isLetter);
+                }
+            }
+        }
+    }
+
+    public void testLettersOutsideTables() {
+        for (int scriptId = 0; scriptId < ScriptUtils.SCRIPT_COUNT; scriptId++) {
+            assertFalse(ScriptUtils.isLetterPartOfScript(0x1D400, scriptId));
+            assertFalse(ScriptUtils.isLetterPartOfScript(Character.MAX_CODE_POINT, scriptId));
+        }
+        assertTrue(ScriptUtils.isLetterPartOfScript(0x1D400, ScriptUtils.SCRIPT_UNKNOWN));
+    }
+
+    public void testLetterTableBoundaries() {
+        assertTrue(ScriptUtils.isLetterPartOfScript('a', ScriptUtils.SCRIPT_LATIN));
+        assertTrue(ScriptUtils.isLetterPartOfScript(0x2AF, ScriptUtils.SCRIPT_LATIN));
+        assertFalse(ScriptUtils.isLetterPartOfScript(0x2B0, ScriptUtils.SCRIPT_LATIN));
+        assertFalse(ScriptUtils.isLetterPartOfScript('1', ScriptUtils.SCRIPT_LATIN));
+        assertTrue(ScriptUtils.isLetterPartOfScript(0xF2, ScriptUtils.SCRIPT_GREEK));
+        assertTrue(ScriptUtils.isLetterPartOfScript(0xFEFF, ScriptUtils.SCRIPT_ARABIC));
+    }
+}
@@ -49,6 +49,7 @@ LATINIME_SRC_FILES_FOR_DICTTOOL := \
         latin/SuggestedWords.java \
         latin/settings/SettingsValuesForSuggestion.java \
         latin/utils/BinaryDictionaryUtils.java \
+        latin/utils/BloomFilter.java \
         latin/utils/CombinedFormatUtils.java \
         latin/utils/JniUtils.java
 
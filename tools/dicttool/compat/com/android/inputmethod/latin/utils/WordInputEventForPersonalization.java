@@ -17,4 +17,9 @@
 package com.android.inputmethod.latin.utils;
 
 public final class WordInputEventForPersonalization {
+    public final int[] mTargetWord;
+
+    public WordInputEventForPersonalization(final int[] targetWord) {
+        mTargetWord = targetWord;
+    }
 }
@@ -18,26 +18,28 @@ package com.android.inputmethod.latin.dicttool;
 
 import com.android.inputmethod.latin.makedict.BinaryDictDecoderUtils;
 import com.android.inputmethod.latin.makedict.BinaryDictIOUtils;
-import com.android.inputmethod.latin.makedict.DictDecoder;
 import com.android.inputmethod.latin.makedict.DictionaryHeader;
 import com.android.inputmethod.latin.makedict.FormatSpec;
 import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
 import com.android.inputmethod.latin.makedict.FormatSpec.FormatOptions;
 import com.android.inputmethod.latin.makedict.FusionDictionary;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNode;
 import com.android.inputmethod.latin.makedict.UnsupportedFormatException;
+import com.android.inputmethod.latin.makedict.Ver4DictDecoder;
+import com.android.inputmethod.latin.makedict.WordProperty;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.util.HashMap;
+import java.util.Iterator;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -261,14 +263,127 @@ public final class BinaryDictOffdeviceUtils {
         return decodeDictionaryForProcess(src, new CopyProcessor());
     }
 
-    static FusionDictionary getDictionary(final String filename, final boolean report) {
+    /**
+     * Get a decoder chain spec with a raw dictionary file to read from. Unlike
+     * {@link #getRawDictionaryOrNull(File)}, a source file that is not packaged is not copied,
+     * and must not be modified by the client.
+     */
+    @Nullable
+    private static DecoderChainSpec<File> getReadableDictionaryOrNull(@Nonnull final File src) {
+        if (CombinedInputOutput.isCombinedDictionary(src.getAbsolutePath())
+                || BinaryDictDecoderUtils.isBinaryDictionary(src)) {
+            final DecoderChainSpec<File> spec = new DecoderChainSpec<>();
+            spec.mResult = src;
+            return spec;
+        }
+        return getRawDictionaryOrNull(src);
+    }
+
+    /**
+     * Read-only access to the words of a dictionary, for the commands that only inspect
+     * dictionaries. Binary dictionaries are read one word at a time, so that even very large
+     * ones can be inspected.
+     */
+    public interface DictionaryReader extends Iterable<WordProperty>, Closeable {
+        @Nonnull
+        public DictionaryOptions getOptions();
+
+        /**
+         * Returns the properties of a word, or null if the word is not in the dictionary.
+         */
+        @Nullable
+        public WordProperty getWordProperty(@Nonnull final String word);
+
+        @Override
+        public void close();
+    }
+
+    static final class FusionDictionaryReader implements DictionaryReader {
+        @Nonnull
+        private final FusionDictionary mDict;
+
+        public FusionDictionaryReader(@Nonnull final FusionDictionary dict) {
+            mDict = dict;
+        }
+
+        @Override @Nonnull
+        public DictionaryOptions getOptions() {
+            return mDict.mOptions;
+        }
+
+        @Override @Nullable
+        public WordProperty getWordProperty(@Nonnull final String word) {
+            final PtNode ptNode = FusionDictionary.findWordInTree(mDict.mRootNodeArray, word);
+            if (null == ptNode) {
+                return null;
+            }
+            return new WordProperty(word, ptNode.getProbabilityInfo(),
+                    ptNode.getShortcutTargets(), ptNode.getBigrams(), ptNode.getIsNotAWord(),
+                    ptNode.getIsPossiblyOffensive());
+        }
+
+        @Override
+        public Iterator<WordProperty> iterator() {
+            return mDict.iterator();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class BinaryDictionaryReader implements DictionaryReader {
+        @Nonnull
+        private final Ver4DictDecoder.WordReader mWordReader;
+        @Nonnull
+        private final DictionaryOptions mOptions;
+
+        public BinaryDictionaryReader(@Nonnull final Ver4DictDecoder.WordReader wordReader)
+                throws IOException, UnsupportedFormatException {
+            mWordReader = wordReader;
+            mOptions = wordReader.getHeader().mDictionaryOptions;
+        }
+
+        @Override @Nonnull
+        public DictionaryOptions getOptions() {
+            return mOptions;
+        }
+
+        @Override @Nullable
+        public WordProperty getWordProperty(@Nonnull final String word) {
+            return mWordReader.getWordProperty(word);
+        }
+
+        @Override
+        public Iterator<WordProperty> iterator() {
+            return mWordReader.iterator();
+        }
+
+        @Override
+        public void close() {
+            mWordReader.close();
+        }
+    }
+
+    /**
+     * Opens a dictionary file for reading, decrypting/uncompressing it as necessary.
+     *
+     * A binary dictionary is read straight from its raw file, without building a
+     * FusionDictionary. A dictionary in the combined format is read into a FusionDictionary.
+     *
+     * @param filename the name of the dictionary file.
+     * @param report whether to print information about the file.
+     * @return the reader, which the caller must close.
+     */
+    @Nonnull
+    static DictionaryReader openDictionaryReader(final String filename, final boolean report) {
         final File file = new File(filename);
         if (report) {
             System.out.println("Dictionary : " + file.getAbsolutePath());
             System.out.println("Size : " + file.length() + " bytes");
         }
         try {
-            final DecoderChainSpec<File> decodedSpec = getRawDictionaryOrNull(file);
+            final DecoderChainSpec<File> decodedSpec = getReadableDictionaryOrNull(file);
             if (null == decodedSpec) {
                 throw new RuntimeException("Does not seem to be a dictionary file " + filename);
             }
@@ -278,20 +393,19 @@ public final class BinaryDictOffdeviceUtils {
                     System.out.println("Packaging : " + decodedSpec.describeChain());
                     System.out.println("Uncompressed size : " + decodedSpec.mResult.length());
                 }
-                try (final BufferedReader reader = new BufferedReader(
-                        new InputStreamReader(new FileInputStream(decodedSpec.mResult), "UTF-8"))) {
-                    return CombinedInputOutput.readDictionaryCombined(reader);
+                try (final FileInputStream input = new FileInputStream(decodedSpec.mResult)) {
+                    return new FusionDictionaryReader(
+                            CombinedInputOutput.readDictionaryCombined(input));
                 }
             }
-            final DictDecoder dictDecoder = BinaryDictIOUtils.getDictDecoder(
-                    decodedSpec.mResult, 0, decodedSpec.mResult.length(),
-                    DictDecoder.USE_BYTEARRAY);
+            final DictionaryReader reader = new BinaryDictionaryReader(
+                    BinaryDictIOUtils.openWordReader(decodedSpec.mResult));
             if (report) {
                 System.out.println("Format : Binary dictionary format");
                 System.out.println("Packaging : " + decodedSpec.describeChain());
                 System.out.println("Uncompressed size : " + decodedSpec.mResult.length());
             }
-            return dictDecoder.readDictionaryBinary(false /* deleteDictIfBroken */);
+            return reader;
         } catch (final IOException | UnsupportedFormatException e) {
             throw new RuntimeException("Can't read file " + filename, e);
         }
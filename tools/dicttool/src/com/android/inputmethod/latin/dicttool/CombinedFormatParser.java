@@ -0,0 +1,385 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.inputmethod.latin.dicttool;
+
+import com.android.inputmethod.latin.makedict.FormatSpec;
+import com.android.inputmethod.latin.utils.CombinedFormatUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * Parses the combined format from a stream of bytes, such as a decompressing stream.
+ *
+ * The lines are split into fields and the numbers are parsed in the read buffer, so that only
+ * the words and shortcuts themselves are decoded into strings. The records of the file are passed
+ * to a {@link Listener} in the order of the file.
+ */
+public final class CombinedFormatParser {
+    /**
+     * The value passed to the listener for the numbers a line does not specify.
+     */
+    public static final int NOT_SPECIFIED = Integer.MIN_VALUE;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String WHITELIST_TAG = "whitelist";
+    private static final String OPTIONS_TAG = "options";
+    private static final byte COMMENT_LINE_STARTER = '#';
+    private static final byte FIELD_SEPARATOR = ',';
+    private static final byte KEY_VALUE_SEPARATOR = '=';
+    private static final byte HISTORICAL_INFO_SEPARATOR =
+            (byte) CombinedFormatUtils.HISTORICAL_INFO_SEPARATOR.charAt(0);
+
+    private static final byte[] WORD_TAG = getAsciiBytes(CombinedFormatUtils.WORD_TAG);
+    private static final byte[] SHORTCUT_TAG = getAsciiBytes(CombinedFormatUtils.SHORTCUT_TAG);
+    private static final byte[] BIGRAM_TAG = getAsciiBytes(CombinedFormatUtils.BIGRAM_TAG);
+    private static final byte[] PROBABILITY_TAG =
+            getAsciiBytes(CombinedFormatUtils.PROBABILITY_TAG);
+    private static final byte[] HISTORICAL_INFO_TAG =
+            getAsciiBytes(CombinedFormatUtils.HISTORICAL_INFO_TAG);
+    private static final byte[] NOT_A_WORD_TAG =
+            getAsciiBytes(CombinedFormatUtils.NOT_A_WORD_TAG);
+    private static final byte[] POSSIBLY_OFFENSIVE_TAG =
+            getAsciiBytes(CombinedFormatUtils.POSSIBLY_OFFENSIVE_TAG);
+    private static final byte[] TRUE_VALUE = getAsciiBytes(CombinedFormatUtils.TRUE_VALUE);
+    private static final byte[] WHITELIST_VALUE = getAsciiBytes(WHITELIST_TAG);
+
+    private static final int LINE_TYPE_OTHER = 0;
+    private static final int LINE_TYPE_WORD = 1;
+    private static final int LINE_TYPE_SHORTCUT = 2;
+    private static final int LINE_TYPE_BIGRAM = 3;
+
+    /**
+     * Receives the records of a combined file.
+     */
+    public interface Listener {
+        /**
+         * Called for the header, before any other record.
+         */
+        void onHeader(HashMap<String, String> attributes);
+
+        /**
+         * Called for each word. Its shortcuts and bigrams follow.
+         *
+         * @param probability the probability, or {@link #NOT_SPECIFIED}.
+         * @param timestamp the timestamp, or {@link #NOT_SPECIFIED} if the word has no
+         * historical info, in which case the level and count are not specified either.
+         */
+        void onWord(String word, int probability, int timestamp, int level, int count,
+                boolean isNotAWord, boolean isPossiblyOffensive);
+
+        /**
+         * Called for each shortcut of the last word.
+         *
+         * @param probability the probability, {@link FormatSpec#SHORTCUT_WHITELIST_FREQUENCY} for
+         * a whitelist entry, or {@link #NOT_SPECIFIED}.
+         */
+        void onShortcut(String shortcut, int probability);
+
+        /**
+         * Called for each bigram starting with the last word.
+         *
+         * @param probability the probability, or {@link #NOT_SPECIFIED}.
+         * @param timestamp the timestamp, or {@link #NOT_SPECIFIED} if the bigram has no
+         * historical info, in which case the level and count are not specified either.
+         */
+        void onBigram(String secondWord, int probability, int timestamp, int level, int count);
+    }
+
+    private final Listener mListener;
+    private byte[] mBuffer = new byte[BUFFER_SIZE];
+    private boolean mHasReadHeader;
+
+    // The values of the fields of the current line.
+    private String mWord;
+    private int mProbability;
+    private int mTimestamp;
+    private int mLevel;
+    private int mCount;
+    private boolean mIsNotAWord;
+    private boolean mIsPossiblyOffensive;
+
+    private CombinedFormatParser(final Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Parses a combined file.
+     *
+     * @param input the stream to read the file from. It does not need to be buffered.
+     * @param listener the listener to pass the records to.
+     * @throws IOException if the stream can't be read.
+     * @throws RuntimeException if the file is not in the combined format.
+     */
+    public static void parse(final InputStream input, final Listener listener)
+            throws IOException {
+        new CombinedFormatParser(listener).parse(input);
+    }
+
+    private static byte[] getAsciiBytes(final String string) {
+        return string.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void parse(final InputStream input) throws IOException {
+        // The bytes of the buffer from lineStart to end have been read but not parsed yet.
+        int lineStart = 0;
+        int end = 0;
+        int searchStart = 0;
+        while (true) {
+            int lineEnd = searchStart;
+            while (lineEnd < end && mBuffer[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd < end) {
+                parseLine(lineStart, lineEnd);
+                lineStart = lineEnd + 1;
+                searchStart = lineStart;
+                continue;
+            }
+            // No complete line is left: move the start of the next line to the beginning of the
+            // buffer, growing it for lines that don't fit, and read more.
+            final int pendingLength = end - lineStart;
+            if (pendingLength == mBuffer.length) {
+                final byte[] newBuffer = new byte[mBuffer.length * 2];
+                System.arraycopy(mBuffer, 0, newBuffer, 0, pendingLength);
+                mBuffer = newBuffer;
+            } else if (lineStart > 0) {
+                System.arraycopy(mBuffer, lineStart, mBuffer, 0, pendingLength);
+            }
+            lineStart = 0;
+            end = pendingLength;
+            searchStart = pendingLength;
+            final int readLength = input.read(mBuffer, end, mBuffer.length - end);
+            if (readLength < 0) {
+                break;
+            }
+            end += readLength;
+        }
+        if (lineStart < end) {
+            parseLine(lineStart, end);
+        }
+        if (!mHasReadHeader) {
+            throw new RuntimeException("No header");
+        }
+    }
+
+    private String getString(final int start, final int end) {
+        return new String(mBuffer, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private void parseLine(final int lineStart, final int lineEnd) {
+        if (lineStart < lineEnd && mBuffer[lineStart] == COMMENT_LINE_STARTER) {
+            return;
+        }
+        if (!mHasReadHeader) {
+            parseHeader(lineStart, lineEnd);
+            mHasReadHeader = true;
+            return;
+        }
+        // Like String#trim() on the line, as no byte of a multi-byte character is <= ' '.
+        int start = lineStart;
+        int end = lineEnd;
+        while (start < end && (mBuffer[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (mBuffer[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        // Like String#split(), ignore the empty fields at the end of the line.
+        while (end > start && mBuffer[end - 1] == FIELD_SEPARATOR) {
+            end--;
+        }
+        final int lineType = getLineType(start, end);
+        if (LINE_TYPE_OTHER == lineType) {
+            return;
+        }
+        mWord = null;
+        mProbability = NOT_SPECIFIED;
+        mTimestamp = NOT_SPECIFIED;
+        mLevel = NOT_SPECIFIED;
+        mCount = NOT_SPECIFIED;
+        mIsNotAWord = false;
+        mIsPossiblyOffensive = false;
+        int fieldStart = start;
+        while (fieldStart <= end) {
+            int fieldEnd = fieldStart;
+            while (fieldEnd < end && mBuffer[fieldEnd] != FIELD_SEPARATOR) {
+                fieldEnd++;
+            }
+            parseField(lineType, fieldStart, fieldEnd, lineStart, lineEnd);
+            fieldStart = fieldEnd + 1;
+        }
+        switch (lineType) {
+        case LINE_TYPE_WORD:
+            mListener.onWord(mWord, mProbability, mTimestamp, mLevel, mCount, mIsNotAWord,
+                    mIsPossiblyOffensive);
+            break;
+        case LINE_TYPE_SHORTCUT:
+            mListener.onShortcut(mWord, mProbability);
+            break;
+        case LINE_TYPE_BIGRAM:
+            mListener.onBigram(mWord, mProbability, mTimestamp, mLevel, mCount);
+            break;
+        }
+    }
+
+    private void parseHeader(final int lineStart, final int lineEnd) {
+        int end = lineEnd;
+        if (end > lineStart && mBuffer[end - 1] == '\r') {
+            end--;
+        }
+        final String headerLine = getString(lineStart, end);
+        final String header[] = headerLine.split(",");
+        final HashMap<String, String> attributes = new HashMap<>();
+        for (String item : header) {
+            final String keyValue[] = item.split("=");
+            if (2 != keyValue.length) {
+                throw new RuntimeException("Wrong header format : " + headerLine);
+            }
+            attributes.put(keyValue[0], keyValue[1]);
+        }
+        attributes.remove(OPTIONS_TAG);
+        mListener.onHeader(attributes);
+    }
+
+    private int getLineType(final int start, final int end) {
+        if (startsWithKey(start, end, WORD_TAG)) return LINE_TYPE_WORD;
+        if (startsWithKey(start, end, SHORTCUT_TAG)) return LINE_TYPE_SHORTCUT;
+        if (startsWithKey(start, end, BIGRAM_TAG)) return LINE_TYPE_BIGRAM;
+        return LINE_TYPE_OTHER;
+    }
+
+    private boolean startsWithKey(final int start, final int end, final byte[] key) {
+        return end - start > key.length && mBuffer[start + key.length] == KEY_VALUE_SEPARATOR
+                && regionEquals(start, start + key.length, key, false /* ignoreCase */);
+    }
+
+    private boolean regionEquals(final int start, final int end, final byte[] bytes,
+            final boolean ignoreCase) {
+        if (end - start != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            final byte b = mBuffer[start + i];
+            if (b != bytes[i] && !(ignoreCase && toLowerCaseAscii(b) == bytes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte toLowerCaseAscii(final byte b) {
+        return (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private void parseField(final int lineType, final int start, final int end,
+            final int lineStart, final int lineEnd) {
+        int separator = start;
+        while (separator < end && mBuffer[separator] != KEY_VALUE_SEPARATOR) {
+            separator++;
+        }
+        if (separator == end) {
+            throw new RuntimeException("Wrong format : " + getString(lineStart, lineEnd));
+        }
+        final int valueStart = separator + 1;
+        switch (lineType) {
+        case LINE_TYPE_WORD:
+            if (regionEquals(start, separator, WORD_TAG, false /* ignoreCase */)) {
+                mWord = getString(valueStart, end);
+            } else if (regionEquals(start, separator, PROBABILITY_TAG, false /* ignoreCase */)) {
+                mProbability = parseInt(valueStart, end);
+            } else if (regionEquals(start, separator, HISTORICAL_INFO_TAG,
+                    false /* ignoreCase */)) {
+                parseHistoricalInfo(valueStart, end, lineStart, lineEnd);
+            } else if (regionEquals(start, separator, NOT_A_WORD_TAG, false /* ignoreCase */)) {
+                mIsNotAWord = regionEquals(valueStart, end, TRUE_VALUE, true /* ignoreCase */);
+            } else if (regionEquals(start, separator, POSSIBLY_OFFENSIVE_TAG,
+                    false /* ignoreCase */)) {
+                mIsPossiblyOffensive =
+                        regionEquals(valueStart, end, TRUE_VALUE, true /* ignoreCase */);
+            }
+            break;
+        case LINE_TYPE_SHORTCUT:
+            if (regionEquals(start, separator, SHORTCUT_TAG, false /* ignoreCase */)) {
+                mWord = getString(valueStart, end);
+            } else if (regionEquals(start, separator, PROBABILITY_TAG, false /* ignoreCase */)) {
+                mProbability = regionEquals(valueStart, end, WHITELIST_VALUE,
+                        false /* ignoreCase */)
+                        ? FormatSpec.SHORTCUT_WHITELIST_FREQUENCY : parseInt(valueStart, end);
+            }
+            break;
+        case LINE_TYPE_BIGRAM:
+            if (regionEquals(start, separator, BIGRAM_TAG, false /* ignoreCase */)) {
+                mWord = getString(valueStart, end);
+            } else if (regionEquals(start, separator, PROBABILITY_TAG, false /* ignoreCase */)) {
+                mProbability = parseInt(valueStart, end);
+            } else if (regionEquals(start, separator, HISTORICAL_INFO_TAG,
+                    false /* ignoreCase */)) {
+                parseHistoricalInfo(valueStart, end, lineStart, lineEnd);
+            }
+            break;
+        }
+    }
+
+    private void parseHistoricalInfo(final int start, final int end, final int lineStart,
+            final int lineEnd) {
+        final int firstSeparator = indexOf(HISTORICAL_INFO_SEPARATOR, start, end);
+        final int secondSeparator = indexOf(HISTORICAL_INFO_SEPARATOR, firstSeparator + 1, end);
+        if (firstSeparator == end || secondSeparator == end
+                || indexOf(HISTORICAL_INFO_SEPARATOR, secondSeparator + 1, end) != end) {
+            throw new RuntimeException("Wrong format (historical info) : "
+                    + getString(lineStart, lineEnd));
+        }
+        mTimestamp = parseInt(start, firstSeparator);
+        mLevel = parseInt(firstSeparator + 1, secondSeparator);
+        mCount = parseInt(secondSeparator + 1, end);
+    }
+
+    private int indexOf(final byte b, final int start, final int end) {
+        int index = start;
+        while (index < end && mBuffer[index] != b) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Parses a decimal number like {@link Integer#parseInt(String)}.
+     */
+    private int parseInt(final int start, final int end) {
+        int index = start;
+        final boolean isNegative = index < end && mBuffer[index] == '-';
+        if (index < end && (isNegative || mBuffer[index] == '+')) {
+            index++;
+        }
+        // Nine digits can't overflow. Leave longer numbers and errors to Integer#parseInt().
+        if (index == end || end - index > 9) {
+            return Integer.parseInt(getString(start, end));
+        }
+        int value = 0;
+        for (; index < end; index++) {
+            final int digit = mBuffer[index] - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.parseInt(getString(start, end));
+            }
+            value = value * 10 + digit;
+        }
+        return isNegative ? -value : value;
+    }
+}
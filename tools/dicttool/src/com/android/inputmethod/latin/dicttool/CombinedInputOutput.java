@@ -16,10 +16,9 @@
 
 package com.android.inputmethod.latin.dicttool;
 
-import com.android.inputmethod.latin.makedict.FormatSpec;
 import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
 import com.android.inputmethod.latin.makedict.FusionDictionary;
-import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
+import com.android.inputmethod.latin.makedict.FusionDictionaryBuilder;
 import com.android.inputmethod.latin.makedict.ProbabilityInfo;
 import com.android.inputmethod.latin.makedict.WeightedString;
 import com.android.inputmethod.latin.makedict.WordProperty;
@@ -29,6 +28,7 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.TreeSet;
@@ -39,10 +39,7 @@ import java.util.TreeSet;
  * All functions in this class are static.
  */
 public class CombinedInputOutput {
-    private static final String WHITELIST_TAG = "whitelist";
-    private static final String OPTIONS_TAG = "options";
     private static final String COMMENT_LINE_STARTER = "#";
-    private static final int HISTORICAL_INFO_ELEMENT_COUNT = 3;
 
     /**
      * Basic test to find out whether the file is in the combined format or not.
@@ -66,148 +63,95 @@ public class CombinedInputOutput {
     }
 
     /**
-     * Reads a dictionary from a combined format file.
-     *
-     * This is the public method that will read a combined file and return the corresponding memory
-     * representation.
-     *
-     * @param reader the buffered reader to read the data from.
-     * @return the in-memory representation of the dictionary.
+     * Builds a FusionDictionary from the records of a combined file.
      */
-    public static FusionDictionary readDictionaryCombined(final BufferedReader reader)
-            throws IOException {
-        String headerLine = reader.readLine();
-        while (headerLine.startsWith(COMMENT_LINE_STARTER)) {
-            headerLine = reader.readLine();
+    private static final class DictionaryBuildingListener
+            implements CombinedFormatParser.Listener {
+        private FusionDictionaryBuilder mBuilder;
+        private String mWord;
+        // Like the historical info, the probability of the previous word is kept for the words
+        // that don't specify one.
+        private ProbabilityInfo mProbabilityInfo = new ProbabilityInfo(0);
+        private boolean mIsNotAWord;
+        private boolean mIsPossiblyOffensive;
+        private ArrayList<WeightedString> mShortcuts = new ArrayList<>();
+        private final ArrayList<WeightedString> mBigrams = new ArrayList<>();
+
+        @Override
+        public void onHeader(final HashMap<String, String> attributes) {
+            mBuilder = new FusionDictionaryBuilder(new DictionaryOptions(attributes));
         }
-        final String header[] = headerLine.split(",");
-        final HashMap<String, String> attributes = new HashMap<>();
-        for (String item : header) {
-            final String keyValue[] = item.split("=");
-            if (2 != keyValue.length) {
-                throw new RuntimeException("Wrong header format : " + headerLine);
-            }
-            attributes.put(keyValue[0], keyValue[1]);
+
+        @Override
+        public void onWord(final String word, final int probability, final int timestamp,
+                final int level, final int count, final boolean isNotAWord,
+                final boolean isPossiblyOffensive) {
+            addLastWord();
+            if (!mShortcuts.isEmpty()) mShortcuts = new ArrayList<>();
+            mBigrams.clear();
+            mWord = word;
+            mProbabilityInfo = getProbabilityInfo(mProbabilityInfo, probability, timestamp,
+                    level, count);
+            mIsNotAWord = isNotAWord;
+            mIsPossiblyOffensive = isPossiblyOffensive;
         }
 
-        attributes.remove(OPTIONS_TAG);
-        final FusionDictionary dict =
-                new FusionDictionary(new PtNodeArray(), new DictionaryOptions(attributes));
+        @Override
+        public void onShortcut(final String shortcut, final int probability) {
+            mShortcuts.add(new WeightedString(shortcut,
+                    CombinedFormatParser.NOT_SPECIFIED == probability ? 0 : probability));
+        }
 
-        String line;
-        String word = null;
-        ProbabilityInfo probabilityInfo = new ProbabilityInfo(0);
-        boolean isNotAWord = false;
-        boolean isPossiblyOffensive = false;
-        ArrayList<WeightedString> bigrams = new ArrayList<>();
-        ArrayList<WeightedString> shortcuts = new ArrayList<>();
-        while (null != (line = reader.readLine())) {
-            if (line.startsWith(COMMENT_LINE_STARTER)) continue;
-            final String args[] = line.trim().split(",");
-            if (args[0].matches(CombinedFormatUtils.WORD_TAG + "=.*")) {
-                if (null != word) {
-                    dict.add(word, probabilityInfo, shortcuts.isEmpty() ? null : shortcuts,
-                            isNotAWord, isPossiblyOffensive);
-                    for (WeightedString s : bigrams) {
-                        dict.setBigram(word, s.mWord, s.mProbabilityInfo);
-                    }
-                }
-                if (!shortcuts.isEmpty()) shortcuts = new ArrayList<>();
-                if (!bigrams.isEmpty()) bigrams = new ArrayList<>();
-                isNotAWord = false;
-                isPossiblyOffensive = false;
-                for (String param : args) {
-                    final String params[] = param.split("=", 2);
-                    if (2 != params.length) throw new RuntimeException("Wrong format : " + line);
-                    switch (params[0]) {
-                        case CombinedFormatUtils.WORD_TAG:
-                            word = params[1];
-                            break;
-                        case CombinedFormatUtils.PROBABILITY_TAG:
-                            probabilityInfo = new ProbabilityInfo(Integer.parseInt(params[1]),
-                                    probabilityInfo.mTimestamp, probabilityInfo.mLevel,
-                                    probabilityInfo.mCount);
-                            break;
-                        case CombinedFormatUtils.HISTORICAL_INFO_TAG:
-                            final String[] historicalInfoParams = params[1].split(
-                                    CombinedFormatUtils.HISTORICAL_INFO_SEPARATOR);
-                            if (historicalInfoParams.length != HISTORICAL_INFO_ELEMENT_COUNT) {
-                                throw new RuntimeException("Wrong format (historical info) : "
-                                        + line);
-                            }
-                            probabilityInfo = new ProbabilityInfo(probabilityInfo.mProbability,
-                                    Integer.parseInt(historicalInfoParams[0]),
-                                    Integer.parseInt(historicalInfoParams[1]),
-                                    Integer.parseInt(historicalInfoParams[2]));
-                            break;
-                        case CombinedFormatUtils.NOT_A_WORD_TAG:
-                            isNotAWord = CombinedFormatUtils.isLiteralTrue(params[1]);
-                            break;
-                        case CombinedFormatUtils.POSSIBLY_OFFENSIVE_TAG:
-                            isPossiblyOffensive = CombinedFormatUtils.isLiteralTrue(params[1]);
-                            break;
-                    }
-                }
-            } else if (args[0].matches(CombinedFormatUtils.SHORTCUT_TAG + "=.*")) {
-                String shortcut = null;
-                int shortcutFreq = 0;
-                for (String param : args) {
-                    final String params[] = param.split("=", 2);
-                    if (2 != params.length) throw new RuntimeException("Wrong format : " + line);
-                    if (CombinedFormatUtils.SHORTCUT_TAG.equals(params[0])) {
-                        shortcut = params[1];
-                    } else if (CombinedFormatUtils.PROBABILITY_TAG.equals(params[0])) {
-                        shortcutFreq = WHITELIST_TAG.equals(params[1])
-                                ? FormatSpec.SHORTCUT_WHITELIST_FREQUENCY
-                                : Integer.parseInt(params[1]);
-                    }
-                }
-                if (null != shortcut) {
-                    shortcuts.add(new WeightedString(shortcut, shortcutFreq));
-                } else {
-                    throw new RuntimeException("Wrong format : " + line);
-                }
-            } else if (args[0].matches(CombinedFormatUtils.BIGRAM_TAG + "=.*")) {
-                String secondWordOfBigram = null;
-                ProbabilityInfo bigramProbabilityInfo = new ProbabilityInfo(0);
-                for (String param : args) {
-                    final String params[] = param.split("=", 2);
-                    if (2 != params.length) throw new RuntimeException("Wrong format : " + line);
-                    if (CombinedFormatUtils.BIGRAM_TAG.equals(params[0])) {
-                        secondWordOfBigram = params[1];
-                    } else if (CombinedFormatUtils.PROBABILITY_TAG.equals(params[0])) {
-                        bigramProbabilityInfo = new ProbabilityInfo(Integer.parseInt(params[1]),
-                                bigramProbabilityInfo.mTimestamp, bigramProbabilityInfo.mLevel,
-                                bigramProbabilityInfo.mCount);
-                    }  else if (CombinedFormatUtils.HISTORICAL_INFO_TAG.equals(params[0])) {
-                        final String[] historicalInfoParams =
-                                params[1].split(CombinedFormatUtils.HISTORICAL_INFO_SEPARATOR);
-                        if (historicalInfoParams.length != HISTORICAL_INFO_ELEMENT_COUNT) {
-                            throw new RuntimeException("Wrong format (historical info) : " + line);
-                        }
-                        bigramProbabilityInfo = new ProbabilityInfo(
-                                bigramProbabilityInfo.mProbability,
-                                Integer.parseInt(historicalInfoParams[0]),
-                                Integer.parseInt(historicalInfoParams[1]),
-                                Integer.parseInt(historicalInfoParams[2]));
-                    }
-                }
-                if (null != secondWordOfBigram) {
-                    bigrams.add(new WeightedString(secondWordOfBigram, bigramProbabilityInfo));
-                } else {
-                    throw new RuntimeException("Wrong format : " + line);
-                }
+        @Override
+        public void onBigram(final String secondWord, final int probability,
+                final int timestamp, final int level, final int count) {
+            mBigrams.add(new WeightedString(secondWord, getProbabilityInfo(
+                    new ProbabilityInfo(0), probability, timestamp, level, count)));
+        }
+
+        private static ProbabilityInfo getProbabilityInfo(final ProbabilityInfo defaultInfo,
+                final int probability, final int timestamp, final int level, final int count) {
+            if (CombinedFormatParser.NOT_SPECIFIED == timestamp) {
+                if (CombinedFormatParser.NOT_SPECIFIED == probability) return defaultInfo;
+                return new ProbabilityInfo(probability, defaultInfo.mTimestamp,
+                        defaultInfo.mLevel, defaultInfo.mCount);
             }
+            return new ProbabilityInfo(CombinedFormatParser.NOT_SPECIFIED == probability
+                    ? defaultInfo.mProbability : probability, timestamp, level, count);
         }
-        if (null != word) {
-            dict.add(word, probabilityInfo, shortcuts.isEmpty() ? null : shortcuts, isNotAWord,
-                    isPossiblyOffensive);
-            for (WeightedString s : bigrams) {
-                dict.setBigram(word, s.mWord, s.mProbabilityInfo);
+
+        private void addLastWord() {
+            if (null == mWord) {
+                return;
             }
+            mBuilder.add(mWord, mProbabilityInfo, mShortcuts.isEmpty() ? null : mShortcuts,
+                    mIsNotAWord, mIsPossiblyOffensive);
+            for (final WeightedString bigram : mBigrams) {
+                mBuilder.setBigram(mWord, bigram.mWord, bigram.mProbabilityInfo);
+            }
+        }
+
+        public FusionDictionary getDictionary() {
+            addLastWord();
+            mWord = null;
+            return mBuilder.build();
         }
+    }
 
-        return dict;
+    /**
+     * Reads a dictionary from a combined format file.
+     *
+     * This is the public method that will read a combined file and return the corresponding memory
+     * representation.
+     *
+     * @param input the stream to read the data from. It does not need to be buffered.
+     * @return the in-memory representation of the dictionary.
+     */
+    public static FusionDictionary readDictionaryCombined(final InputStream input)
+            throws IOException {
+        final DictionaryBuildingListener listener = new DictionaryBuildingListener();
+        CombinedFormatParser.parse(input, listener);
+        return listener.getDictionary();
     }
 
     /**
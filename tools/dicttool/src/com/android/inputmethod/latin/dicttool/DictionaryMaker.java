@@ -27,14 +27,12 @@ import com.android.inputmethod.latin.makedict.UnsupportedFormatException;
 import com.android.inputmethod.latin.makedict.Ver2DictEncoder;
 import com.android.inputmethod.latin.makedict.Ver4DictEncoder;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.util.Arrays;
 import java.util.LinkedList;
 
@@ -245,10 +243,8 @@ public class DictionaryMaker {
      */
     private static FusionDictionary readCombinedFile(final String combinedFilename)
         throws FileNotFoundException, IOException {
-        try (final BufferedReader reader = new BufferedReader(new InputStreamReader(
-                new FileInputStream(combinedFilename), "UTF-8"))
-        ) {
-            return CombinedInputOutput.readDictionaryCombined(reader);
+        try (final FileInputStream input = new FileInputStream(combinedFilename)) {
+            return CombinedInputOutput.readDictionaryCombined(input);
         }
     }
 
@@ -16,8 +16,8 @@
 
 package com.android.inputmethod.latin.dicttool;
 
-import com.android.inputmethod.latin.makedict.FusionDictionary;
-import com.android.inputmethod.latin.makedict.FusionDictionary.PtNode;
+import com.android.inputmethod.latin.dicttool.BinaryDictOffdeviceUtils.DictionaryReader;
+import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
 import com.android.inputmethod.latin.makedict.WeightedString;
 import com.android.inputmethod.latin.makedict.WordProperty;
 
@@ -52,52 +52,54 @@ public class Diff extends Dicttool.Command {
         } else {
             plumbing = false;
         }
-        final FusionDictionary dict0 =
-                BinaryDictOffdeviceUtils.getDictionary(mArgs[0], false /* report */);
-        if (null == dict0) throw new RuntimeException("Can't read dictionary " + mArgs[0]);
-        final FusionDictionary dict1 =
-                BinaryDictOffdeviceUtils.getDictionary(mArgs[1], false /* report */);
-        if (null == dict1) throw new RuntimeException("Can't read dictionary " + mArgs[1]);
-        if (!plumbing) {
-            System.out.println("Header :");
-            diffHeaders(dict0, dict1);
-            if (languageDiffers(dict0, dict1)) {
-                // We only check for the language here. The rationale is that one may meaningfully
-                // diff a en_US with a en_GB dictionary, but someone who diffs a de dict with a
-                // pt_BR dict is almost certainly only interested in header-level diff, and the word
-                // diff would be very large, meaningless, and annoying.
-                return;
+        try (final DictionaryReader dict0 = BinaryDictOffdeviceUtils.openDictionaryReader(
+                        mArgs[0], false /* report */);
+                final DictionaryReader dict1 = BinaryDictOffdeviceUtils.openDictionaryReader(
+                        mArgs[1], false /* report */)) {
+            if (!plumbing) {
+                System.out.println("Header :");
+                diffHeaders(dict0.getOptions(), dict1.getOptions());
+                if (languageDiffers(dict0.getOptions(), dict1.getOptions())) {
+                    // We only check for the language here. The rationale is that one may
+                    // meaningfully diff a en_US with a en_GB dictionary, but someone who diffs a
+                    // de dict with a pt_BR dict is almost certainly only interested in
+                    // header-level diff, and the word diff would be very large, meaningless, and
+                    // annoying.
+                    return;
+                }
+                System.out.println("Body :");
             }
-            System.out.println("Body :");
+            diffWords(dict0, dict1);
         }
-        diffWords(dict0, dict1);
     }
 
-    private static boolean languageDiffers(final FusionDictionary dict0,
-            final FusionDictionary dict1) {
+    private static boolean languageDiffers(final DictionaryOptions options0,
+            final DictionaryOptions options1) {
         // If either of the dictionaries have no locale, assume it's okay
-        if (null == dict0.mOptions.mAttributes.get("locale")) return false;
-        if (null == dict1.mOptions.mAttributes.get("locale")) return false;
-        final String dict0Lang = dict0.mOptions.mAttributes.get("locale").split("_", 3)[0];
-        final String dict1Lang = dict1.mOptions.mAttributes.get("locale").split("_", 3)[0];
+        if (null == options0.mAttributes.get("locale")) return false;
+        if (null == options1.mAttributes.get("locale")) return false;
+        final String dict0Lang = options0.mAttributes.get("locale").split("_", 3)[0];
+        final String dict1Lang = options1.mAttributes.get("locale").split("_", 3)[0];
         return !dict0Lang.equals(dict1Lang);
     }
 
-    private static void diffHeaders(final FusionDictionary dict0, final FusionDictionary dict1) {
+    private static void diffHeaders(final DictionaryOptions options0,
+            final DictionaryOptions options1) {
         boolean hasDifferences = false;
-        final HashMap<String, String> options1 = new HashMap<>(dict1.mOptions.mAttributes);
-        for (final String optionKey : dict0.mOptions.mAttributes.keySet()) {
-            if (!dict0.mOptions.mAttributes.get(optionKey).equals(
-                    dict1.mOptions.mAttributes.get(optionKey))) {
+        final HashMap<String, String> remainingOptions1 = new HashMap<>(options1.mAttributes);
+        for (final String optionKey : options0.mAttributes.keySet()) {
+            if (!options0.mAttributes.get(optionKey).equals(
+                    options1.mAttributes.get(optionKey))) {
                 System.out.println("  " + optionKey + " : "
-                        + dict0.mOptions.mAttributes.get(optionKey) + " <=> "
-                        + dict1.mOptions.mAttributes.get(optionKey));
+                        + options0.mAttributes.get(optionKey) + " <=> "
+                        + options1.mAttributes.get(optionKey));
                 hasDifferences = true;
             }
-            options1.remove(optionKey);
+            remainingOptions1.remove(optionKey);
         }
-        for (final String optionKey : options1.keySet()) {
-            System.out.println("  " + optionKey + " : null <=> " + options1.get(optionKey));
+        for (final String optionKey : remainingOptions1.keySet()) {
+            System.out.println("  " + optionKey + " : null <=> "
+                    + remainingOptions1.get(optionKey));
             hasDifferences = true;
         }
         if (!hasDifferences) {
@@ -105,46 +107,43 @@ public class Diff extends Dicttool.Command {
         }
     }
 
-    private static void diffWords(final FusionDictionary dict0, final FusionDictionary dict1) {
+    private static void diffWords(final DictionaryReader dict0, final DictionaryReader dict1) {
         boolean hasDifferences = false;
         for (final WordProperty word0Property : dict0) {
-            final PtNode word1PtNode = FusionDictionary.findWordInTree(dict1.mRootNodeArray,
-                    word0Property.mWord);
-            if (null == word1PtNode) {
+            final WordProperty word1Property = dict1.getWordProperty(word0Property.mWord);
+            if (null == word1Property) {
                 // This word is not in dict1
                 System.out.println("Deleted: " + word0Property.mWord + " "
                         + word0Property.getProbability());
                 hasDifferences = true;
             } else {
                 // We found the word. Compare frequencies, shortcuts, bigrams
-                if (word0Property.getProbability() != word1PtNode.getProbability()) {
+                if (word0Property.getProbability() != word1Property.getProbability()) {
                     System.out.println("Probability changed: " + word0Property.mWord + " "
                             + word0Property.getProbability() + " -> "
-                            + word1PtNode.getProbability());
+                            + word1Property.getProbability());
                     hasDifferences = true;
                 }
-                if (word0Property.mIsNotAWord != word1PtNode.getIsNotAWord()) {
+                if (word0Property.mIsNotAWord != word1Property.mIsNotAWord) {
                     System.out.println("Not a word: " + word0Property.mWord + " "
-                            + word0Property.mIsNotAWord + " -> " + word1PtNode.getIsNotAWord());
+                            + word0Property.mIsNotAWord + " -> " + word1Property.mIsNotAWord);
                     hasDifferences = true;
                 }
-                if (word0Property.mIsPossiblyOffensive != word1PtNode.getIsPossiblyOffensive()) {
+                if (word0Property.mIsPossiblyOffensive != word1Property.mIsPossiblyOffensive) {
                     System.out.println("Possibly-offensive: " + word0Property.mWord + " "
                             + word0Property.mIsPossiblyOffensive + " -> "
-                            + word1PtNode.getIsPossiblyOffensive());
+                            + word1Property.mIsPossiblyOffensive);
                     hasDifferences = true;
                 }
                 hasDifferences |= hasAttributesDifferencesAndPrintThemIfAny(word0Property.mWord,
-                        "Bigram", word0Property.getBigrams(), word1PtNode.getBigrams());
+                        "Bigram", word0Property.getBigrams(), word1Property.getBigrams());
                 hasDifferences |= hasAttributesDifferencesAndPrintThemIfAny(word0Property.mWord,
                         "Shortcut", word0Property.mShortcutTargets,
-                        word1PtNode.getShortcutTargets());
+                        word1Property.mShortcutTargets);
             }
         }
         for (final WordProperty word1Property : dict1) {
-            final PtNode word0PtNode = FusionDictionary.findWordInTree(dict0.mRootNodeArray,
-                    word1Property.mWord);
-            if (null == word0PtNode) {
+            if (null == dict0.getWordProperty(word1Property.mWord)) {
                 // This word is not in dict0
                 System.out.println("Added: " + word1Property.mWord + " "
                         + word1Property.getProbability());
@@ -158,8 +157,8 @@ public class Diff extends Dicttool.Command {
 
     private static boolean hasAttributesDifferencesAndPrintThemIfAny(final String word,
             final String type, final ArrayList<WeightedString> list0,
-            final ArrayList<WeightedString> list1) {
-        if (null == list1) {
+            final ArrayList<WeightedString> attributes1) {
+        if (null == attributes1) {
             if (null == list0) return false;
             for (final WeightedString attribute0 : list0) {
                 System.out.println(type + " removed: " + word + " " + attribute0.mWord + " "
@@ -167,6 +166,8 @@ public class Diff extends Dicttool.Command {
             }
             return true;
         }
+        // Matching attributes are removed from this copy as they are found.
+        final ArrayList<WeightedString> list1 = new ArrayList<>(attributes1);
         boolean hasDifferences = false;
         if (null != list0) {
             for (final WeightedString attribute0 : list0) {
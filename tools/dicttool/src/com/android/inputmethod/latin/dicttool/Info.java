@@ -16,9 +16,8 @@
 
 package com.android.inputmethod.latin.dicttool;
 
+import com.android.inputmethod.latin.dicttool.BinaryDictOffdeviceUtils.DictionaryReader;
 import com.android.inputmethod.latin.makedict.FormatSpec;
-import com.android.inputmethod.latin.makedict.FusionDictionary;
-import com.android.inputmethod.latin.makedict.FusionDictionary.PtNode;
 import com.android.inputmethod.latin.makedict.WeightedString;
 import com.android.inputmethod.latin.makedict.WordProperty;
 
@@ -36,9 +35,9 @@ public class Info extends Dicttool.Command {
         return COMMAND + " <filename>: prints various information about a dictionary file";
     }
 
-    private static void showInfo(final FusionDictionary dict, final boolean plumbing) {
+    private static void showInfo(final DictionaryReader dict, final boolean plumbing) {
         System.out.println("Header attributes :");
-        System.out.print(dict.mOptions.toString(2, plumbing));
+        System.out.print(dict.getOptions().toString(2, plumbing));
         int wordCount = 0;
         int bigramCount = 0;
         int shortcutCount = 0;
@@ -64,21 +63,21 @@ public class Info extends Dicttool.Command {
                 + " whitelist entries)");
     }
 
-    private static void showWordInfo(final FusionDictionary dict, final String word) {
-        final PtNode ptNode = FusionDictionary.findWordInTree(dict.mRootNodeArray, word);
-        if (null == ptNode) {
+    private static void showWordInfo(final DictionaryReader dict, final String word) {
+        final WordProperty wordProperty = dict.getWordProperty(word);
+        if (null == wordProperty) {
             System.out.println(word + " is not in the dictionary");
             return;
         }
         System.out.println("Word: " + word);
-        System.out.println("  Freq: " + ptNode.getProbability());
-        if (ptNode.getIsNotAWord()) {
+        System.out.println("  Freq: " + wordProperty.getProbability());
+        if (wordProperty.mIsNotAWord) {
             System.out.println("  Is not a word");
         }
-        if (ptNode.getIsPossiblyOffensive()) {
+        if (wordProperty.mIsPossiblyOffensive) {
             System.out.println("  Is possibly offensive");
         }
-        final ArrayList<WeightedString> shortcutTargets = ptNode.getShortcutTargets();
+        final ArrayList<WeightedString> shortcutTargets = wordProperty.mShortcutTargets;
         if (null == shortcutTargets || shortcutTargets.isEmpty()) {
             System.out.println("  No shortcuts");
         } else {
@@ -89,7 +88,7 @@ public class Info extends Dicttool.Command {
                                         "whitelist" : shortcutTarget.getProbability()) + ")");
             }
         }
-        final ArrayList<WeightedString> bigrams = ptNode.getBigrams();
+        final ArrayList<WeightedString> bigrams = wordProperty.getBigrams();
         if (null == bigrams || bigrams.isEmpty()) {
             System.out.println("  No bigrams");
         } else {
@@ -117,13 +116,14 @@ public class Info extends Dicttool.Command {
         }
         final String filename = mArgs[0];
         final boolean hasWordArguments = (1 == mArgs.length);
-        final FusionDictionary dict = BinaryDictOffdeviceUtils.getDictionary(filename,
-                hasWordArguments /* report */);
-        if (hasWordArguments) {
-            showInfo(dict, plumbing);
-        } else {
-            for (int i = 1; i < mArgs.length; ++i) {
-                showWordInfo(dict, mArgs[i]);
+        try (final DictionaryReader dict = BinaryDictOffdeviceUtils.openDictionaryReader(
+                filename, hasWordArguments /* report */)) {
+            if (hasWordArguments) {
+                showInfo(dict, plumbing);
+            } else {
+                for (int i = 1; i < mArgs.length; ++i) {
+                    showWordInfo(dict, mArgs[i]);
+                }
             }
         }
     }
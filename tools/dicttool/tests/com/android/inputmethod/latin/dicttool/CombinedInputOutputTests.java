@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.android.inputmethod.latin.dicttool;
+
+import com.android.inputmethod.latin.makedict.FormatSpec;
+import com.android.inputmethod.latin.makedict.FusionDictionary;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNode;
+import com.android.inputmethod.latin.makedict.ProbabilityInfo;
+import com.android.inputmethod.latin.makedict.WeightedString;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Unit tests for CombinedInputOutput
+ */
+public class CombinedInputOutputTests extends TestCase {
+    private static final String HEADER =
+            "dictionary=main:test,locale=test,description=Test (test),version=1,options=x\n";
+
+    private static FusionDictionary read(final String contents) throws IOException {
+        return CombinedInputOutput.readDictionaryCombined(
+                new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static PtNode findWord(final FusionDictionary dict, final String word) {
+        final PtNode ptNode = FusionDictionary.findWordInTree(dict.mRootNodeArray, word);
+        assertNotNull(word, ptNode);
+        return ptNode;
+    }
+
+    public void testReadHeader() throws IOException {
+        final FusionDictionary dict = read("# comment\n" + HEADER);
+        assertEquals("main:test", dict.mOptions.mAttributes.get("dictionary"));
+        assertEquals("Test (test)", dict.mOptions.mAttributes.get("description"));
+        assertFalse(dict.mOptions.mAttributes.containsKey("options"));
+    }
+
+    public void testReadWords() throws IOException {
+        final FusionDictionary dict = read(HEADER
+                + " word=the,f=222,flags=,originalFreq=222\n"
+                + "# comment\n"
+                + " word=été,f=100,not_a_word=TRUE\r\n"
+                + "  shortcut=summer,f=whitelist\r\n"
+                + "  shortcut=ete,f=3\n"
+                + " word=damn,f=50,possibly_offensive=true,historicalInfo=10:1:2\n"
+                + "  bigram=the,f=30,historicalInfo=20:3:4,\n"
+                + " word=no_probability\n"
+                + "  bigram=été");
+        assertEquals(222, findWord(dict, "the").getProbability());
+        assertFalse(findWord(dict, "the").getIsNotAWord());
+
+        final PtNode ete = findWord(dict, "été");
+        assertEquals(100, ete.getProbability());
+        assertTrue(ete.getIsNotAWord());
+        assertEquals(FormatSpec.SHORTCUT_WHITELIST_FREQUENCY,
+                ete.getShortcut("summer").getProbability());
+        assertEquals(3, ete.getShortcut("ete").getProbability());
+
+        final PtNode damn = findWord(dict, "damn");
+        assertEquals(50, damn.getProbability());
+        assertTrue(damn.getIsPossiblyOffensive());
+        assertEquals(new ProbabilityInfo(30, 20, 3, 4), damn.getBigram("the").mProbabilityInfo);
+
+        // Like before, a word without a probability has the probability of the previous one.
+        final PtNode noProbability = findWord(dict, "no_probability");
+        assertEquals(50, noProbability.getProbability());
+        final WeightedString bigram = noProbability.getBigram("été");
+        assertEquals(new ProbabilityInfo(0), bigram.mProbabilityInfo);
+    }
+
+    public void testReadLongLines() throws IOException {
+        final StringBuilder word = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            word.append('a');
+        }
+        final FusionDictionary dict = read(HEADER + " word=" + word + ",f=1\n word=b,f=2\n");
+        assertEquals(2, findWord(dict, "b").getProbability());
+    }
+
+    public void testReadFromSmallReads() throws IOException {
+        final byte[] bytes = (HEADER + " word=été,f=100\n  shortcut=summer,f=3\n")
+                .getBytes(StandardCharsets.UTF_8);
+        // A stream that returns one byte at a time, splitting lines and characters.
+        final InputStream input = new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(final byte[] b, final int off, final int len) {
+                return super.read(b, off, Math.min(1, len));
+            }
+        };
+        final FusionDictionary dict = CombinedInputOutput.readDictionaryCombined(input);
+        assertEquals(3, findWord(dict, "été").getShortcut("summer").getProbability());
+    }
+
+    public void testWrongFormat() throws IOException {
+        try {
+            read(HEADER + " word=a,f=1,flags\n");
+            fail("A field without a value must not be accepted");
+        } catch (final RuntimeException e) {
+            // Expected.
+        }
+        try {
+            read(HEADER + " word=a,f=1,historicalInfo=1:2\n");
+            fail("Historical info with two elements must not be accepted");
+        } catch (final RuntimeException e) {
+            // Expected.
+        }
+        try {
+            read(HEADER + " word=a,f=x\n");
+            fail("A probability that is not a number must not be accepted");
+        } catch (final NumberFormatException e) {
+            // Expected.
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.dicttool;
+
+import com.android.inputmethod.latin.BinaryDictionary;
+import com.android.inputmethod.latin.Dictionary;
+import com.android.inputmethod.latin.NgramContext;
+import com.android.inputmethod.latin.NgramContext.WordInfo;
+import com.android.inputmethod.latin.common.CodePointUtils;
+import com.android.inputmethod.latin.common.FileUtils;
+import com.android.inputmethod.latin.dicttool.BinaryDictOffdeviceUtils.DictionaryReader;
+import com.android.inputmethod.latin.dicttool.BinaryDictOffdeviceUtils.FusionDictionaryReader;
+import com.android.inputmethod.latin.makedict.BinaryDictIOUtils;
+import com.android.inputmethod.latin.makedict.DictionaryHeader;
+import com.android.inputmethod.latin.makedict.FormatSpec;
+import com.android.inputmethod.latin.makedict.UnsupportedFormatException;
+import com.android.inputmethod.latin.makedict.WeightedString;
+import com.android.inputmethod.latin.makedict.WordProperty;
+import com.android.inputmethod.latin.utils.BinaryDictionaryUtils;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Unit tests for the DictionaryReader of BinaryDictOffdeviceUtils
+ */
+public class DictionaryReaderTests extends TestCase {
+    private static final int WORD_COUNT = 1000;
+    private static final int BIGRAM_COUNT = 500;
+    private static final int CODE_POINT_SET_SIZE = 300;
+
+    private static File createVer4Dictionary(final ArrayList<String> words, final Random random)
+            throws IOException {
+        final File dictDir = File.createTempFile("testDictionaryReader", ".tmp");
+        dictDir.delete();
+        dictDir.mkdir();
+        final HashMap<String, String> attributes = new HashMap<>();
+        attributes.put(DictionaryHeader.DICTIONARY_ID_KEY, "main:en_US");
+        attributes.put(DictionaryHeader.DICTIONARY_LOCALE_KEY, "en_US");
+        attributes.put(DictionaryHeader.DICTIONARY_VERSION_KEY, "1");
+        assertTrue(BinaryDictionaryUtils.createEmptyDictFile(dictDir.getAbsolutePath(),
+                FormatSpec.VERSION403, Locale.US, attributes));
+        final BinaryDictionary binaryDictionary = new BinaryDictionary(
+                dictDir.getAbsolutePath(), 0 /* offset */, dictDir.length(),
+                true /* useFullEditDistance */, Locale.US, "" /* dictType */,
+                true /* isUpdatable */);
+        for (final String word : words) {
+            binaryDictionary.addUnigramEntry(word, random.nextInt(0xFF) /* probability */,
+                    "" /* shortcutTarget */,
+                    Dictionary.NOT_A_PROBABILITY /* shortcutProbability */,
+                    false /* isBeginningOfSentence */, false /* isNotAWord */,
+                    false /* isPossiblyOffensive */,
+                    BinaryDictionary.NOT_A_VALID_TIMESTAMP /* timestamp */);
+        }
+        for (int i = 0; i < BIGRAM_COUNT; i++) {
+            final String word0 = words.get(random.nextInt(words.size()));
+            final String word1 = words.get(random.nextInt(words.size()));
+            binaryDictionary.addNgramEntry(new NgramContext(new WordInfo(word0)), word1,
+                    random.nextInt(0xFF) /* probability */,
+                    BinaryDictionary.NOT_A_VALID_TIMESTAMP /* timestamp */);
+        }
+        assertTrue(binaryDictionary.flushWithGC());
+        binaryDictionary.close();
+        return dictDir;
+    }
+
+    private static HashMap<String, WordProperty> readWords(final DictionaryReader reader) {
+        final HashMap<String, WordProperty> wordProperties = new HashMap<>();
+        for (final WordProperty wordProperty : reader) {
+            assertNull("Word read twice: " + wordProperty.mWord,
+                    wordProperties.put(wordProperty.mWord, wordProperty));
+        }
+        return wordProperties;
+    }
+
+    private static HashMap<String, Integer> getBigramProbabilities(
+            final WordProperty wordProperty) {
+        final HashMap<String, Integer> bigramProbabilities = new HashMap<>();
+        if (wordProperty.mHasNgrams) {
+            for (final WeightedString bigram : wordProperty.getBigrams()) {
+                bigramProbabilities.put(bigram.mWord, bigram.getProbability());
+            }
+        }
+        return bigramProbabilities;
+    }
+
+    private static void assertSameWordProperty(final WordProperty expected,
+            final WordProperty actual) {
+        assertNotNull("Missing word: " + expected.mWord, actual);
+        assertEquals(expected.mWord, actual.mWord);
+        assertEquals(expected.mWord, expected.getProbability(), actual.getProbability());
+        assertEquals(expected.mWord, expected.mIsNotAWord, actual.mIsNotAWord);
+        assertEquals(expected.mWord, expected.mIsPossiblyOffensive, actual.mIsPossiblyOffensive);
+        assertEquals(expected.mWord, getBigramProbabilities(expected),
+                getBigramProbabilities(actual));
+    }
+
+    public void testReadVer4DictionaryLikeFusionDictionary()
+            throws IOException, UnsupportedFormatException {
+        final Random random = new Random(123456);
+        final int[] codePointSet = CodePointUtils.generateCodePointSet(CODE_POINT_SET_SIZE,
+                random);
+        final Set<String> wordSet = new HashSet<>();
+        while (wordSet.size() < WORD_COUNT) {
+            wordSet.add(CodePointUtils.generateWord(random, codePointSet));
+        }
+        final ArrayList<String> words = new ArrayList<>(wordSet);
+        final File dictDir = createVer4Dictionary(words, random);
+        try (final DictionaryReader binaryReader = BinaryDictOffdeviceUtils.openDictionaryReader(
+                dictDir.getAbsolutePath(), false /* report */);
+                final DictionaryReader fusionReader = new FusionDictionaryReader(
+                        BinaryDictIOUtils.getDictDecoder(dictDir, 0 /* offset */,
+                                dictDir.length()).readDictionaryBinary(
+                                        false /* deleteDictIfBroken */))) {
+            assertEquals(fusionReader.getOptions().mAttributes,
+                    binaryReader.getOptions().mAttributes);
+            final HashMap<String, WordProperty> binaryWords = readWords(binaryReader);
+            final HashMap<String, WordProperty> fusionWords = readWords(fusionReader);
+            assertEquals(WORD_COUNT, fusionWords.size());
+            assertEquals(fusionWords.keySet(), binaryWords.keySet());
+            for (final WordProperty wordProperty : fusionWords.values()) {
+                assertSameWordProperty(wordProperty, binaryWords.get(wordProperty.mWord));
+                assertSameWordProperty(wordProperty,
+                        binaryReader.getWordProperty(wordProperty.mWord));
+            }
+            final String missingWord = "notAWordOfTheDictionary";
+            assertFalse(wordSet.contains(missingWord));
+            assertNull(fusionReader.getWordProperty(missingWord));
+            assertNull(binaryReader.getWordProperty(missingWord));
+        } finally {
+            FileUtils.deleteRecursively(dictDir);
+        }
+    }
+}
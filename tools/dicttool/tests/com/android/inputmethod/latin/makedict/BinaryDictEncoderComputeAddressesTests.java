@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNode;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Unit tests for BinaryDictEncoderUtils.computeAddresses().
+ */
+public class BinaryDictEncoderComputeAddressesTests extends TestCase {
+    // Enough words for the PtNode arrays to be split in several segments.
+    private static final int WORD_COUNT = 100000;
+    private static final int MAX_WORD_LENGTH = 10;
+
+    private static FusionDictionary generateDictionary(final long seed) {
+        final Random random = new Random(seed);
+        final FusionDictionaryBuilder builder = new FusionDictionaryBuilder(
+                new DictionaryOptions(new HashMap<String, String>()));
+        final ArrayList<String> words = new ArrayList<>();
+        for (int i = 0; i < WORD_COUNT; ++i) {
+            final StringBuilder word = new StringBuilder();
+            final int length = 1 + random.nextInt(MAX_WORD_LENGTH);
+            for (int j = 0; j < length; ++j) {
+                word.append((char)('a' + random.nextInt(26)));
+            }
+            words.add(word.toString());
+            builder.add(word.toString(), new ProbabilityInfo(random.nextInt(256)),
+                    null /* shortcutTargets */, false /* isNotAWord */,
+                    false /* isPossiblyOffensive */);
+        }
+        for (int i = 0; i < WORD_COUNT; ++i) {
+            builder.setBigram(words.get(random.nextInt(WORD_COUNT)),
+                    words.get(random.nextInt(WORD_COUNT)),
+                    new ProbabilityInfo(random.nextInt(256)));
+        }
+        return builder.build();
+    }
+
+    private static int[] getCachedAddressesAndSizes(final ArrayList<PtNodeArray> flatNodes) {
+        final ArrayList<Integer> values = new ArrayList<>();
+        for (final PtNodeArray ptNodeArray : flatNodes) {
+            values.add(ptNodeArray.mCachedAddressAfterUpdate);
+            values.add(ptNodeArray.mCachedSize);
+            for (final PtNode ptNode : ptNodeArray.mData) {
+                values.add(ptNode.mCachedAddressAfterUpdate);
+                values.add(ptNode.mCachedSize);
+            }
+        }
+        final int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = values.get(i);
+        }
+        return result;
+    }
+
+    public void testParallelSameAsSerial() {
+        final long seed = System.currentTimeMillis();
+        System.out.println("Seed is " + seed);
+        final FusionDictionary dict = generateDictionary(seed);
+        final ArrayList<PtNodeArray> flatNodes =
+                BinaryDictEncoderUtils.flattenTree(dict.mRootNodeArray);
+        try {
+            BinaryDictEncoderUtils.setParallelAddressComputationEnabledForTesting(false);
+            BinaryDictEncoderUtils.computeAddresses(dict, flatNodes,
+                    null /* codePointToOneByteCodeMap */);
+            final int[] serial = getCachedAddressesAndSizes(flatNodes);
+
+            BinaryDictEncoderUtils.setParallelAddressComputationEnabledForTesting(true);
+            BinaryDictEncoderUtils.computeAddresses(dict, flatNodes,
+                    null /* codePointToOneByteCodeMap */);
+            BinaryDictEncoderUtils.checkFlatPtNodeArrayList(flatNodes);
+            final int[] parallel = getCachedAddressesAndSizes(flatNodes);
+            assertEquals(serial.length, parallel.length);
+            for (int i = 0; i < serial.length; ++i) {
+                assertEquals(serial[i], parallel[i]);
+            }
+        } finally {
+            BinaryDictEncoderUtils.setParallelAddressComputationEnabledForTesting(true);
+        }
+    }
+
+    public void testAddressesOfBigramTargets() {
+        final FusionDictionary dict = new FusionDictionary(new PtNodeArray(),
+                new DictionaryOptions(new HashMap<String, String>()));
+        dict.add("abc", new ProbabilityInfo(10), null /* shortcutTargets */,
+                false /* isNotAWord */, false /* isPossiblyOffensive */);
+        dict.add("abd", new ProbabilityInfo(10), null /* shortcutTargets */,
+                false /* isNotAWord */, false /* isPossiblyOffensive */);
+        dict.setBigram("abd", "abc", new ProbabilityInfo(20));
+        final ArrayList<PtNodeArray> flatNodes =
+                BinaryDictEncoderUtils.flattenTree(dict.mRootNodeArray);
+        BinaryDictEncoderUtils.computeAddresses(dict, flatNodes,
+                null /* codePointToOneByteCodeMap */);
+        BinaryDictEncoderUtils.checkFlatPtNodeArrayList(flatNodes);
+
+        // The bigram of "abd" is a one-byte negative offset, after its flags.
+        final PtNode abc = FusionDictionary.findWordInTree(dict.mRootNodeArray, "abc");
+        final PtNode abd = FusionDictionary.findWordInTree(dict.mRootNodeArray, "abd");
+        assertEquals(FormatSpec.PTNODE_FLAGS_SIZE + 1 /* character */
+                + FormatSpec.PTNODE_FREQUENCY_SIZE + FormatSpec.PTNODE_ATTRIBUTE_FLAGS_SIZE + 1,
+                abd.mCachedSize);
+        assertTrue(abc.mCachedAddressAfterUpdate < abd.mCachedAddressAfterUpdate);
+    }
+}
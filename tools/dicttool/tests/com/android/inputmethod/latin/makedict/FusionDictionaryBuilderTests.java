@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2016 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.inputmethod.latin.makedict;
+
+import com.android.inputmethod.latin.makedict.FormatSpec.DictionaryOptions;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNode;
+import com.android.inputmethod.latin.makedict.FusionDictionary.PtNodeArray;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Unit tests for FusionDictionaryBuilder.
+ */
+public class FusionDictionaryBuilderTests extends TestCase {
+    // Few different code points, so that words share prefixes and are repeated. The last one is
+    // out of the basic multilingual plane.
+    private static final int[] CODE_POINTS = { 'a', 'b', 'c', 0x1F600 };
+    private static final int MAX_WORD_LENGTH = 6;
+    private static final int OPERATION_COUNT = 3000;
+
+    private static DictionaryOptions createOptions() {
+        return new DictionaryOptions(new HashMap<String, String>());
+    }
+
+    private static String generateWord(final Random random) {
+        final StringBuilder builder = new StringBuilder();
+        final int length = 1 + random.nextInt(MAX_WORD_LENGTH);
+        for (int i = 0; i < length; ++i) {
+            builder.appendCodePoint(CODE_POINTS[random.nextInt(CODE_POINTS.length)]);
+        }
+        return builder.toString();
+    }
+
+    // A new list for each dictionary, as PtNodes keep and update the lists they are given.
+    private static ArrayList<WeightedString> createShortcuts(final String[] shortcuts,
+            final int probability) {
+        if (null == shortcuts) {
+            return null;
+        }
+        final ArrayList<WeightedString> shortcutTargets = new ArrayList<>();
+        for (final String shortcut : shortcuts) {
+            shortcutTargets.add(new WeightedString(shortcut, probability));
+        }
+        return shortcutTargets;
+    }
+
+    private static void assertSameNodeArray(final PtNodeArray expected, final PtNodeArray actual) {
+        if (null == expected) {
+            assertNull(actual);
+            return;
+        }
+        assertNotNull(actual);
+        assertEquals(expected.mData.size(), actual.mData.size());
+        for (int i = 0; i < expected.mData.size(); ++i) {
+            final PtNode expectedPtNode = expected.mData.get(i);
+            final PtNode actualPtNode = actual.mData.get(i);
+            assertTrue(Arrays.equals(expectedPtNode.mChars, actualPtNode.mChars));
+            assertEquals(expectedPtNode.isTerminal(), actualPtNode.isTerminal());
+            assertEquals(expectedPtNode.mProbabilityInfo, actualPtNode.mProbabilityInfo);
+            assertEquals(expectedPtNode.mIsNotAWord, actualPtNode.mIsNotAWord);
+            assertEquals(expectedPtNode.mIsPossiblyOffensive, actualPtNode.mIsPossiblyOffensive);
+            assertEquals(expectedPtNode.mShortcutTargets, actualPtNode.mShortcutTargets);
+            assertEquals(expectedPtNode.mBigrams, actualPtNode.mBigrams);
+            assertSameNodeArray(expectedPtNode.mChildren, actualPtNode.mChildren);
+        }
+    }
+
+    public void testSameAsFusionDictionary() {
+        final long seed = System.currentTimeMillis();
+        System.out.println("Seed is " + seed);
+        final Random random = new Random(seed);
+        final FusionDictionary expected = new FusionDictionary(new PtNodeArray(),
+                createOptions());
+        final FusionDictionaryBuilder builder = new FusionDictionaryBuilder(createOptions());
+        final ArrayList<String> addedWords = new ArrayList<>();
+        for (int i = 0; i < OPERATION_COUNT; ++i) {
+            if (addedWords.isEmpty() || random.nextInt(4) != 0) {
+                final String word = generateWord(random);
+                final ProbabilityInfo probabilityInfo =
+                        new ProbabilityInfo(random.nextInt(FormatSpec.MAX_TERMINAL_FREQUENCY));
+                final String[] shortcuts = random.nextInt(8) != 0 ? null
+                        : new String[] { generateWord(random), generateWord(random) };
+                final int shortcutProbability = random.nextInt(15);
+                final boolean isNotAWord = random.nextBoolean();
+                final boolean isPossiblyOffensive = random.nextInt(8) == 0;
+                expected.add(word, probabilityInfo,
+                        createShortcuts(shortcuts, shortcutProbability), isNotAWord,
+                        isPossiblyOffensive);
+                builder.add(word, probabilityInfo,
+                        createShortcuts(shortcuts, shortcutProbability), isNotAWord,
+                        isPossiblyOffensive);
+                addedWords.add(word);
+            } else {
+                // FusionDictionary needs the first word of a bigram to be added first.
+                final String word0 = addedWords.get(random.nextInt(addedWords.size()));
+                final String word1 = generateWord(random);
+                final int probability = random.nextInt(FormatSpec.MAX_TERMINAL_FREQUENCY);
+                expected.setBigram(word0, word1, new ProbabilityInfo(probability));
+                builder.setBigram(word0, word1, new ProbabilityInfo(probability));
+            }
+        }
+        assertSameNodeArray(expected.mRootNodeArray, builder.build().mRootNodeArray);
+    }
+
+    public void testBigramBeforeWord() {
+        final FusionDictionaryBuilder builder = new FusionDictionaryBuilder(createOptions());
+        builder.setBigram("abc", "ab", new ProbabilityInfo(20));
+        builder.add("abc", new ProbabilityInfo(100), null /* shortcutTargets */,
+                false /* isNotAWord */, false /* isPossiblyOffensive */);
+        builder.add("ab", new ProbabilityInfo(50), null /* shortcutTargets */,
+                true /* isNotAWord */, false /* isPossiblyOffensive */);
+        final FusionDictionary dict = builder.build();
+
+        final PtNode abc = FusionDictionary.findWordInTree(dict.mRootNodeArray, "abc");
+        assertEquals(100, abc.getProbability());
+        assertEquals(20, abc.getBigram("ab").getProbability());
+        // Like with FusionDictionary#setBigram, the second word was added before its own entry.
+        final PtNode ab = FusionDictionary.findWordInTree(dict.mRootNodeArray, "ab");
+        assertEquals(50, ab.getProbability());
+        assertFalse(ab.getIsNotAWord());
+    }
+
+    public void testNotAWordOnExistingPtNode() {
+        final FusionDictionary dict = new FusionDictionary(new PtNodeArray(), createOptions());
+        dict.add("ab", new ProbabilityInfo(10), null /* shortcutTargets */,
+                false /* isNotAWord */, false /* isPossiblyOffensive */);
+        dict.add("ac", new ProbabilityInfo(10), null /* shortcutTargets */,
+                false /* isNotAWord */, false /* isPossiblyOffensive */);
+        // "a" ends on the PtNode that was created for the common prefix of "ab" and "ac".
+        dict.add("a", new ProbabilityInfo(10), null /* shortcutTargets */,
+                true /* isNotAWord */, false /* isPossiblyOffensive */);
+        assertTrue(FusionDictionary.findWordInTree(dict.mRootNodeArray, "a").getIsNotAWord());
+    }
+
+    public void testMissingFirstWordOfBigram() {
+        final FusionDictionaryBuilder builder = new FusionDictionaryBuilder(createOptions());
+        builder.add("a", new ProbabilityInfo(10), null /* shortcutTargets */,
+                false /* isNotAWord */, false /* isPossiblyOffensive */);
+        builder.setBigram("b", "a", new ProbabilityInfo(10));
+        try {
+            builder.build();
+            fail("A bigram whose first word was not added must not be accepted");
+        } catch (final RuntimeException e) {
+            // Expected.
+        }
+    }
+}